@@ -0,0 +1,221 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.PixelSelector;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.ReadStatement;
+import edu.ufl.cise.plc.ast.ReturnStatement;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+import edu.ufl.cise.plc.ast.WriteStatement;
+
+/**
+ * Finds the pixel assignments whose loops CodeGenVisitor generates block by block, computing
+ * ImageOps.tileSize by ImageOps.tileSize pixels of the target before moving on to the next
+ * block.  These are the assignments that read neighboring pixels or pixels of several images,
+ *
+ * b[x,y] = a[x+1,y] + a[x,y+1];
+ * b[x,y] = a[x,y] + c[x,y];
+ *
+ * which the full loops, column by column, read from rows that have left the cache by the time
+ * the next column needs them.
+ *
+ * Blocking changes the order in which pixels are computed, so the target must be an image that
+ * the assignment does not read other than at the pixel it sets: it is declared with a size and
+ * no initializer, never used as a whole image except by write and return statements, so that no
+ * other variable refers to it, and never given a new image.  The expression must not read the
+ * console.  If several pixels would throw, a different one may be the first to throw.
+ *
+ * The pixel assignments that meet these conditions, whether or not they are blocked, are also
+ * recorded as unordered, so that the loops that index pixel arrays can go row by row.
+ */
+class BlockedLoops {
+
+	final Set<AssignmentStatement> assignments = Collections.newSetFromMap(new IdentityHashMap<>());
+	/* the pixel assignments whose pixels may be computed in any order, including the blocked ones */
+	final Set<AssignmentStatement> unordered = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	boolean contains(AssignmentStatement assignment) {
+		return assignments.contains(assignment);
+	}
+
+	boolean isUnordered(AssignmentStatement assignment) {
+		return unordered.contains(assignment);
+	}
+
+	static BlockedLoops find(Program program, PointwisePipelines pipelines, LoopFusion fusion) throws Exception {
+		BlockedLoops result = new BlockedLoops();
+		Targets targets = new Targets();
+		program.visit(targets, null);
+		targets.fresh.removeAll(targets.excluded);
+		for (ASTNode node : program.getDecsAndStatements()) {
+			if (node instanceof AssignmentStatement assignment && pipelines.get(assignment) == null
+					&& fusion.get(assignment) == null && targets.fresh.contains(assignment.getName())) {
+				Reads reads = new Reads(assignment.getName());
+				assignment.getExpr().visit(reads, null);
+				if (reads.other || !isSamePixel(assignment.getSelector())) {
+					continue;
+				}
+				result.unordered.add(assignment);
+				if (isBlocked(assignment.getExpr(), reads)) {
+					result.assignments.add(assignment);
+				}
+			}
+		}
+		return result;
+	}
+
+	/* A pixel loop of expr, which makes the given reads, reading neighboring pixels or several images */
+	static boolean isBlocked(Expr expr, Reads reads) {
+		if (expr.getType() != INT
+				&& !(expr.getType() == COLOR && (expr.getCoerceTo() == null || expr.getCoerceTo() == COLOR))) {
+			return false;
+		}
+		return reads.neighbors || reads.images.size() > 1;
+	}
+
+	/* whether a pixel assignment with the given selector sets the pixel x,y of its loops */
+	static boolean isSamePixel(PixelSelector selector) {
+		return selector == null || isIdent(selector.getX(), "x") && isIdent(selector.getY(), "y");
+	}
+
+	static boolean isIdent(Expr expr, String name) {
+		return expr instanceof IdentExpr && expr.getText().equals(name);
+	}
+
+	/* Finds the images that are only used through their pixels and size */
+	static class Targets extends ASTScanner {
+		final Set<String> fresh = new HashSet<>();
+		final Set<String> excluded = new HashSet<>();
+
+		@Override
+		public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+			if (declaration.getType() == IMAGE && declaration.getOp() == null && declaration.getDim() != null) {
+				fresh.add(declaration.getName());
+			} else {
+				excluded.add(declaration.getName());
+			}
+			return super.visitVarDeclaration(declaration, arg);
+		}
+
+		@Override
+		public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+			excluded.add(identExpr.getText());
+			return null;
+		}
+
+		@Override
+		public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+			if (unaryExpression.getOp().getKind() == Kind.IMAGE_OP && unaryExpression.getExpr() instanceof IdentExpr) {
+				return null;
+			}
+			return super.visitUnaryExpr(unaryExpression, arg);
+		}
+
+		@Override
+		public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+			if (!(unaryExprPostfix.getExpr() instanceof IdentExpr)) {
+				scan(unaryExprPostfix.getExpr(), arg);
+			}
+			scan(unaryExprPostfix.getSelector(), arg);
+			return null;
+		}
+
+		@Override
+		public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+			if (assignmentStatement.getExpr().getType() == IMAGE) {
+				excluded.add(assignmentStatement.getName());
+			}
+			return super.visitAssignmentStatement(assignmentStatement, arg);
+		}
+
+		@Override
+		public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+			excluded.add(readStatement.getName());
+			return super.visitReadStatement(readStatement, arg);
+		}
+
+		@Override
+		public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+			if (!(writeStatement.getSource() instanceof IdentExpr)) {
+				scan(writeStatement.getSource(), arg);
+			}
+			scan(writeStatement.getDest(), arg);
+			return null;
+		}
+
+		@Override
+		public Object visitReturnStatement(ReturnStatement returnStatement, Object arg) throws Exception {
+			if (!(returnStatement.getExpr() instanceof IdentExpr)) {
+				scan(returnStatement.getExpr(), arg);
+			}
+			return null;
+		}
+	}
+
+	/* Finds the images whose pixels an expression reads, and whether it reads other pixels than x,y */
+	static class Reads extends ASTScanner {
+		final String target;
+		final Set<String> images = new HashSet<>();
+		boolean neighbors = false;
+		/* whether the target is read other than at x,y, or the console is read */
+		boolean other = false;
+
+		Reads(String target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+			if (identExpr.getText().equals(target)) {
+				other = true;
+			}
+			return null;
+		}
+
+		@Override
+		public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+			other = true;
+			return null;
+		}
+
+		@Override
+		public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+			if (unaryExpression.getOp().getKind() == Kind.IMAGE_OP && unaryExpression.getExpr() instanceof IdentExpr) {
+				return null;
+			}
+			return super.visitUnaryExpr(unaryExpression, arg);
+		}
+
+		@Override
+		public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+			PixelSelector selector = unaryExprPostfix.getSelector();
+			boolean samePixel = isIdent(selector.getX(), "x") && isIdent(selector.getY(), "y");
+			if (!(unaryExprPostfix.getExpr() instanceof IdentExpr image)) {
+				other = true;
+				return null;
+			}
+			if (image.getText().equals(target) && !samePixel) {
+				other = true;
+			}
+			images.add(image.getText());
+			neighbors |= !samePixel;
+			scan(selector, arg);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,873 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTVisitor;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.BinaryExpr;
+import edu.ufl.cise.plc.ast.BooleanLitExpr;
+import edu.ufl.cise.plc.ast.ColorConstExpr;
+import edu.ufl.cise.plc.ast.ColorExpr;
+import edu.ufl.cise.plc.ast.ConditionalExpr;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Dimension;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.FloatLitExpr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.IntLitExpr;
+import edu.ufl.cise.plc.ast.NameDef;
+import edu.ufl.cise.plc.ast.NameDefWithDim;
+import edu.ufl.cise.plc.ast.PixelSelector;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.ReadStatement;
+import edu.ufl.cise.plc.ast.ReturnStatement;
+import edu.ufl.cise.plc.ast.StringLitExpr;
+import edu.ufl.cise.plc.ast.Types.Type;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+import edu.ufl.cise.plc.ast.WriteStatement;
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.ColorTupleFloat;
+import edu.ufl.cise.plc.runtime.ExecutableProgram;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.ImageOps;
+
+/**
+ * Compiles a type checked Program into a tree of closures that can be run without generating
+ * and compiling Java code.  Visiting the Program returns an ExecutableProgram.
+ *
+ * Each expression becomes an IntCode, FloatCode, BoolCode, or ObjCode depending on the type of
+ * its value, so int, float, and boolean values are not boxed.  Variables are stored in slots of
+ * a Frame that is created for each run; the slot of each variable is fixed when the program is
+ * compiled.  Conversions between types are decided when the program is compiled, from the type
+ * and coerceTo of each expression, and constant expressions are folded by ConstantFolder.
+ *
+ * The closures do what the code generated by CodeGenVisitor does, including evaluating the
+ * right hand side of a pixel assignment once per pixel and evaluating both operands of & and |.
+ * Where CodeGenVisitor generates code that does not compile (for example, operations on
+ * float colors), the closures do what the type checker allows.  Colors are compared by value.
+ */
+public class ClosureCompiler implements ASTVisitor {
+
+	@FunctionalInterface
+	interface IntCode {
+		int eval(Frame f);
+	}
+
+	@FunctionalInterface
+	interface FloatCode {
+		float eval(Frame f);
+	}
+
+	@FunctionalInterface
+	interface BoolCode {
+		boolean eval(Frame f);
+	}
+
+	@FunctionalInterface
+	interface ObjCode {
+		Object eval(Frame f);
+	}
+
+	@FunctionalInterface
+	interface StmtCode {
+		void run(Frame f);
+	}
+
+	/**
+	 * The variables of one run of a program.
+	 */
+	static final class Frame {
+		final ExecutionContext context;
+		final int[] ints;
+		final float[] floats;
+		final boolean[] bools;
+		final Object[] objs;
+		boolean returned;
+		Object result;
+		/* the number of pixels set by pixel assignments so far */
+		long pixels;
+
+		Frame(ExecutionContext context, int numInts, int numFloats, int numBools, int numObjs) {
+			this.context = context;
+			ints = new int[numInts];
+			floats = new float[numFloats];
+			bools = new boolean[numBools];
+			objs = new Object[numObjs];
+		}
+	}
+
+	private final Map<String, Integer> slots = new HashMap<>();
+	private int numInts;
+	private int numFloats;
+	private int numBools;
+	private int numObjs;
+	private Type returnType;
+	private ConstantFolder folded = new ConstantFolder();
+	private final LongAdder pixelCount;
+
+	public ClosureCompiler() {
+		this(null);
+	}
+
+	/**
+	 * Creates a ClosureCompiler whose programs add the number of pixels set by their pixel
+	 * assignments to pixelCount when they finish, so that callers can tell how much work a
+	 * program does.
+	 *
+	 * @param pixelCount
+	 */
+	public ClosureCompiler(LongAdder pixelCount) {
+		this.pixelCount = pixelCount;
+	}
+
+	/*
+	 * Names are unique in a program, except that the x and y of a pixel selector may be declared
+	 * again with another type after the assignment, so slots are found by name and storage.
+	 */
+	private int slot(String name, Type type) {
+		Type storage = storage(type);
+		String key = name + ":" + storage;
+		Integer slot = slots.get(key);
+		if (slot == null) {
+			slot = switch (storage) {
+			case INT -> numInts++;
+			case FLOAT -> numFloats++;
+			case BOOLEAN -> numBools++;
+			default -> numObjs++;
+			};
+			slots.put(key, slot);
+		}
+		return slot;
+	}
+
+	/* INT, FLOAT, BOOLEAN, or, for every type stored as an Object, STRING */
+	private static Type storage(Type type) {
+		return switch (type) {
+		case INT, FLOAT, BOOLEAN -> type;
+		default -> STRING;
+		};
+	}
+
+	/* the type of the value computed by the code for an expression, before coercion */
+	static Type typeOf(Expr expr) {
+		if (expr instanceof UnaryExprPostfix) {
+			return COLOR;
+		}
+		if (expr instanceof ConsoleExpr) {
+			return expr.getCoerceTo();
+		}
+		return expr.getType();
+	}
+
+	static Type coercedType(Expr expr) {
+		return expr.getCoerceTo() != null ? expr.getCoerceTo() : typeOf(expr);
+	}
+
+	private Object code(Expr expr) throws Exception {
+		Object value = folded.constant(expr);
+		if (value instanceof Integer i) {
+			int v = i;
+			return (IntCode) f -> v;
+		}
+		if (value instanceof Float fl) {
+			float v = fl;
+			return (FloatCode) f -> v;
+		}
+		if (value instanceof Boolean b) {
+			boolean v = b;
+			return (BoolCode) f -> v;
+		}
+		if (value != null) {
+			return (ObjCode) f -> value;
+		}
+		Expr replacement = folded.replacement(expr);
+		return (replacement != null ? replacement : expr).visit(this, null);
+	}
+
+	/* code computing the value of expr converted to the given type */
+	private Object code(Expr expr, Type type) throws Exception {
+		return convert(code(expr), typeOf(expr), type);
+	}
+
+	private IntCode ints(Expr expr) throws Exception {
+		return (IntCode) code(expr, INT);
+	}
+
+	private FloatCode floats(Expr expr) throws Exception {
+		return (FloatCode) code(expr, FLOAT);
+	}
+
+	private BoolCode bools(Expr expr) throws Exception {
+		return (BoolCode) code(expr, BOOLEAN);
+	}
+
+	private ObjCode objs(Expr expr, Type type) throws Exception {
+		return boxed(code(expr, type), type);
+	}
+
+	/* code computing the value of expr as an Object, as it would be passed to writeValue or println */
+	private ObjCode boxed(Expr expr) throws Exception {
+		return boxed(code(expr), typeOf(expr));
+	}
+
+	private static ObjCode boxed(Object code, Type type) {
+		return switch (storage(type)) {
+		case INT -> {
+			IntCode c = (IntCode) code;
+			yield f -> c.eval(f);
+		}
+		case FLOAT -> {
+			FloatCode c = (FloatCode) code;
+			yield f -> c.eval(f);
+		}
+		case BOOLEAN -> {
+			BoolCode c = (BoolCode) code;
+			yield f -> c.eval(f);
+		}
+		default -> (ObjCode) code;
+		};
+	}
+
+	private static Object convert(Object code, Type from, Type to) {
+		if (from == to || to == null) {
+			return code;
+		}
+		switch (to) {
+		case INT:
+			if (from == FLOAT) {
+				FloatCode c = (FloatCode) code;
+				return (IntCode) f -> (int) c.eval(f);
+			}
+			if (from == COLOR) {
+				ObjCode c = (ObjCode) code;
+				return (IntCode) f -> ((ColorTuple) c.eval(f)).pack();
+			}
+			break;
+		case FLOAT:
+			if (from == INT) {
+				IntCode c = (IntCode) code;
+				return (FloatCode) f -> c.eval(f);
+			}
+			break;
+		case COLOR:
+			if (from == INT) {
+				IntCode c = (IntCode) code;
+				return (ObjCode) f -> new ColorTuple(c.eval(f));
+			}
+			if (from == FLOAT) {
+				FloatCode c = (FloatCode) code;
+				return (ObjCode) f -> new ColorTuple(new ColorTupleFloat(c.eval(f)));
+			}
+			if (from == COLORFLOAT) {
+				ObjCode c = (ObjCode) code;
+				return (ObjCode) f -> new ColorTuple((ColorTupleFloat) c.eval(f));
+			}
+			break;
+		case COLORFLOAT:
+			if (from == INT) {
+				IntCode c = (IntCode) code;
+				return (ObjCode) f -> new ColorTupleFloat(c.eval(f));
+			}
+			if (from == FLOAT) {
+				FloatCode c = (FloatCode) code;
+				return (ObjCode) f -> new ColorTupleFloat(c.eval(f));
+			}
+			if (from == COLOR) {
+				ObjCode c = (ObjCode) code;
+				return (ObjCode) f -> new ColorTupleFloat((ColorTuple) c.eval(f));
+			}
+			break;
+		default:
+			break;
+		}
+		throw new IllegalArgumentException("Compiler bug Unexpected conversion: " + from + " to " + to);
+	}
+
+	/* code storing the value computed by code, of the given type, in the named variable */
+	private StmtCode store(String name, Type type, Object code) {
+		int slot = slot(name, type);
+		return switch (storage(type)) {
+		case INT -> {
+			IntCode c = (IntCode) code;
+			yield f -> f.ints[slot] = c.eval(f);
+		}
+		case FLOAT -> {
+			FloatCode c = (FloatCode) code;
+			yield f -> f.floats[slot] = c.eval(f);
+		}
+		case BOOLEAN -> {
+			BoolCode c = (BoolCode) code;
+			yield f -> f.bools[slot] = c.eval(f);
+		}
+		default -> {
+			ObjCode c = (ObjCode) code;
+			yield f -> f.objs[slot] = c.eval(f);
+		}
+		};
+	}
+
+	/* code that reads a value of the given type from the value file named by source */
+	private static Object readValue(ObjCode source, Type type) {
+		ObjCode read = f -> f.context.readValueFromFile((String) source.eval(f));
+		return unboxed(read, type);
+	}
+
+	private static Object unboxed(ObjCode code, Type type) {
+		return switch (storage(type)) {
+		case INT -> (IntCode) f -> (Integer) code.eval(f);
+		case FLOAT -> (FloatCode) f -> (Float) code.eval(f);
+		case BOOLEAN -> (BoolCode) f -> (Boolean) code.eval(f);
+		default -> code;
+		};
+	}
+
+	/* sets every pixel of the image to the color computed by code, evaluated once per pixel */
+	private static void fill(BufferedImage image, ObjCode color, Frame f) {
+		for (int x = 0; x < image.getWidth(); x++)
+			for (int y = 0; y < image.getHeight(); y++)
+				image.setRGB(x, y, ((ColorTuple) color.eval(f)).pack());
+		f.pixels += (long) image.getWidth() * image.getHeight();
+	}
+
+	/* the contents of the text block that CodeGenVisitor generates for a string literal */
+	private static String textBlock(String value) {
+		try {
+			return value.stripIndent().translateEscapes();
+		} catch (IllegalArgumentException e) {
+			return value;
+		}
+	}
+
+	@Override
+	public Object visitBooleanLitExpr(BooleanLitExpr booleanLitExpr, Object arg) throws Exception {
+		boolean value = booleanLitExpr.getValue();
+		return (BoolCode) f -> value;
+	}
+
+	@Override
+	public Object visitStringLitExpr(StringLitExpr stringLitExpr, Object arg) throws Exception {
+		String value = textBlock(stringLitExpr.getValue());
+		return (ObjCode) f -> value;
+	}
+
+	@Override
+	public Object visitIntLitExpr(IntLitExpr intLitExpr, Object arg) throws Exception {
+		int value = intLitExpr.getValue();
+		return (IntCode) f -> value;
+	}
+
+	@Override
+	public Object visitFloatLitExpr(FloatLitExpr floatLitExpr, Object arg) throws Exception {
+		float value = floatLitExpr.getValue();
+		return (FloatCode) f -> value;
+	}
+
+	@Override
+	public Object visitColorConstExpr(ColorConstExpr colorConstExpr, Object arg) throws Exception {
+		ColorTuple value = ColorTuple.toColorTuple((Color) Color.class.getField(colorConstExpr.getText()).get(null));
+		return (ObjCode) f -> value;
+	}
+
+	@Override
+	public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+		Type type = consoleExpr.getCoerceTo();
+		String name = switch (type) {
+		case INT -> "Integer";
+		case BOOLEAN -> "boolean";
+		case FLOAT -> "Float";
+		case STRING -> "String";
+		case COLOR -> "ColorTuple";
+		default -> throw new IllegalArgumentException("Compiler bug Unexpected value: " + type);
+		};
+		String typeName = type.toString();
+		String prompt = "Enter " + name + ":";
+		return unboxed(f -> f.context.readValueFromConsole(typeName, prompt), type);
+	}
+
+	@Override
+	public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+		if (colorExpr.getType() == COLORFLOAT) {
+			FloatCode red = floats(colorExpr.getRed());
+			FloatCode green = floats(colorExpr.getGreen());
+			FloatCode blue = floats(colorExpr.getBlue());
+			return (ObjCode) f -> new ColorTupleFloat(red.eval(f), green.eval(f), blue.eval(f));
+		}
+		IntCode red = ints(colorExpr.getRed());
+		IntCode green = ints(colorExpr.getGreen());
+		IntCode blue = ints(colorExpr.getBlue());
+		return (ObjCode) f -> new ColorTuple(red.eval(f), green.eval(f), blue.eval(f));
+	}
+
+	@Override
+	public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+		Expr expr = unaryExpression.getExpr();
+		String op = unaryExpression.getOp().getText();
+		Type type = typeOf(expr);
+		switch (unaryExpression.getOp().getKind()) {
+		case BANG: {
+			BoolCode e = bools(expr);
+			return (BoolCode) f -> !e.eval(f);
+		}
+		case MINUS: {
+			if (type == FLOAT) {
+				FloatCode e = floats(expr);
+				return (FloatCode) f -> -e.eval(f);
+			}
+			IntCode e = ints(expr);
+			return (IntCode) f -> -e.eval(f);
+		}
+		case COLOR_OP: {
+			if (type == INT) {
+				IntCode e = ints(expr);
+				return switch (op) {
+				case "getRed" -> (IntCode) f -> ColorTuple.getRed(e.eval(f));
+				case "getGreen" -> (IntCode) f -> ColorTuple.getGreen(e.eval(f));
+				default -> (IntCode) f -> ColorTuple.getBlue(e.eval(f));
+				};
+			}
+			if (type == COLOR) {
+				ObjCode e = objs(expr, COLOR);
+				return switch (op) {
+				case "getRed" -> (IntCode) f -> ColorTuple.getRed((ColorTuple) e.eval(f));
+				case "getGreen" -> (IntCode) f -> ColorTuple.getGreen((ColorTuple) e.eval(f));
+				default -> (IntCode) f -> ColorTuple.getBlue((ColorTuple) e.eval(f));
+				};
+			}
+			ObjCode e = objs(expr, IMAGE);
+			return switch (op) {
+			case "getRed" -> (ObjCode) f -> ImageOps.extractRed((BufferedImage) e.eval(f));
+			case "getGreen" -> (ObjCode) f -> ImageOps.extractGreen((BufferedImage) e.eval(f));
+			default -> (ObjCode) f -> ImageOps.extractBlue((BufferedImage) e.eval(f));
+			};
+		}
+		case IMAGE_OP: {
+			ObjCode e = objs(expr, IMAGE);
+			if (op.equals("getWidth")) {
+				return (IntCode) f -> ((BufferedImage) e.eval(f)).getWidth();
+			}
+			return (IntCode) f -> ((BufferedImage) e.eval(f)).getHeight();
+		}
+		default:
+			throw new IllegalArgumentException("Compiler bug Unexpected value: " + op);
+		}
+	}
+
+	@Override
+	public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+		Kind op = binaryExpr.getOp().getKind();
+		Expr left = binaryExpr.getLeft();
+		Expr right = binaryExpr.getRight();
+		Type leftType = coercedType(left);
+		Type rightType = coercedType(right);
+
+		switch (op) {
+		case AND, OR: {
+			BoolCode l = bools(left);
+			BoolCode r = bools(right);
+			// the generated code uses & and |, which evaluate both operands
+			if (op == Kind.AND) {
+				return (BoolCode) f -> l.eval(f) & r.eval(f);
+			}
+			return (BoolCode) f -> l.eval(f) | r.eval(f);
+		}
+		case EQUALS, NOT_EQUALS: {
+			BoolCode equals = equality(left, right);
+			if (op == Kind.EQUALS) {
+				return equals;
+			}
+			return (BoolCode) f -> !equals.eval(f);
+		}
+		case LT, LE, GT, GE: {
+			if (leftType == INT && rightType == INT) {
+				IntCode l = ints(left);
+				IntCode r = ints(right);
+				return switch (op) {
+				case LT -> (BoolCode) f -> l.eval(f) < r.eval(f);
+				case LE -> (BoolCode) f -> l.eval(f) <= r.eval(f);
+				case GT -> (BoolCode) f -> l.eval(f) > r.eval(f);
+				default -> (BoolCode) f -> l.eval(f) >= r.eval(f);
+				};
+			}
+			FloatCode l = floats(left);
+			FloatCode r = floats(right);
+			return switch (op) {
+			case LT -> (BoolCode) f -> l.eval(f) < r.eval(f);
+			case LE -> (BoolCode) f -> l.eval(f) <= r.eval(f);
+			case GT -> (BoolCode) f -> l.eval(f) > r.eval(f);
+			default -> (BoolCode) f -> l.eval(f) >= r.eval(f);
+			};
+		}
+		case PLUS, MINUS, TIMES, DIV, MOD:
+			return arithmetic(binaryExpr, ImageOps.OP.valueOf(op.toString()), left, right, leftType, rightType);
+		default:
+			throw new IllegalArgumentException("Compiler bug Unexpected value: " + op);
+		}
+	}
+
+	private BoolCode equality(Expr left, Expr right) throws Exception {
+		Type type = typeOf(left);
+		switch (storage(type)) {
+		case INT: {
+			IntCode l = ints(left);
+			IntCode r = ints(right);
+			return f -> l.eval(f) == r.eval(f);
+		}
+		case FLOAT: {
+			FloatCode l = floats(left);
+			FloatCode r = floats(right);
+			return f -> l.eval(f) == r.eval(f);
+		}
+		case BOOLEAN: {
+			BoolCode l = bools(left);
+			BoolCode r = bools(right);
+			return f -> l.eval(f) == r.eval(f);
+		}
+		default: {
+			ObjCode l = objs(left, type);
+			ObjCode r = objs(right, type);
+			return f -> Objects.equals(l.eval(f), r.eval(f));
+		}
+		}
+	}
+
+	private Object arithmetic(BinaryExpr binaryExpr, ImageOps.OP op, Expr left, Expr right, Type leftType,
+			Type rightType) throws Exception {
+		switch (binaryExpr.getType()) {
+		case INT: {
+			IntCode l = ints(left);
+			IntCode r = ints(right);
+			return switch (op) {
+			case PLUS -> (IntCode) f -> l.eval(f) + r.eval(f);
+			case MINUS -> (IntCode) f -> l.eval(f) - r.eval(f);
+			case TIMES -> (IntCode) f -> l.eval(f) * r.eval(f);
+			case DIV -> (IntCode) f -> l.eval(f) / r.eval(f);
+			case MOD -> (IntCode) f -> l.eval(f) % r.eval(f);
+			};
+		}
+		case FLOAT: {
+			FloatCode l = floats(left);
+			FloatCode r = floats(right);
+			return switch (op) {
+			case PLUS -> (FloatCode) f -> l.eval(f) + r.eval(f);
+			case MINUS -> (FloatCode) f -> l.eval(f) - r.eval(f);
+			case TIMES -> (FloatCode) f -> l.eval(f) * r.eval(f);
+			case DIV -> (FloatCode) f -> l.eval(f) / r.eval(f);
+			case MOD -> (FloatCode) f -> l.eval(f) % r.eval(f);
+			};
+		}
+		case COLOR: {
+			ObjCode l = objs(left, COLOR);
+			ObjCode r = objs(right, COLOR);
+			return (ObjCode) f -> ImageOps.binaryTupleOp(op, (ColorTuple) l.eval(f), (ColorTuple) r.eval(f));
+		}
+		case COLORFLOAT: {
+			ObjCode l = objs(left, COLORFLOAT);
+			ObjCode r = objs(right, COLORFLOAT);
+			return (ObjCode) f -> ImageOps.binaryTupleOp(op, (ColorTupleFloat) l.eval(f), (ColorTupleFloat) r.eval(f));
+		}
+		case IMAGE: {
+			ObjCode l = objs(left, IMAGE);
+			if (rightType == IMAGE) {
+				ObjCode r = objs(right, IMAGE);
+				return (ObjCode) f -> ImageOps.binaryImageImageOp(op, (BufferedImage) l.eval(f), (BufferedImage) r.eval(f));
+			}
+			if (rightType == INT) {
+				IntCode r = ints(right);
+				return (ObjCode) f -> ImageOps.binaryImageScalarOp(op, (BufferedImage) l.eval(f), r.eval(f));
+			}
+			FloatCode r = floats(right);
+			return (ObjCode) f -> ImageOps.binaryImageScalarOp(op, (BufferedImage) l.eval(f), r.eval(f));
+		}
+		default:
+			throw new IllegalArgumentException("Compiler bug Unexpected value: " + leftType + " " + op + " " + rightType);
+		}
+	}
+
+	@Override
+	public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+		Type type = identExpr.getType();
+		int slot = slot(identExpr.getText(), type);
+		return switch (storage(type)) {
+		case INT -> (IntCode) f -> f.ints[slot];
+		case FLOAT -> (FloatCode) f -> f.floats[slot];
+		case BOOLEAN -> (BoolCode) f -> f.bools[slot];
+		default -> (ObjCode) f -> f.objs[slot];
+		};
+	}
+
+	@Override
+	public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+		BoolCode condition = bools(conditionalExpr.getCondition());
+		Type type = typeOf(conditionalExpr);
+		Object trueCase = code(conditionalExpr.getTrueCase(), type);
+		Object falseCase = code(conditionalExpr.getFalseCase(), type);
+		return switch (storage(type)) {
+		case INT -> {
+			IntCode t = (IntCode) trueCase;
+			IntCode e = (IntCode) falseCase;
+			yield (IntCode) f -> condition.eval(f) ? t.eval(f) : e.eval(f);
+		}
+		case FLOAT -> {
+			FloatCode t = (FloatCode) trueCase;
+			FloatCode e = (FloatCode) falseCase;
+			yield (FloatCode) f -> condition.eval(f) ? t.eval(f) : e.eval(f);
+		}
+		case BOOLEAN -> {
+			BoolCode t = (BoolCode) trueCase;
+			BoolCode e = (BoolCode) falseCase;
+			yield (BoolCode) f -> condition.eval(f) ? t.eval(f) : e.eval(f);
+		}
+		default -> {
+			ObjCode t = (ObjCode) trueCase;
+			ObjCode e = (ObjCode) falseCase;
+			yield (ObjCode) f -> condition.eval(f) ? t.eval(f) : e.eval(f);
+		}
+		};
+	}
+
+	@Override
+	public Object visitDimension(Dimension dimension, Object arg) throws Exception {
+		throw new UnsupportedOperationException("dimensions are compiled by their declaration");
+	}
+
+	@Override
+	public Object visitPixelSelector(PixelSelector pixelSelector, Object arg) throws Exception {
+		throw new UnsupportedOperationException("pixel selectors are compiled by their statement or expression");
+	}
+
+	@Override
+	public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+		ObjCode image = objs(unaryExprPostfix.getExpr(), IMAGE);
+		IntCode x = ints(unaryExprPostfix.getSelector().getX());
+		IntCode y = ints(unaryExprPostfix.getSelector().getY());
+		return (ObjCode) f -> ColorTuple.unpack(((BufferedImage) image.eval(f)).getRGB(x.eval(f), y.eval(f)));
+	}
+
+	/* code creating a new image with the given dimension */
+	private ObjCode newImage(Dimension dim) throws Exception {
+		IntCode width = ints(dim.getWidth());
+		IntCode height = ints(dim.getHeight());
+		return f -> new BufferedImage(width.eval(f), height.eval(f), BufferedImage.TYPE_INT_RGB);
+	}
+
+	/* code resizing the image computed by image to the given dimension */
+	private ObjCode resize(ObjCode image, Dimension dim) throws Exception {
+		IntCode width = ints(dim.getWidth());
+		IntCode height = ints(dim.getHeight());
+		return f -> ImageOps.resize((BufferedImage) image.eval(f), width.eval(f), height.eval(f));
+	}
+
+	@Override
+	public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+		String name = declaration.getName();
+		Type type = declaration.getType();
+		Dimension dim = declaration.getDim();
+		Expr expr = declaration.getExpr();
+
+		if (expr == null) {
+			if (type == IMAGE && dim != null) {
+				return store(name, type, newImage(dim));
+			}
+			slot(name, type);
+			return (StmtCode) f -> {
+			};
+		}
+
+		if (declaration.getOp().getKind() == Kind.LARROW) {
+			if (!(expr instanceof ConsoleExpr)) {
+				ObjCode source = objs(expr, STRING);
+				if (type == IMAGE) {
+					if (dim != null) {
+						IntCode width = ints(dim.getWidth());
+						IntCode height = ints(dim.getHeight());
+						return store(name, type, (ObjCode) f -> FileURLIO.readImage((String) source.eval(f),
+								width.eval(f), height.eval(f)));
+					}
+					return store(name, type, (ObjCode) f -> FileURLIO.readImage((String) source.eval(f)));
+				}
+				return store(name, type, readValue(source, type));
+			}
+			return store(name, type, code(expr, type));
+		}
+
+		if (type == IMAGE) {
+			Type exprType = typeOf(expr);
+			if (exprType == IMAGE) {
+				ObjCode image = objs(expr, IMAGE);
+				return store(name, type, dim != null ? resize(image, dim) : image);
+			}
+			// an image of the given size with every pixel set to the value of expr
+			ObjCode image = newImage(dim);
+			ObjCode color = objs(expr, COLOR);
+			int slot = slot(name, type);
+			return (StmtCode) f -> {
+				BufferedImage result = (BufferedImage) image.eval(f);
+				fill(result, color, f);
+				f.objs[slot] = result;
+			};
+		}
+		return store(name, type, code(expr, type));
+	}
+
+	@Override
+	public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+		String name = assignmentStatement.getName();
+		Type type = assignmentStatement.getTargetDec().getType();
+		Expr expr = assignmentStatement.getExpr();
+
+		if (type != IMAGE) {
+			return store(name, type, code(expr, type));
+		}
+		Type exprType = typeOf(expr);
+		if (exprType == IMAGE) {
+			ObjCode image = objs(expr, IMAGE);
+			Dimension dim = assignmentStatement.getTargetDec().getDim();
+			return store(name, type, dim != null ? resize(image, dim) : image);
+		}
+
+		int target = slot(name, IMAGE);
+		ObjCode color = objs(expr, COLOR);
+		PixelSelector selector = assignmentStatement.getSelector();
+		if (selector == null) {
+			return (StmtCode) f -> fill((BufferedImage) f.objs[target], color, f);
+		}
+		int xSlot = slot(selector.getX().getText(), INT);
+		int ySlot = slot(selector.getY().getText(), INT);
+		return (StmtCode) f -> {
+			BufferedImage image = (BufferedImage) f.objs[target];
+			for (int x = 0; x < image.getWidth(); x++) {
+				f.ints[xSlot] = x;
+				for (int y = 0; y < image.getHeight(); y++) {
+					f.ints[ySlot] = y;
+					image.setRGB(x, y, ((ColorTuple) color.eval(f)).pack());
+				}
+			}
+			f.pixels += (long) image.getWidth() * image.getHeight();
+		};
+	}
+
+	@Override
+	public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+		String name = readStatement.getName();
+		Type type = readStatement.getTargetDec().getType();
+		Expr source = readStatement.getSource();
+
+		if (source instanceof ConsoleExpr) {
+			return store(name, type, code(source, type));
+		}
+		ObjCode file = objs(source, STRING);
+		if (type == IMAGE) {
+			ObjCode image = f -> FileURLIO.readImage((String) file.eval(f));
+			Dimension dim = readStatement.getTargetDec().getDim();
+			return store(name, type, dim != null ? resize(image, dim) : image);
+		}
+		return store(name, type, readValue(file, type));
+	}
+
+	@Override
+	public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+		Expr source = writeStatement.getSource();
+		Type sourceType = typeOf(source);
+		ObjCode value = boxed(source);
+		if (writeStatement.getDest().getType() == STRING) {
+			ObjCode dest = objs(writeStatement.getDest(), STRING);
+			if (sourceType == IMAGE) {
+				return (StmtCode) f -> FileURLIO.writeImage((BufferedImage) value.eval(f), (String) dest.eval(f));
+			}
+			return (StmtCode) f -> f.context.writeValue(value.eval(f), (String) dest.eval(f));
+		}
+		if (sourceType == IMAGE) {
+			return (StmtCode) f -> f.context.displayImageOnScreen((BufferedImage) value.eval(f));
+		}
+		return (StmtCode) f -> f.context.getConsole().println(value.eval(f));
+	}
+
+	@Override
+	public Object visitReturnStatement(ReturnStatement returnStatement, Object arg) throws Exception {
+		ObjCode value = objs(returnStatement.getExpr(), returnType);
+		return (StmtCode) f -> {
+			f.result = value.eval(f);
+			f.returned = true;
+		};
+	}
+
+	@Override
+	public Object visitNameDef(NameDef nameDef, Object arg) throws Exception {
+		return slot(nameDef.getName(), nameDef.getType());
+	}
+
+	@Override
+	public Object visitNameDefWithDim(NameDefWithDim nameDefWithDim, Object arg) throws Exception {
+		return slot(nameDefWithDim.getName(), nameDefWithDim.getType());
+	}
+
+	@Override
+	public Object visitProgram(Program program, Object arg) throws Exception {
+		returnType = program.getReturnType();
+		folded = ConstantFolder.fold(program);
+
+		List<NameDef> params = program.getParams();
+		Type[] paramTypes = new Type[params.size()];
+		int[] paramSlots = new int[params.size()];
+		for (int i = 0; i < params.size(); i++) {
+			paramTypes[i] = params.get(i).getType();
+			paramSlots[i] = (Integer) params.get(i).visit(this, arg);
+		}
+
+		List<ASTNode> decsAndStatements = program.getDecsAndStatements();
+		StmtCode[] body = new StmtCode[decsAndStatements.size()];
+		for (int i = 0; i < body.length; i++) {
+			body[i] = (StmtCode) decsAndStatements.get(i).visit(this, arg);
+		}
+
+		int ints = numInts;
+		int floats = numFloats;
+		int bools = numBools;
+		int objs = numObjs;
+		LongAdder pixelCount = this.pixelCount;
+		return (ExecutableProgram) (context, values) -> {
+			int numValues = values == null ? 0 : values.length;
+			if (numValues != paramSlots.length) {
+				throw new IllegalArgumentException("wrong number of arguments: " + numValues + " expected: " + paramSlots.length);
+			}
+			Frame f = new Frame(context, ints, floats, bools, objs);
+			for (int i = 0; i < numValues; i++) {
+				switch (storage(paramTypes[i])) {
+				case INT -> f.ints[paramSlots[i]] = (Integer) values[i];
+				case FLOAT -> f.floats[paramSlots[i]] = (Float) values[i];
+				case BOOLEAN -> f.bools[paramSlots[i]] = (Boolean) values[i];
+				default -> f.objs[paramSlots[i]] = values[i];
+				}
+			}
+			try {
+				for (StmtCode statement : body) {
+					statement.run(f);
+					if (f.returned) {
+						break;
+					}
+				}
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			} finally {
+				if (pixelCount != null) {
+					pixelCount.add(f.pixels);
+				}
+			}
+			return f.result;
+		};
+	}
+}
@@ -30,6 +30,7 @@ import edu.ufl.cise.plc.ast.UnaryExpr;
 import edu.ufl.cise.plc.ast.UnaryExprPostfix;
 import edu.ufl.cise.plc.ast.VarDeclaration;
 import edu.ufl.cise.plc.ast.WriteStatement;
+import edu.ufl.cise.plc.runtime.ColorTuple;
 import edu.ufl.cise.plc.runtime.ConsoleIO;
 
 import static edu.ufl.cise.plc.ast.Types.Type.*;
@@ -39,11 +40,106 @@ public class CodeGenVisitor implements ASTVisitor {
     Set<String> impts = new HashSet<String>();
     String file = "";
 
+    /*
+     * Name of the ExecutionContext parameter of the generated apply method. All console and
+     * value file IO in the generated code goes through it.
+     */
+    static final String CONTEXT = "$ctx";
+
+    /*
+     * Point-wise image pipelines in the program being generated. They are run by
+     * ScanlineStream at their write statement instead of being computed in BufferedImages.
+     */
+    PointwisePipelines pipelines = new PointwisePipelines();
+
+    /*
+     * Names of the image variables that are represented by a TiledImage, whose pixels are not on
+     * the Java heap. Each is declared in a try-with-resources statement that closes it, and
+     * tiledBlocks is the number of those statements that are still open.
+     */
+    Set<String> tiledImages = new HashSet<String>();
+    int tiledBlocks = 0;
+
+    /*
+     * Values of the constant expressions in the program being generated, and the operands that
+     * replace simplified expressions such as x*1.
+     */
+    ConstantFolder folded = new ConstantFolder();
+
+    /*
+     * Declarations and statements of the program being generated whose values are never used,
+     * and initializers of declarations that are assigned before they are used. They are left
+     * out.
+     */
+    DeadStores dead = new DeadStores();
+
+    /*
+     * Names of the locals holding the loop invariant expressions of the pixel loop being
+     * generated. Each is computed once before the loop.
+     */
+    Map<Expr, String> hoisted = new IdentityHashMap<Expr, String>();
+    int invariantCount = 0;
+
+    /*
+     * Number of locals generated for common sub-expressions of pixel expressions. Like loop
+     * invariants, they are recorded in hoisted while the expression is generated.
+     */
+    int sharedCount = 0;
+
+    /*
+     * Names of the colors used by COLOR_CONST expressions. Each is a static final ColorTuple of
+     * the generated class, named by the color preceded by a $.
+     */
+    Set<String> colorConstants = new TreeSet<String>();
+
+    /*
+     * Runs of pixel assignments in the program being generated that share one loop nest. Each
+     * run is generated at its first pixel assignment.
+     */
+    LoopFusion fusion = new LoopFusion();
+
+    /*
+     * Pixel assignments in the program being generated that read neighboring pixels or several
+     * images. Their loops compute the target in blocks of ImageOps.tileSize pixels.
+     */
+    BlockedLoops blocked = new BlockedLoops();
+
+    /*
+     * The tasks of the program being generated if its statements are run by a
+     * StatementScheduler, or null. The static method of each task is added to taskMethods.
+     */
+    StatementGraph schedule = null;
+    String taskMethods = "";
+
+    /*
+     * While the loops of a pixel assignment that use pixel arrays are generated: the reads
+     * through a pixel array, the names of the pixel array and row length of each image, and
+     * the pixel array of the target.
+     */
+    Map<UnaryExprPostfix, int[]> rasterReads = new IdentityHashMap<UnaryExprPostfix, int[]>();
+    Map<String, String[]> rasters = new HashMap<String, String[]>();
+    String rasterTarget = null;
+    int rasterCount = 0;
+
+    /*
+     * Whether the generated apply records the time of each declaration and statement in the
+     * StatementProfile of its context. The source locations of those generated so far are added
+     * to profiled, as a line and a column each, and returnType is the Java type of apply.
+     */
+    boolean profile = false;
+    List<Integer> profiled = new ArrayList<Integer>();
+    String returnType = "";
+
     public CodeGenVisitor(String packageName) {
         this.packageName = packageName;
 
     }
 
+    public CodeGenVisitor(String packageName, boolean profile) {
+        this.packageName = packageName;
+        this.profile = profile;
+    }
+
     public Object genTypeConversion(Type coerce, Object arg) {
         String type = "";
         if (coerce == INT) {
@@ -143,6 +239,9 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+        if (isFolded(conditionalExpr)) {
+            return genFolded(conditionalExpr, arg);
+        }
         Expr condition = conditionalExpr.getCondition();
         Expr trueCase = conditionalExpr.getTrueCase();
         Expr falseCase = conditionalExpr.getFalseCase();
@@ -163,6 +262,15 @@ public class CodeGenVisitor implements ASTVisitor {
     @Override
     public Object visitProgram(Program program, Object arg) throws Exception {
         arg = "";
+        folded = ConstantFolder.fold(program);
+        dead = DeadStores.find(program, folded);
+        // a profiled program runs its statements one after another, each in loops of its own
+        pipelines = profile ? new PointwisePipelines() : PointwisePipelines.find(program);
+        tiledImages = TiledImages.find(program, folded);
+        schedule = profile ? null : StatementGraph.find(program, dead, pipelines);
+        // scheduled pixel assignments run at the same time instead
+        fusion = schedule == null && !profile ? LoopFusion.find(program, pipelines, folded, dead) : new LoopFusion();
+        blocked = BlockedLoops.find(program, pipelines, fusion);
         arg = arg + "public class " + program.getName() + "{" + "\n";
         arg = arg + "    " + "public static ";
 
@@ -186,7 +294,11 @@ public class CodeGenVisitor implements ASTVisitor {
             throw new IllegalArgumentException("Compiler bug Unexpected value: " + program.getReturnType());
         }
 
-        arg = arg + Type + " apply (";
+        impts.add("import edu.ufl.cise.plc.runtime.ExecutionContext;\n");
+        arg = arg + Type + " apply (ExecutionContext " + CONTEXT;
+        if (program.getParams().size() > 0) {
+            arg = arg + ", ";
+        }
         for (int i = 0; i < program.getParams().size(); i++) {
             NameDef nameDef = program.getParams().get(i);
             arg = nameDef.visit(this, arg);
@@ -198,10 +310,26 @@ public class CodeGenVisitor implements ASTVisitor {
         }
 
         arg = arg + ")" + "{" + "\n" + "        ";
+        int bodyStart = ((String) arg).length();
+        returnType = Type;
 
-        for (int i = 0; i < program.getDecsAndStatements().size(); i++) {
+        for (int i = 0; schedule == null && i < program.getDecsAndStatements().size(); i++) {
             ASTNode stat = program.getDecsAndStatements().get(i);
-            arg = (String) stat.visit(this, arg);
+            if (dead.contains(stat)) {
+                continue;
+            }
+            LoopFusion.Group group = fusion.get(stat);
+            if (group == null) {
+                arg = (String) stat.visit(this, arg);
+            } else if (group.loops.get(0) == stat) {
+                arg = (String) genFusedLoops(group, arg);
+            } else {
+                // generated with the first pixel assignment of its group
+                continue;
+            }
+            if (profile && !(stat instanceof ReturnStatement)) {
+                arg += "        " + genProfileRecord(stat);
+            }
 
             arg += "\n";
 
@@ -211,7 +339,21 @@ public class CodeGenVisitor implements ASTVisitor {
 
         }
 
-        arg = arg + "    " + "}" + "\n" + "}";
+        if (schedule != null) {
+            arg = genScheduled(program, Type, arg);
+        }
+        for (; tiledBlocks > 0; tiledBlocks--) {
+            arg += "        }\n";
+        }
+        if (profile) {
+            arg = ((String) arg).substring(0, bodyStart) + genProfileStart() + "        "
+                    + ((String) arg).substring(bodyStart);
+        }
+
+        arg = arg + "    " + "}" + "\n" + taskMethods + "}";
+
+        String header = "public class " + program.getName() + "{" + "\n";
+        arg = header + genColorConstants() + ((String) arg).substring(header.length());
 
         Object arg3 = "package " + packageName + ";" + "\n";
 
@@ -256,6 +398,14 @@ public class CodeGenVisitor implements ASTVisitor {
     public Object visitReturnStatement(ReturnStatement returnStatement, Object arg) throws Exception {
         Expr expr = returnStatement.getExpr();
 
+        if (profile) {
+            arg += returnType + " $result = ";
+            arg = expr.visit(this, arg);
+            arg = arg + ";\n";
+            arg += "        " + genProfileRecord(returnStatement);
+            arg += "        return $result;\n";
+            return arg;
+        }
         arg += ("return ");
         arg = expr.visit(this, arg);
         arg = arg + ";\n";
@@ -264,6 +414,9 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+        if (pipelines.get(declaration) != null) {
+            return genStreamedDeclaration(declaration, arg);
+        }
         Object argTemp = "";
         NameDef nameDef = declaration.getNameDef();
 
@@ -286,6 +439,11 @@ public class CodeGenVisitor implements ASTVisitor {
 
                     }
                 }
+                if (dead.contains(declaration.getExpr())) {
+                    arg += (String) argTemp;
+                    arg += ";\n";
+                    return arg;
+                }
                 argTemp += " = ";
                 argTemp = declaration.getExpr().visit(this, argTemp);
                 arg += (String) argTemp;
@@ -321,7 +479,7 @@ public class CodeGenVisitor implements ASTVisitor {
                     argTemp += "(boolean)";
                 }
 
-                argTemp += "FileURLIO.readValueFromFile(";
+                argTemp += CONTEXT + ".readValueFromFile(";
 
                 argTemp += declaration.getExpr().getText();
                 arg += (String) argTemp;
@@ -359,7 +517,21 @@ public class CodeGenVisitor implements ASTVisitor {
 
             else {
 
-                if (nameDef.getDim() != null) {
+                if (nameDef.getDim() != null && tiledImages.contains(nameDef.getName())) {
+                    impts.add("import edu.ufl.cise.plc.runtime.TiledImage;\n");
+                    argTemp = "TiledImage " + nameDef.getName() + " = new TiledImage(";
+                    argTemp = declaration.getDim().visit(this, argTemp);
+                    argTemp += ")";
+                    if (schedule != null) {
+                        // closed by genScheduled once every statement has finished
+                        arg += (String) argTemp + ";\n";
+                        return arg;
+                    }
+                    // the rest of apply is in the block, and the image is closed when it ends
+                    tiledBlocks++;
+                    arg += "try (" + (String) argTemp + ") {\n";
+                    return arg;
+                } else if (nameDef.getDim() != null) {
                     argTemp += " = new BufferedImage(";
                     argTemp = declaration.getDim().visit(this, argTemp);
                     argTemp += ", BufferedImage.TYPE_INT_RGB);\n";
@@ -382,7 +554,7 @@ public class CodeGenVisitor implements ASTVisitor {
                 if (coerce == INT) {
                     Type = "int";
                     if (declaration.getExpr().getType() == STRING) {
-                        argTemp += "(" + Type + ") " + "FileURLIO.readValueFromFile(";
+                        argTemp += "(" + Type + ") " + CONTEXT + ".readValueFromFile(";
                         argTemp = declaration.getExpr().visit(this, argTemp);
                         argTemp += ");";
                         arg += (String) argTemp;
@@ -392,7 +564,7 @@ public class CodeGenVisitor implements ASTVisitor {
                     Type = "float";
                     if (declaration.getExpr().getType() == STRING) {
 
-                        argTemp += "(" + Type + ") " + "FileURLIO.readValueFromFile(";
+                        argTemp += "(" + Type + ") " + CONTEXT + ".readValueFromFile(";
                         argTemp = declaration.getExpr().visit(this, argTemp);
                         argTemp += ");";
                         arg += (String) argTemp;
@@ -403,7 +575,7 @@ public class CodeGenVisitor implements ASTVisitor {
                 } else if (coerce == BOOLEAN) {
                     Type = "boolean";
                     if (declaration.getExpr().getType() == STRING) {
-                        argTemp += "(" + Type + ") " + "FileURLIO.readValueFromFile(";
+                        argTemp += "(" + Type + ") " + CONTEXT + ".readValueFromFile(";
                         argTemp = declaration.getExpr().visit(this, argTemp);
                         argTemp += ");";
                         arg += (String) argTemp;
@@ -418,7 +590,7 @@ public class CodeGenVisitor implements ASTVisitor {
 
                 else if (coerce == COLOR) {
                     Type = "ColorTuple";
-                    argTemp += "(" + Type + ") " + "FileURLIO.readValueFromFile(";
+                    argTemp += "(" + Type + ") " + CONTEXT + ".readValueFromFile(";
                     argTemp = declaration.getExpr().visit(this, argTemp);
                     argTemp += ");";
                     arg += (String) argTemp;
@@ -447,6 +619,9 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+        if (isFolded(binaryExpr)) {
+            return genFolded(binaryExpr, arg);
+        }
 
         Object argTemp = "";
         Expr LeftE = binaryExpr.getLeft();
@@ -467,99 +642,44 @@ public class CodeGenVisitor implements ASTVisitor {
                 arg += (String) argTemp;
                 return arg;
 
-            } else if (LeftE.getType() == COLOR) {
-                Object arg3 = "";
-                arg3 = LeftE.visit(this, arg3);
-                Object arg4 = "";
-                arg4 = rightE.visit(this, arg4);
-
+            } else if (leftT == IMAGE || leftT == COLOR || leftT == COLORFLOAT) {
+                // by value, as the interpreter compares them
                 if (op == Kind.NOT_EQUALS) {
-                    if (!arg3.equals(arg4)) {
-
-                        arg += "true";
-
-                    } else {
-                        arg += "false";
-                    }
-                } else {
-                    if (arg3.equals(arg4)) {
-                        arg += "true";
-                    } else {
-                        arg += "false";
-                    }
+                    argTemp += "!";
                 }
+                argTemp += "(";
+                argTemp = genOperand(LeftE, leftT, argTemp);
+                argTemp += ").equals(";
+                argTemp = genOperand(rightE, leftT, argTemp);
+                argTemp += ")";
+                arg += (String) argTemp;
                 return arg;
             }
 
         }
 
-        if (leftT == IMAGE || leftT == COLOR || leftT == COLORFLOAT
-                || rightT == IMAGE || rightT == COLOR || rightT == COLORFLOAT) {
+        Type type = binaryExpr.getType();
+        if (type == IMAGE || type == COLOR || type == COLORFLOAT) {
 
             impts.add("import edu.ufl.cise.plc.runtime.ImageOps;\n");
 
-            if (leftT == IMAGE && rightT == COLOR || leftT == COLOR && rightT == IMAGE) {
-
+            if (type == IMAGE && rightT == IMAGE) {
+                argTemp += "(ImageOps.binaryImageImageOp(";
+            } else if (type == IMAGE) {
+                argTemp += "(ImageOps.binaryImageScalarOp(";
+            } else {
+                argTemp += "(ImageOps.binaryTupleOp(";
             }
+            argTemp += "ImageOps.OP.valueOf(\"" + op + "\"), ";
 
-            else if (leftT == COLOR && rightT == COLOR) {
-
-                argTemp += "(ImageOps.binaryTupleOp(ImageOps.OP.valueOf(";
-                if (op == Kind.DIV) {
-                    argTemp += "\"DIV\"),";
-                } else if (op == Kind.MINUS) {
-                    argTemp += "\"MINUS\"), ";
-                } else if (op == Kind.PLUS) {
-                    argTemp += "\"PLUS\"), ";
-                } else if (op == Kind.TIMES) {
-                    argTemp += "\"TIMES\"), ";
-                } else if (op == Kind.MOD) {
-                    argTemp += "\"MOD\"), ";
-                }
-
-                argTemp = LeftE.visit(this, argTemp);
-                argTemp += ", ";
-
-                if (binaryExpr.getLeft().getType() == COLOR && binaryExpr.getRight().getType() == INT) {
-                    argTemp += "new ColorTuple(";
-                    argTemp = binaryExpr.getRight().visit(this, argTemp);
-                    argTemp += ")))";
-                    arg += (String) argTemp;
-                    return arg;
-                }
-                argTemp = rightE.visit(this, argTemp);
-                argTemp += "))";
-            }
-
-            else if (leftT == IMAGE && rightT == INT || leftT == INT && rightT == IMAGE) {
-
-                argTemp += "(ImageOps.binaryImageScalarOp(ImageOps.OP.valueOf(";
-                if (op == Kind.DIV) {
-                    argTemp += "\"DIV\"),";
-                } else if (op == Kind.MINUS) {
-                    argTemp += "\"MINUS\"), ";
-                } else if (op == Kind.PLUS) {
-                    argTemp += "\"PLUS\"), ";
-                } else if (op == Kind.TIMES) {
-                    argTemp += "\"TIMES\"), ";
-                } else if (op == Kind.MOD) {
-                    argTemp += "\"MOD\"), ";
-                }
-
-                argTemp = LeftE.visit(this, argTemp);
-                argTemp += ", ";
-
-                if (binaryExpr.getLeft().getType() == COLOR && binaryExpr.getRight().getType() == INT) {
-                    argTemp += "new ColorTuple(";
-                    argTemp = binaryExpr.getRight().visit(this, argTemp);
-                    argTemp += ")))";
-                    arg += (String) argTemp;
-                    return arg;
-                }
+            argTemp = genOperand(LeftE, type, argTemp);
+            argTemp += ", ";
+            if (type == IMAGE && rightT != IMAGE) {
                 argTemp = rightE.visit(this, argTemp);
-                argTemp += "))";
-
+            } else {
+                argTemp = genOperand(rightE, type, argTemp);
             }
+            argTemp += "))";
         } else {
 
             argTemp = "(";
@@ -614,11 +734,11 @@ public class CodeGenVisitor implements ASTVisitor {
         arg = arg + "(" + Type + ")";
         if (consoleExpr.getType() == STRING) {
 
-            arg += "FileURLIO.readValueFromFile(";
+            arg += CONTEXT + ".readValueFromFile(";
 
             arg = arg + consoleExpr.getText() + ")";
         } else {
-            arg += "ConsoleIO.readValueFromConsole(";
+            arg += CONTEXT + ".readValueFromConsole(";
             arg = arg + "\"" + Type2 + "\"" + ", " + "\"";
             arg = arg + "Enter " + Type + ":" + "\"";
             arg = arg + ")";
@@ -630,6 +750,9 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+        if (isFolded(unaryExpression)) {
+            return genFolded(unaryExpression, arg);
+        }
         IToken op = unaryExpression.getOp();
         Expr expr = unaryExpression.getExpr();
         Object argTemp = op.getText();
@@ -736,7 +859,7 @@ public class CodeGenVisitor implements ASTVisitor {
 
                     impts.add("import edu.ufl.cise.plc.runtime.ImageOps;\n");
                     arg += "ImageOps.resize(";
-                    arg += "FileURLIO.readValueFromFile(";
+                    arg += CONTEXT + ".readValueFromFile(";
                     arg = arg + file + ")";
                     arg += ", ";
                     arg = readStatement.getTargetDec().getDim().visit(this, arg);
@@ -747,7 +870,7 @@ public class CodeGenVisitor implements ASTVisitor {
             }
 
             else {
-                arg += "FileURLIO.readValueFromFile(";
+                arg += CONTEXT + ".readValueFromFile(";
             }
             arg = arg + file + ");";
 
@@ -769,11 +892,15 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+        PointwisePipelines.Pipeline pipeline = pipelines.get(writeStatement);
+        if (pipeline != null) {
+            return genStreamedWrite(pipeline, arg);
+        }
         file = writeStatement.getDest().getText();
 
         if (writeStatement.getDest().getType() == STRING && writeStatement.getSource().getType() != IMAGE) {
             impts.add("import edu.ufl.cise.plc.runtime.FileURLIO;\n");
-            arg += "FileURLIO.writeValue(";
+            arg += CONTEXT + ".writeValue(";
             Expr source = writeStatement.getSource();
             arg = source.visit(this, arg);
             arg = arg + ", " + "" + writeStatement.getDest().getText() + "" + ");" + "\n";
@@ -781,8 +908,8 @@ public class CodeGenVisitor implements ASTVisitor {
         } else if (writeStatement.getSource().getType() == IMAGE && writeStatement.getDest().getType() == CONSOLE) {
 
             impts.add("import edu.ufl.cise.plc.runtime.ConsoleIO;\n");
-            arg += "ConsoleIO.displayImageOnScreen(";
-            arg += writeStatement.getSource().getText();
+            arg += CONTEXT + ".displayImageOnScreen(";
+            arg = writeStatement.getSource().visit(this, arg);
             arg = arg + ");" + "\n";
 
         }
@@ -790,7 +917,7 @@ public class CodeGenVisitor implements ASTVisitor {
         else if (writeStatement.getSource().getType() == IMAGE && writeStatement.getDest().getType() == STRING) {
             impts.add("import edu.ufl.cise.plc.runtime.FileURLIO;\n");
             arg += "FileURLIO.writeImage(";
-            arg += writeStatement.getSource().getText();
+            arg = writeStatement.getSource().visit(this, arg);
             arg += ", ";
             arg += file;
             arg += ");\n";
@@ -799,7 +926,7 @@ public class CodeGenVisitor implements ASTVisitor {
 
         else {
             impts.add("import edu.ufl.cise.plc.runtime.ConsoleIO;\n");
-            arg += ("ConsoleIO.console.println(");
+            arg += (CONTEXT + ".getConsole().println(");
             Expr source = writeStatement.getSource();
             arg = source.visit(this, arg);
             arg = arg + ");" + "\n";
@@ -811,6 +938,10 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+        if (pipelines.get(assignmentStatement) != null) {
+            // generated with the write statement of the pipeline
+            return arg;
+        }
         Object argTemp = "";
         Expr expr = assignmentStatement.getExpr();
         Type name = assignmentStatement.getTargetDec().getType();
@@ -840,13 +971,7 @@ public class CodeGenVisitor implements ASTVisitor {
         else if (name == IMAGE && expr.getType() == INT) {
             impts.add("import edu.ufl.cise.plc.runtime.ImageOps;\n");
             impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
-            String image = assignmentStatement.getName();
-            argTemp = argTemp + "for (int x = 0; x < " + image + ".getWidth(); x++)\n    ";
-            argTemp = argTemp + "for (int y = 0; y < " + image + ".getHeight(); y++)\n        ";
-            argTemp = argTemp + "ImageOps.setColor(" + image + ", x, y, ";
-            argTemp += "new ColorTuple(";
-            argTemp = expr.visit(this, argTemp);
-            argTemp += "));\n";
+            argTemp = genPixelLoop(assignmentStatement, argTemp);
             arg += (String) argTemp;
             return arg;
         }
@@ -854,12 +979,7 @@ public class CodeGenVisitor implements ASTVisitor {
         else if ((expr.getCoerceTo() == COLOR || (expr.getType() == COLOR && expr.getCoerceTo() == null))
                 && !(name == COLOR && expr.getType() == COLOR)) {
             impts.add("import edu.ufl.cise.plc.runtime.ImageOps;\n");
-            String image = assignmentStatement.getName();
-            argTemp = argTemp + "for (int x = 0; x < " + image + ".getWidth(); x++)\n    ";
-            argTemp = argTemp + "for (int y = 0; y < " + image + ".getHeight(); y++)\n        ";
-            argTemp = argTemp + "ImageOps.setColor(" + image + ", x, y, ";
-            argTemp = expr.visit(this, argTemp);
-            argTemp += ");\n";
+            argTemp = genPixelLoop(assignmentStatement, argTemp);
             arg += (String) argTemp;
             return arg;
         }
@@ -916,20 +1036,27 @@ public class CodeGenVisitor implements ASTVisitor {
     public Object visitColorConstExpr(ColorConstExpr colorConstExpr, Object arg) throws Exception {
         impts.add("import java.awt.Color;\n");
         impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
-        arg += "ColorTuple.toColorTuple(Color.";
-        arg += colorConstExpr.getText();
-        arg += ")";
+        colorConstants.add(colorConstExpr.getText());
+        arg += "$" + colorConstExpr.getText();
 
         return arg;
     }
 
     @Override
     public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+        if (isFolded(colorExpr)) {
+            return genFolded(colorExpr, arg);
+        }
         Expr red = colorExpr.getRed();
         Expr green = colorExpr.getGreen();
         Expr blue = colorExpr.getBlue();
 
-        arg += "new ColorTuple(";
+        if (colorExpr.getType() == COLORFLOAT) {
+            impts.add("import edu.ufl.cise.plc.runtime.ColorTupleFloat;\n");
+            arg += "new ColorTupleFloat(";
+        } else {
+            arg += "new ColorTuple(";
+        }
         arg = red.visit(this, arg);
         arg += ", ";
         arg = green.visit(this, arg);
@@ -963,14 +1090,33 @@ public class CodeGenVisitor implements ASTVisitor {
 
     @Override
     public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+        if (hoisted.containsKey(unaryExprPostfix)) {
+            return arg + hoisted.get(unaryExprPostfix);
+        }
+        Integer source = pipelines.sourceIndex(unaryExprPostfix.getExpr().getText());
+        if (source != null) {
+            impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+            arg += "ColorTuple.unpack(" + PointwisePipelines.PIXELS + "[" + source + "])";
+            return arg;
+        }
         impts.add("import java.awt.image.BufferedImage;\n");
+        impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+        if (rasterReads.containsKey(unaryExprPostfix)) {
+            String[] raster = rasters.get(unaryExprPostfix.getExpr().getText());
+            arg += "ColorTuple.unpack(" + raster[0] + "[";
+            arg = unaryExprPostfix.getSelector().getY().visit(this, arg);
+            arg += " * " + raster[1] + " + ";
+            arg = unaryExprPostfix.getSelector().getX().visit(this, arg);
+            arg += "])";
+            return arg;
+        }
         Object argTemp = "";
         argTemp += "ColorTuple.unpack(";
         argTemp += unaryExprPostfix.getExpr().getText();
         argTemp += ".getRGB(";
-        argTemp += unaryExprPostfix.getSelector().getX().getText();
+        argTemp = unaryExprPostfix.getSelector().getX().visit(this, argTemp);
         argTemp += ", ";
-        argTemp += unaryExprPostfix.getSelector().getY().getText();
+        argTemp = unaryExprPostfix.getSelector().getY().visit(this, argTemp);
         argTemp += "))";
         arg += (String) argTemp;
         return arg;
@@ -996,4 +1142,500 @@ public class CodeGenVisitor implements ASTVisitor {
         arg = Type + " " + (nameDefWithDim.getName()) + arg;
         return arg;
     }
+
+    boolean isFolded(Expr expr) {
+        return hoisted.containsKey(expr) || folded.constant(expr) != null || folded.replacement(expr) != null;
+    }
+
+    /*
+     * Generates the local holding a hoisted loop invariant, the value of a constant expression
+     * as a literal, or the operand that replaces a simplified expression. Like the expressions
+     * they replace, none of these applies the coerceTo of the expression.
+     */
+    Object genFolded(Expr expr, Object arg) throws Exception {
+        String local = hoisted.get(expr);
+        if (local != null) {
+            return arg + local;
+        }
+        Object value = folded.constant(expr);
+        if (value == null) {
+            return folded.replacement(expr).visit(this, arg);
+        }
+        if (value instanceof Integer i) {
+            arg += i < 0 ? "(" + i + ")" : i.toString();
+        } else if (value instanceof Float f) {
+            if (f.isNaN()) {
+                arg += "Float.NaN";
+            } else if (f.isInfinite()) {
+                arg += f > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+            } else {
+                String literal = f + "f";
+                arg += f < 0 || 1 / f < 0 ? "(" + literal + ")" : literal;
+            }
+        } else if (value instanceof Boolean b) {
+            arg += b.toString();
+        } else if (value instanceof ColorTuple c) {
+            impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+            arg += "new ColorTuple(" + c.red + ", " + c.green + ", " + c.blue + ")";
+        } else {
+            throw new IllegalArgumentException("Compiler bug Unexpected value: " + value);
+        }
+        return arg;
+    }
+
+    /*
+     * Generates expr converted to type, an object type, as the interpreter converts it: an int
+     * or float is made a color with that value in each component, and a color and a float color
+     * are converted to each other. The conversion replaces the coerceTo of expr.
+     */
+    Object genOperand(Expr expr, Type type, Object arg) throws Exception {
+        Type from = expr instanceof UnaryExprPostfix ? COLOR : expr.getType();
+        Type coerceTo = expr.getCoerceTo();
+        expr.setCoerceTo(null);
+        String code;
+        try {
+            code = (String) expr.visit(this, "");
+        } finally {
+            expr.setCoerceTo(coerceTo);
+        }
+        if (from == type) {
+            return arg + code;
+        }
+        impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+        impts.add("import edu.ufl.cise.plc.runtime.ColorTupleFloat;\n");
+        if (type == COLORFLOAT) {
+            return arg + "new ColorTupleFloat(" + code + ")";
+        }
+        if (type == COLOR && from == FLOAT) {
+            return arg + "new ColorTuple(new ColorTupleFloat(" + code + "))";
+        }
+        if (type == COLOR) {
+            return arg + "new ColorTuple(" + code + ")";
+        }
+        throw new IllegalArgumentException("Compiler bug Unexpected value: " + from + " to " + type);
+    }
+
+    /*
+     * The variables of the loops generated for a pixel assignment: x and y, and the names in
+     * its pixel selector.
+     */
+    Set<String> loopVariables(AssignmentStatement assignmentStatement) {
+        Set<String> names = new HashSet<String>(List.of("x", "y"));
+        PixelSelector selector = assignmentStatement.getSelector();
+        if (selector != null) {
+            names.add(selector.getX().getText());
+            names.add(selector.getY().getText());
+        }
+        return names;
+    }
+
+    /*
+     * Declares a local for each loop invariant of expr, a pixel expression evaluated in a loop
+     * over the given variables, and records it in hoisted. The caller clears hoisted after
+     * generating the loop.
+     */
+    Object genInvariants(Expr expr, Set<String> loopVariables, Object arg) throws Exception {
+        for (Expr invariant : LoopInvariants.find(expr, loopVariables, folded)) {
+            String local = "$inv" + invariantCount++;
+            arg += "final var " + local + " = ";
+            arg = invariant.visit(this, arg);
+            arg += ";\n        ";
+            hoisted.put(invariant, local);
+        }
+        return arg;
+    }
+
+    /* The loops over the pixels of image, with the size read once */
+    String genPixelLoops(String image) {
+        return genPixelLoops(image, false);
+    }
+
+    /*
+     * The loops over the pixels of image, column by column as the interpreter visits them, or
+     * row by row, the order of a pixel array, if rowMajor.
+     */
+    String genPixelLoops(String image, boolean rowMajor) {
+        String xLoop = "for (int x = 0, $width = " + image + ".getWidth(); x < $width; x++)";
+        String yLoop = "for (int y = 0, $height = " + image + ".getHeight(); y < $height; y++)";
+        return (rowMajor ? yLoop : xLoop) + "\n    " + (rowMajor ? xLoop : yLoop) + "\n        ";
+    }
+
+    /*
+     * The loops of a pixel assignment that is not fused with others, after its loop invariants.
+     * If RasterAccess finds that the target has a pixel array, the pixel arrays of the images
+     * are fetched and their sizes checked once. If that succeeds, the loops use the arrays,
+     * and otherwise the usual loops run. The loops that use the arrays go row by row, along
+     * the arrays, unless the target is read at other pixels than the one being set, or may be
+     * seen through another variable, since then the order of the pixels changes the result.
+     */
+    Object genPixelLoop(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+        String image = assignmentStatement.getName();
+        arg = genInvariants(assignmentStatement.getExpr(), loopVariables(assignmentStatement), arg);
+        boolean isBlocked = blocked.contains(assignmentStatement);
+        String loops = isBlocked ? genBlockedLoops(image, false) : genPixelLoops(image, false);
+        boolean rowMajor = blocked.isUnordered(assignmentStatement);
+        String rasterLoops = isBlocked ? genBlockedLoops(image, rowMajor) : genPixelLoops(image, rowMajor);
+        RasterAccess access = RasterAccess.find(assignmentStatement, tiledImages, pipelines, folded);
+        if (access != null) {
+            int n = rasterCount++;
+            int k = 0;
+            String condition = "";
+            String strides = "";
+            for (Map.Entry<String, int[]> entry : access.offsets.entrySet()) {
+                String source = entry.getKey();
+                int[] offset = entry.getValue();
+                String pixels = "$pixels" + n + "_" + k;
+                String stride = "$stride" + n + "_" + k++;
+                arg += "final int[] " + pixels + " = ImageOps.pixels(" + source + ");\n        ";
+                condition += (condition.isEmpty() ? "" : " && ") + pixels + " != null";
+                if (!source.equals(image) || offset[0] != 0 || offset[1] != 0) {
+                    condition += " && " + source + ".getWidth()" + (offset[0] == 0 ? "" : " - " + offset[0]) + " >= "
+                            + image + ".getWidth()";
+                    condition += " && " + source + ".getHeight()" + (offset[1] == 0 ? "" : " - " + offset[1])
+                            + " >= " + image + ".getHeight()";
+                }
+                strides += "final int " + stride + " = " + source + ".getWidth();\n        ";
+                rasters.put(source, new String[] { pixels, stride });
+            }
+            arg += "if (" + condition + ") {\n        " + strides + rasterLoops;
+            rasterReads.putAll(access.reads);
+            rasterTarget = rasters.get(image)[0];
+            arg = genPixelStore(assignmentStatement, arg);
+            rasterReads.clear();
+            rasters.clear();
+            rasterTarget = null;
+            arg += "        } else {\n        " + loops;
+            arg = genPixelStore(assignmentStatement, arg);
+            arg += "        }\n";
+        } else {
+            arg = arg + loops;
+            arg = genPixelStore(assignmentStatement, arg);
+        }
+        hoisted.clear();
+        return arg;
+    }
+
+    /*
+     * Sets the pixel at x, y of the target of a pixel assignment to the value of its
+     * expression, an int packed color or a ColorTuple.
+     */
+    Object genPixelStore(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+        Expr expr = assignmentStatement.getExpr();
+        List<List<Expr>> shared = CommonSubexpressions.find(expr, folded, hoisted);
+        if (!shared.isEmpty()) {
+            arg += "{\n            ";
+            arg = genShared(shared, arg);
+        }
+        if (rasterTarget != null) {
+            // TYPE_INT_RGB pixels have no alpha
+            arg = arg + rasterTarget + "[y * $width + x] = ";
+            arg += expr.getType() == INT ? "new ColorTuple(" : "(";
+            arg = expr.visit(this, arg);
+            arg += ").pack() & 0xffffff;\n";
+        } else {
+            arg = arg + "ImageOps.setColor(" + assignmentStatement.getName() + ", x, y, ";
+            if (expr.getType() == INT || expr.getType() == COLORFLOAT) {
+                arg += "new ColorTuple(";
+                arg = expr.visit(this, arg);
+                arg += "));\n";
+            } else {
+                arg = expr.visit(this, arg);
+                arg += ");\n";
+            }
+        }
+        if (!shared.isEmpty()) {
+            arg += "        }\n";
+            for (List<Expr> occurrences : shared) {
+                for (Expr occurrence : occurrences) {
+                    hoisted.remove(occurrence);
+                }
+            }
+        }
+        return arg;
+    }
+
+    /*
+     * Declares a local for each common sub-expression found by CommonSubexpressions, and
+     * records it in hoisted for all the occurrences of the sub-expression. The caller removes
+     * them after generating the expression.
+     */
+    Object genShared(List<List<Expr>> shared, Object arg) throws Exception {
+        for (List<Expr> occurrences : shared) {
+            String local = "$cse" + sharedCount++;
+            arg += "final var " + local + " = ";
+            arg = occurrences.get(0).visit(this, arg);
+            arg += ";\n            ";
+            for (Expr occurrence : occurrences) {
+                hoisted.put(occurrence, local);
+            }
+        }
+        return arg;
+    }
+
+    /*
+     * The image declarations of a LoopFusion group, then its pixel assignments in one loop nest
+     * over the first target. If another target does not have the size of the first one, the
+     * pixel assignments are run in separate loops instead, as they would be without fusion.
+     */
+    Object genFusedLoops(LoopFusion.Group group, Object arg) throws Exception {
+        impts.add("import edu.ufl.cise.plc.runtime.ImageOps;\n");
+        impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+        for (VarDeclaration declaration : group.declarations) {
+            arg = declaration.visit(this, arg);
+            arg += "        ";
+        }
+        for (AssignmentStatement assignment : group.loops) {
+            arg = genInvariants(assignment.getExpr(), loopVariables(assignment), arg);
+        }
+        String first = group.loops.get(0).getName();
+        String sameSize = "";
+        for (AssignmentStatement assignment : group.loops) {
+            String image = assignment.getName();
+            if (!image.equals(first) && !sameSize.contains("(" + image + ".getWidth()")) {
+                sameSize += sameSize.isEmpty() ? "" : " && ";
+                sameSize += "(" + image + ".getWidth() == " + first + ".getWidth() && " + image
+                        + ".getHeight() == " + first + ".getHeight())";
+            }
+        }
+        if (!sameSize.isEmpty()) {
+            arg += "if (" + sameSize + ") {\n        ";
+        }
+        arg = arg + "for (int x = 0, $width = " + first + ".getWidth(); x < $width; x++)\n    "
+                + "for (int y = 0, $height = " + first + ".getHeight(); y < $height; y++) {\n        ";
+        for (AssignmentStatement assignment : group.loops) {
+            arg = genPixelStore(assignment, arg + "    ");
+            arg += "        ";
+        }
+        arg += "}\n";
+        if (!sameSize.isEmpty()) {
+            arg += "        } else {\n        ";
+            for (AssignmentStatement assignment : group.loops) {
+                arg = arg + genPixelLoops(assignment.getName());
+                arg = genPixelStore(assignment, arg);
+                arg += "        ";
+            }
+            arg += "}\n";
+        }
+        hoisted.clear();
+        return arg;
+    }
+
+    /*
+     * The loops over the pixels of image, a block of ImageOps.tileSize columns and rows at a
+     * time. The pixels of a block are visited in the order of genPixelLoops.
+     */
+    String genBlockedLoops(String image, boolean rowMajor) {
+        impts.add("import edu.ufl.cise.plc.runtime.ImageOps;\n");
+        String xLoop = "for (int x = $x0, $x1 = Math.min($x0 + $tileWidth, $width); x < $x1; x++)";
+        String yLoop = "for (int y = $y0, $y1 = Math.min($y0 + $tileHeight, $height); y < $y1; y++)";
+        return "for (int $y0 = 0, $height = " + image + ".getHeight(), $tileHeight = ImageOps.tileSize($height); "
+                + "$y0 < $height; $y0 += $tileHeight)\n    "
+                + "for (int $x0 = 0, $width = " + image + ".getWidth(), $tileWidth = ImageOps.tileSize($width); "
+                + "$x0 < $width; $x0 += $tileWidth)\n    "
+                + (rowMajor ? yLoop : xLoop) + "\n    " + (rowMajor ? xLoop : yLoop) + "\n        ";
+    }
+
+    /*
+     * Generates the body of apply for a scheduled program. Each task is submitted to a
+     * StatementScheduler with the futures of the tasks it depends on, and generated as a static
+     * method whose parameters are the variables it refers to. A variable is passed the value of
+     * the future of the last task that gave it a value, or the parameter of apply.
+     */
+    Object genScheduled(Program program, String returnType, Object arg) throws Exception {
+        impts.add("import java.util.concurrent.CompletableFuture;\n");
+        impts.add("import edu.ufl.cise.plc.runtime.StatementScheduler;\n");
+        arg += "final StatementScheduler $schedule = new StatementScheduler();\n";
+        Map<String, String> values = new HashMap<String, String>();
+        for (NameDef param : program.getParams()) {
+            values.put(param.getName(), param.getName());
+        }
+        String result = null;
+        String tiled = "";
+        for (StatementGraph.Task task : schedule.tasks) {
+            String future = "$t" + task.index;
+            String method = "$task" + task.index;
+            String type = task.target != null ? genJavaType(task.target)
+                    : task.node instanceof ReturnStatement ? returnType : "void";
+            String call = method + "(" + CONTEXT;
+            String params = "ExecutionContext " + CONTEXT;
+            for (String name : task.names) {
+                call += ", " + values.get(name);
+                params += ", " + genJavaType(name) + " " + name;
+            }
+            call += ")";
+
+            String body = "";
+            if (task.target != null && !(task.node instanceof VarDeclaration) && !task.names.contains(task.target)) {
+                body += "        " + type + " " + task.target + ";\n";
+            }
+            body += "        " + (String) task.node.visit(this, "");
+            if (task.target != null) {
+                body += "        return " + task.target + ";\n";
+            }
+            taskMethods += "\n    private static " + type + " " + method + "(" + params + ") {\n" + body + "    }\n";
+
+            String dependences = "";
+            for (StatementGraph.Task dependence : task.dependences) {
+                dependences += ", $t" + dependence.index;
+            }
+            if (type.equals("void")) {
+                arg += "        final CompletableFuture<Object> " + future + " = $schedule.submit(() -> { " + call
+                        + "; return null; }" + dependences + ");\n";
+            } else {
+                arg += "        final CompletableFuture<" + genBoxedType(type) + "> " + future + " = $schedule.submit(() -> "
+                        + call + dependences + ");\n";
+            }
+            if (task.target != null) {
+                values.put(task.target, future + ".join()");
+            }
+            if (task.node instanceof ReturnStatement) {
+                result = future;
+            }
+            if (task.node instanceof VarDeclaration && type.equals("TiledImage")) {
+                tiled += (tiled.isEmpty() ? "" : ", ") + future;
+            }
+        }
+        String join = returnType.equals("void") || result == null ? "$schedule.join(null);\n"
+                : "return $schedule.join(" + result + ");\n";
+        if (tiled.isEmpty()) {
+            arg += "        " + join;
+        } else {
+            // join waits for every statement, so the images are no longer used
+            arg += "        try {\n            " + join + "        } finally {\n"
+                    + "            StatementScheduler.close(" + tiled + ");\n        }\n";
+        }
+        return arg;
+    }
+
+    /* The Java type of the named parameter or variable of a scheduled program */
+    String genJavaType(String name) {
+        Declaration declaration = schedule.declarations.get(name);
+        Type type = declaration.getType();
+        if (type == IMAGE) {
+            impts.add("import java.awt.image.BufferedImage;\n");
+            return declaration.getDim() != null && tiledImages.contains(name) ? "TiledImage" : "BufferedImage";
+        } else if (type == INT) {
+            return "int";
+        } else if (type == FLOAT) {
+            return "float";
+        } else if (type == BOOLEAN) {
+            return "boolean";
+        } else if (type == STRING) {
+            return "String";
+        } else if (type == COLOR) {
+            impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+            return "ColorTuple";
+        }
+        throw new IllegalArgumentException("Compiler bug Unexpected value: " + type);
+    }
+
+    String genBoxedType(String type) {
+        if (type.equals("int")) {
+            return "Integer";
+        } else if (type.equals("float")) {
+            return "Float";
+        } else if (type.equals("boolean")) {
+            return "Boolean";
+        }
+        return type;
+    }
+
+    /* Declarations of the colors in colorConstants */
+    String genColorConstants() {
+        String decls = "";
+        for (String color : colorConstants) {
+            decls += "    static final ColorTuple $" + color + " = ColorTuple.toColorTuple(Color." + color + ");\n";
+        }
+        return decls;
+    }
+
+    /* The Statements of the profiled declarations and statements, and the time apply starts */
+    String genProfileStart() {
+        impts.add("import edu.ufl.cise.plc.runtime.StatementProfile;\n");
+        String locations = "";
+        for (int i = 0; i < profiled.size(); i++) {
+            locations += (i == 0 ? "" : ", ") + profiled.get(i);
+        }
+        return "final StatementProfile.Statement[] $profile = " + CONTEXT + ".getProfile().statements("
+                + locations + ");\n" + "        long $time = System.nanoTime();\n";
+    }
+
+    /*
+     * Records the time of stat, which has just run, and the pixels computed by the loops of a
+     * pixel assignment.
+     */
+    String genProfileRecord(ASTNode stat) {
+        int index = profiled.size() / 2;
+        profiled.add(stat.getSourceLoc().line());
+        profiled.add(stat.getSourceLoc().column());
+        String iterations = "0";
+        if (stat instanceof AssignmentStatement assignment && assignment.getTargetDec().getType() == IMAGE
+                && assignment.getExpr().getType() != IMAGE) {
+            String name = assignment.getName();
+            iterations = "(long) " + name + ".getWidth() * " + name + ".getHeight()";
+        }
+        return "$time = $profile[" + index + "].record($time, " + iterations + ");\n";
+    }
+
+    /*
+     * A streamed source image is not read at its declaration, only its name is saved. The
+     * size of a streamed result is saved at its declaration.
+     */
+    Object genStreamedDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+        String name = declaration.getName();
+        if (declaration.getDim() == null) {
+            arg += "final String " + name + "$source = ";
+            arg = declaration.getExpr().visit(this, arg);
+            arg += ";\n";
+        } else {
+            arg += "final int " + name + "$width = ";
+            arg = declaration.getDim().getWidth().visit(this, arg);
+            arg += ";\n        final int " + name + "$height = ";
+            arg = declaration.getDim().getHeight().visit(this, arg);
+            arg += ";\n";
+        }
+        return arg;
+    }
+
+    Object genStreamedWrite(PointwisePipelines.Pipeline pipeline, Object arg) throws Exception {
+        impts.add("import edu.ufl.cise.plc.runtime.ScanlineStream;\n");
+        impts.add("import edu.ufl.cise.plc.runtime.ColorTuple;\n");
+        String image = pipeline.target.getName();
+        AssignmentStatement assignment = pipeline.assignment;
+        Expr expr = assignment.getExpr();
+
+        Set<String> loopVariables = new HashSet<String>(loopVariables(assignment));
+        loopVariables.add(PointwisePipelines.PIXELS);
+        arg = genInvariants(expr, loopVariables, arg);
+        arg += "ScanlineStream.transform(new String[] {";
+        for (int i = 0; i < pipeline.sources.size(); i++) {
+            if (i > 0) {
+                arg += ", ";
+            }
+            arg += pipeline.sources.get(i).getName() + "$source";
+        }
+        arg += "}, " + image + "$width, " + image + "$height,\n            (";
+        arg += assignment.getSelector().getX().getText() + ", " + assignment.getSelector().getY().getText();
+        arg += ", " + PointwisePipelines.PIXELS + ") -> ";
+        List<List<Expr>> shared = CommonSubexpressions.find(expr, folded, hoisted);
+        if (!shared.isEmpty()) {
+            arg += "{\n            ";
+            arg = genShared(shared, arg);
+            arg += "return ";
+        }
+        if (expr.getType() == INT) {
+            arg += "new ColorTuple(";
+            arg = expr.visit(this, arg);
+            arg += ").pack()";
+        } else {
+            arg += "(";
+            arg = expr.visit(this, arg);
+            arg += ").pack()";
+        }
+        arg += shared.isEmpty() ? ", " : ";\n        }, ";
+        arg += pipeline.write.getDest().getText();
+        arg += ");\n";
+        hoisted.clear();
+        return arg;
+    }
 }
\ No newline at end of file
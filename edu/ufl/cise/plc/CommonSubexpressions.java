@@ -0,0 +1,357 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.BinaryExpr;
+import edu.ufl.cise.plc.ast.BooleanLitExpr;
+import edu.ufl.cise.plc.ast.ColorConstExpr;
+import edu.ufl.cise.plc.ast.ColorExpr;
+import edu.ufl.cise.plc.ast.ConditionalExpr;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.FloatLitExpr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.IntLitExpr;
+import edu.ufl.cise.plc.ast.StringLitExpr;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.runtime.ColorTuple;
+
+/**
+ * Finds the sub-expressions that occur more than once in the expression of a pixel loop, so
+ * that CodeGenVisitor can compute each of them once per pixel.
+ *
+ * b[x,y] = <<getRed a[x,y] / 2, getRed a[x,y], getRed a[x,y] * 2>>;
+ *
+ * Each expression is hash-consed: it is given a key made of its kind, operator, type, and
+ * the keys of its children, so expressions with the same key generate code that computes
+ * the same value.  Pixel reads are keyed by the image and the keys of the selector.  Console
+ * input and equality of colors and strings get a key of their own and are never shared.
+ *
+ * The shared expressions are computed before the expression, in the order that the expression
+ * would first compute them.  So that this does not change which exception a pixel throws, an
+ * expression is only shared if it is computed whenever the expression is, that is, not only
+ * in a case of a conditional, and if nothing that may throw is computed before it: pixel
+ * reads, int and color divisions that LoopInvariants does not hoist, and console input.
+ */
+class CommonSubexpressions extends ASTScanner {
+
+	final ConstantFolder folded;
+	/* the loop invariants computed before the loop, and their locals */
+	final Map<Expr, String> hoisted;
+	/* the key of each expression */
+	final Map<Expr, String> keys = new IdentityHashMap<>();
+	/* the expressions with each key */
+	final Map<String, List<Expr>> occurrences = new HashMap<>();
+	/* the keys of the shared expressions, in the order to compute them */
+	final Map<String, Expr> shared = new LinkedHashMap<>();
+	/* the keys that are not shared, although they occur more than once */
+	final Set<String> excluded = new HashSet<>();
+	int unique = 0;
+	boolean mayHaveThrown = false;
+
+	CommonSubexpressions(ConstantFolder folded, Map<Expr, String> hoisted) {
+		this.folded = folded;
+		this.hoisted = hoisted;
+	}
+
+	/**
+	 * Returns the expressions in expr to compute once, in the order to compute them.  Each is
+	 * a list of the expressions with the same key.  Its first element is the one to generate,
+	 * and the others are generated as the local holding its value.
+	 */
+	static List<List<Expr>> find(Expr expr, ConstantFolder folded, Map<Expr, String> hoisted) throws Exception {
+		CommonSubexpressions scanner = new CommonSubexpressions(folded, hoisted);
+		expr.visit(scanner, null);
+		// a sub-expression whose other occurrences are all in a shared expression is only
+		// generated once, so it is not shared, and the rest are selected again
+		scanner.select(expr, false);
+		for (String unused = scanner.unused(expr); unused != null; unused = scanner.unused(expr)) {
+			scanner.excluded.add(unused);
+			scanner.shared.clear();
+			scanner.mayHaveThrown = false;
+			scanner.select(expr, false);
+		}
+		List<List<Expr>> result = new ArrayList<>();
+		for (Map.Entry<String, Expr> entry : scanner.shared.entrySet()) {
+			List<Expr> group = new ArrayList<>();
+			group.add(entry.getValue());
+			for (Expr occurrence : scanner.occurrences.get(entry.getKey())) {
+				if (occurrence != entry.getValue()) {
+					group.add(occurrence);
+				}
+			}
+			result.add(group);
+		}
+		return result;
+	}
+
+	/* Whether expressions with this key are worth computing once */
+	private boolean isShared(String key) {
+		return key.startsWith("(") && occurrences.get(key).size() > 1 && !excluded.contains(key);
+	}
+
+	/* The last shared key whose local would be used only once, or null */
+	private String unused(Expr expr) {
+		Map<String, Integer> uses = new HashMap<>();
+		count(expr, uses);
+		for (Expr first : shared.values()) {
+			for (Expr child : children(first)) {
+				count(child, uses);
+			}
+		}
+		String unused = null;
+		for (String key : shared.keySet()) {
+			if (uses.getOrDefault(key, 0) < 2) {
+				unused = key;
+			}
+		}
+		return unused;
+	}
+
+	/* Counts the uses of the locals of the shared expressions in the code generated for expr */
+	private void count(Expr expr, Map<String, Integer> uses) {
+		Expr replacement = folded.replacement(expr);
+		if (replacement != null && !hoisted.containsKey(expr)) {
+			count(replacement, uses);
+			return;
+		}
+		String key = keys.get(expr);
+		if (shared.containsKey(key)) {
+			uses.merge(key, 1, Integer::sum);
+			return;
+		}
+		for (Expr child : children(expr)) {
+			count(child, uses);
+		}
+	}
+
+	/*
+	 * Visits expr and its children in the order that the generated code computes them, and
+	 * records the shared expressions.  Returns after a shared expression has been recorded,
+	 * since its children are then computed by the local.
+	 */
+	private void select(Expr expr, boolean conditional) throws Exception {
+		Expr replacement = folded.replacement(expr);
+		if (replacement != null && !hoisted.containsKey(expr)) {
+			select(replacement, conditional);
+			return;
+		}
+		String key = keys.get(expr);
+		if (isShared(key)) {
+			if (shared.containsKey(key)) {
+				return;
+			}
+			if (!conditional && !mayHaveThrown) {
+				for (Expr child : children(expr)) {
+					select(child, false);
+				}
+				// whatever is computed for the local is computed before the expressions after it
+				mayHaveThrown = false;
+				shared.put(key, expr);
+				return;
+			}
+		}
+		if (expr instanceof ConditionalExpr conditionalExpr && !isFolded(expr)) {
+			select(conditionalExpr.getCondition(), conditional);
+			select(conditionalExpr.getTrueCase(), true);
+			select(conditionalExpr.getFalseCase(), true);
+		} else {
+			for (Expr child : children(expr)) {
+				select(child, conditional);
+			}
+		}
+		if (mayThrow(expr)) {
+			mayHaveThrown = true;
+		}
+	}
+
+	private boolean isFolded(Expr expr) {
+		return hoisted.containsKey(expr) || folded.constant(expr) != null || folded.replacement(expr) != null;
+	}
+
+	/* The children of expr that CodeGenVisitor generates, in order, unless expr is replaced */
+	private List<Expr> children(Expr expr) {
+		if (isFolded(expr)) {
+			return List.of();
+		}
+		if (expr instanceof BinaryExpr binary && !isEquality(binary)) {
+			return List.of(binary.getLeft(), binary.getRight());
+		}
+		if (expr instanceof UnaryExpr unary) {
+			return List.of(unary.getExpr());
+		}
+		if (expr instanceof ColorExpr color) {
+			return List.of(color.getRed(), color.getGreen(), color.getBlue());
+		}
+		if (expr instanceof ConditionalExpr conditional) {
+			return List.of(conditional.getCondition(), conditional.getTrueCase(), conditional.getFalseCase());
+		}
+		if (expr instanceof UnaryExprPostfix pixel) {
+			return List.of(pixel.getSelector().getX(), pixel.getSelector().getY());
+		}
+		return List.of();
+	}
+
+	/* Whether computing expr, but not its children, may throw */
+	private boolean mayThrow(Expr expr) {
+		if (isFolded(expr)) {
+			return false;
+		}
+		return expr instanceof UnaryExprPostfix || expr instanceof ConsoleExpr
+				|| expr instanceof BinaryExpr binary && LoopInvariants.mayThrow(binary, folded);
+	}
+
+	/* CodeGenVisitor generates equality of colors and strings from the text of the operands */
+	private static boolean isEquality(BinaryExpr binary) {
+		Kind op = binary.getOp().getKind();
+		return (op == Kind.EQUALS || op == Kind.NOT_EQUALS)
+				&& (binary.getLeft().getType() == COLOR || binary.getLeft().getType() == STRING);
+	}
+
+	/* Records the key of expr, and returns it */
+	private String key(Expr expr, String key) {
+		keys.put(expr, key);
+		occurrences.computeIfAbsent(key, k -> new ArrayList<>()).add(expr);
+		return key;
+	}
+
+	/* The key of an expression that is not shared */
+	private String uniqueKey(Expr expr) {
+		return key(expr, "#" + unique++);
+	}
+
+	/*
+	 * The key of expr if it is a loop invariant, a constant, or replaced, or null. The children
+	 * of a replaced expression other than its replacement are not generated and get no key.
+	 */
+	private String folded(Expr expr) throws Exception {
+		String local = hoisted.get(expr);
+		if (local != null) {
+			return key(expr, local);
+		}
+		Object value = folded.constant(expr);
+		if (value != null) {
+			return key(expr, value instanceof ColorTuple c ? "<<" + c.red + "," + c.green + "," + c.blue + ">>"
+					: expr.getType() + " " + value);
+		}
+		Expr replacement = folded.replacement(expr);
+		if (replacement != null) {
+			// only the replacement is generated
+			String key = (String) replacement.visit(this, null);
+			keys.put(expr, key);
+			return key;
+		}
+		return null;
+	}
+
+	/* The part of a key for the type of expr and its coercion */
+	private static String type(Expr expr) {
+		return expr.getType() + (expr.getCoerceTo() == null ? "" : ">" + expr.getCoerceTo());
+	}
+
+	@Override
+	public Object visitBooleanLitExpr(BooleanLitExpr booleanLitExpr, Object arg) throws Exception {
+		return key(booleanLitExpr, type(booleanLitExpr) + " " + booleanLitExpr.getText());
+	}
+
+	@Override
+	public Object visitStringLitExpr(StringLitExpr stringLitExpr, Object arg) throws Exception {
+		return key(stringLitExpr, type(stringLitExpr) + " " + stringLitExpr.getText());
+	}
+
+	@Override
+	public Object visitIntLitExpr(IntLitExpr intLitExpr, Object arg) throws Exception {
+		return key(intLitExpr, type(intLitExpr) + " " + intLitExpr.getText());
+	}
+
+	@Override
+	public Object visitFloatLitExpr(FloatLitExpr floatLitExpr, Object arg) throws Exception {
+		return key(floatLitExpr, type(floatLitExpr) + " " + floatLitExpr.getText());
+	}
+
+	@Override
+	public Object visitColorConstExpr(ColorConstExpr colorConstExpr, Object arg) throws Exception {
+		return key(colorConstExpr, type(colorConstExpr) + " " + colorConstExpr.getText());
+	}
+
+	@Override
+	public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+		return key(identExpr, type(identExpr) + " " + identExpr.getText());
+	}
+
+	@Override
+	public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+		return uniqueKey(consoleExpr);
+	}
+
+	@Override
+	public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+		String key = folded(unaryExpression);
+		if (key != null) {
+			return key;
+		}
+		String operand = (String) unaryExpression.getExpr().visit(this, arg);
+		return key(unaryExpression, "(" + unaryExpression.getOp().getText() + " " + type(unaryExpression) + " "
+				+ operand + ")");
+	}
+
+	@Override
+	public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+		String key = folded(binaryExpr);
+		if (key != null) {
+			return key;
+		}
+		if (isEquality(binaryExpr)) {
+			return uniqueKey(binaryExpr);
+		}
+		String left = (String) binaryExpr.getLeft().visit(this, arg);
+		String right = (String) binaryExpr.getRight().visit(this, arg);
+		return key(binaryExpr, "(" + binaryExpr.getOp().getText() + " " + type(binaryExpr) + " " + left + " "
+				+ right + ")");
+	}
+
+	@Override
+	public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+		String key = folded(colorExpr);
+		if (key != null) {
+			return key;
+		}
+		String red = (String) colorExpr.getRed().visit(this, arg);
+		String green = (String) colorExpr.getGreen().visit(this, arg);
+		String blue = (String) colorExpr.getBlue().visit(this, arg);
+		return key(colorExpr, "(<< " + type(colorExpr) + " " + red + " " + green + " " + blue + ")");
+	}
+
+	@Override
+	public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+		String key = folded(conditionalExpr);
+		if (key != null) {
+			return key;
+		}
+		String condition = (String) conditionalExpr.getCondition().visit(this, arg);
+		String trueCase = (String) conditionalExpr.getTrueCase().visit(this, arg);
+		String falseCase = (String) conditionalExpr.getFalseCase().visit(this, arg);
+		return key(conditionalExpr, "(if " + type(conditionalExpr) + " " + condition + " " + trueCase + " "
+				+ falseCase + ")");
+	}
+
+	@Override
+	public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+		String x = (String) unaryExprPostfix.getSelector().getX().visit(this, arg);
+		String y = (String) unaryExprPostfix.getSelector().getY().visit(this, arg);
+		return key(unaryExprPostfix, "([] " + type(unaryExprPostfix) + " " + unaryExprPostfix.getExpr().getText()
+				+ " " + x + " " + y + ")");
+	}
+}
@@ -2,6 +2,8 @@
 //want as long as it implements the ILexer interface and you have provided an appropriate body for the getLexer method.
 package edu.ufl.cise.plc;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import edu.ufl.cise.plc.ast.ASTVisitor;
 
 public class CompilerComponentFactory {
@@ -18,11 +20,20 @@ public class CompilerComponentFactory {
 	}
 
 	public static IParser getParser(String input) throws PLCException {
-		Lexer lex = new Lexer(input);
-		return new Parser(lex.tokens);
+		return getParser(getScannedLexer(input));
 		// return new Parser(input);
 	}
 
+	// Returns a lexer that has scanned all of input, so that lexing can be timed apart from
+	// parsing.  Pass it to getParser(Lexer).
+	public static Lexer getScannedLexer(String input) throws PLCException {
+		return new Lexer(input);
+	}
+
+	public static IParser getParser(Lexer lexer) throws PLCException {
+		return new Parser(lexer.tokens);
+	}
+
 	public static ASTVisitor getTypeChecker() throws PLCException {
 		return new TypeCheckVisitor();
 	}
@@ -33,4 +44,16 @@ public class CompilerComponentFactory {
 
 	}
 
+	public static ASTVisitor getCodeGenerator(String packageName, boolean profile) throws PLCException {
+		return new CodeGenVisitor(packageName, profile);
+	}
+
+	public static ASTVisitor getClosureCompiler() {
+		return new ClosureCompiler();
+	}
+
+	public static ASTVisitor getClosureCompiler(LongAdder pixelCount) {
+		return new ClosureCompiler(pixelCount);
+	}
+
 }
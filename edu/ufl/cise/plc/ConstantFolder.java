@@ -0,0 +1,315 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.awt.Color;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.BinaryExpr;
+import edu.ufl.cise.plc.ast.BooleanLitExpr;
+import edu.ufl.cise.plc.ast.ColorConstExpr;
+import edu.ufl.cise.plc.ast.ColorExpr;
+import edu.ufl.cise.plc.ast.ConditionalExpr;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.FloatLitExpr;
+import edu.ufl.cise.plc.ast.IntLitExpr;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.Types.Type;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.ImageOps;
+
+/**
+ * Evaluates the parts of a type checked program that do not depend on variables or input, so
+ * that their value is computed once by the compiler instead of every time the generated code
+ * runs them, for example once per pixel in a pixel assignment.
+ *
+ * A BinaryExpr, UnaryExpr, ColorExpr, or ConditionalExpr whose operands are constant int,
+ * float, boolean, or color values is folded to its value.  A conditional whose condition is
+ * constant is replaced by the case it selects, and x+0, x-0, x*1, x/1, true&x, and false|x
+ * (in either order where that is the same) are replaced by x unless x is an image, since the
+ * operation makes a new image and x does not.
+ *
+ * Values are computed with Java's int and float arithmetic and the runtime's color operations,
+ * as the generated code would compute them.  Expressions that would throw, such as an int
+ * division by a constant 0, are not folded.  Equality of colors and strings, float colors,
+ * and images are left alone.
+ */
+class ConstantFolder extends ASTScanner {
+
+	/* the value of each constant expression, of the expression's type before any coercion */
+	final Map<Expr, Object> constants = new IdentityHashMap<>();
+	/* the expression to generate in place of each simplified expression */
+	final Map<Expr, Expr> replacements = new IdentityHashMap<>();
+
+	static ConstantFolder fold(Program program) throws Exception {
+		ConstantFolder folder = new ConstantFolder();
+		program.visit(folder, null);
+		return folder;
+	}
+
+	/**
+	 * Returns the value of expr if it is a folded BinaryExpr, UnaryExpr, ColorExpr, or
+	 * ConditionalExpr, or null.  The value is an Integer, Float, Boolean, or ColorTuple of the
+	 * expression's type, ignoring coerceTo.
+	 */
+	Object constant(Expr expr) {
+		return expr instanceof IntLitExpr || expr instanceof FloatLitExpr || expr instanceof BooleanLitExpr
+				|| expr instanceof ColorConstExpr ? null : constants.get(expr);
+	}
+
+	/**
+	 * Returns the expression to generate instead of expr, or null.  The replacement has the
+	 * same type as expr and no coerceTo, and is not itself replaced or constant unless it is
+	 * a literal.
+	 */
+	Expr replacement(Expr expr) {
+		return replacements.get(expr);
+	}
+
+	/**
+	 * Returns the value of expr, including a literal, after its coerceTo is applied, or null if
+	 * it is not constant.
+	 */
+	Object value(Expr expr) {
+		return coerced(expr);
+	}
+
+	/* the value of expr after its coerceTo is applied, or null if it is not constant */
+	private Object coerced(Expr expr) {
+		Object value = constants.get(expr);
+		Type coerceTo = expr.getCoerceTo();
+		if (value == null || coerceTo == null || coerceTo == expr.getType()) {
+			return value;
+		}
+		if (value instanceof Integer i && coerceTo == FLOAT) {
+			return (float) i;
+		}
+		if (value instanceof Integer i && coerceTo == COLOR) {
+			return new ColorTuple(i);
+		}
+		return null;
+	}
+
+	/* 0 or 0.0, but not -0.0, since x - -0.0 is not x when x is -0.0 */
+	private static boolean isZero(Object value) {
+		return value instanceof Integer i && i == 0 || value instanceof Float f && Float.floatToRawIntBits(f) == 0;
+	}
+
+	private static boolean isOne(Object value) {
+		return value instanceof Integer i && i == 1 || value instanceof Float f && f == 1f;
+	}
+
+	/*
+	 * Records that expr is simplified to operand, if that generates the same value: operand
+	 * must have the type of expr and no coercion of its own.
+	 */
+	private void replace(Expr expr, Expr operand) {
+		if (operand.getType() != expr.getType() || operand.getCoerceTo() != null
+				&& operand.getCoerceTo() != operand.getType()) {
+			return;
+		}
+		Expr replacement = replacements.getOrDefault(operand, operand);
+		replacements.put(expr, replacement);
+		Object value = constants.get(replacement);
+		if (value != null) {
+			constants.put(expr, value);
+		}
+	}
+
+	@Override
+	public Object visitIntLitExpr(IntLitExpr intLitExpr, Object arg) throws Exception {
+		constants.put(intLitExpr, intLitExpr.getValue());
+		return null;
+	}
+
+	@Override
+	public Object visitFloatLitExpr(FloatLitExpr floatLitExpr, Object arg) throws Exception {
+		constants.put(floatLitExpr, floatLitExpr.getValue());
+		return null;
+	}
+
+	@Override
+	public Object visitBooleanLitExpr(BooleanLitExpr booleanLitExpr, Object arg) throws Exception {
+		constants.put(booleanLitExpr, booleanLitExpr.getValue());
+		return null;
+	}
+
+	@Override
+	public Object visitColorConstExpr(ColorConstExpr colorConstExpr, Object arg) throws Exception {
+		Color color = (Color) Color.class.getField(colorConstExpr.getText()).get(null);
+		constants.put(colorConstExpr, ColorTuple.toColorTuple(color));
+		return null;
+	}
+
+	@Override
+	public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+		super.visitColorExpr(colorExpr, arg);
+		if (colorExpr.getType() == COLOR && coerced(colorExpr.getRed()) instanceof Integer red
+				&& coerced(colorExpr.getGreen()) instanceof Integer green
+				&& coerced(colorExpr.getBlue()) instanceof Integer blue) {
+			constants.put(colorExpr, new ColorTuple(red, green, blue));
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+		super.visitUnaryExpr(unaryExpression, arg);
+		Object value = coerced(unaryExpression.getExpr());
+		String op = unaryExpression.getOp().getText();
+		Object result = switch (unaryExpression.getOp().getKind()) {
+		case BANG -> value instanceof Boolean b ? !b : null;
+		case MINUS -> value instanceof Integer i ? (Object) (-i) : value instanceof Float f ? (Object) (-f) : null;
+		case COLOR_OP -> {
+			if (value instanceof Integer i) {
+				yield op.equals("getRed") ? ColorTuple.getRed(i)
+						: op.equals("getGreen") ? ColorTuple.getGreen(i) : ColorTuple.getBlue(i);
+			}
+			if (value instanceof ColorTuple c) {
+				yield op.equals("getRed") ? c.red : op.equals("getGreen") ? c.green : c.blue;
+			}
+			yield null;
+		}
+		default -> null;
+		};
+		if (result != null) {
+			constants.put(unaryExpression, result);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+		super.visitBinaryExpr(binaryExpr, arg);
+		Kind op = binaryExpr.getOp().getKind();
+		Expr left = binaryExpr.getLeft();
+		Expr right = binaryExpr.getRight();
+		Object l = coerced(left);
+		Object r = coerced(right);
+
+		if (l != null && r != null) {
+			Object result = evaluate(op, l, r);
+			if (result != null) {
+				constants.put(binaryExpr, result);
+			}
+			return null;
+		}
+		// an image operation makes a new image, and the operand would be an alias of it
+		if (binaryExpr.getType() == IMAGE) {
+			return null;
+		}
+
+		switch (op) {
+		case PLUS:
+			// x + 0.0 is not x when x is -0.0
+			if (r instanceof Integer && isZero(r)) {
+				replace(binaryExpr, left);
+			} else if (l instanceof Integer && isZero(l)) {
+				replace(binaryExpr, right);
+			}
+			break;
+		case MINUS:
+			if (isZero(r)) {
+				replace(binaryExpr, left);
+			}
+			break;
+		case TIMES:
+			if (isOne(r)) {
+				replace(binaryExpr, left);
+			} else if (isOne(l)) {
+				replace(binaryExpr, right);
+			}
+			break;
+		case DIV:
+			if (isOne(r)) {
+				replace(binaryExpr, left);
+			}
+			break;
+		case AND:
+			if (Boolean.TRUE.equals(r)) {
+				replace(binaryExpr, left);
+			} else if (Boolean.TRUE.equals(l)) {
+				replace(binaryExpr, right);
+			}
+			break;
+		case OR:
+			if (Boolean.FALSE.equals(r)) {
+				replace(binaryExpr, left);
+			} else if (Boolean.FALSE.equals(l)) {
+				replace(binaryExpr, right);
+			}
+			break;
+		default:
+			break;
+		}
+		return null;
+	}
+
+	/* the value of l op r, or null if it is not folded */
+	private static Object evaluate(Kind op, Object l, Object r) {
+		if (l instanceof Integer a && r instanceof Integer b) {
+			return switch (op) {
+			case PLUS -> a + b;
+			case MINUS -> a - b;
+			case TIMES -> a * b;
+			case DIV -> b == 0 ? null : (Object) (a / b);
+			case MOD -> b == 0 ? null : (Object) (a % b);
+			case LT -> a < b;
+			case LE -> a <= b;
+			case GT -> a > b;
+			case GE -> a >= b;
+			case EQUALS -> a.intValue() == b.intValue();
+			case NOT_EQUALS -> a.intValue() != b.intValue();
+			default -> null;
+			};
+		}
+		if (l instanceof Float a && r instanceof Float b) {
+			return switch (op) {
+			case PLUS -> a + b;
+			case MINUS -> a - b;
+			case TIMES -> a * b;
+			case DIV -> a / b;
+			case MOD -> a % b;
+			case LT -> a < b;
+			case LE -> a <= b;
+			case GT -> a > b;
+			case GE -> a >= b;
+			case EQUALS -> a.floatValue() == b.floatValue();
+			case NOT_EQUALS -> a.floatValue() != b.floatValue();
+			default -> null;
+			};
+		}
+		if (l instanceof Boolean a && r instanceof Boolean b) {
+			return switch (op) {
+			case AND -> a & b;
+			case OR -> a | b;
+			case EQUALS -> a.booleanValue() == b.booleanValue();
+			case NOT_EQUALS -> a.booleanValue() != b.booleanValue();
+			default -> null;
+			};
+		}
+		if (l instanceof ColorTuple a && r instanceof ColorTuple b) {
+			return switch (op) {
+			case PLUS, MINUS, TIMES -> ImageOps.binaryTupleOp(ImageOps.OP.valueOf(op.toString()), a, b);
+			case DIV, MOD -> b.red == 0 || b.green == 0 || b.blue == 0 ? null
+					: ImageOps.binaryTupleOp(ImageOps.OP.valueOf(op.toString()), a, b);
+			default -> null;
+			};
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+		super.visitConditionalExpr(conditionalExpr, arg);
+		Object condition = coerced(conditionalExpr.getCondition());
+		if (condition instanceof Boolean b) {
+			replace(conditionalExpr, b ? conditionalExpr.getTrueCase() : conditionalExpr.getFalseCase());
+		}
+		return null;
+	}
+}
@@ -0,0 +1,369 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.BinaryExpr;
+import edu.ufl.cise.plc.ast.ColorExpr;
+import edu.ufl.cise.plc.ast.ConditionalExpr;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Dimension;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.NameDef;
+import edu.ufl.cise.plc.ast.PixelSelector;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.ReadStatement;
+import edu.ufl.cise.plc.ast.ReturnStatement;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+import edu.ufl.cise.plc.ast.WriteStatement;
+
+/**
+ * Finds the declarations and assignments whose values the program never uses, so that
+ * CodeGenVisitor can leave them out.
+ *
+ * image[w,h] t;
+ * t[x,y] = ...;
+ * int k = 1;
+ * k = 2;
+ *
+ * A program has no branches or loops, so a backward pass over its statements finds the
+ * variables whose values are used later: by a write or return statement, or by a statement
+ * that is kept.  An assignment to a variable that is not used later is dead, and so is a
+ * declaration of a variable that no kept statement refers to.  If a kept int, float, boolean,
+ * string, or color declaration is assigned before it is used, its initializer is dead.
+ *
+ * Statements with effects are always kept: read and write statements, declarations that read a
+ * file or the console, and expressions that read the console or may throw.  These are int and
+ * color divisions and remainders by a divisor that may be 0, operations on two images, reads
+ * of pixels that may be outside the image, and image declarations whose size may not be
+ * positive.  A read img[x,y] in a pixel assignment to t is in the image if img is t, or if img
+ * and t have the same size: both were declared with the same constant size, or t was declared
+ * with the size of img and img is never given another image.
+ *
+ * An image variable declared without a size refers to the image it is given, so images that may
+ * be the same BufferedImage are treated as one variable.  A pixel assignment sets pixels of an
+ * image that is used later, and of image parameters, which the caller can see.  It never makes
+ * earlier pixel assignments dead.
+ */
+class DeadStores {
+
+	final Set<ASTNode> dead = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Returns whether node, a declaration or statement of the program or the initializer of a
+	 * declaration, should not be generated.
+	 */
+	boolean contains(ASTNode node) {
+		return node != null && dead.contains(node);
+	}
+
+	static DeadStores find(Program program, ConstantFolder folded) throws Exception {
+		DeadStores result = new DeadStores();
+		Images images = new Images();
+		program.visit(images, null);
+		Set<String> live = new HashSet<>();
+		// variables that a kept statement refers to, and that must be declared
+		Set<String> needed = new HashSet<>();
+		for (NameDef param : program.getParams()) {
+			if (param.getType() == IMAGE) {
+				live.add(images.find(param.getName()));
+			}
+		}
+		List<ASTNode> nodes = program.getDecsAndStatements();
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			ASTNode node = nodes.get(i);
+			Uses uses = new Uses(images, folded, null);
+			boolean kept;
+			if (node instanceof VarDeclaration declaration) {
+				String name = declaration.getName();
+				boolean image = declaration.getType() == IMAGE;
+				uses.scan(declaration.getDim());
+				uses.scan(declaration.getExpr());
+				boolean effects = uses.effects
+						|| declaration.getOp() != null && declaration.getOp().getKind() == Kind.LARROW
+						|| image && declaration.getDim() != null && !isPositive(declaration.getDim(), folded);
+				kept = effects || needed.contains(name);
+				if (kept && !effects && !image && declaration.getExpr() != null && !live.contains(name)) {
+					result.dead.add(declaration.getExpr());
+					uses = new Uses(images, folded, null);
+				}
+				if (!image) {
+					live.remove(name);
+				}
+			} else if (node instanceof AssignmentStatement assignment) {
+				String name = assignment.getName();
+				boolean image = assignment.getTargetDec().getType() == IMAGE;
+				if (image && assignment.getExpr().getType() != IMAGE) {
+					PixelSelector selector = assignment.getSelector();
+					if (selector != null && isIdent(selector.getX(), "x") && isIdent(selector.getY(), "y")) {
+						uses = new Uses(images, folded, name);
+					}
+				} else if (image) {
+					uses.scan(assignment.getTargetDec().getDim());
+				}
+				uses.scan(assignment.getSelector());
+				uses.scan(assignment.getExpr());
+				kept = uses.effects || live.contains(images.find(name));
+				if (kept) {
+					needed.add(name);
+					if (image) {
+						live.add(images.find(name));
+					} else {
+						live.remove(name);
+					}
+				}
+			} else if (node instanceof ReadStatement read) {
+				kept = true;
+				uses.scan(read.getTargetDec().getType() == IMAGE ? read.getTargetDec().getDim() : null);
+				uses.scan(read.getSelector());
+				uses.scan(read.getSource());
+				needed.add(read.getName());
+				if (read.getTargetDec().getType() != IMAGE && read.getSelector() == null) {
+					live.remove(read.getName());
+				}
+			} else {
+				kept = true;
+				node.visit(uses, null);
+			}
+			if (!kept) {
+				result.dead.add(node);
+				continue;
+			}
+			needed.addAll(uses.names);
+			for (String name : uses.names) {
+				live.add(images.find(name));
+			}
+		}
+		return result;
+	}
+
+	/* Whether the sizes of an image declaration are positive int constants or the size of an image */
+	static boolean isPositive(Dimension dim, ConstantFolder folded) {
+		return isPositive(dim.getWidth(), folded) && isPositive(dim.getHeight(), folded);
+	}
+
+	private static boolean isPositive(Expr size, ConstantFolder folded) {
+		if (folded.value(size) instanceof Integer i) {
+			return i > 0;
+		}
+		return size instanceof UnaryExpr unary && unary.getOp().getKind() == Kind.IMAGE_OP
+				&& unary.getExpr() instanceof IdentExpr;
+	}
+
+	static boolean isIdent(Expr expr, String name) {
+		return expr instanceof IdentExpr && expr.getText().equals(name);
+	}
+
+	/*
+	 * Finds the image variables that may refer to the same image, and the size of each image
+	 * variable that is known to keep its size.
+	 */
+	static class Images extends ASTScanner {
+		/* the variable each image variable was merged with, for those that were */
+		final Map<String, String> parents = new HashMap<>();
+		final Map<String, Dimension> dims = new HashMap<>();
+		/* image variables that are given another image after they are declared */
+		final Set<String> reassigned = new HashSet<>();
+
+		/* the representative of the images that name may refer to, or name if it is not an image */
+		String find(String name) {
+			String parent = parents.get(name);
+			return parent == null ? name : find(parent);
+		}
+
+		void union(String name, Expr expr) throws Exception {
+			expr.visit(new ASTScanner() {
+				@Override
+				public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+					String a = find(name);
+					String b = find(identExpr.getText());
+					if (identExpr.getType() == IMAGE && !a.equals(b)) {
+						parents.put(a, b);
+					}
+					return null;
+				}
+
+				@Override
+				public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+					return unaryExpression.getOp().getKind() == Kind.IMAGE_OP ? null
+							: super.visitUnaryExpr(unaryExpression, arg);
+				}
+
+				@Override
+				public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+					return null;
+				}
+			}, null);
+		}
+
+		/*
+		 * A key that is the same for two images in the pixel loop of a pixel assignment only if
+		 * they have the same size, or null
+		 */
+		String size(String name, ConstantFolder folded) {
+			Dimension dim = dims.get(name);
+			if (dim == null) {
+				return reassigned.contains(name) ? null : name;
+			}
+			if (folded.value(dim.getWidth()) instanceof Integer w && folded.value(dim.getHeight()) instanceof Integer h) {
+				return w + "," + h;
+			}
+			if (dim.getWidth() instanceof UnaryExpr width && dim.getHeight() instanceof UnaryExpr height
+					&& width.getOp().getText().equals("getWidth") && height.getOp().getText().equals("getHeight")
+					&& width.getExpr() instanceof IdentExpr image && isIdent(height.getExpr(), image.getText())
+					&& !image.getText().equals(name)) {
+				return size(image.getText(), folded);
+			}
+			return null;
+		}
+
+		@Override
+		public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+			if (declaration.getType() == IMAGE) {
+				if (declaration.getDim() != null) {
+					dims.put(declaration.getName(), declaration.getDim());
+				} else if (declaration.getExpr() != null && declaration.getExpr().getType() == IMAGE) {
+					union(declaration.getName(), declaration.getExpr());
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+			if (assignmentStatement.getExpr().getType() == IMAGE) {
+				reassigned.add(assignmentStatement.getName());
+				if (assignmentStatement.getTargetDec().getDim() == null) {
+					union(assignmentStatement.getName(), assignmentStatement.getExpr());
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+			reassigned.add(readStatement.getName());
+			return null;
+		}
+
+		@Override
+		public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+			return null;
+		}
+
+		@Override
+		public Object visitReturnStatement(ReturnStatement returnStatement, Object arg) throws Exception {
+			return null;
+		}
+	}
+
+	/*
+	 * Finds the variables that the generated code for part of a statement uses, and whether it
+	 * reads the console or may throw
+	 */
+	static class Uses extends ASTScanner {
+		final Images images;
+		final ConstantFolder folded;
+		/* the target of the pixel assignment being scanned, whose loops are over x and y, or null */
+		final String target;
+		final Set<String> names = new HashSet<>();
+		boolean effects = false;
+
+		Uses(Images images, ConstantFolder folded, String target) {
+			this.images = images;
+			this.folded = folded;
+			this.target = target;
+		}
+
+		void scan(ASTNode node) throws Exception {
+			scan(node, null);
+		}
+
+		/* Scans the expression that CodeGenVisitor generates in place of expr */
+		private boolean replaced(Expr expr) throws Exception {
+			if (folded.constant(expr) != null) {
+				return true;
+			}
+			Expr replacement = folded.replacement(expr);
+			if (replacement != null) {
+				replacement.visit(this, null);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+			names.add(identExpr.getText());
+			return null;
+		}
+
+		@Override
+		public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+			effects = true;
+			return null;
+		}
+
+		@Override
+		public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+			if (replaced(binaryExpr)) {
+				return null;
+			}
+			if (LoopInvariants.mayThrow(binaryExpr, folded)
+					|| binaryExpr.getLeft().getType() == IMAGE && binaryExpr.getRight().getType() == IMAGE) {
+				effects = true;
+			}
+			return super.visitBinaryExpr(binaryExpr, arg);
+		}
+
+		@Override
+		public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+			return replaced(unaryExpression) ? null : super.visitUnaryExpr(unaryExpression, arg);
+		}
+
+		@Override
+		public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+			return replaced(colorExpr) ? null : super.visitColorExpr(colorExpr, arg);
+		}
+
+		@Override
+		public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+			return replaced(conditionalExpr) ? null : super.visitConditionalExpr(conditionalExpr, arg);
+		}
+
+		@Override
+		public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+			if (!inImage(unaryExprPostfix)) {
+				effects = true;
+			}
+			return super.visitUnaryExprPostfix(unaryExprPostfix, arg);
+		}
+
+		private boolean inImage(UnaryExprPostfix read) {
+			PixelSelector selector = read.getSelector();
+			if (target == null || !(read.getExpr() instanceof IdentExpr image) || !isIdent(selector.getX(), "x")
+					|| !isIdent(selector.getY(), "y")) {
+				return false;
+			}
+			if (image.getText().equals(target)) {
+				return true;
+			}
+			String size = images.size(target, folded);
+			return size != null && size.equals(images.size(image.getText(), folded));
+		}
+	}
+}
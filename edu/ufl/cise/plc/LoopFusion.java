@@ -0,0 +1,187 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Dimension;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.PixelSelector;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+
+/**
+ * Finds runs of adjacent pixel assignments that can share one loop nest.
+ *
+ * a[x,y] = ...;
+ * image[w,h] b;
+ * b[x,y] = ... a[x,y] ...;
+ *
+ * CodeGenVisitor generates each pixel assignment as a loop over every pixel of its target.  The
+ * loops of a run are fused when their pixel expressions only look at images through the pixel
+ * being set, img[x,y], and through getWidth and getHeight.  Then the value computed for a pixel
+ * only depends on values set for the same pixel by earlier statements of the run, which are
+ * set in the same iteration of the fused loop, so the images end up the same.  This holds even
+ * if some of the images are the same BufferedImage.
+ *
+ * Declarations of images with a size and no initializer may be in the run: they are generated
+ * before the fused loop.  So that this does not change which exception a program throws, their
+ * sizes must be positive int constants or the size of an image.
+ *
+ * The fused loop only runs if all the targets have the size of the first one; otherwise the
+ * separate loops run.  If a pixel expression throws, the fused loop may have set more pixels of
+ * the other targets than the separate loops would have, which is only visible in images passed
+ * to the program as parameters.
+ */
+class LoopFusion {
+
+	static class Group {
+		/* image declarations moved before the loop, in program order */
+		final List<VarDeclaration> declarations = new ArrayList<>();
+		/* the fused pixel assignments, in program order */
+		final List<AssignmentStatement> loops = new ArrayList<>();
+	}
+
+	final Map<ASTNode, Group> groups = new IdentityHashMap<>();
+
+	/**
+	 * Returns the group that the given statement or declaration belongs to, or null.  A group is
+	 * generated at its first pixel assignment.
+	 */
+	Group get(ASTNode node) {
+		return groups.get(node);
+	}
+
+	static LoopFusion find(Program program, PointwisePipelines pipelines, ConstantFolder folded, DeadStores dead)
+			throws Exception {
+		LoopFusion fusion = new LoopFusion();
+		Group run = new Group();
+		List<VarDeclaration> pending = new ArrayList<>();
+		for (ASTNode node : program.getDecsAndStatements()) {
+			if (dead.contains(node)) {
+				// not generated, so it does not separate the statements around it
+				continue;
+			}
+			if (node instanceof AssignmentStatement assignment && pipelines.get(assignment) == null
+					&& isFusable(assignment)) {
+				run.loops.add(assignment);
+				run.declarations.addAll(pending);
+				pending.clear();
+			} else if (!run.loops.isEmpty() && node instanceof VarDeclaration declaration
+					&& pipelines.get(declaration) == null && isMovable(declaration, folded)) {
+				pending.add(declaration);
+			} else {
+				fusion.add(run);
+				run = new Group();
+				pending.clear();
+			}
+		}
+		fusion.add(run);
+		return fusion;
+	}
+
+	private void add(Group run) {
+		if (run.loops.size() < 2) {
+			return;
+		}
+		for (VarDeclaration declaration : run.declarations) {
+			groups.put(declaration, run);
+		}
+		for (AssignmentStatement assignment : run.loops) {
+			groups.put(assignment, run);
+		}
+	}
+
+	/*
+	 * A pixel assignment that CodeGenVisitor generates as a loop with x and y as the loop
+	 * variables, whose expression only uses images through the pixel at x,y and their size.
+	 */
+	static boolean isFusable(AssignmentStatement assignment) throws Exception {
+		if (assignment.getTargetDec().getType() != IMAGE) {
+			return false;
+		}
+		Expr expr = assignment.getExpr();
+		if (expr.getType() != INT
+				&& !(expr.getType() == COLOR && (expr.getCoerceTo() == null || expr.getCoerceTo() == COLOR))) {
+			return false;
+		}
+		PixelSelector selector = assignment.getSelector();
+		if (selector != null && !(isIdent(selector.getX(), "x") && isIdent(selector.getY(), "y"))) {
+			return false;
+		}
+		return SamePixel.only(expr);
+	}
+
+	/* An image declaration with a size that cannot fail to be created */
+	static boolean isMovable(VarDeclaration declaration, ConstantFolder folded) {
+		Dimension dim = declaration.getDim();
+		return declaration.getType() == IMAGE && declaration.getOp() == null && dim != null
+				&& isPositive(dim.getWidth(), folded) && isPositive(dim.getHeight(), folded);
+	}
+
+	private static boolean isPositive(Expr size, ConstantFolder folded) {
+		if (folded.value(size) instanceof Integer i) {
+			return i > 0;
+		}
+		return size instanceof UnaryExpr unary && unary.getOp().getKind() == Kind.IMAGE_OP
+				&& unary.getExpr() instanceof IdentExpr;
+	}
+
+	private static boolean isIdent(Expr expr, String name) {
+		return expr instanceof IdentExpr && expr.getText().equals(name);
+	}
+
+	/* Finds uses of images other than img[x,y], getWidth img, and getHeight img */
+	static class SamePixel extends ASTScanner {
+		boolean other = false;
+
+		static boolean only(Expr expr) throws Exception {
+			SamePixel scanner = new SamePixel();
+			expr.visit(scanner, null);
+			return !scanner.other;
+		}
+
+		@Override
+		public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+			if (identExpr.getType() == IMAGE) {
+				other = true;
+			}
+			return null;
+		}
+
+		@Override
+		public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+			other = true;
+			return null;
+		}
+
+		@Override
+		public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+			if (unaryExpression.getOp().getKind() == Kind.IMAGE_OP && unaryExpression.getExpr() instanceof IdentExpr) {
+				return null;
+			}
+			return super.visitUnaryExpr(unaryExpression, arg);
+		}
+
+		@Override
+		public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+			PixelSelector selector = unaryExprPostfix.getSelector();
+			if (!(unaryExprPostfix.getExpr() instanceof IdentExpr && isIdent(selector.getX(), "x")
+					&& isIdent(selector.getY(), "y"))) {
+				other = true;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.BinaryExpr;
+import edu.ufl.cise.plc.ast.BooleanLitExpr;
+import edu.ufl.cise.plc.ast.ColorConstExpr;
+import edu.ufl.cise.plc.ast.ColorExpr;
+import edu.ufl.cise.plc.ast.ConditionalExpr;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.FloatLitExpr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.IntLitExpr;
+import edu.ufl.cise.plc.ast.StringLitExpr;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.runtime.ColorTuple;
+
+/**
+ * Finds the sub-expressions of the expression in a pixel loop that have the same value for
+ * every pixel, so that CodeGenVisitor can compute them once before the loop.
+ *
+ * An expression is invariant if it does not use the loop variables, pixels of an image, or an
+ * image variable other than through getWidth and getHeight, since the loop changes the pixels
+ * of its target image.  Invariant expressions are only hoisted if they cannot throw, so that
+ * computing them before the loop does not change which exception the loop throws: an int or
+ * color division or remainder is only hoisted if its divisor is a non-zero constant.
+ *
+ * Only the largest invariant sub-expressions that are BinaryExpr, UnaryExpr, ColorExpr, or
+ * ConditionalExpr are hoisted; literals, variables, and folded int, float, and boolean
+ * constants are as cheap as a local variable.
+ */
+class LoopInvariants extends ASTScanner {
+
+	final Set<String> loopVariables;
+	final ConstantFolder folded;
+	/* the expressions to hoist, in the order the loop would first evaluate them */
+	final List<Expr> invariants = new ArrayList<>();
+
+	LoopInvariants(Set<String> loopVariables, ConstantFolder folded) {
+		this.loopVariables = loopVariables;
+		this.folded = folded;
+	}
+
+	/**
+	 * Returns the expressions to compute before a loop over the given variables that evaluates
+	 * expr for each pixel.  These are the expressions that CodeGenVisitor visits when it
+	 * generates expr, after replacements made by the ConstantFolder.
+	 */
+	static List<Expr> find(Expr expr, Set<String> loopVariables, ConstantFolder folded) throws Exception {
+		LoopInvariants scanner = new LoopInvariants(loopVariables, folded);
+		expr.visit(scanner, null);
+		return scanner.invariants;
+	}
+
+	/*
+	 * Hoists expr if it is invariant, or continues with its replacement.  Returns false if the
+	 * children of expr should be scanned.
+	 */
+	private boolean hoisted(Expr expr) throws Exception {
+		Object value = folded.constant(expr);
+		if (value != null) {
+			if (value instanceof ColorTuple) {
+				invariants.add(expr);
+			}
+			return true;
+		}
+		Expr replacement = folded.replacement(expr);
+		if (replacement != null) {
+			replacement.visit(this, null);
+			return true;
+		}
+		if (isInvariant(expr)) {
+			invariants.add(expr);
+			return true;
+		}
+		return false;
+	}
+
+	boolean isInvariant(Expr expr) {
+		if (expr.getType() == IMAGE) {
+			return false;
+		}
+		if (expr instanceof IntLitExpr || expr instanceof FloatLitExpr || expr instanceof BooleanLitExpr
+				|| expr instanceof StringLitExpr || expr instanceof ColorConstExpr) {
+			return true;
+		}
+		if (expr instanceof IdentExpr) {
+			return !loopVariables.contains(expr.getText());
+		}
+		if (expr instanceof UnaryExpr unary) {
+			if (unary.getOp().getKind() == Kind.IMAGE_OP) {
+				return unary.getExpr() instanceof IdentExpr;
+			}
+			return isInvariant(unary.getExpr());
+		}
+		if (expr instanceof BinaryExpr binary) {
+			return isInvariant(binary.getLeft()) && isInvariant(binary.getRight()) && !mayThrow(binary, folded);
+		}
+		if (expr instanceof ColorExpr color) {
+			return isInvariant(color.getRed()) && isInvariant(color.getGreen()) && isInvariant(color.getBlue());
+		}
+		if (expr instanceof ConditionalExpr conditional) {
+			return isInvariant(conditional.getCondition()) && isInvariant(conditional.getTrueCase())
+					&& isInvariant(conditional.getFalseCase());
+		}
+		// console input and pixels
+		return false;
+	}
+
+	/* Whether binary is an int or color division or remainder by a divisor that may be 0 */
+	static boolean mayThrow(BinaryExpr binary, ConstantFolder folded) {
+		Kind op = binary.getOp().getKind();
+		if (op != Kind.DIV && op != Kind.MOD || binary.getType() != INT && binary.getType() != COLOR) {
+			return false;
+		}
+		Object divisor = folded.value(binary.getRight());
+		if (divisor instanceof Integer i) {
+			return i == 0;
+		}
+		if (divisor instanceof ColorTuple c) {
+			return c.red == 0 || c.green == 0 || c.blue == 0;
+		}
+		return true;
+	}
+
+	@Override
+	public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+		return hoisted(binaryExpr) ? null : super.visitBinaryExpr(binaryExpr, arg);
+	}
+
+	@Override
+	public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+		return hoisted(unaryExpression) ? null : super.visitUnaryExpr(unaryExpression, arg);
+	}
+
+	@Override
+	public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+		return hoisted(colorExpr) ? null : super.visitColorExpr(colorExpr, arg);
+	}
+
+	@Override
+	public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+		return hoisted(conditionalExpr) ? null : super.visitConditionalExpr(conditionalExpr, arg);
+	}
+}
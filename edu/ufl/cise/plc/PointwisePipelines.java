@@ -0,0 +1,290 @@
+package edu.ufl.cise.plc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.NameDef;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.ReadStatement;
+import edu.ufl.cise.plc.ast.ReturnStatement;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+import edu.ufl.cise.plc.ast.WriteStatement;
+import edu.ufl.cise.plc.ast.Types.Type;
+
+/**
+ * Finds the point-wise image pipelines in a program: an image that is declared with a size, given
+ * a value by a single pixel assignment that only looks at the same pixel of images read from
+ * files or URLs, and then written to a file.
+ *
+ * image a <- "source";
+ * image[w,h] b;
+ * b[x,y] = ... a[x,y] ...;
+ * write b -> "result";
+ *
+ * CodeGenVisitor generates a call to ScanlineStream.transform at the write statement for each
+ * pipeline, instead of reading the sources into BufferedImages and filling in b.
+ *
+ * Moving the reads to the write statement must not change what the program does, so a pipeline is
+ * only recognized when b and the sources are not used anywhere else, every variable in the pixel
+ * expression keeps the value it had at the assignment, and no other IO happens between reading the
+ * first source and writing b.
+ */
+class PointwisePipelines {
+
+	static class Pipeline {
+		final VarDeclaration target;
+		final AssignmentStatement assignment;
+		final WriteStatement write;
+		final List<VarDeclaration> sources;
+
+		Pipeline(VarDeclaration target, AssignmentStatement assignment, WriteStatement write,
+				List<VarDeclaration> sources) {
+			this.target = target;
+			this.assignment = assignment;
+			this.write = write;
+			this.sources = sources;
+		}
+	}
+
+	/* name of the array holding the source pixels in the generated pixel function */
+	static final String PIXELS = "$px";
+
+	final Map<ASTNode, Pipeline> pipelines = new IdentityHashMap<>();
+	/* index of each streamed image in the pixel array of its pipeline */
+	final Map<String, Integer> sourceIndex = new HashMap<>();
+
+	/**
+	 * Returns the pipeline that the given declaration, assignment, or write statement belongs to, or
+	 * null.
+	 */
+	Pipeline get(ASTNode node) {
+		return pipelines.get(node);
+	}
+
+	/**
+	 * Returns the position of the named image among the sources of its pipeline, or null if the
+	 * image is not streamed.
+	 */
+	Integer sourceIndex(String name) {
+		return sourceIndex.get(name);
+	}
+
+	/**
+	 * Records, for each name, where it is used in the program.  Uses are identified by the index
+	 * of the declaration or statement that contains them.
+	 */
+	static class Uses extends ASTScanner {
+		int index = -1;
+		final Map<String, List<Integer>> idents = new HashMap<>();
+		final Map<String, List<UnaryExprPostfix>> pixels = new LinkedHashMap<>();
+		final Map<String, List<Integer>> targets = new HashMap<>();
+		final Map<String, Integer> declarations = new HashMap<>();
+		final List<Integer> io = new ArrayList<>();
+
+		static <T> void add(Map<String, List<T>> map, String name, T value) {
+			map.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+		}
+
+		static <T> List<T> get(Map<String, List<T>> map, String name) {
+			return map.getOrDefault(name, List.of());
+		}
+
+		@Override
+		public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+			add(idents, identExpr.getText(), index);
+			return null;
+		}
+
+		@Override
+		public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+			if (unaryExprPostfix.getExpr() instanceof IdentExpr) {
+				add(pixels, unaryExprPostfix.getExpr().getText(), unaryExprPostfix);
+			} else {
+				scan(unaryExprPostfix.getExpr(), arg);
+			}
+			scan(unaryExprPostfix.getSelector(), arg);
+			return null;
+		}
+
+		@Override
+		public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+			io.add(index);
+			return null;
+		}
+
+		@Override
+		public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+			add(targets, assignmentStatement.getName(), index);
+			return super.visitAssignmentStatement(assignmentStatement, arg);
+		}
+
+		@Override
+		public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+			add(targets, readStatement.getName(), index);
+			io.add(index);
+			return super.visitReadStatement(readStatement, arg);
+		}
+
+		@Override
+		public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+			io.add(index);
+			return super.visitWriteStatement(writeStatement, arg);
+		}
+
+		@Override
+		public Object visitReturnStatement(ReturnStatement returnStatement, Object arg) throws Exception {
+			io.add(index);
+			return super.visitReturnStatement(returnStatement, arg);
+		}
+
+		@Override
+		public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+			declarations.put(declaration.getName(), index);
+			if (declaration.getOp() != null && declaration.getOp().getKind() == Kind.LARROW) {
+				io.add(index);
+			}
+			return super.visitVarDeclaration(declaration, arg);
+		}
+
+		@Override
+		public Object visitNameDef(NameDef nameDef, Object arg) throws Exception {
+			if (index < 0) {
+				declarations.put(nameDef.getName(), index);
+			}
+			return null;
+		}
+
+		@Override
+		public Object visitProgram(Program program, Object arg) throws Exception {
+			for (NameDef param : program.getParams()) {
+				scan(param, arg);
+			}
+			List<ASTNode> nodes = program.getDecsAndStatements();
+			for (index = 0; index < nodes.size(); index++) {
+				scan(nodes.get(index), arg);
+			}
+			return null;
+		}
+	}
+
+	static PointwisePipelines find(Program program) throws Exception {
+		PointwisePipelines result = new PointwisePipelines();
+		Uses uses = new Uses();
+		program.visit(uses, null);
+		List<ASTNode> nodes = program.getDecsAndStatements();
+		for (int t = 0; t < nodes.size(); t++) {
+			if (nodes.get(t) instanceof VarDeclaration target && target.getType() == Type.IMAGE
+					&& target.getOp() == null && target.getDim() != null) {
+				Pipeline pipeline = result.match(program, uses, t, target);
+				if (pipeline != null) {
+					result.pipelines.put(pipeline.target, pipeline);
+					result.pipelines.put(pipeline.assignment, pipeline);
+					result.pipelines.put(pipeline.write, pipeline);
+					for (int i = 0; i < pipeline.sources.size(); i++) {
+						VarDeclaration source = pipeline.sources.get(i);
+						result.pipelines.put(source, pipeline);
+						result.sourceIndex.put(source.getName(), i);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private Pipeline match(Program program, Uses uses, int t, VarDeclaration target) {
+		List<ASTNode> nodes = program.getDecsAndStatements();
+		String name = target.getName();
+
+		List<Integer> assignments = Uses.get(uses.targets, name);
+		List<Integer> references = Uses.get(uses.idents, name);
+		if (assignments.size() != 1 || references.size() != 1 || !Uses.get(uses.pixels, name).isEmpty()) {
+			return null;
+		}
+		int a = assignments.get(0);
+		int w = references.get(0);
+		if (!(nodes.get(a) instanceof AssignmentStatement assignment) || assignment.getSelector() == null
+				|| !(nodes.get(w) instanceof WriteStatement write) || !(t < a && a < w)) {
+			return null;
+		}
+		Expr expr = assignment.getExpr();
+		if (!(expr.getType() == Type.INT || expr.getType() == Type.COLOR)
+				|| !(write.getSource() instanceof IdentExpr) || write.getDest().getType() != Type.STRING) {
+			return null;
+		}
+		String x = assignment.getSelector().getX().getText();
+		String y = assignment.getSelector().getY().getText();
+		// these become parameters of a lambda at the write, where they must not be in scope
+		for (String parameter : List.of(x, y, PIXELS)) {
+			Integer declaration = uses.declarations.get(parameter);
+			if (declaration != null && declaration < w) {
+				return null;
+			}
+		}
+
+		Uses exprUses = new Uses();
+		try {
+			expr.visit(exprUses, null);
+		} catch (Exception e) {
+			return null;
+		}
+		if (!exprUses.io.isEmpty()) {
+			return null;
+		}
+
+		List<VarDeclaration> sources = new ArrayList<>();
+		int first = a;
+		for (Map.Entry<String, List<UnaryExprPostfix>> entry : exprUses.pixels.entrySet()) {
+			String image = entry.getKey();
+			for (UnaryExprPostfix pixel : entry.getValue()) {
+				if (!(pixel.getSelector().getX() instanceof IdentExpr) || !(pixel.getSelector().getY() instanceof IdentExpr)
+						|| !pixel.getSelector().getX().getText().equals(x) || !pixel.getSelector().getY().getText().equals(y)) {
+					return null;
+				}
+			}
+			Integer s = uses.declarations.get(image);
+			if (s == null || s < 0 || !(nodes.get(s) instanceof VarDeclaration source)
+					|| source.getType() != Type.IMAGE || source.getDim() != null
+					|| source.getOp() == null || source.getOp().getKind() != Kind.LARROW
+					|| source.getExpr().getType() != Type.STRING
+					|| !Uses.get(uses.idents, image).isEmpty() || !Uses.get(uses.targets, image).isEmpty()
+					|| Uses.get(uses.pixels, image).size() != entry.getValue().size()) {
+				return null;
+			}
+			sources.add(source);
+			first = Math.min(first, s);
+		}
+
+		for (String ident : exprUses.idents.keySet()) {
+			if (ident.equals(x) || ident.equals(y)) {
+				continue;
+			}
+			Integer d = uses.declarations.get(ident);
+			if (d == null || !Uses.get(uses.targets, ident).isEmpty()) {
+				return null;
+			}
+			if (d >= 0 && nodes.get(d) instanceof VarDeclaration declaration && declaration.getExpr() == null
+					&& declaration.getDim() == null) {
+				return null;
+			}
+		}
+
+		for (int io : uses.io) {
+			if (first < io && io < w && !sources.contains(nodes.get(io))) {
+				return null;
+			}
+		}
+		return new Pipeline(target, assignment, write, sources);
+	}
+}
@@ -0,0 +1,99 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.BinaryExpr;
+import edu.ufl.cise.plc.ast.Expr;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.PixelSelector;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+
+/**
+ * Finds the pixel reads of a pixel assignment that can index the pixel array of the image
+ * directly, because they are always in the image:
+ *
+ * b[x,y] = a[x,y] + a[x+1,y+2];
+ *
+ * The loops of a pixel assignment go over the pixels of its target, so x is in [0, width of
+ * the target) and y in [0, height of the target).  A read a[x+dx,y+dy], where dx and dy are
+ * int constants that are not negative, is in a if the target's width + dx is at most a's
+ * width and the target's height + dy is at most a's height.  CodeGenVisitor generates one
+ * check of these sizes, and of ImageOps.pixels for the target and each image read, before the
+ * loops.  If it succeeds, the loops set the pixels of the target and read these pixels
+ * through the arrays; otherwise they are the usual loops.
+ *
+ * Images that are represented by a TiledImage or streamed by a PointwisePipeline have no
+ * pixel array.  Other reads, such as a[x-1,y], which always throws at x = 0, use getRGB.
+ */
+class RasterAccess {
+
+	/* the largest offsets read from each image */
+	final Map<String, int[]> offsets = new LinkedHashMap<>();
+	/* the offsets of each read through a pixel array */
+	final Map<UnaryExprPostfix, int[]> reads = new IdentityHashMap<>();
+
+	/**
+	 * Returns the reads of assignment, a pixel assignment generated as loops over x and y, or
+	 * null if its target has no pixel array.
+	 */
+	static RasterAccess find(AssignmentStatement assignment, Set<String> tiledImages, PointwisePipelines pipelines,
+			ConstantFolder folded) throws Exception {
+		PixelSelector selector = assignment.getSelector();
+		if (tiledImages.contains(assignment.getName()) || selector != null
+				&& !(offset(selector.getX(), "x", folded) == 0 && offset(selector.getY(), "y", folded) == 0)) {
+			return null;
+		}
+		RasterAccess access = new RasterAccess();
+		access.offsets.put(assignment.getName(), new int[] { 0, 0 });
+		assignment.getExpr().visit(new ASTScanner() {
+			@Override
+			public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+				super.visitUnaryExprPostfix(unaryExprPostfix, arg);
+				String image = unaryExprPostfix.getExpr().getText();
+				int dx = offset(unaryExprPostfix.getSelector().getX(), "x", folded);
+				int dy = offset(unaryExprPostfix.getSelector().getY(), "y", folded);
+				if (unaryExprPostfix.getExpr() instanceof IdentExpr && !tiledImages.contains(image)
+						&& pipelines.sourceIndex(image) == null && dx >= 0 && dy >= 0) {
+					int[] max = access.offsets.computeIfAbsent(image, k -> new int[] { 0, 0 });
+					max[0] = Math.max(max[0], dx);
+					max[1] = Math.max(max[1], dy);
+					access.reads.put(unaryExprPostfix, new int[] { dx, dy });
+				}
+				return null;
+			}
+		}, null);
+		return access;
+	}
+
+	/* d if expr is the loop variable, variable + d, or d + variable, for an int constant d, or -1 */
+	static int offset(Expr expr, String variable, ConstantFolder folded) {
+		Expr replacement = folded.replacement(expr);
+		if (replacement != null) {
+			return offset(replacement, variable, folded);
+		}
+		if (expr instanceof IdentExpr && expr.getText().equals(variable) && expr.getType() == INT
+				&& (expr.getCoerceTo() == null || expr.getCoerceTo() == INT)) {
+			return 0;
+		}
+		if (expr instanceof BinaryExpr binary && binary.getOp().getKind() == Kind.PLUS && binary.getType() == INT
+				&& folded.constant(binary) == null) {
+			Expr left = binary.getLeft();
+			Expr right = binary.getRight();
+			if (offset(left, variable, folded) == 0 && folded.value(right) instanceof Integer d && d >= 0) {
+				return d;
+			}
+			if (offset(right, variable, folded) == 0 && folded.value(left) instanceof Integer d && d >= 0) {
+				return d;
+			}
+		}
+		return -1;
+	}
+}
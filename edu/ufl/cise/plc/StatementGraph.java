@@ -0,0 +1,267 @@
+package edu.ufl.cise.plc;
+
+import static edu.ufl.cise.plc.ast.Types.Type.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.ConsoleExpr;
+import edu.ufl.cise.plc.ast.Declaration;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.NameDef;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.ReadStatement;
+import edu.ufl.cise.plc.ast.ReturnStatement;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+import edu.ufl.cise.plc.ast.WriteStatement;
+
+/**
+ * Finds the order that the declarations and statements of a program must keep, so that
+ * CodeGenVisitor can generate them as tasks of a StatementScheduler that run at the same time
+ * when they do not depend on each other.
+ *
+ * image a <- "first";
+ * image c <- "second";
+ * image[getWidth a, getHeight a] r;
+ * r[x,y] = <<getRed a[x,y], 0, 0>>;
+ * image[getWidth c, getHeight c] g;
+ * g[x,y] = <<0, getGreen c[x,y], 0>>;
+ *
+ * A statement depends on an earlier one if one of them gives a value to a variable that the
+ * other uses or gives a value to.  Images that may be the same BufferedImage count as one
+ * variable, and a pixel assignment gives a value to its target.  Declarations without a value,
+ * such as int k;, are not tasks: the variable is declared by the statement that gives it its
+ * first value.
+ *
+ * Effects keep their order.  Console input and output, value file reads, reads into a variable,
+ * writes, the return statement, and pixel assignments to images the caller can see depend on
+ * every earlier statement, so they happen only if the statements before them did not fail, and
+ * in program order.  Images read from files depend on the earlier effects only, since reading a
+ * file has no effect of its own.  Statements that fail, and those that run because they do not
+ * depend on them, change no variable that is used after the program returns.
+ *
+ * Programs are only scheduled if two expensive statements, pixel assignments or images read from
+ * files, can run at the same time, and if they have no point-wise pipeline.
+ */
+class StatementGraph {
+
+	static class Task {
+		final ASTNode node;
+		final int index;
+		/* the variable the node gives a value, or null */
+		final String target;
+		/* the variables with a value that the generated code of the node refers to */
+		final Set<String> names = new LinkedHashSet<>();
+		/* the earlier tasks that must finish first, other than those they depend on, in program order */
+		final List<Task> dependences = new ArrayList<>();
+		/* the indexes of all the tasks that must finish first */
+		final BitSet before = new BitSet();
+		/* the variables used and given a value, with images that may be the same merged */
+		final Set<String> reads = new HashSet<>();
+		final Set<String> writes = new HashSet<>();
+		boolean effect = false;
+		boolean imageRead = false;
+		boolean expensive = false;
+
+		Task(ASTNode node, int index, String target) {
+			this.node = node;
+			this.index = index;
+			this.target = target;
+		}
+	}
+
+	final List<Task> tasks = new ArrayList<>();
+	final Map<ASTNode, Task> byNode = new IdentityHashMap<>();
+	/* the declaration of each parameter and variable */
+	final Map<String, Declaration> declarations = new HashMap<>();
+
+	/**
+	 * Returns the task of the given declaration or statement, or null if it is not a task.
+	 */
+	Task get(ASTNode node) {
+		return byNode.get(node);
+	}
+
+	/**
+	 * Returns the tasks of program, or null if it should run statement after statement.
+	 */
+	static StatementGraph find(Program program, DeadStores dead, PointwisePipelines pipelines) throws Exception {
+		if (!pipelines.pipelines.isEmpty()) {
+			return null;
+		}
+		StatementGraph graph = new StatementGraph();
+		DeadStores.Images images = new DeadStores.Images();
+		program.visit(images, null);
+		// image variables that refer to images the caller can see
+		Set<String> shared = new HashSet<>();
+		// variables that have a value
+		Set<String> defined = new HashSet<>();
+		for (NameDef param : program.getParams()) {
+			graph.declarations.put(param.getName(), param);
+			if (param.getType() == IMAGE) {
+				shared.add(images.find(param.getName()));
+			}
+			defined.add(param.getName());
+		}
+		for (ASTNode node : program.getDecsAndStatements()) {
+			if (node instanceof VarDeclaration declaration) {
+				graph.declarations.put(declaration.getName(), declaration);
+			}
+			Task task = dead.contains(node) ? null : task(node, graph.tasks.size(), dead);
+			if (task == null) {
+				continue;
+			}
+			Names names = new Names();
+			node.visit(names, null);
+			if (node instanceof AssignmentStatement assignment) {
+				names.scan(assignment.getTargetDec().getDim());
+			} else if (node instanceof ReadStatement read) {
+				names.scan(read.getTargetDec().getDim());
+			}
+			for (String name : names.names) {
+				if (name.equals(task.target) && (node instanceof VarDeclaration || !defined.contains(name))) {
+					// declared by the task
+					continue;
+				}
+				if (!defined.contains(name)) {
+					if (name.equals("x") || name.equals("y")) {
+						continue;
+					}
+					return null;
+				}
+				task.names.add(name);
+				task.reads.add(images.find(name));
+			}
+			if (task.target != null) {
+				task.writes.add(images.find(task.target));
+				task.effect |= shared.contains(images.find(task.target));
+				defined.add(task.target);
+			}
+			task.effect |= names.console;
+			graph.add(task);
+		}
+		return graph.isParallel() ? graph : null;
+	}
+
+	/* The task of node, or null if it only declares a variable */
+	private static Task task(ASTNode node, int index, DeadStores dead) {
+		if (node instanceof VarDeclaration declaration) {
+			boolean value = declaration.getExpr() != null && !dead.contains(declaration.getExpr())
+					|| declaration.getType() == IMAGE && declaration.getDim() != null;
+			if (!value) {
+				return null;
+			}
+			Task task = new Task(node, index, declaration.getName());
+			if (declaration.getType() == IMAGE && declaration.getExpr() != null
+					&& declaration.getExpr().getType() == STRING) {
+				task.imageRead = true;
+				task.expensive = true;
+			} else if (declaration.getOp() != null && declaration.getOp().getKind() == Kind.LARROW) {
+				task.effect = true;
+			}
+			return task;
+		}
+		if (node instanceof AssignmentStatement assignment) {
+			Task task = new Task(node, index, assignment.getName());
+			task.expensive = assignment.getTargetDec().getType() == IMAGE && assignment.getExpr().getType() != IMAGE;
+			return task;
+		}
+		if (node instanceof ReadStatement read) {
+			Task task = new Task(node, index, read.getName());
+			task.effect = true;
+			return task;
+		}
+		if (node instanceof WriteStatement || node instanceof ReturnStatement) {
+			Task task = new Task(node, index, null);
+			task.effect = true;
+			return task;
+		}
+		return null;
+	}
+
+	private void add(Task task) {
+		for (int i = tasks.size() - 1; i >= 0; i--) {
+			Task earlier = tasks.get(i);
+			if (!task.before.get(i)
+					&& (task.effect || task.imageRead && earlier.effect || conflict(earlier, task))) {
+				task.dependences.add(0, earlier);
+				task.before.set(i);
+				task.before.or(earlier.before);
+			}
+		}
+		tasks.add(task);
+		byNode.put(task.node, task);
+	}
+
+	private static boolean conflict(Task earlier, Task later) {
+		for (String name : earlier.writes) {
+			if (later.reads.contains(name) || later.writes.contains(name)) {
+				return true;
+			}
+		}
+		for (String name : later.writes) {
+			if (earlier.reads.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Whether two expensive tasks can run at the same time */
+	private boolean isParallel() {
+		for (Task task : tasks) {
+			for (Task other : tasks.subList(0, task.index)) {
+				if (task.expensive && other.expensive && !task.before.get(other.index)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/* Finds the variables that a declaration or statement refers to, and whether it uses the console */
+	static class Names extends ASTScanner {
+		final Set<String> names = new LinkedHashSet<>();
+		boolean console = false;
+
+		void scan(ASTNode node) throws Exception {
+			scan(node, null);
+		}
+
+		@Override
+		public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+			names.add(identExpr.getText());
+			return null;
+		}
+
+		@Override
+		public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+			console = true;
+			return null;
+		}
+
+		@Override
+		public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg)
+				throws Exception {
+			names.add(assignmentStatement.getName());
+			return super.visitAssignmentStatement(assignmentStatement, arg);
+		}
+
+		@Override
+		public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+			names.add(readStatement.getName());
+			return super.visitReadStatement(readStatement, arg);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package edu.ufl.cise.plc;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.ufl.cise.plc.IToken.Kind;
+import edu.ufl.cise.plc.ast.ASTScanner;
+import edu.ufl.cise.plc.ast.AssignmentStatement;
+import edu.ufl.cise.plc.ast.Dimension;
+import edu.ufl.cise.plc.ast.IdentExpr;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.ast.ReadStatement;
+import edu.ufl.cise.plc.ast.UnaryExpr;
+import edu.ufl.cise.plc.ast.UnaryExprPostfix;
+import edu.ufl.cise.plc.ast.VarDeclaration;
+import edu.ufl.cise.plc.ast.WriteStatement;
+import edu.ufl.cise.plc.ast.Types.Type;
+import edu.ufl.cise.plc.runtime.TiledImage;
+
+/**
+ * Finds the image variables that can be represented by a TiledImage instead of a BufferedImage:
+ * those declared with a size and no initializer, and only used in
+ *
+ * b[x,y] = e;
+ * b[x,y]
+ * getWidth b, getHeight b
+ * write b -> "file";
+ *
+ * The generated code for these uses is the same for both representations.
+ *
+ * Only images whose size is constant and has at least TiledImage.mapThreshold pixels, when the
+ * program is compiled, are tiled.  Smaller images gain nothing from being off the heap, and as
+ * BufferedImages their pixel loops can index the pixel array (see RasterAccess).
+ */
+class TiledImages extends ASTScanner {
+
+	final ConstantFolder folded;
+	final Set<String> declared = new HashSet<>();
+	final Set<String> excluded = new HashSet<>();
+
+	TiledImages(ConstantFolder folded) {
+		this.folded = folded;
+	}
+
+	static Set<String> find(Program program, ConstantFolder folded) throws Exception {
+		TiledImages scanner = new TiledImages(folded);
+		program.visit(scanner, null);
+		scanner.declared.removeAll(scanner.excluded);
+		return scanner.declared;
+	}
+
+	@Override
+	public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+		if (declaration.getType() == Type.IMAGE && declaration.getOp() == null && declaration.getDim() != null
+				&& isLarge(declaration.getDim())) {
+			declared.add(declaration.getName());
+		}
+		return super.visitVarDeclaration(declaration, arg);
+	}
+
+	/* whether dim is constant and has at least TiledImage.mapThreshold pixels */
+	boolean isLarge(Dimension dim) {
+		return folded.value(dim.getWidth()) instanceof Integer width
+				&& folded.value(dim.getHeight()) instanceof Integer height
+				&& (long) width * height >= TiledImage.mapThreshold;
+	}
+
+	@Override
+	public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+		excluded.add(identExpr.getText());
+		return null;
+	}
+
+	@Override
+	public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+		if (unaryExpression.getOp().getKind() == Kind.IMAGE_OP && unaryExpression.getExpr() instanceof IdentExpr) {
+			return null;
+		}
+		return super.visitUnaryExpr(unaryExpression, arg);
+	}
+
+	@Override
+	public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+		if (!(unaryExprPostfix.getExpr() instanceof IdentExpr)) {
+			scan(unaryExprPostfix.getExpr(), arg);
+		}
+		scan(unaryExprPostfix.getSelector(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+		if (assignmentStatement.getSelector() == null) {
+			excluded.add(assignmentStatement.getName());
+		}
+		return super.visitAssignmentStatement(assignmentStatement, arg);
+	}
+
+	@Override
+	public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+		excluded.add(readStatement.getName());
+		return super.visitReadStatement(readStatement, arg);
+	}
+
+	@Override
+	public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+		if (writeStatement.getSource() instanceof IdentExpr && writeStatement.getDest().getType() == Type.STRING) {
+			scan(writeStatement.getDest(), arg);
+			return null;
+		}
+		return super.visitWriteStatement(writeStatement, arg);
+	}
+}
@@ -0,0 +1,159 @@
+package edu.ufl.cise.plc.ast;
+
+/**
+ * An ASTVisitor that visits every child of every node and returns null.  Analyses that are
+ * only interested in a few kinds of nodes can extend this class and override the
+ * corresponding visit methods, calling super to continue into the children.
+ *
+ * Children are visited in source order.
+ */
+public abstract class ASTScanner implements ASTVisitor {
+
+	protected void scan(ASTNode node, Object arg) throws Exception {
+		if (node != null) {
+			node.visit(this, arg);
+		}
+	}
+
+	@Override
+	public Object visitBooleanLitExpr(BooleanLitExpr booleanLitExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitStringLitExpr(StringLitExpr stringLitExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitIntLitExpr(IntLitExpr intLitExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitFloatLitExpr(FloatLitExpr floatLitExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitColorConstExpr(ColorConstExpr colorConstExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitConsoleExpr(ConsoleExpr consoleExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitColorExpr(ColorExpr colorExpr, Object arg) throws Exception {
+		scan(colorExpr.getRed(), arg);
+		scan(colorExpr.getGreen(), arg);
+		scan(colorExpr.getBlue(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitUnaryExpr(UnaryExpr unaryExpression, Object arg) throws Exception {
+		scan(unaryExpression.getExpr(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitBinaryExpr(BinaryExpr binaryExpr, Object arg) throws Exception {
+		scan(binaryExpr.getLeft(), arg);
+		scan(binaryExpr.getRight(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitIdentExpr(IdentExpr identExpr, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitConditionalExpr(ConditionalExpr conditionalExpr, Object arg) throws Exception {
+		scan(conditionalExpr.getCondition(), arg);
+		scan(conditionalExpr.getTrueCase(), arg);
+		scan(conditionalExpr.getFalseCase(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitDimension(Dimension dimension, Object arg) throws Exception {
+		scan(dimension.getWidth(), arg);
+		scan(dimension.getHeight(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitPixelSelector(PixelSelector pixelSelector, Object arg) throws Exception {
+		scan(pixelSelector.getX(), arg);
+		scan(pixelSelector.getY(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg) throws Exception {
+		scan(assignmentStatement.getSelector(), arg);
+		scan(assignmentStatement.getExpr(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitWriteStatement(WriteStatement writeStatement, Object arg) throws Exception {
+		scan(writeStatement.getSource(), arg);
+		scan(writeStatement.getDest(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitReadStatement(ReadStatement readStatement, Object arg) throws Exception {
+		scan(readStatement.getSelector(), arg);
+		scan(readStatement.getSource(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitProgram(Program program, Object arg) throws Exception {
+		for (NameDef param : program.getParams()) {
+			scan(param, arg);
+		}
+		for (ASTNode node : program.getDecsAndStatements()) {
+			scan(node, arg);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitNameDef(NameDef nameDef, Object arg) throws Exception {
+		return null;
+	}
+
+	@Override
+	public Object visitNameDefWithDim(NameDefWithDim nameDefWithDim, Object arg) throws Exception {
+		scan(nameDefWithDim.getDim(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitReturnStatement(ReturnStatement returnStatement, Object arg) throws Exception {
+		scan(returnStatement.getExpr(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitVarDeclaration(VarDeclaration declaration, Object arg) throws Exception {
+		scan(declaration.getNameDef(), arg);
+		scan(declaration.getExpr(), arg);
+		return null;
+	}
+
+	@Override
+	public Object visitUnaryExprPostfix(UnaryExprPostfix unaryExprPostfix, Object arg) throws Exception {
+		scan(unaryExprPostfix.getExpr(), arg);
+		scan(unaryExprPostfix.getSelector(), arg);
+		return null;
+	}
+
+}
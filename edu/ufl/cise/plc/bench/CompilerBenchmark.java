@@ -0,0 +1,228 @@
+package edu.ufl.cise.plc.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.Lexer;
+import edu.ufl.cise.plc.Parser;
+import edu.ufl.cise.plc.Token;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.ast.ASTScanner;
+
+/**
+ * Measures the throughput of each phase of the compiler on a synthetic program: Lexer in
+ * tokens per second, Parser.parse in AST nodes per second, and the TypeCheckVisitor and
+ * CodeGenVisitor in AST nodes per second, with the bytes each phase allocates.
+ *
+ * Usage: CompilerBenchmark [blocks] [iterations] [results.csv] [baseline.csv]
+ *
+ * The program has the given number of blocks of declarations, pixel assignments and writes, so
+ * the corpus scales with blocks.  Each phase is run on fresh input for the given number of
+ * warmup iterations, which are not reported, and then measurement iterations; the median
+ * iteration is reported.  Allocation is counted by the ThreadMXBean for the benchmark thread,
+ * which is what the gc.alloc.rate.norm of a GC profiler reports per operation.
+ *
+ * The results are written to results.csv, one line per phase.  If a baseline written by an
+ * earlier run, for example on another commit, is given, each phase is also reported as a
+ * ratio of the baseline, above 1 if it is faster now.
+ *
+ */
+public class CompilerBenchmark {
+
+	/** Number of iterations run before the measured ones. */
+	public static int warmupIterations = 5;
+
+	static final String HEADER = "phase,unit,units,unitsPerSecond,bytesPerUnit";
+
+	/* the result of one phase */
+	record Result(String phase, String unit, long units, double unitsPerSecond, double bytesPerUnit) {
+		String csv() {
+			return phase + "," + unit + "," + units + "," + unitsPerSecond + "," + bytesPerUnit;
+		}
+	}
+
+	/* one run of a phase, on input prepared by an untimed step */
+	interface Phase {
+		Object prepare() throws Exception;
+
+		void run(Object input) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Path results = args.length > 2 ? Path.of(args[2]) : null;
+		Path baseline = args.length > 3 ? Path.of(args[3]) : null;
+
+		String source = program(blocks);
+		List<Result> measured = measure(source, iterations);
+		long tokens = measured.get(0).units();
+		long nodes = measured.get(1).units();
+
+		Map<String, Result> base = baseline == null ? Map.of() : read(baseline);
+		System.out.printf("%d blocks, %d chars, %d tokens, %d nodes%n", blocks, source.length(), tokens, nodes);
+		for (Result result : measured) {
+			System.out.printf("%-10s %14.0f %s/s %10.1f B/%s", result.phase(), result.unitsPerSecond(), result.unit(),
+					result.bytesPerUnit(), result.unit().substring(0, result.unit().length() - 1));
+			Result before = base.get(result.phase());
+			if (before != null) {
+				System.out.printf("   %5.2fx baseline", result.unitsPerSecond() / before.unitsPerSecond());
+			}
+			System.out.println();
+		}
+		if (results != null) {
+			write(results, measured);
+		}
+	}
+
+	/* The results of lexing, parsing, type checking and generating code for source */
+	static List<Result> measure(String source, int iterations) throws Exception {
+		long tokens = new Lexer(source).tokens.size();
+		long nodes = count(CompilerComponentFactory.getParser(source).parse());
+
+		List<Result> measured = new ArrayList<>();
+		measured.add(measure("lex", "tokens", tokens, iterations, new Phase() {
+			@Override
+			public Object prepare() {
+				return source;
+			}
+
+			@Override
+			public void run(Object input) {
+				new Lexer((String) input);
+			}
+		}));
+		measured.add(measure("parse", "nodes", nodes, iterations, new Phase() {
+			@Override
+			public Object prepare() {
+				return new Lexer(source).tokens;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void run(Object input) throws Exception {
+				new Parser((ArrayList<Token>) input).parse();
+			}
+		}));
+		measured.add(measure("typecheck", "nodes", nodes, iterations, new Phase() {
+			@Override
+			public Object prepare() throws Exception {
+				return CompilerComponentFactory.getParser(source).parse();
+			}
+
+			@Override
+			public void run(Object input) throws Exception {
+				((ASTNode) input).visit(CompilerComponentFactory.getTypeChecker(), null);
+			}
+		}));
+		measured.add(measure("codegen", "nodes", nodes, iterations, new Phase() {
+			@Override
+			public Object prepare() throws Exception {
+				ASTNode ast = CompilerComponentFactory.getParser(source).parse();
+				ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+				return ast;
+			}
+
+			@Override
+			public void run(Object input) throws Exception {
+				((ASTNode) input).visit(CompilerComponentFactory.getCodeGenerator("compilerBenchmark"), null);
+			}
+		}));
+		return measured;
+	}
+
+	static Result measure(String name, String unit, long units, int iterations, Phase phase) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long[] nanos = new long[iterations];
+		long[] bytes = new long[iterations];
+		for (int i = -warmupIterations; i < iterations; i++) {
+			Object input = phase.prepare();
+			long b0 = threads.getCurrentThreadAllocatedBytes();
+			long t0 = System.nanoTime();
+			phase.run(input);
+			long t1 = System.nanoTime();
+			long b1 = threads.getCurrentThreadAllocatedBytes();
+			if (i >= 0) {
+				nanos[i] = t1 - t0;
+				bytes[i] = b1 - b0;
+			}
+		}
+		Arrays.sort(nanos);
+		Arrays.sort(bytes);
+		return new Result(name, unit, units, units * 1e9 / nanos[iterations / 2],
+				(double) bytes[iterations / 2] / units);
+	}
+
+	/* Writes the results so that a later run can read them as its baseline */
+	static void write(Path file, List<Result> results) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add(HEADER);
+		for (Result result : results) {
+			lines.add(result.csv());
+		}
+		Files.write(file, lines);
+	}
+
+	/* Reads the results written by an earlier run, by phase */
+	static Map<String, Result> read(Path file) throws IOException {
+		Map<String, Result> results = new LinkedHashMap<>();
+		for (String line : Files.readAllLines(file)) {
+			if (line.isBlank() || line.equals(HEADER)) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			results.put(fields[0], new Result(fields[0], fields[1], Long.parseLong(fields[2]),
+					Double.parseDouble(fields[3]), Double.parseDouble(fields[4])));
+		}
+		return results;
+	}
+
+	/* The number of nodes in the tree rooted at node */
+	static long count(ASTNode node) throws Exception {
+		long[] count = { 0 };
+		node.visit(new ASTScanner() {
+			@Override
+			protected void scan(ASTNode child, Object arg) throws Exception {
+				if (child != null) {
+					count[0]++;
+				}
+				super.scan(child, arg);
+			}
+		}, null);
+		return count[0] + 1;
+	}
+
+	/* A program with the given number of blocks, each using the variables of the block before */
+	static String program(int blocks) {
+		StringBuilder program = new StringBuilder("image bench(int w, int h)\n");
+		program.append("int k0 = w + h;\n");
+		program.append("image[w,h] a0;\n");
+		program.append("a0[x,y] = <<x % 256, y % 256, 0>>;\n");
+		for (int i = 1; i <= blocks; i++) {
+			int p = i - 1;
+			program.append("int k").append(i).append(" = if (k").append(p).append(" > ").append(i * 7)
+					.append(") k").append(p).append(" - ").append(i).append(" else k").append(p).append(" * 2 + ")
+					.append(i % 10).append(" fi;\n");
+			program.append("float f").append(i).append(" = k").append(i).append(" * 0.5 + ").append(i)
+					.append(".25;\n");
+			program.append("color c").append(i).append(" = <<k").append(i).append(" % 256, ").append(i % 256)
+					.append(", (k").append(i).append(" / 3) % 256>>;\n");
+			program.append("image[w,h] a").append(i).append(";\n");
+			program.append("a").append(i).append("[x,y] = <<(getRed a").append(p).append("[x,y] + getRed c")
+					.append(i).append(") % 256, (getGreen a").append(p).append("[x,y] + x * y) % 256, getBlue c")
+					.append(i).append(">>;\n");
+			program.append("write f").append(i).append(" -> console;\n");
+		}
+		program.append("^ a").append(blocks).append(";\n");
+		return program.toString();
+	}
+}
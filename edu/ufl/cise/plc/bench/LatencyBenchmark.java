@@ -0,0 +1,333 @@
+package edu.ufl.cise.plc.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.ast.NameDef;
+import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.runtime.ConsoleIO;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+
+/**
+ * Measures the latency of PLCLangExec.exec from source to result, compiling and running each
+ * program of a corpus many times without a display: ConsoleIO.DISPLAY_IMAGES is off, the
+ * console goes nowhere, and the images the programs read are generated and written to a
+ * temporary directory, so the benchmark needs no network or files of its own.
+ *
+ * Usage: LatencyBenchmark [runs] [coldRuns] [size] [results.csv|results.json] [baseline.csv] [corpus]
+ *
+ * Each program is run in two ways.  Warm runs call exec on one PLCLangExec in this JVM, after
+ * warmupRuns that are not reported.  Cold runs start a new JVM for each call, and are reported
+ * twice: cold is the time of the only call of exec in the new JVM, and process is the time
+ * from starting the JVM until it exits, which adds starting the JVM and loading the compiler.
+ * Each is reported as the 50th, 95th and 99th percentile latency, in milliseconds, and as
+ * runs per second, run one after another.
+ *
+ * The corpus is the built in programs, or the .plc files in the given directory.  Each
+ * parameter of a program is given in order: string parameters get the first image file, the
+ * second image file, and a file name that the program may write to, and int, float and boolean
+ * parameters get 7, 0.5 and true.  Both images are size x size.
+ *
+ * The results are written as CSV, or as JSON if the file name ends in .json, one line or
+ * object per program and mode.  If a baseline written as CSV by an earlier run, for example on
+ * another commit, is given, each p50 is also reported as a ratio of the baseline, above 1 if it
+ * is faster now.
+ *
+ */
+public class LatencyBenchmark {
+
+	/** Number of warm runs of each program before the measured ones. */
+	public static int warmupRuns = 10;
+
+	static final String HEADER = "program,mode,runs,p50Millis,p95Millis,p99Millis,runsPerSecond";
+
+	/* the latencies of the runs of one program in one mode */
+	record Latency(String program, String mode, int runs, double p50Millis, double p95Millis, double p99Millis,
+			double runsPerSecond) {
+		String csv() {
+			return program + "," + mode + "," + runs + "," + p50Millis + "," + p95Millis + "," + p99Millis + ","
+					+ runsPerSecond;
+		}
+
+		String json() {
+			return String.format(Locale.ROOT,
+					"{\"program\":\"%s\",\"mode\":\"%s\",\"runs\":%d,\"p50Millis\":%.3f,\"p95Millis\":%.3f,\"p99Millis\":%.3f,\"runsPerSecond\":%.3f}",
+					program, mode, runs, p50Millis, p95Millis, p99Millis, runsPerSecond);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && args[0].equals("--cold")) {
+			cold(Path.of(args[1]), Path.of(args[2]));
+			return;
+		}
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int coldRuns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int size = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+		Path results = args.length > 3 ? Path.of(args[3]) : null;
+		Path baseline = args.length > 4 ? Path.of(args[4]) : null;
+		Map<String, String> corpus = args.length > 5 ? corpus(Path.of(args[5])) : corpus();
+
+		Path directory = Files.createTempDirectory("latencyBenchmark");
+		List<Latency> measured = new ArrayList<>();
+		try {
+			ImageIO.write(RuntimeBenchmark.image(size, 3, 5), "png", directory.resolve("first.png").toFile());
+			ImageIO.write(RuntimeBenchmark.image(size, 7, 2), "png", directory.resolve("second.png").toFile());
+			for (Map.Entry<String, String> program : corpus.entrySet()) {
+				measured.add(warm(program.getKey(), program.getValue(), runs, directory));
+				Path file = directory.resolve(program.getKey() + ".plc");
+				Files.writeString(file, program.getValue());
+				measured.addAll(cold(program.getKey(), file, coldRuns, directory));
+			}
+		} finally {
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+
+		Map<String, Latency> base = baseline == null ? Map.of() : read(baseline);
+		for (Latency latency : measured) {
+			System.out.printf("%-12s %-8s %9.2f ms p50 %9.2f ms p95 %9.2f ms p99 %9.2f runs/s", latency.program(),
+					latency.mode(), latency.p50Millis(), latency.p95Millis(), latency.p99Millis(),
+					latency.runsPerSecond());
+			Latency before = base.get(latency.program() + "/" + latency.mode());
+			if (before != null) {
+				System.out.printf("   %5.2fx baseline", before.p50Millis() / latency.p50Millis());
+			}
+			System.out.println();
+		}
+		if (results != null) {
+			write(results, measured);
+		}
+	}
+
+	/* The built in corpus, by name */
+	static Map<String, String> corpus() {
+		Map<String, String> corpus = new LinkedHashMap<>();
+		corpus.put("stencil", """
+				image stencil(string s)
+				image a <- s;
+				image[getWidth a - 2, getHeight a - 2] b;
+				b[x,y] = <<(getRed a[x, y + 1] + getRed a[x + 2, y + 1] + getRed a[x + 1, y] + getRed a[x + 1, y + 2]) / 4,
+					(getGreen a[x, y + 1] + getGreen a[x + 2, y + 1] + getGreen a[x + 1, y] + getGreen a[x + 1, y + 2]) / 4,
+					getBlue a[x + 1, y + 1]>>;
+				^ b;
+				""");
+		corpus.put("blend", """
+				image blend(string s, string t)
+				image a <- s;
+				image c <- t;
+				image[getWidth a, getHeight a] e;
+				e[x,y] = <<(getRed a[x,y] + getRed c[x,y]) / 2, (getGreen a[x,y] + getGreen c[x,y]) / 2,
+					(getBlue a[x,y] + getBlue c[x,y]) / 2>>;
+				^ e;
+				""");
+		corpus.put("strips", """
+				image strips(string s)
+				image a <- s;
+				int w = getWidth a;
+				int h = getHeight a;
+				int strip = w / 4;
+				image[w,h] b;
+				b[x,y] = if (x % strip < strip / 2) <<getRed a[x,y], 0, 0>> else <<0, 0, getBlue a[x,y]>> fi;
+				^ b;
+				""");
+		corpus.put("transpose", """
+				image transpose(string s)
+				image a <- s;
+				int w = getWidth a;
+				int h = getHeight a;
+				int size = if (w > h) h else w fi;
+				image[size,size] b;
+				b[x,y] = <<getRed a[y,x], getGreen a[y,x], 0>>;
+				^ b;
+				""");
+		corpus.put("writeFile", """
+				int writeFile(string s, string t, string o)
+				image a <- s;
+				image[getWidth a, getHeight a] b;
+				b[x,y] = <<getBlue a[x,y], getGreen a[x,y], getRed a[x,y]>>;
+				write b -> o;
+				^ getWidth b;
+				""");
+		ProgramGenerator generator = new ProgramGenerator(1);
+		generator.statements = 200;
+		corpus.put("generated", generator.generate());
+		return corpus;
+	}
+
+	/* The .plc files in the directory, by name */
+	static Map<String, String> corpus(Path directory) throws IOException {
+		Map<String, String> corpus = new LinkedHashMap<>();
+		try (var files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(".plc")) {
+					corpus.put(name.substring(0, name.length() - 4), Files.readString(file));
+				}
+			}
+		}
+		return corpus;
+	}
+
+	/* The arguments of the program, with the files in directory */
+	static Object[] params(String source, Path directory) throws Exception {
+		String[] files = { directory.resolve("first.png").toString(), directory.resolve("second.png").toString(),
+				directory.resolve("output").toString() };
+		List<NameDef> params = ((Program) CompilerComponentFactory.getParser(source).parse()).getParams();
+		Object[] values = new Object[params.size()];
+		int strings = 0;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = switch (params.get(i).getType()) {
+			case STRING -> files[Math.min(strings++, files.length - 1)];
+			case INT -> 7;
+			case FLOAT -> 0.5f;
+			case BOOLEAN -> true;
+			default -> throw new IllegalArgumentException(
+					"no argument for parameter " + params.get(i).getName() + " of type " + params.get(i).getType());
+			};
+		}
+		return values;
+	}
+
+	/* Runs the program warmupRuns times and then the given number of times */
+	static Latency warm(String name, String source, int runs, Path directory) throws Exception {
+		PLCLangExec exec = new PLCLangExec("latencyBenchmark", false);
+		Object[] params = params(source, directory);
+		long[] nanos = new long[runs];
+		headless(() -> {
+			for (int i = -warmupRuns; i < runs; i++) {
+				long t0 = System.nanoTime();
+				exec.exec(source, params);
+				long t1 = System.nanoTime();
+				ConsoleIO.consoleImages.clear();
+				if (i >= 0) {
+					nanos[i] = t1 - t0;
+				}
+			}
+		});
+		return latency(name, "warm", nanos, Arrays.stream(nanos).sum());
+	}
+
+	/* Runs the program in the given file in a new JVM each time */
+	static List<Latency> cold(String name, Path file, int runs, Path directory) throws Exception {
+		String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		long[] nanos = new long[runs];
+		long[] processNanos = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					LatencyBenchmark.class.getName(), "--cold", file.toString(), directory.toString());
+			builder.redirectErrorStream(true);
+			long t0 = System.nanoTime();
+			Process process = builder.start();
+			String output = new String(process.getInputStream().readAllBytes()).trim();
+			int status = process.waitFor();
+			processNanos[i] = System.nanoTime() - t0;
+			if (status != 0) {
+				throw new IllegalStateException("cold run of " + name + " failed:\n" + output);
+			}
+			nanos[i] = Long.parseLong(output.substring(output.lastIndexOf('\n') + 1));
+		}
+		return List.of(latency(name, "cold", nanos, Arrays.stream(nanos).sum()),
+				latency(name, "process", processNanos, Arrays.stream(processNanos).sum()));
+	}
+
+	/* Runs the program in the given file once, and prints how long it took */
+	static void cold(Path file, Path directory) throws Exception {
+		String source = Files.readString(file);
+		Object[] params = params(source, directory);
+		PLCLangExec exec = new PLCLangExec("latencyBenchmark", false);
+		long[] nanos = new long[1];
+		headless(() -> {
+			long t0 = System.nanoTime();
+			exec.exec(source, params);
+			nanos[0] = System.nanoTime() - t0;
+		});
+		System.out.println(nanos[0]);
+	}
+
+	/* runs of a program */
+	interface Runs {
+		void run() throws Exception;
+	}
+
+	/* Runs with no display, console output, or messages from FileURLIO */
+	static void headless(Runs runs) throws Exception {
+		boolean display = ConsoleIO.DISPLAY_IMAGES;
+		PrintStream console = ConsoleIO.console;
+		PrintStream err = System.err;
+		ConsoleIO.DISPLAY_IMAGES = false;
+		ConsoleIO.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			runs.run();
+		} finally {
+			ConsoleIO.DISPLAY_IMAGES = display;
+			ConsoleIO.setConsole(console);
+			System.setErr(err);
+		}
+	}
+
+	/* The percentiles of nanos, and the runs per second if they took totalNanos */
+	static Latency latency(String program, String mode, long[] nanos, long totalNanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return new Latency(program, mode, sorted.length, percentile(sorted, 0.50) / 1e6,
+				percentile(sorted, 0.95) / 1e6, percentile(sorted, 0.99) / 1e6, sorted.length * 1e9 / totalNanos);
+	}
+
+	/* The nearest rank percentile of the sorted values */
+	static long percentile(long[] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/* Writes the latencies as JSON if the file name ends in .json, and otherwise as CSV */
+	static void write(Path file, List<Latency> latencies) throws IOException {
+		List<String> lines = new ArrayList<>();
+		if (file.getFileName().toString().endsWith(".json")) {
+			lines.add("[");
+			for (int i = 0; i < latencies.size(); i++) {
+				lines.add("  " + latencies.get(i).json() + (i < latencies.size() - 1 ? "," : ""));
+			}
+			lines.add("]");
+		} else {
+			lines.add(HEADER);
+			for (Latency latency : latencies) {
+				lines.add(latency.csv());
+			}
+		}
+		Files.write(file, lines);
+	}
+
+	/* Reads the latencies written as CSV by an earlier run, by program/mode */
+	static Map<String, Latency> read(Path file) throws IOException {
+		Map<String, Latency> latencies = new LinkedHashMap<>();
+		for (String line : Files.readAllLines(file)) {
+			if (line.isBlank() || line.equals(HEADER)) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			latencies.put(fields[0] + "/" + fields[1],
+					new Latency(fields[0], fields[1], Integer.parseInt(fields[2]), Double.parseDouble(fields[3]),
+							Double.parseDouble(fields[4]), Double.parseDouble(fields[5]),
+							Double.parseDouble(fields[6])));
+		}
+		return latencies;
+	}
+}
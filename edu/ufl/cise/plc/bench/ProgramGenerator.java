@@ -0,0 +1,246 @@
+package edu.ufl.cise.plc.bench;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.ufl.cise.plc.ast.Types.Type;
+
+/**
+ * Generates random PLCLang programs that type check, to measure how the compiler scales with
+ * the size of programs that nobody would write by hand: programs of a hundred thousand
+ * statements, expressions nested thousands deep, or thousands of images.
+ *
+ * Usage: ProgramGenerator [statements] [depth] [seed]
+ *
+ * A program is int generated(int n).  It declares a variable of each type that is generated,
+ * then has the given number of declarations and assignments, each of a type chosen with the
+ * weights of the types, and returns the sum of its last int variables.  Half of them declare a
+ * new variable and half assign to an earlier one; images are declared with the given width and
+ * height and then get a pixel assignment.  Each expression is nested the given depth: one
+ * operand of each operator is nested one less, and the others are variables and literals, so
+ * that the size of an expression grows with its depth and not exponentially.
+ *
+ * Expressions divide only by non-zero literals, pixel assignments only read images declared
+ * before their target, with the same size, and every binary and conditional expression is in
+ * parentheses, so programs have the same value with every backend.  A program depends only on
+ * the settings and the seed.
+ *
+ */
+public class ProgramGenerator {
+
+	static final String[] COLORS = { "BLACK", "BLUE", "CYAN", "GREEN", "MAGENTA", "ORANGE", "PINK", "RED", "WHITE",
+			"YELLOW" };
+
+	/** The number of declarations and statements after the first declaration of each type. */
+	public int statements = 1000;
+
+	/** The depth that expressions are nested. */
+	public int depth = 3;
+
+	/** The relative number of declarations and statements of each type. */
+	public int intWeight = 4;
+	public int floatWeight = 2;
+	public int booleanWeight = 1;
+	public int stringWeight = 1;
+	public int colorWeight = 2;
+	public int imageWeight = 1;
+
+	/** The size of the images. */
+	public int width = 16;
+	public int height = 16;
+
+	private final Random random;
+	private final Map<Type, List<String>> variables = new EnumMap<>(Type.class);
+	/* the image being set by the pixel assignment being generated, or null */
+	private String pixelTarget;
+
+	public ProgramGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+	public static void main(String[] args) {
+		ProgramGenerator generator = new ProgramGenerator(args.length > 2 ? Long.parseLong(args[2]) : 1);
+		if (args.length > 0) {
+			generator.statements = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			generator.depth = Integer.parseInt(args[1]);
+		}
+		System.out.print(generator.generate());
+	}
+
+	/** Returns a new program. */
+	public String generate() {
+		for (Type type : Type.values()) {
+			variables.put(type, new ArrayList<>());
+		}
+		StringBuilder program = new StringBuilder("int generated(int n)\n");
+		declare(program, Type.INT, "n");
+		if (floatWeight > 0) {
+			declare(program, Type.FLOAT, "0.5");
+		}
+		if (booleanWeight > 0) {
+			declare(program, Type.BOOLEAN, "(n > 0)");
+		}
+		if (stringWeight > 0) {
+			declare(program, Type.STRING, "\"s\"");
+		}
+		if (colorWeight > 0) {
+			declare(program, Type.COLOR, "<<(n % 256), 3, 5>>");
+		}
+		if (imageWeight > 0) {
+			image(program, "<<(x % 256), (y % 256), (n % 256)>>");
+		}
+		for (int i = 0; i < statements; i++) {
+			Type type = type();
+			if (type == Type.IMAGE) {
+				pixelTarget = random.nextBoolean() ? null : pick(Type.IMAGE);
+				if (pixelTarget == null) {
+					image(program, null);
+				} else {
+					program.append(pixelTarget).append("[x,y] = ").append(expr(Type.COLOR, depth)).append(";\n");
+					pixelTarget = null;
+				}
+			} else if (random.nextBoolean()) {
+				declare(program, type, expr(type, depth));
+			} else {
+				program.append(pick(type)).append(" = ").append(expr(type, depth)).append(";\n");
+			}
+		}
+		List<String> ints = variables.get(Type.INT);
+		String result = ints.get(ints.size() - 1);
+		for (int i = ints.size() - 2; i >= 0 && i >= ints.size() - 4; i--) {
+			result = "(" + ints.get(i) + " + " + result + ")";
+		}
+		program.append("^ ").append(result).append(";\n");
+		return program.toString();
+	}
+
+	private void declare(StringBuilder program, Type type, String value) {
+		List<String> names = variables.get(type);
+		String name = prefix(type) + names.size();
+		program.append(type.name().toLowerCase()).append(' ').append(name).append(" = ").append(value).append(";\n");
+		names.add(name);
+	}
+
+	/* Declares an image and sets its pixels to the given color, or a generated one */
+	private void image(StringBuilder program, String color) {
+		List<String> names = variables.get(Type.IMAGE);
+		String name = prefix(Type.IMAGE) + names.size();
+		program.append("image[").append(width).append(", ").append(height).append("] ").append(name).append(";\n");
+		pixelTarget = name;
+		program.append(name).append("[x,y] = ").append(color != null ? color : expr(Type.COLOR, depth)).append(";\n");
+		pixelTarget = null;
+		names.add(name);
+	}
+
+	private static String prefix(Type type) {
+		return switch (type) {
+		case INT -> "i";
+		case FLOAT -> "f";
+		case BOOLEAN -> "b";
+		case STRING -> "s";
+		case COLOR -> "c";
+		default -> "m";
+		};
+	}
+
+	private Type type() {
+		int[] weights = { intWeight, floatWeight, booleanWeight, stringWeight, colorWeight, imageWeight };
+		Type[] types = { Type.INT, Type.FLOAT, Type.BOOLEAN, Type.STRING, Type.COLOR, Type.IMAGE };
+		int total = 0;
+		for (int weight : weights) {
+			total += weight;
+		}
+		int r = random.nextInt(total);
+		for (int i = 0; i < types.length; i++) {
+			r -= weights[i];
+			if (r < 0) {
+				return types[i];
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	private String pick(Type type) {
+		List<String> names = variables.get(type);
+		return names.get(random.nextInt(names.size()));
+	}
+
+	/* The images that the pixel assignment being generated may read */
+	private List<String> sources() {
+		List<String> images = variables.get(Type.IMAGE);
+		int target = images.indexOf(pixelTarget);
+		return images.subList(0, target < 0 ? images.size() : target);
+	}
+
+	/* An expression of the given type nested depth deep */
+	private String expr(Type type, int depth) {
+		if (depth == 0 || type == Type.STRING) {
+			return leaf(type);
+		}
+		return switch (type) {
+		case INT -> switch (random.nextInt(4)) {
+			case 0 -> binary(expr(type, depth - 1), random.nextBoolean() ? " + " : " - ", leaf(Type.INT));
+			case 1 -> binary(expr(type, depth - 1), " * ", leaf(Type.INT));
+			case 2 -> binary(expr(type, depth - 1), random.nextBoolean() ? " / " : " % ",
+					Integer.toString(1 + random.nextInt(9)));
+			default -> "(if (" + binary(leaf(Type.INT), " < ", leaf(Type.INT)) + ") " + expr(type, depth - 1)
+					+ " else " + leaf(Type.INT) + " fi)";
+			};
+		case FLOAT -> random.nextInt(3) == 0 ? binary(expr(type, depth - 1), " / ", "2.0")
+				: binary(expr(type, depth - 1), random.nextBoolean() ? " + " : " * ", leaf(Type.FLOAT));
+		case BOOLEAN -> switch (random.nextInt(3)) {
+			case 0 -> binary(expr(type, depth - 1), random.nextBoolean() ? " & " : " | ", leaf(Type.BOOLEAN));
+			case 1 -> "!" + expr(type, depth - 1);
+			default -> binary(expr(type, depth - 1), " == ", leaf(Type.BOOLEAN));
+			};
+		// color + color, or <<i, deep, i>>
+		default -> random.nextBoolean()
+				? binary(expr(type, depth - 1), random.nextBoolean() ? " + " : " - ", leaf(Type.COLOR))
+				: "<<" + leaf(Type.INT) + ", " + expr(Type.INT, depth - 1) + ", " + leaf(Type.INT) + ">>";
+		};
+	}
+
+	private static String binary(String left, String op, String right) {
+		return "(" + left + op + right + ")";
+	}
+
+	private String leaf(Type type) {
+		boolean variable = random.nextBoolean() && !variables.get(type).isEmpty();
+		switch (type) {
+		case INT:
+			if (pixelTarget != null && random.nextInt(3) == 0) {
+				List<String> sources = sources();
+				if (!sources.isEmpty() && random.nextBoolean()) {
+					return "(getRed " + sources.get(random.nextInt(sources.size())) + "[x,y])";
+				}
+				return random.nextBoolean() ? "x" : "y";
+			}
+			return variable ? pick(type) : Integer.toString(random.nextInt(100));
+		case FLOAT:
+			return variable ? pick(type) : random.nextInt(100) + "." + random.nextInt(10);
+		case BOOLEAN:
+			return variable ? pick(type) : Boolean.toString(random.nextBoolean());
+		case STRING:
+			return variable ? pick(type) : "\"t" + random.nextInt(100) + "\"";
+		case COLOR:
+			if (pixelTarget != null && random.nextBoolean()) {
+				List<String> sources = sources();
+				if (!sources.isEmpty()) {
+					return "(" + sources.get(random.nextInt(sources.size())) + "[x,y] + <<1, 2, 3>>)";
+				}
+			}
+			if (variable) {
+				return pick(type);
+			}
+			return random.nextBoolean() ? COLORS[random.nextInt(COLORS.length)]
+					: "<<" + random.nextInt(256) + ", " + random.nextInt(256) + ", " + random.nextInt(256) + ">>";
+		default:
+			throw new IllegalArgumentException("no leaf of type " + type);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package edu.ufl.cise.plc.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.ufl.cise.plc.bench.CompilerBenchmark.Phase;
+import edu.ufl.cise.plc.bench.CompilerBenchmark.Result;
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.ColorTupleFloat;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.ImageOps;
+import edu.ufl.cise.plc.runtime.ImageOps.OP;
+
+/**
+ * Measures the operations of the runtime that generated programs spend their time in, on
+ * square images of each size from 64x64 up to the given size: ImageOps.binaryImageImageOp and
+ * binaryImageScalarOp, extractRed, clone and resize, ColorTuple unpack and pack, ColorTupleFloat
+ * arithmetic, and FileURLIO reading and writing JPEG files.  Each is reported in nanoseconds and
+ * allocated bytes per pixel.
+ *
+ * Usage: RuntimeBenchmark [maxSize] [iterations] [results.csv] [baseline.csv]
+ *
+ * The images are generated, and the JPEG files are written to a temporary directory that is
+ * deleted afterwards, so the benchmark needs no network or files of its own.  Small images are
+ * processed several times per iteration, so that each iteration handles about a million pixels.
+ * Iterations are measured as by CompilerBenchmark, and results.csv and baseline.csv have its
+ * format, with one line per operation and size, such as plus/1024.
+ *
+ * An 8192x8192 image takes 256 MB, and binaryImageImageOp has three of them, so run sizes above
+ * 4096 with a heap of at least 2 GB.
+ *
+ */
+public class RuntimeBenchmark {
+
+	static final int[] SIZES = { 64, 256, 1024, 4096, 8192 };
+
+	/* the pixels handled by each iteration, at least */
+	static final long PIXELS_PER_ITERATION = 1 << 20;
+
+	/* keeps the results of the pixel loops from being optimized away */
+	static volatile long sink;
+
+	public static void main(String[] args) throws Exception {
+		int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Path results = args.length > 2 ? Path.of(args[2]) : null;
+		Path baseline = args.length > 3 ? Path.of(args[3]) : null;
+
+		Path directory = Files.createTempDirectory("runtimeBenchmark");
+		List<Result> measured = new ArrayList<>();
+		try {
+			for (int size : SIZES) {
+				if (size > maxSize) {
+					break;
+				}
+				measured.addAll(measure(size, iterations, directory));
+			}
+		} finally {
+			try (var files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+
+		Map<String, Result> base = baseline == null ? Map.of() : CompilerBenchmark.read(baseline);
+		for (Result result : measured) {
+			System.out.printf("%-16s %10.2f ns/pixel %10.2f B/pixel", result.phase(), 1e9 / result.unitsPerSecond(),
+					result.bytesPerUnit());
+			Result before = base.get(result.phase());
+			if (before != null) {
+				System.out.printf("   %5.2fx baseline", result.unitsPerSecond() / before.unitsPerSecond());
+			}
+			System.out.println();
+		}
+		if (results != null) {
+			CompilerBenchmark.write(results, measured);
+		}
+	}
+
+	/* The results of each operation on images of the given size */
+	static List<Result> measure(int size, int iterations, Path directory) throws Exception {
+		BufferedImage a = image(size, 3, 5);
+		BufferedImage b = image(size, 7, 2);
+		int[] pixels = ImageOps.getRGBPixels(a);
+		int repetitions = (int) Math.max(1, PIXELS_PER_ITERATION / ((long) size * size));
+		long units = (long) size * size * repetitions;
+		String file = directory.resolve("image" + size).toString();
+		quietly(() -> FileURLIO.writeImage(a, file));
+		String jpeg = file + ".jpeg";
+
+		List<Result> measured = new ArrayList<>();
+		measured.add(measure("plus", size, units, iterations, repetitions,
+				() -> ImageOps.binaryImageImageOp(OP.PLUS, a, b)));
+		measured.add(measure("timesScalar", size, units, iterations, repetitions,
+				() -> ImageOps.binaryImageScalarOp(OP.TIMES, a, 3)));
+		measured.add(measure("extractRed", size, units, iterations, repetitions, () -> ImageOps.extractRed(a)));
+		measured.add(measure("clone", size, units, iterations, repetitions, () -> ImageOps.clone(a)));
+		measured.add(measure("resize", size, units, iterations, repetitions,
+				() -> ImageOps.resize(a, size / 2, size / 2)));
+		measured.add(measure("unpackPack", size, units, iterations, repetitions, () -> {
+			long sum = 0;
+			for (int pixel : pixels) {
+				sum += ColorTuple.unpack(pixel).pack();
+			}
+			return sum;
+		}));
+		ColorTupleFloat half = new ColorTupleFloat(0.5f);
+		measured.add(measure("floatTimes", size, units, iterations, repetitions, () -> {
+			long sum = 0;
+			for (int pixel : pixels) {
+				sum += ImageOps.binaryTupleOp(OP.TIMES, new ColorTupleFloat(ColorTuple.unpack(pixel)), half).pack();
+			}
+			return sum;
+		}));
+		String written = directory.resolve("written" + size).toString();
+		measured.add(measure("jpegWrite", size, units, iterations, repetitions, () -> {
+			quietly(() -> FileURLIO.writeImage(a, written));
+			return null;
+		}));
+		measured.add(measure("jpegRead", size, units, iterations, repetitions, () -> FileURLIO.readImage(jpeg)));
+		return measured;
+	}
+
+	/* an operation on the images of one size */
+	interface Operation {
+		Object run() throws Exception;
+	}
+
+	static Result measure(String name, int size, long units, int iterations, int repetitions, Operation operation)
+			throws Exception {
+		return CompilerBenchmark.measure(name + "/" + size, "pixels", units, iterations, new Phase() {
+			@Override
+			public Object prepare() {
+				return null;
+			}
+
+			@Override
+			public void run(Object input) throws Exception {
+				for (int i = 0; i < repetitions; i++) {
+					Object result = operation.run();
+					if (result instanceof BufferedImage image) {
+						sink += image.getRGB(0, 0);
+					} else if (result instanceof Long sum) {
+						sink += sum;
+					}
+				}
+			}
+		});
+	}
+
+	/* A size x size image with a different color in each pixel */
+	static BufferedImage image(int size, int red, int green) {
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ImageOps.pixels(image);
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++)
+				pixels[y * size + x] = ColorTuple.makePackedColor((x * red) & 0xff, (y * green) & 0xff, (x ^ y) & 0xff);
+		return image;
+	}
+
+	/* Runs write without the message FileURLIO.writeImage prints for each file */
+	static void quietly(Runnable write) {
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			write.run();
+		} finally {
+			System.setErr(err);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package edu.ufl.cise.plc.bench;
+
+import java.util.List;
+
+import edu.ufl.cise.plc.bench.CompilerBenchmark.Result;
+
+/**
+ * Measures how the time of each compiler phase grows with the size of the program, on programs
+ * made by ProgramGenerator: first with the number of statements doubling from 1000 up to the
+ * given number, with expressions nested 3 deep, then with 10 statements and their expressions
+ * nested from 250 up to the given depth.
+ *
+ * Usage: ScalingBenchmark [maxStatements] [maxDepth] [iterations]
+ *
+ * Each phase is measured as by CompilerBenchmark, in nanoseconds per AST node (per token for
+ * the Lexer), and compared with the size before: the exponent is log(time ratio) / log(size
+ * ratio), about 1 if the phase is linear and about 2 if it is quadratic.  The benchmark runs in
+ * a thread with a large stack, since each phase recurses once per level of nesting.
+ *
+ */
+public class ScalingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int maxStatements = args.length > 0 ? Integer.parseInt(args[0]) : 8000;
+		int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		Exception[] failure = { null };
+		Thread thread = new Thread(null, () -> {
+			try {
+				System.out.println("statements (depth 3)");
+				List<Result> before = null;
+				for (int statements = 1000; statements <= maxStatements; statements *= 2) {
+					before = report(statements, 3, statements, iterations, before);
+				}
+				System.out.println("depth (10 statements)");
+				before = null;
+				for (int depth = 250; depth <= maxDepth; depth *= 2) {
+					before = report(10, depth, depth, iterations, before);
+				}
+			} catch (Exception e) {
+				failure[0] = e;
+			}
+		}, "scalingBenchmark", 1L << 30);
+		thread.start();
+		thread.join();
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	/* Measures a program of the given size, printing each phase and its exponent over before */
+	static List<Result> report(int statements, int depth, int size, int iterations, List<Result> before)
+			throws Exception {
+		ProgramGenerator generator = new ProgramGenerator(1);
+		generator.statements = statements;
+		generator.depth = depth;
+		List<Result> measured = CompilerBenchmark.measure(generator.generate(), iterations);
+		System.out.printf("%8d", size);
+		for (int i = 0; i < measured.size(); i++) {
+			Result result = measured.get(i);
+			System.out.printf("  %s %9.1f ns/%s", result.phase(), 1e9 / result.unitsPerSecond(),
+					result.unit().substring(0, result.unit().length() - 1));
+			if (before != null) {
+				Result previous = before.get(i);
+				double time = result.units() / result.unitsPerSecond() / (previous.units() / previous.unitsPerSecond());
+				System.out.printf(" ^%4.2f", Math.log(time) / Math.log((double) result.units() / previous.units()));
+			} else {
+				System.out.print("      ");
+			}
+		}
+		System.out.println();
+		return measured;
+	}
+}
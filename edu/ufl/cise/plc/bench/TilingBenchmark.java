@@ -0,0 +1,115 @@
+package edu.ufl.cise.plc.bench;
+
+import java.awt.image.BufferedImage;
+
+import edu.ufl.cise.plc.runtime.ExecutableProgram;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.ImageOps;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+/**
+ * Runs a compiled five point stencil over a large image with several values of
+ * ImageOps.tileSize.  A tile size of 0 computes the whole image as one block, row by row along
+ * the pixel arrays.
+ *
+ * Then runs a point-wise pixel assignment through the pixel arrays, row by row and column by
+ * column.  The loops go row by row when the target is a new image, and column by column when
+ * it is a parameter that the caller may also pass as the image read.  The row by row program
+ * also allocates its image, so the difference understates the cost of the column order.
+ *
+ * Usage: TilingBenchmark [size] [iterations] [tileSize...]
+ *
+ * The times show the effect of the cache misses.  To count them, run one tile size at a time
+ * under a hardware counter tool, for example
+ *
+ * perf stat -e cache-misses,L1-dcache-load-misses java ... TilingBenchmark 4096 10 0
+ * perf stat -e cache-misses,L1-dcache-load-misses java ... TilingBenchmark 4096 10 64
+ *
+ */
+public class TilingBenchmark {
+
+	static final String STENCIL = """
+			image stencil(image a)
+			image[getWidth a - 2, getHeight a - 2] b;
+			b[x,y] = <<(getRed a[x, y + 1] + getRed a[x + 2, y + 1] + getRed a[x + 1, y] + getRed a[x + 1, y + 2]) / 4,
+				(getGreen a[x, y + 1] + getGreen a[x + 2, y + 1] + getGreen a[x + 1, y] + getGreen a[x + 1, y + 2]) / 4,
+				getBlue a[x + 1, y + 1]>>;
+			^ b;
+			""";
+
+	static final String ROWS = """
+			image rows(image a)
+			image[getWidth a, getHeight a] b;
+			b[x,y] = <<getBlue a[x,y], getRed a[x,y], getGreen a[x,y]>>;
+			^ b;
+			""";
+
+	static final String COLUMNS = """
+			void columns(image a, image b)
+			b[x,y] = <<getBlue a[x,y], getRed a[x,y], getGreen a[x,y]>>;
+			""";
+
+	/* the shortest time of the given number of runs of program, after one run to warm it up */
+	static long best(ExecutableProgram program, ExecutionContext context, Object[] params, int iterations)
+			throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i <= iterations; i++) {
+			long t0 = System.nanoTime();
+			program.apply(context, params);
+			long t1 = System.nanoTime();
+			if (i > 0) {
+				best = Math.min(best, t1 - t0);
+			}
+		}
+		return best;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int[] tileSizes = { 0, 16, 32, 64, 128, 256 };
+		if (args.length > 2) {
+			tileSizes = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				tileSizes[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+
+		BufferedImage a = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < size; x++)
+			for (int y = 0; y < size; y++)
+				a.setRGB(x, y, (x * 3 << 16) | (y * 5 << 8) | ((x ^ y) & 0xff));
+		ExecutableProgram program = new PLCLangExec("tilingBenchmark", false).compile(STENCIL, Backend.JAVAC);
+		long pixels = (long) (size - 2) * (size - 2);
+
+		int savedTileSize = ImageOps.tileSize;
+		try (ExecutionContext context = new ExecutionContext(System.out, System.in, false)) {
+			for (int tileSize : tileSizes) {
+				ImageOps.tileSize = tileSize;
+				long check = 0;
+				long best = Long.MAX_VALUE;
+				// the first run warms up the compiled loop
+				for (int i = 0; i <= iterations; i++) {
+					long t0 = System.nanoTime();
+					BufferedImage b = (BufferedImage) program.apply(context, new Object[] { a });
+					long t1 = System.nanoTime();
+					if (i > 0) {
+						best = Math.min(best, t1 - t0);
+					}
+					check += b.getRGB(size / 2, size / 3);
+				}
+				System.out.printf("tile %5d: %8.2f ns/pixel  (check %d)%n", tileSize, (double) best / pixels, check);
+			}
+
+			PLCLangExec exec = new PLCLangExec("tilingBenchmark", false);
+			BufferedImage b = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+			long rows = best(exec.compile(ROWS, Backend.JAVAC), context, new Object[] { a }, iterations);
+			long columns = best(exec.compile(COLUMNS, Backend.JAVAC), context, new Object[] { a, b }, iterations);
+			System.out.printf("rows     : %8.2f ns/pixel%n", (double) rows / size / size);
+			System.out.printf("columns  : %8.2f ns/pixel%n", (double) columns / size / size);
+		} finally {
+			ImageOps.tileSize = savedTileSize;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package edu.ufl.cise.plc.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.MappedValueFile;
+import edu.ufl.cise.plc.runtime.ValueFileReader;
+import edu.ufl.cise.plc.runtime.ValueFileWriter;
+
+/**
+ * Writes and reads back millions of int, float, boolean and color values with ValueFileWriter and
+ * ValueFileReader (and MappedValueFile for reading), and with the ObjectOutputStream/ObjectInputStream
+ * pair they replaced.
+ *
+ * Usage: ValueFileBenchmark [numValues] [iterations]
+ *
+ */
+public class ValueFileBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Path file = Files.createTempFile("valueFileBenchmark", ".bin");
+		try {
+			for (int i = 0; i < iterations; i++) {
+				long t0 = System.nanoTime();
+				writeTyped(file, n);
+				long t1 = System.nanoTime();
+				long check = readTyped(file, n);
+				long t2 = System.nanoTime();
+				long size = Files.size(file);
+				report("typed", i, n, t1 - t0, t2 - t1, size, check);
+
+				t1 = System.nanoTime();
+				check = readMapped(file);
+				t2 = System.nanoTime();
+				report("mapped", i, n, 0, t2 - t1, size, check);
+
+				t0 = System.nanoTime();
+				writeSerialized(file, n);
+				t1 = System.nanoTime();
+				check = readSerialized(file, n);
+				t2 = System.nanoTime();
+				size = Files.size(file);
+				report("serialized", i, n, t1 - t0, t2 - t1, size, check);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	static void report(String name, int iteration, int n, long writeNanos, long readNanos, long size, long check) {
+		System.out.printf("%-10s iter %d: write %8.2f ns/value  read %8.2f ns/value  %6.2f bytes/value  (check %d)%n",
+				name, iteration, (double) writeNanos / n, (double) readNanos / n, (double) size / n, check);
+	}
+
+	static void writeTyped(Path file, int n) throws Exception {
+		try (ValueFileWriter writer = new ValueFileWriter(file)) {
+			for (int i = 0; i < n; i++) {
+				switch (i & 3) {
+				case 0 -> writer.writeInt(i);
+				case 1 -> writer.writeFloat(i * .5f);
+				case 2 -> writer.writeBoolean((i & 4) != 0);
+				default -> writer.writeColor(new ColorTuple(i & 0xff, (i >> 8) & 0xff, (i >> 16) & 0xff));
+				}
+			}
+		}
+	}
+
+	static long readTyped(Path file, int n) throws Exception {
+		long sum = 0;
+		try (ValueFileReader reader = new ValueFileReader(file)) {
+			for (int i = 0; i < n; i++) {
+				switch (i & 3) {
+				case 0 -> sum += reader.readInt();
+				case 1 -> sum += (long) reader.readFloat();
+				case 2 -> sum += reader.readBoolean() ? 1 : 0;
+				default -> sum += reader.readColor().pack();
+				}
+			}
+		}
+		return sum;
+	}
+
+	static long readMapped(Path file) throws Exception {
+		long sum = 0;
+		try (MappedValueFile values = new MappedValueFile(file)) {
+			MappedValueFile.Cursor cursor = values.cursor();
+			while (cursor.next()) {
+				switch (cursor.tag()) {
+				case 'I' -> sum += cursor.intValue();
+				case 'F' -> sum += (long) cursor.floatValue();
+				case 'Z' -> sum += cursor.booleanValue() ? 1 : 0;
+				default -> sum += cursor.packedColorValue();
+				}
+			}
+		}
+		return sum;
+	}
+
+	static void writeSerialized(Path file, int n) throws Exception {
+		try (ObjectOutputStream oos = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+			for (int i = 0; i < n; i++) {
+				switch (i & 3) {
+				case 0 -> oos.writeObject(i);
+				case 1 -> oos.writeObject(i * .5f);
+				case 2 -> oos.writeObject((i & 4) != 0);
+				default -> oos.writeObject(new ColorTuple(i & 0xff, (i >> 8) & 0xff, (i >> 16) & 0xff));
+				}
+				// FileURLIO never reset its streams, but without this the handle table holds every value
+				if ((i & 0xffff) == 0) {
+					oos.reset();
+				}
+			}
+		}
+	}
+
+	static long readSerialized(Path file, int n) throws Exception {
+		long sum = 0;
+		try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+			for (int i = 0; i < n; i++) {
+				Object value = ois.readObject();
+				switch (i & 3) {
+				case 0 -> sum += (Integer) value;
+				case 1 -> sum += (long) (float) (Float) value;
+				case 2 -> sum += ((Boolean) value) ? 1 : 0;
+				default -> sum += ((ColorTuple) value).pack();
+				}
+			}
+		}
+		return sum;
+	}
+}
@@ -33,6 +33,13 @@ public class ConsoleIO {
 		console = out;
 	}
 
+	/**
+	 * Destination of the prompts and "INVALID INPUT" messages printed when reading "console"
+	 * input through ConsoleIO or a context from ExecutionContext.fromConsoleIO.  It is separate
+	 * from console so that console holds only the values written by programs.
+	 */
+	public static PrintStream prompts = System.out;
+
 	/** Default source of "console" input. */
 	public static InputStream consoleInput = System.in;
 
@@ -42,21 +49,26 @@ public class ConsoleIO {
 	}
 
 	/*
-	 * java.util.Scanner for input from "console" Implementation is a singleton.
+	 * java.util.Scanner for input from "console" Implementation is a singleton for the current
+	 * consoleInput, so that input it has read ahead is not lost between reads.
 	 */
 	private static Scanner scanner;
+	private static InputStream scannerInput;
 
-	private static Scanner getScanner() {
-		if (scanner == null) {
+	/** The scanner of consoleInput, also used by ExecutionContexts that read from it. */
+	static synchronized Scanner getScanner() {
+		if (scanner == null || scannerInput != consoleInput) {
 			scanner = new Scanner(consoleInput);
+			scannerInput = consoleInput;
 		}
 		return scanner;
 	}
 
-	public static void resetScanner() {
+	public static synchronized void resetScanner() {
 		if (scanner != null) {
 			scanner.close();
 			scanner = null;
+			scannerInput = null;
 		}
 	}
 
@@ -74,41 +86,49 @@ public class ConsoleIO {
 	 * @return
 	 */
 	public static Object readValueFromConsole(String type, String prompt) {
-		System.out.print(prompt);
-		Scanner scanner = getScanner();
-		try {
-			return switch (type) {
-				case "INT" -> {
-					int val = scanner.nextInt();
-					scanner.nextLine();
-					yield val;
-				}
-				case "FLOAT" -> {
-					float val = scanner.nextFloat();
-					scanner.nextLine();
-					yield val;
-				}
-				case "STRING" -> {
-					yield scanner.nextLine();
-				}
-				case "COLOR" -> {
-					int r = scanner.nextInt();
-					int g = scanner.nextInt();
-					int b = scanner.nextInt();
-					scanner.nextLine();
-					yield new ColorTuple(r, g, b);
-				}
-				case "BOOLEAN" -> {
-					boolean val = scanner.nextBoolean();
-					scanner.nextLine();
-					yield val;
-				}
-				default -> throw new IllegalArgumentException("Compiler bug Unexpected value: " + type);
-			};
-		} catch (InputMismatchException e) {
-			System.out.print("INVALID INPUT ");
-			getScanner().next(); // throw away invalid input token
-			return readValueFromConsole(type, prompt);
+		return readValue(getScanner(), prompts, type, prompt);
+	}
+
+	/**
+	 * Implementation of readValueFromConsole that reads from the given scanner and prints the
+	 * prompt and "INVALID INPUT" to the given stream. Also used by ExecutionContext.
+	 */
+	static Object readValue(Scanner scanner, PrintStream prompts, String type, String prompt) {
+		while (true) {
+			prompts.print(prompt);
+			try {
+				return switch (type) {
+					case "INT" -> {
+						int val = scanner.nextInt();
+						scanner.nextLine();
+						yield val;
+					}
+					case "FLOAT" -> {
+						float val = scanner.nextFloat();
+						scanner.nextLine();
+						yield val;
+					}
+					case "STRING" -> {
+						yield scanner.nextLine();
+					}
+					case "COLOR" -> {
+						int r = scanner.nextInt();
+						int g = scanner.nextInt();
+						int b = scanner.nextInt();
+						scanner.nextLine();
+						yield new ColorTuple(r, g, b);
+					}
+					case "BOOLEAN" -> {
+						boolean val = scanner.nextBoolean();
+						scanner.nextLine();
+						yield val;
+					}
+					default -> throw new IllegalArgumentException("Compiler bug Unexpected value: " + type);
+				};
+			} catch (InputMismatchException e) {
+				prompts.print("INVALID INPUT ");
+				scanner.next(); // throw away invalid input token
+			}
 		}
 	}
 
@@ -118,22 +138,27 @@ public class ConsoleIO {
 	public static void displayImageOnScreen(BufferedImage image) {
 		consoleImages.add(image);
 		if (DISPLAY_IMAGES) {
-			System.err.println("Displaying image = " + image);
-			JFrame frame = new JFrame();
-			frame.setDefaultCloseOperation(EXIT_ON_CLOSE);
-			frame.setSize(image.getWidth(), image.getHeight());
-			JLabel label = new JLabel(new ImageIcon(image));
-			frame.add(label);
-			frame.pack();
-			try {
-				SwingUtilities.invokeAndWait(new Runnable() {
-					public void run() {
-						frame.setVisible(true);
-					}
-				});
-			} catch (InvocationTargetException | InterruptedException e) {
-				e.printStackTrace();
-			}
+			showImage(image);
+		}
+	}
+
+	/** Opens a window showing the given image */
+	static void showImage(BufferedImage image) {
+		System.err.println("Displaying image = " + image);
+		JFrame frame = new JFrame();
+		frame.setDefaultCloseOperation(EXIT_ON_CLOSE);
+		frame.setSize(image.getWidth(), image.getHeight());
+		JLabel label = new JLabel(new ImageIcon(image));
+		frame.add(label);
+		frame.pack();
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					frame.setVisible(true);
+				}
+			});
+		} catch (InvocationTargetException | InterruptedException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -0,0 +1,23 @@
+package edu.ufl.cise.plc.runtime;
+
+/**
+ * A PLCLang program ready to run, whether compiled to Java bytecode or to closures.
+ *
+ * Exceptions thrown by the program itself are reported the same way by every kind of
+ * ExecutableProgram: wrapped in a java.lang.reflect.InvocationTargetException, as when the
+ * apply method of generated code is invoked by reflection.
+ *
+ */
+@FunctionalInterface
+public interface ExecutableProgram {
+
+	/**
+	 * Runs the program.
+	 *
+	 * @param context the context used for console and value file IO
+	 * @param params  the values of the program's parameters, or null if it has none
+	 * @return the value returned by the program, boxed, or null if its type is void
+	 * @throws Exception
+	 */
+	Object apply(ExecutionContext context, Object[] params) throws Exception;
+}
@@ -0,0 +1,153 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The state used by one execution of a PLCLang program: the console streams, the scanner
+ * used for console input, the images written to the console, and the open value files.
+ *
+ * Generated code receives its ExecutionContext as the first parameter of apply and performs
+ * all console and value file IO through it, so programs running at the same time in different
+ * contexts do not interfere.  PLCLangExec creates a context for each run and closes it when
+ * the run finishes.
+ *
+ * The console streams are supplied by the creator of the context and are not closed by it.
+ * The value files are opened by the context and are closed by close().
+ *
+ * A context is meant to be used by one execution at a time.
+ *
+ */
+public class ExecutionContext implements Closeable {
+
+	private final PrintStream console;
+	private final PrintStream prompts;
+	private final InputStream consoleInput;
+	private final boolean displayImages;
+	private final List<BufferedImage> consoleImages;
+	private final ValueFiles files = new ValueFiles();
+	private final StatementProfile profile = new StatementProfile();
+	private Scanner scanner;
+
+	/**
+	 * Creates a context with its own list of console images.  Prompts for console input are
+	 * printed to the console.
+	 *
+	 * @param console       destination of console output
+	 * @param consoleInput  source of console input
+	 * @param displayImages whether images written to the console are also shown on the screen
+	 */
+	public ExecutionContext(PrintStream console, InputStream consoleInput, boolean displayImages) {
+		this(console, console, consoleInput, displayImages, new ArrayList<>());
+	}
+
+	private ExecutionContext(PrintStream console, PrintStream prompts, InputStream consoleInput,
+			boolean displayImages, List<BufferedImage> consoleImages) {
+		this.console = console;
+		this.prompts = prompts;
+		this.consoleInput = consoleInput;
+		this.displayImages = displayImages;
+		this.consoleImages = consoleImages;
+	}
+
+	/**
+	 * Creates a context using the current settings in ConsoleIO: ConsoleIO.console,
+	 * ConsoleIO.prompts, ConsoleIO.consoleInput and ConsoleIO.DISPLAY_IMAGES.  Console images
+	 * are added to ConsoleIO.consoleImages.  This is what PLCLangExec uses when no context is given.
+	 */
+	public static ExecutionContext fromConsoleIO() {
+		return new ExecutionContext(ConsoleIO.console, ConsoleIO.prompts, ConsoleIO.consoleInput,
+				ConsoleIO.DISPLAY_IMAGES, ConsoleIO.consoleImages);
+	}
+
+	/**
+	 * Destination of console output. Generated code uses this instead of System.out.
+	 */
+	public PrintStream getConsole() {
+		return console;
+	}
+
+	/**
+	 * Reads a value of the given type from this context's console input, printing the prompt
+	 * to the console, or to ConsoleIO.prompts for a context from fromConsoleIO.  If the input is ConsoleIO.consoleInput, it is read with the
+	 * scanner of ConsoleIO, so that input read ahead by one context is read by the next.
+	 *
+	 * @see ConsoleIO#readValueFromConsole(String, String)
+	 */
+	public Object readValueFromConsole(String type, String prompt) {
+		if (scanner == null) {
+			scanner = consoleInput == ConsoleIO.consoleInput ? ConsoleIO.getScanner() : new Scanner(consoleInput);
+		}
+		return ConsoleIO.readValue(scanner, prompts, type, prompt);
+	}
+
+	/**
+	 * Records the image as written to the console, and shows it on the screen if this
+	 * context displays images.
+	 */
+	public void displayImageOnScreen(BufferedImage image) {
+		synchronized (consoleImages) {
+			consoleImages.add(image);
+		}
+		if (displayImages) {
+			ConsoleIO.showImage(image);
+		}
+	}
+
+	/** Returns the images written to the console, in order. */
+	public List<BufferedImage> getConsoleImages() {
+		synchronized (consoleImages) {
+			return Collections.unmodifiableList(new ArrayList<>(consoleImages));
+		}
+	}
+
+	/** @see FileURLIO#writeValue(Object, String) */
+	public void writeValue(Object value, String filename) {
+		files.writeValue(value, filename);
+	}
+
+	public void writeValue(int value, String filename) {
+		files.writeInt(value, filename);
+	}
+
+	public void writeValue(float value, String filename) {
+		files.writeFloat(value, filename);
+	}
+
+	public void writeValue(boolean value, String filename) {
+		files.writeBoolean(value, filename);
+	}
+
+	/** @see FileURLIO#readValueFromFile(String) */
+	public Object readValueFromFile(String filename) {
+		return files.readValue(filename);
+	}
+
+	/** @see FileURLIO#openValueFile(String) */
+	public MappedValueFile openValueFile(String filename) {
+		return files.open(filename);
+	}
+
+	/**
+	 * Returns the time spent in each statement of the programs compiled with profiling on that
+	 * were run with this context.
+	 */
+	public StatementProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Closes the value files opened through this context.  The console streams are left open.
+	 */
+	@Override
+	public void close() throws IOException {
+		files.close();
+	}
+}
@@ -4,18 +4,11 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.imageio.ImageIO;
 
@@ -79,7 +72,11 @@ public class FileURLIO {
 	static BufferedImage readFromURL(URL url) {
 		try {
 			System.err.println("reading image from url:  " + url);
-			return ImageIO.read(url);
+			ImageFileEvent event = new ImageFileEvent();
+			event.begin();
+			BufferedImage image = ImageIO.read(url);
+			event.record(false, url, () -> -1L, image);
+			return image;
 		} catch (IOException e) {
 			throw new PLCRuntimeException(e);
 		}
@@ -97,7 +94,10 @@ public class FileURLIO {
 		File f = new File(filename);
 		BufferedImage bi;
 		try {
+			ImageFileEvent event = new ImageFileEvent();
+			event.begin();
 			bi = ImageIO.read(f);
+			event.record(false, filename, f::length, bi);
 		} catch (IOException e) {
 			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
 		}
@@ -118,7 +118,10 @@ public class FileURLIO {
 		Path path = Paths.get(filename + ".jpeg");
 		try {
 			File f = path.toFile();
+			ImageFileEvent event = new ImageFileEvent();
+			event.begin();
 			boolean success = ImageIO.write(image, "jpeg", f);
+			event.record(true, path, f::length, image);
 			if (!success) {
 				System.err.println("success = " + success + " for image file  " + filename);
 			}
@@ -129,77 +132,86 @@ public class FileURLIO {
 			throw new PLCRuntimeException(e);
 		}
 	}
-	
 
 	/**
-	 * Writes the given value to a file on the local file system
+	 * Writes the given image to a file on the local system indicated by the
+	 * given filename.  The encoder reads the pixels from the tiles as it needs them.
+	 *
+	 * @param image
+	 * @param filename
+	 */
+	public static void writeImage(TiledImage image, String filename) {
+		writeImage(image.asBufferedImage(), filename);
+	}
+
+
+	/**
+	 * Value files used by the static methods below.  Generated code uses the value files
+	 * of its ExecutionContext instead.
+	 */
+	static final ValueFiles files = new ValueFiles();
+
+	/**
+	 * Writes the given value to a file on the local file system.
+	 * 
+	 * Values are appended, in order, to the file using the format in ValueFileFormat.
+	 * Writes are buffered; the file is complete after flushFiles or closeFiles.
 	 * 
 	 * @param value
 	 * @param filename
 	 */
-	public static void writeValue(Serializable value, String filename) {
-		ObjectOutputStream oos = getObjectOutputStream(filename);
-		try {
-			oos.writeObject(value);
-		} catch (IOException e) {
-			System.err.println(e.getMessage());
-			throw new PLCRuntimeException(e);
-		}
-	}	
-	
-	static HashMap<String, ObjectInputStream> inputFiles = new HashMap<>();
-	static Map<String, ObjectOutputStream> outputFiles = new HashMap<>();
+	public static void writeValue(Object value, String filename) {
+		files.writeValue(value, filename);
+	}
+
+	public static void writeValue(int value, String filename) {
+		files.writeInt(value, filename);
+	}
+
+	public static void writeValue(float value, String filename) {
+		files.writeFloat(value, filename);
+	}
+
+	public static void writeValue(boolean value, String filename) {
+		files.writeBoolean(value, filename);
+	}
 	
-	static ObjectOutputStream getObjectOutputStream(String filename) {
-		ObjectOutputStream oos = outputFiles.get(filename);
-		if (oos == null) {
-			Path path = Paths.get(filename);
-			try {
-				FileOutputStream fos = new FileOutputStream(path.toFile());			
-				oos = new ObjectOutputStream(fos);
-				outputFiles.put(filename,oos);
-			}
-			catch (IOException e) {
-				throw new PLCRuntimeException(e);
-			}
-		}
-		return oos;		
+	/**
+	 * Writes all buffered values to their files, leaving the files open.
+	 */
+	public static void flushFiles() {
+		files.flush();
 	}
 	
 	public static void closeFiles() {
 		try {
-		for (ObjectInputStream ois: inputFiles.values()) ois.close();
-		for (ObjectOutputStream oos: outputFiles.values()) oos.close();
+			files.close();
 		}
 		catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
-	
-	private static ObjectInputStream getObjectInputStream(String filename) {
-		ObjectInputStream ois = inputFiles.get(filename);
-		if (ois == null) {
-			Path path = Paths.get(filename);
-			try {
-				FileInputStream fis = new FileInputStream(path.toFile());			
-				ois = new ObjectInputStream(fis);
-				inputFiles.put(filename,  ois);
-			}
-			catch (IOException e) {
-				throw new PLCRuntimeException(e);
-			}
-		}
-		return ois;
+
+	/**
+	 * Opens the given value file for random access.  Unlike readValueFromFile, the returned
+	 * MappedValueFile is not cached here; it belongs to, and must be closed by, the caller, and
+	 * may be shared between threads.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public static MappedValueFile openValueFile(String filename) {
+		return files.open(filename);
 	}
+
+	/**
+	 * Reads the next value from the given file.
+	 * 
+	 * @param filename
+	 * @return Integer, Float, Boolean, String, or ColorTuple
+	 */
 	public static Object readValueFromFile(String filename) {
-		ObjectInputStream ois = getObjectInputStream(filename);
-		Object obj=null;
-		try {
-			obj = ois.readObject();
-		} catch (IOException | ClassNotFoundException  e) {			
-			e.printStackTrace();
-		}
-		return obj;
+		return files.readValue(filename);
 	}
 		
 }
@@ -0,0 +1,52 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for reading an image from a file or URL, or writing it to a
+ * file, with FileURLIO.  Its duration is the time taken to decode or encode the image together
+ * with the IO.
+ *
+ */
+@Name("edu.ufl.cise.plc.ImageFile")
+@Label("Image File")
+@Category({ "PLCLang", "Runtime" })
+@Description("An image read or written by FileURLIO")
+final class ImageFileEvent extends jdk.jfr.Event {
+
+	@Label("Write")
+	boolean write;
+
+	@Label("Source")
+	String source;
+
+	@Label("Bytes")
+	@Description("The size of the file, or -1 if it is not known, as for URLs")
+	@DataAmount
+	long bytes;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	/* Commits the event, started by begin, if it is being recorded.  The image may be null. */
+	void record(boolean write, Object source, Supplier<Long> bytes, BufferedImage image) {
+		if (shouldCommit()) {
+			this.write = write;
+			this.source = String.valueOf(source);
+			this.bytes = bytes.get();
+			this.width = image == null ? -1 : image.getWidth();
+			this.height = image == null ? -1 : image.getHeight();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package edu.ufl.cise.plc.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for one ImageOps operation on whole images, such as
+ * binaryImageImageOp or resize, with the width and height of the image it read.  The methods
+ * that get or set a single pixel are not recorded.
+ *
+ * When the event is not being recorded, begin and shouldCommit do nothing and the JIT removes
+ * the event object, so the operations cost the same as without it.
+ *
+ */
+@Name("edu.ufl.cise.plc.ImageOp")
+@Label("Image Operation")
+@Category({ "PLCLang", "Runtime" })
+@Description("An ImageOps operation on whole images")
+final class ImageOpEvent extends jdk.jfr.Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Operator")
+	String operator;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	/* Commits the event, started by begin, if it is being recorded */
+	void record(String operation, int width, int height) {
+		record(operation, null, width, height);
+	}
+
+	void record(String operation, ImageOps.OP op, int width, int height) {
+		if (shouldCommit()) {
+			this.operation = operation;
+			this.operator = op == null ? null : op.name();
+			this.width = width;
+			this.height = height;
+			commit();
+		}
+	}
+}
@@ -4,6 +4,9 @@ import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 /**
  * An image is represented by a 2D array of pixels. An image is implemented 
@@ -27,7 +30,45 @@ import java.awt.image.BufferedImage;
  */
 
 public class ImageOps {
+
+	/**
+	 * Width and height of the blocks of pixels that the generated code computes one at a time
+	 * for pixel assignments that read neighboring pixels or several images, so that the pixels
+	 * they read stay in the cache.  If it is not positive, the whole image is one block.
+	 */
+	public static int tileSize = 64;
+
+	/**
+	 * returns the number of pixels along a side of length size of the blocks used by generated
+	 * pixel loops: tileSize, or size if that is smaller or tileSize is not positive.
+	 */
+	public static int tileSize(int size) {
+		int tile = tileSize;
+		return tile > 0 && tile < size ? tile : Math.max(size, 1);
+	}
 	
+	/**
+	 * Returns the array holding the pixels of image row by row, without alpha, if image is a
+	 * TYPE_INT_RGB image with a raster of its own, or null.  Generated pixel loops read and set
+	 * the pixels through it instead of getRGB and setRGB, which go through the color model and
+	 * check the coordinates for every pixel.
+	 */
+	public static int[] pixels(BufferedImage image) {
+		if (image == null || image.getType() != BufferedImage.TYPE_INT_RGB) {
+			return null;
+		}
+		WritableRaster raster = image.getRaster();
+		if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0
+				|| raster.getSampleModelTranslateY() != 0
+				|| !(raster.getDataBuffer() instanceof DataBufferInt buffer) || buffer.getNumBanks() != 1
+				|| buffer.getOffset() != 0
+				|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel)
+				|| sampleModel.getScanlineStride() != image.getWidth()) {
+			return null;
+		}
+		return buffer.getData();
+	}
+
 	/**  
 	 * returns the pixel at the x,y location in the given image in packed int form.
 	 * 
@@ -76,6 +117,35 @@ public class ImageOps {
 	public static void setColor(BufferedImage image, int x, int y, ColorTuple colorTuple) {
 		image.setRGB(x, y, colorTuple.pack());
 	}
+
+	/**
+	 * returns the pixel at the x,y location in the given image in packed int form.
+	 */
+	public static int getPackedColor(TiledImage image, int x, int y) {
+		return image.getRGB(x, y);
+	}
+
+	/**
+	 * returns the pixel at the x,y location in the given image in ColorTuple form.
+	 */
+	public static ColorTuple getColorTuple(TiledImage image, int x, int y) {
+		return ColorTuple.unpack(image.getRGB(x, y));
+	}
+
+	/**
+	 * sets the pixel at the x,y location in the given image to the given int value.
+	 */
+	public static void setColor(TiledImage image, int x, int y, int packedColor) {
+		image.setRGB(x, y, packedColor);
+	}
+
+	/**
+	 * Sets the pixel at the x,y location in the given image to the value represented
+	 * by the given ColorTuple.  The color values will be truncated if necessary.
+	 */
+	public static void setColor(TiledImage image, int x, int y, ColorTuple colorTuple) {
+		image.setRGB(x, y, colorTuple.pack());
+	}
 	
 	/**
 	 * Returns a new image containing only the red component of the given image.  
@@ -85,6 +155,8 @@ public class ImageOps {
 	 * @return
 	 */
 	public static BufferedImage extractRed(BufferedImage image) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
 		int width = image.getWidth();
 		int height = image.getHeight();
 		BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
@@ -96,6 +168,7 @@ public class ImageOps {
 				newImage.setRGB(x, y, redPixel);
 			}
 		}
+		event.record("extractRed", width, height);
 		return newImage;
 	}
 
@@ -107,6 +180,8 @@ public class ImageOps {
 	 * @return
 	 */
 	public static BufferedImage extractGreen(BufferedImage image) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
 		int width = image.getWidth();
 		int height = image.getHeight();
 		BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
@@ -118,6 +193,7 @@ public class ImageOps {
 				newImage.setRGB(x, y, greenPixel);
 			}
 		}
+		event.record("extractGreen", width, height);
 		return newImage;
 	}
 
@@ -129,6 +205,8 @@ public class ImageOps {
 	 * @return
 	 */	
 	public static BufferedImage extractBlue(BufferedImage image) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
 		int width = image.getWidth();
 		int height = image.getHeight();
 		BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
@@ -140,6 +218,7 @@ public class ImageOps {
 				newImage.setRGB(x, y, bluePixel);
 			}
 		}
+		event.record("extractBlue", width, height);
 		return newImage;
 	}
 
@@ -222,6 +301,8 @@ public class ImageOps {
 	 */
 	
 	public static BufferedImage binaryImageImageOp(OP op, BufferedImage left, BufferedImage right) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
 		int lwidth = left.getWidth();
 		int rwidth = right.getWidth();
 		int lheight = left.getHeight();
@@ -238,6 +319,7 @@ public class ImageOps {
 				result.setRGB(x, y, newColor.pack());
 			}
 		}
+		event.record("binaryImageImageOp", op, lwidth, lheight);
 		return result;
 	}
 	
@@ -251,6 +333,8 @@ public class ImageOps {
 	 * @return
 	 */
 	public static BufferedImage binaryImageScalarOp(OP op, BufferedImage left, int right) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
 		int lwidth = left.getWidth();
 		int lheight = left.getHeight();
 		BufferedImage result = new BufferedImage(lwidth, lheight, BufferedImage.TYPE_INT_RGB);
@@ -262,25 +346,38 @@ public class ImageOps {
 				result.setRGB(x, y, newColor.pack());
 			}
 		}
+		event.record("binaryImageScalarOp", op, lwidth, lheight);
+		return result;
+	}
+	
+	/**
+	 * Returns a new buffered image obtained by applying the given binary operation 
+	 * to each color component in each pixel in the given image (left), as a ColorTupleFloat,
+	 * and the float value (right).
+	 * 
+	 * @param op
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	public static BufferedImage binaryImageScalarOp(OP op, BufferedImage left, float right) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
+		int lwidth = left.getWidth();
+		int lheight = left.getHeight();
+		BufferedImage result = new BufferedImage(lwidth, lheight, BufferedImage.TYPE_INT_RGB);
+		ColorTupleFloat rightColor = new ColorTupleFloat(right);
+		for (int x = 0; x < lwidth; x++) {
+			for (int y = 0; y < lheight; y++) {
+				ColorTupleFloat leftColor = new ColorTupleFloat(ColorTuple.unpack(left.getRGB(x, y)));
+				ColorTupleFloat newColor = binaryTupleOp(op, leftColor, rightColor);
+				result.setRGB(x, y, new ColorTuple(newColor).pack());
+			}
+		}
+		event.record("binaryImageScalarOp", op, lwidth, lheight);
 		return result;
 	}
 	
-//	public static BufferedImage binaryImageScalarOp(OP op, BufferedImage left, float right) {
-//		int lwidth = left.getWidth();
-//		int lheight = left.getHeight();
-//		BufferedImage result = new BufferedImage(lwidth, lheight, BufferedImage.TYPE_INT_RGB);
-//		ColorTupleFloat rightColor = new ColorTupleFloat(right);
-//		for (int x = 0; x < lwidth; x++) {
-//			for (int y = 0; y < lheight; y++) {
-//				ColorTupleFloat leftColor = new ColorTupleFloat(ColorTuple.unpack(left.getRGB(x, y)));
-//				ColorTupleFloat newColor = binaryTupleOp(op, leftColor, rightColor);
-//				result.setRGB(x, y, newColor.pack());
-//			}
-//		}
-//		return result;
-//	}
-//	
-//	
 //	public static BufferedImage setAllPixels(BufferedImage image, int val) {
 //		ColorTuple c = new ColorTuple(val);
 //		for (int x = 0; x < image.getWidth(); x++)
@@ -312,11 +409,14 @@ public class ImageOps {
 	 * @return new image that is copy of the given image
 	 */
 	public static final BufferedImage clone(BufferedImage image) {
+	    ImageOpEvent event = new ImageOpEvent();
+	    event.begin();
 	    BufferedImage clone = new BufferedImage(image.getWidth(),
 	            image.getHeight(), image.getType());
 	    Graphics2D g2d = clone.createGraphics();
 	    g2d.drawImage(image, 0, 0, null);
 	    g2d.dispose();
+	    event.record("clone", image.getWidth(), image.getHeight());
 	    return clone;
 	}
 	
@@ -330,6 +430,8 @@ public class ImageOps {
 	 */
 	public static BufferedImage resize(BufferedImage image, int maxX,
 			int maxY) {
+		ImageOpEvent event = new ImageOpEvent();
+		event.begin();
 		int w = image.getWidth();
 		int h = image.getHeight();
 		AffineTransform at = new AffineTransform();
@@ -338,6 +440,7 @@ public class ImageOps {
 				AffineTransformOp.TYPE_BILINEAR);
 		BufferedImage newResizedImage= null;
 		newResizedImage = scaleOp.filter(image, newResizedImage);
+		event.record("resize", w, h);
 		return newResizedImage;
 	}
 	
@@ -0,0 +1,329 @@
+package edu.ufl.cise.plc.runtime;
+
+import static edu.ufl.cise.plc.runtime.ValueFileFormat.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Random access, read-only view of a file written by ValueFileWriter.
+ *
+ * The file is memory mapped and scanned once when opened to build an index of record offsets,
+ * so the nth value can be read directly.  The index takes 4 bytes per value, or 8 for files
+ * larger than 2GB.  Reads only use absolute positions in the mapped
+ * buffers, so a single MappedValueFile may be shared by any number of threads.  Each thread
+ * that wants to iterate should create its own Cursor; a Cursor reads int, float, boolean, and
+ * color values without allocating.
+ *
+ * Files larger than 2GB are mapped as several overlapping segments.
+ *
+ */
+public class MappedValueFile implements Closeable {
+
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	/** Every fixed size record that starts in a segment also ends in it. */
+	private static final int SEGMENT_OVERLAP = 13;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final long size;
+	/* the record offsets if the file is at most 2GB, else null */
+	private final int[] intOffsets;
+	/* the record offsets if the file is larger than 2GB, else null */
+	private final long[] longOffsets;
+	private final int count;
+
+	/**
+	 * Maps the given file and builds its index.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public MappedValueFile(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			int numSegments = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+			segments = new MappedByteBuffer[Math.max(numSegments, 1)];
+			for (int i = 0; i < numSegments; i++) {
+				long start = (long) i << SEGMENT_SHIFT;
+				long length = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, size - start);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			}
+			if (size < HEADER_SIZE || intAt(0) != MAGIC) {
+				throw new PLCRuntimeException("Not a PLCLang value file: " + path);
+			}
+			if (byteAt(4) != VERSION) {
+				throw new PLCRuntimeException("Unsupported value file version " + byteAt(4) + ": " + path);
+			}
+			boolean large = size > Integer.MAX_VALUE;
+			int[] intIndex = large ? null : new int[1024];
+			long[] longIndex = large ? new long[1024] : null;
+			int n = 0;
+			long pos = HEADER_SIZE;
+			while (pos < size) {
+				if (large) {
+					if (n == longIndex.length) {
+						longIndex = Arrays.copyOf(longIndex, n * 2);
+					}
+					longIndex[n++] = pos;
+				} else {
+					if (n == intIndex.length) {
+						intIndex = Arrays.copyOf(intIndex, n * 2);
+					}
+					intIndex[n++] = (int) pos;
+				}
+				byte tag = byteAt(pos);
+				int payload = payloadSize(tag);
+				long next;
+				if (payload >= 0) {
+					next = pos + 1 + payload;
+				} else {
+					if (pos + 5 > size) {
+						throw new PLCRuntimeException("Truncated value file: " + path);
+					}
+					int length = intAt(pos + 1);
+					if (length < 0) {
+						throw new PLCRuntimeException("Corrupt value file: string of length " + length + " at " + pos
+								+ ": " + path);
+					}
+					next = pos + 5 + length;
+				}
+				if (next > size) {
+					throw new PLCRuntimeException("Truncated value file: " + path);
+				}
+				pos = next;
+			}
+			intOffsets = intIndex;
+			longOffsets = longIndex;
+			count = n;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private byte byteAt(long pos) {
+		return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & (SEGMENT_SIZE - 1)));
+	}
+
+	private int intAt(long pos) {
+		return segments[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & (SEGMENT_SIZE - 1)));
+	}
+
+	private float floatAt(long pos) {
+		return segments[(int) (pos >>> SEGMENT_SHIFT)].getFloat((int) (pos & (SEGMENT_SIZE - 1)));
+	}
+
+	/** Returns the number of values in the file. */
+	public int size() {
+		return count;
+	}
+
+	private long offset(int n) {
+		if (n < 0 || n >= count) {
+			throw new IndexOutOfBoundsException("value " + n + " of " + count);
+		}
+		return intOffsets != null ? intOffsets[n] : longOffsets[n];
+	}
+
+	private long payload(int n, byte tag) {
+		return payload(offset(n), n, tag);
+	}
+
+	/* the position of the payload of the nth value, which starts at pos */
+	private long payload(long pos, int n, byte tag) {
+		byte actual = byteAt(pos);
+		if (actual != tag) {
+			throw new PLCRuntimeException("Value file type mismatch at " + n + ": expected " + (char) tag + " found " + (char) actual);
+		}
+		return pos + 1;
+	}
+
+	/**
+	 * Returns the type tag of the nth value: one of 'I', 'F', 'Z', 'S', 'C'.
+	 */
+	public char getTag(int n) {
+		return (char) byteAt(offset(n));
+	}
+
+	public int getInt(int n) {
+		return intAt(payload(n, TAG_INT));
+	}
+
+	public float getFloat(int n) {
+		return floatAt(payload(n, TAG_FLOAT));
+	}
+
+	public boolean getBoolean(int n) {
+		return byteAt(payload(n, TAG_BOOLEAN)) != 0;
+	}
+
+	public ColorTuple getColor(int n) {
+		long pos = payload(n, TAG_COLOR);
+		return new ColorTuple(intAt(pos), intAt(pos + 4), intAt(pos + 8));
+	}
+
+	/**
+	 * Returns the nth value as a packed color.  Components are truncated as in ColorTuple.pack.
+	 */
+	public int getPackedColor(int n) {
+		long pos = payload(n, TAG_COLOR);
+		return ColorTuple.makePackedColor(intAt(pos), intAt(pos + 4), intAt(pos + 8));
+	}
+
+	public String getString(int n) {
+		return stringAt(payload(n, TAG_STRING));
+	}
+
+	private String stringAt(long pos) {
+		int length = intAt(pos);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = byteAt(pos + 4 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the nth value boxed.
+	 *
+	 * @return Integer, Float, Boolean, String, or ColorTuple
+	 */
+	public Object get(int n) {
+		return valueAt(offset(n));
+	}
+
+	/* the value that starts at pos */
+	private Object valueAt(long pos) {
+		return switch (byteAt(pos)) {
+		case TAG_INT -> intAt(pos + 1);
+		case TAG_FLOAT -> floatAt(pos + 1);
+		case TAG_BOOLEAN -> byteAt(pos + 1) != 0;
+		case TAG_COLOR -> new ColorTuple(intAt(pos + 1), intAt(pos + 5), intAt(pos + 9));
+		default -> stringAt(pos + 1);
+		};
+	}
+
+	/**
+	 * Returns a new Cursor positioned before the value with the given index.
+	 */
+	public Cursor cursor(int start) {
+		return new Cursor(start);
+	}
+
+	public Cursor cursor() {
+		return new Cursor(0);
+	}
+
+	/**
+	 * Iterates over the values in a MappedValueFile.  A Cursor is not thread safe, but any number
+	 * of Cursors may be used concurrently on the same file.
+	 *
+	 * Typical usage:
+	 *
+	 * while (cursor.next()) {
+	 *     if (cursor.tag() == 'I') sum += cursor.intValue();
+	 * }
+	 *
+	 * The value getters read the value at the position found by next(), and throw
+	 * IllegalStateException if the cursor is not on a value: before the first call to next(),
+	 * after seek(), or at the end of the file.
+	 */
+	public class Cursor {
+		int index;
+		long pos = -1;
+
+		Cursor(int start) {
+			index = start - 1;
+		}
+
+		/** Advances to the next value. Returns false at the end of the file. */
+		public boolean next() {
+			if (index + 1 >= count) {
+				index = count;
+				pos = -1;
+				return false;
+			}
+			pos = offset(++index);
+			return true;
+		}
+
+		/** Moves the cursor so that the next call to next() returns the value with the given index. */
+		public void seek(int n) {
+			index = n - 1;
+			pos = -1;
+		}
+
+		public int index() {
+			return index;
+		}
+
+		public char tag() {
+			return (char) byteAt(current());
+		}
+
+		private long current() {
+			if (pos < 0) {
+				throw new IllegalStateException("Cursor is not positioned on a value");
+			}
+			return pos;
+		}
+
+		private long payload(byte tag) {
+			return MappedValueFile.this.payload(current(), index, tag);
+		}
+
+		public int intValue() {
+			return intAt(payload(TAG_INT));
+		}
+
+		public float floatValue() {
+			return floatAt(payload(TAG_FLOAT));
+		}
+
+		public boolean booleanValue() {
+			return byteAt(payload(TAG_BOOLEAN)) != 0;
+		}
+
+		public int red() {
+			return intAt(payload(TAG_COLOR));
+		}
+
+		public int green() {
+			return intAt(payload(TAG_COLOR) + 4);
+		}
+
+		public int blue() {
+			return intAt(payload(TAG_COLOR) + 8);
+		}
+
+		public int packedColorValue() {
+			long pos = payload(TAG_COLOR);
+			return ColorTuple.makePackedColor(intAt(pos), intAt(pos + 4), intAt(pos + 8));
+		}
+
+		public String stringValue() {
+			return stringAt(payload(TAG_STRING));
+		}
+
+		public Object value() {
+			return valueAt(current());
+		}
+	}
+
+	/**
+	 * Closes the file.  The mapped buffers are released when they are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,253 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Runs a point-wise image program, where each pixel of the result depends only on the pixels at
+ * the same location in the source images, without holding any whole image in memory.
+ *
+ * The result image is divided into bands of rows.  When the encoder asks for a pixel in a band
+ * that has not been computed, the rows of the band are decoded from each source using an
+ * ImageReader source region, the pixel function is applied to them, and the previous band is
+ * discarded.  The encoder pulls rows in order, so each band is computed once.
+ *
+ * Most decoders, including the JPEG decoder, have to decode a source from its start to reach a
+ * source region, so the rows of band k are decoded after the k bands before it: an image of n
+ * bands costs about n / 2 decodes of each source, not one.  A band therefore has at least
+ * bandHeight rows and the image is split into at most maxBands bands, unless that would make a
+ * band more than maxBandHeight rows.  That bounds the memory of a band, width x maxBandHeight
+ * pixels for the result and for each source, so for images taller than maxBands x maxBandHeight
+ * the number of bands, and the decoding time per row, grows with the height.
+ *
+ * CodeGenVisitor generates a call to transform for programs of the form
+ *
+ * image a <- "source";
+ * image[w,h] b;
+ * b[x,y] = ... a[x,y] ...;
+ * write b -> "result";
+ *
+ */
+public class ScanlineStream {
+
+	/** Minimum number of rows decoded and computed at a time. */
+	public static int bandHeight = 256;
+
+	/** Maximum number of bands an image is divided into, unless its bands would be too tall. */
+	public static int maxBands = 16;
+
+	/** Maximum number of rows decoded and computed at a time. */
+	public static int maxBandHeight = 1024;
+
+	/**
+	 * Computes the packed color of one pixel of the result.
+	 */
+	@FunctionalInterface
+	public interface PixelFunction {
+		/**
+		 * @param x
+		 * @param y
+		 * @param pixels the packed colors at x,y of the source images, in the order they were
+		 *               given to transform.  The array is reused for every pixel.
+		 * @return the packed color of the result at x,y
+		 */
+		int apply(int x, int y, int[] pixels);
+	}
+
+	/**
+	 * Computes the width x height image whose pixels are given by f and writes it to the file
+	 * filename + ".jpeg", as FileURLIO.writeImage does.  Each source is a URL or a filename, as in
+	 * FileURLIO.readImage, and must be at least width x height.
+	 *
+	 * @param sources
+	 * @param width
+	 * @param height
+	 * @param f
+	 * @param filename
+	 */
+	public static void transform(String[] sources, int width, int height, PixelFunction f, String filename) {
+		if ((long) width * height > Integer.MAX_VALUE) {
+			throw new PLCRuntimeException("Image too large to stream: " + width + "x" + height);
+		}
+		Source[] inputs = new Source[sources.length];
+		try {
+			for (int i = 0; i < sources.length; i++) {
+				inputs[i] = new Source(sources[i], width, height);
+			}
+			BandBuffer buffer = new BandBuffer(inputs, width, height, bandRows(height), f);
+			DirectColorModel colorModel = new DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff);
+			SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+					width, height, colorModel.getMasks());
+			BufferedImage image = new BufferedImage(colorModel,
+					Raster.createWritableRaster(sampleModel, buffer, null), false, null);
+			FileURLIO.writeImage(image, filename);
+		} finally {
+			for (Source input : inputs) {
+				if (input != null) {
+					input.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of rows of each band of an image of the given height, except the last,
+	 * which may have fewer.
+	 */
+	public static int bandRows(int height) {
+		int rows = Math.max(bandHeight, (height + maxBands - 1) / Math.max(maxBands, 1));
+		return Math.max(1, Math.min(Math.min(rows, maxBandHeight), height));
+	}
+
+	/**
+	 * An image being decoded one band at a time.
+	 */
+	static class Source implements Closeable {
+		final String name;
+		final InputStream stream;
+		final ImageInputStream input;
+		final ImageReader reader;
+
+		Source(String name, int width, int height) {
+			this.name = name;
+			InputStream stream = null;
+			ImageInputStream input = null;
+			try {
+				try {
+					URL url = new URL(name);
+					System.err.println("reading image from url:  " + url);
+					stream = url.openStream();
+					input = ImageIO.createImageInputStream(stream);
+				} catch (MalformedURLException e) {// wasn't a URL, maybe it is a file
+					input = ImageIO.createImageInputStream(new File(name));
+				}
+				if (input == null) {
+					throw new PLCRuntimeException("Cannot read image " + name);
+				}
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+				if (!readers.hasNext()) {
+					throw new PLCRuntimeException("No image reader for " + name);
+				}
+				reader = readers.next();
+				// the stream is revisited for each band
+				reader.setInput(input, false, true);
+				if (reader.getWidth(0) < width || reader.getHeight(0) < height) {
+					throw new PLCRuntimeException("Image " + name + " is " + reader.getWidth(0) + "x"
+							+ reader.getHeight(0) + ", smaller than " + width + "x" + height);
+				}
+			} catch (IOException | RuntimeException e) {
+				closeQuietly(input);
+				closeQuietly(stream);
+				throw e instanceof PLCRuntimeException ? (PLCRuntimeException) e
+						: new PLCRuntimeException(e.getMessage() + " " + name, e);
+			}
+			this.stream = stream;
+			this.input = input;
+		}
+
+		/**
+		 * Decodes the given rows into pixels, as packed colors, one row after the other.
+		 */
+		void read(int y, int width, int rows, int[] pixels) {
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceRegion(new Rectangle(0, y, width, rows));
+			try {
+				BufferedImage band = reader.read(0, param);
+				band.getRGB(0, 0, width, rows, pixels, 0, width);
+			} catch (IOException e) {
+				throw new PLCRuntimeException(e.getMessage() + " " + name, e);
+			}
+		}
+
+		@Override
+		public void close() {
+			reader.dispose();
+			closeQuietly(input);
+			closeQuietly(stream);
+		}
+
+		private static void closeQuietly(Closeable c) {
+			if (c != null) {
+				try {
+					c.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The pixels of the result.  Only the band containing the last pixel asked for is stored.
+	 */
+	static class BandBuffer extends DataBuffer {
+		final Source[] sources;
+		final int width;
+		final int height;
+		final int bandRows;
+		final PixelFunction f;
+		final int[][] sourcePixels;
+		final int[] pixels;
+		final int[] pixel;
+		int start = -1;
+		int end = -1;
+
+		BandBuffer(Source[] sources, int width, int height, int bandRows, PixelFunction f) {
+			super(DataBuffer.TYPE_INT, width * height);
+			this.sources = sources;
+			this.width = width;
+			this.height = height;
+			this.bandRows = bandRows;
+			this.f = f;
+			sourcePixels = new int[sources.length][width * bandRows];
+			pixels = new int[width * bandRows];
+			pixel = new int[sources.length];
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			if (i < start || i >= end) {
+				compute(i / width / bandRows * bandRows);
+			}
+			return pixels[i - start];
+		}
+
+		@Override
+		public void setElem(int bank, int i, int val) {
+			throw new UnsupportedOperationException("streamed image is read only");
+		}
+
+		private void compute(int y0) {
+			int rows = Math.min(bandRows, height - y0);
+			for (int s = 0; s < sources.length; s++) {
+				sources[s].read(y0, width, rows, sourcePixels[s]);
+			}
+			for (int r = 0, i = 0; r < rows; r++) {
+				for (int x = 0; x < width; x++, i++) {
+					for (int s = 0; s < sources.length; s++) {
+						pixel[s] = sourcePixels[s][i];
+					}
+					pixels[i] = f.apply(x, y0 + r, pixel);
+				}
+			}
+			start = y0 * width;
+			end = start + rows * width;
+		}
+	}
+}
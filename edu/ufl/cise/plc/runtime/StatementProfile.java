@@ -0,0 +1,116 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.ufl.cise.plc.IToken.SourceLocation;
+
+/**
+ * The time spent in each declaration and statement of the programs run with an
+ * ExecutionContext, by the source location of the declaration or statement.
+ *
+ * Programs compiled with profiling on, see PLCLangExec, look up the Statement of each of their
+ * declarations and statements when apply starts, and record the nanoseconds since the one
+ * before finished after each of them.  Pixel assignments also record the number of pixels their
+ * loops computed.  The counts accumulate over every run with the context, so a program should
+ * have a context of its own while it is profiled.
+ *
+ * A profiled program runs each pixel assignment in a loop of its own, and its statements one
+ * after another, so that the time of each is known.
+ *
+ */
+public class StatementProfile {
+
+	/** The counts of one declaration or statement. */
+	public static class Statement {
+		private final SourceLocation location;
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder iterations = new LongAdder();
+
+		Statement(SourceLocation location) {
+			this.location = location;
+		}
+
+		/**
+		 * Records one execution that started at the given System.nanoTime and ran the given
+		 * number of loop iterations.  Returns the time it finished, when the next one starts.
+		 */
+		public long record(long start, long iterations) {
+			long now = System.nanoTime();
+			executions.increment();
+			nanos.add(now - start);
+			this.iterations.add(iterations);
+			return now;
+		}
+
+		public SourceLocation getLocation() {
+			return location;
+		}
+
+		/** Returns the number of times it finished. */
+		public long getExecutions() {
+			return executions.sum();
+		}
+
+		public long getNanos() {
+			return nanos.sum();
+		}
+
+		/** Returns the number of pixels computed by the loops of a pixel assignment, or 0. */
+		public long getIterations() {
+			return iterations.sum();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d:%d %d runs %.3f ms %d iterations", location.line(), location.column(),
+					getExecutions(), getNanos() / 1e6, getIterations());
+		}
+	}
+
+	private final Map<SourceLocation, Statement> statements = new LinkedHashMap<>();
+
+	/**
+	 * Returns the Statements at the given source locations, given as a line and a column each,
+	 * creating those that have not been run.
+	 */
+	public synchronized Statement[] statements(int... linesAndColumns) {
+		Statement[] result = new Statement[linesAndColumns.length / 2];
+		for (int i = 0; i < result.length; i++) {
+			SourceLocation location = new SourceLocation(linesAndColumns[2 * i], linesAndColumns[2 * i + 1]);
+			result[i] = statements.computeIfAbsent(location, Statement::new);
+		}
+		return result;
+	}
+
+	/** Returns the Statement at the given source location, or null if none has been run there. */
+	public synchronized Statement get(SourceLocation location) {
+		return statements.get(location);
+	}
+
+	/** Returns the Statements in the order they were first run. */
+	public synchronized List<Statement> getStatements() {
+		return new ArrayList<>(statements.values());
+	}
+
+	/** Returns the Statements that took the most time first. */
+	public List<Statement> getHottest() {
+		List<Statement> hottest = getStatements();
+		hottest.sort(Comparator.comparingLong(Statement::getNanos).reversed());
+		return hottest;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (Statement statement : getHottest()) {
+			s.append(statement).append('\n');
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,133 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the statements of one execution of a generated program as tasks, each starting once the
+ * statements it depends on have finished, so that independent statements run at the same time.
+ *
+ * CodeGenVisitor generates a scheduled apply method for programs with independent expensive
+ * statements, such as reading several images and computing images from each of them.  Each
+ * statement becomes a static method, and apply submits them in program order with the earlier
+ * statements they depend on, then joins the result.  The value of a variable is passed from the
+ * statement that gives it the value to the statements that use it through the statement's future.
+ *
+ * A statement that fails makes the statements that depend on it fail.  join waits for every
+ * statement and throws the exception of the first one, in program order, that failed, as the
+ * program would if its statements ran one after another.
+ *
+ * A scheduler is used by one execution, from the thread that runs apply.
+ *
+ */
+public class StatementScheduler {
+
+	/*
+	 * The default executor.  Statements may block reading files and URLs, so they get threads of
+	 * their own rather than those of ForkJoinPool.commonPool, which other code in the JVM relies
+	 * on and which has a single thread on a machine with two processors.  The threads are daemon
+	 * threads, so they never keep the JVM alive, and stop after a minute without statements.
+	 */
+	private static final ThreadPoolExecutor statementThreads;
+	static {
+		AtomicInteger count = new AtomicInteger();
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		statementThreads = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				r -> {
+					Thread thread = new Thread(r, "PLCLang statement " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		statementThreads.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs the statements.  By default, a pool of daemon threads, one per processor and at least
+	 * two.  Set to Runnable::run to run each statement in the thread that submits it, in program
+	 * order.
+	 */
+	public static Executor executor = statementThreads;
+
+	private final Executor statementExecutor = executor;
+	private final List<CompletableFuture<?>> statements = new ArrayList<>();
+
+	/**
+	 * Runs statement when the given statements have finished.  The result fails without running
+	 * the statement if one of them failed.
+	 *
+	 * @param statement
+	 * @param dependences futures of earlier statements returned by submit
+	 * @return the future of the statement's value
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> statement, CompletableFuture<?>... dependences) {
+		CompletableFuture<T> result = CompletableFuture.allOf(dependences).thenApplyAsync(v -> statement.get(),
+				statementExecutor);
+		statements.add(result);
+		return result;
+	}
+
+	/**
+	 * Waits for every submitted statement, then returns the value of result, or throws the
+	 * exception of the first statement that failed.
+	 *
+	 * @param result a future returned by submit, or null
+	 * @return the value of result, or null if result is null
+	 */
+	public <T> T join(CompletableFuture<T> result) {
+		Throwable failure = null;
+		for (CompletableFuture<?> statement : statements) {
+			try {
+				statement.join();
+			} catch (CompletionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			}
+		}
+		if (failure instanceof RuntimeException e) {
+			throw e;
+		}
+		if (failure instanceof Error e) {
+			throw e;
+		}
+		if (failure != null) {
+			throw new PLCRuntimeException(failure);
+		}
+		return result == null ? null : result.join();
+	}
+
+	/**
+	 * Closes the images of the given statements that have finished without failing.  Called
+	 * after join has returned or thrown, when no statement uses them any more.
+	 *
+	 * @param images futures returned by submit for declarations of TiledImages
+	 */
+	@SafeVarargs
+	public static void close(CompletableFuture<TiledImage>... images) {
+		RuntimeException failure = null;
+		for (CompletableFuture<TiledImage> image : images) {
+			if (image.isDone() && !image.isCompletedExceptionally()) {
+				try {
+					image.join().close();
+				} catch (RuntimeException e) {
+					if (failure == null) {
+						failure = e;
+					} else {
+						failure.addSuppressed(e);
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An RGB image whose pixels are stored outside the Java heap, so that its size is limited by
+ * memory or disk space instead of by the heap and the 2^31 elements of a Java array, and so
+ * that its pixels are never copied by the garbage collector.
+ *
+ * The pixels are divided into square tiles, each held in its own direct ByteBuffer or in a
+ * region of a memory mapped file.  Images with at least mapThreshold pixels are backed by a
+ * temporary file, which is deleted when the image is closed, so an image must be closed once it
+ * is no longer used; other images use direct buffers, which are freed when the image is garbage
+ * collected.
+ *
+ * Pixels are packed ints, read and written with getRGB and setRGB as in a BufferedImage of
+ * TYPE_INT_RGB: the alpha value is ignored when a pixel is set and is 0xff when it is read.
+ *
+ * CodeGenVisitor uses a TiledImage for an image variable that is declared with a constant size
+ * of at least mapThreshold pixels and is only used by pixel assignments, pixel selection,
+ * getWidth, getHeight, and writes to a file.  The generated code closes it when apply returns or
+ * throws.
+ *
+ */
+public class TiledImage implements Closeable {
+
+	/**
+	 * Images with at least this many pixels are backed by a temporary file.  Direct buffers count
+	 * against -XX:MaxDirectMemorySize, which by default is the maximum heap size.  CodeGenVisitor
+	 * only uses a TiledImage for images of at least this many pixels.
+	 */
+	public static long mapThreshold = 1L << 24;
+
+	static final int MAX_TILE_SHIFT = 8;
+	/* tiles of a mapped file are mapped this many bytes at a time */
+	static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	private final int width;
+	private final int height;
+	private final int shiftX;
+	private final int shiftY;
+	private final int maskX;
+	private final int maskY;
+	private final int tilesAcross;
+	private final IntBuffer[] tiles;
+	private final FileChannel channel;
+	private final Path file;
+	private final boolean deleteOnClose;
+
+	/**
+	 * Creates a black image of the given size.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public TiledImage(int width, int height) {
+		this(width, height, null, false);
+	}
+
+	private TiledImage(int width, int height, Path file, boolean persistent) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Width (" + width + ") and height (" + height + ") cannot be <= 0");
+		}
+		this.width = width;
+		this.height = height;
+		shiftX = tileShift(width);
+		shiftY = tileShift(height);
+		maskX = (1 << shiftX) - 1;
+		maskY = (1 << shiftY) - 1;
+		tilesAcross = (width + maskX) >>> shiftX;
+		int tilesDown = (height + maskY) >>> shiftY;
+		tiles = new IntBuffer[tilesAcross * tilesDown];
+		int tileBytes = 4 << (shiftX + shiftY);
+
+		boolean mapped = file != null || (long) width * height >= mapThreshold;
+		if (!mapped) {
+			channel = null;
+			this.file = null;
+			deleteOnClose = false;
+			for (int i = 0; i < tiles.length; i++) {
+				tiles[i] = ByteBuffer.allocateDirect(tileBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+			return;
+		}
+		try {
+			if (file == null) {
+				file = Files.createTempFile("tiledImage", ".pixels");
+			}
+			this.file = file;
+			deleteOnClose = !persistent;
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + file, e);
+		}
+		try {
+			int tilesPerChunk = MAX_CHUNK_SIZE / tileBytes;
+			for (int first = 0; first < tiles.length; first += tilesPerChunk) {
+				int n = Math.min(tilesPerChunk, tiles.length - first);
+				ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) first * tileBytes,
+						(long) n * tileBytes);
+				chunk.order(ByteOrder.nativeOrder());
+				for (int i = 0; i < n; i++) {
+					tiles[first + i] = chunk.slice(i * tileBytes, tileBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			try {
+				close();
+			} catch (RuntimeException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e instanceof RuntimeException ? (RuntimeException) e
+					: new PLCRuntimeException(e.getMessage() + " " + file, e);
+		}
+	}
+
+	/**
+	 * Creates an image backed by the given file, which is created if it does not exist and kept
+	 * when the image is closed.  The pixels are stored tile by tile in native byte order, so a
+	 * file is only meaningful to an image of the same size on the same platform.
+	 *
+	 * @param file
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public static TiledImage mapped(Path file, int width, int height) {
+		return new TiledImage(width, height, file, true);
+	}
+
+	/* log2 of the tile size along an axis: 256, or the smallest power of 2 covering a shorter side */
+	private static int tileShift(int size) {
+		int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+		return Math.min(shift, MAX_TILE_SHIFT);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** Returns true if the pixels are in a file rather than in direct buffers. */
+	public boolean isMapped() {
+		return channel != null;
+	}
+
+	/**
+	 * Returns the pixel at x,y in packed int form, with alpha 0xff.
+	 *
+	 * @throws ArrayIndexOutOfBoundsException if x,y is not in the image
+	 */
+	public int getRGB(int x, int y) {
+		checkBounds(x, y);
+		return 0xff000000 | tiles[(y >>> shiftY) * tilesAcross + (x >>> shiftX)].get(((y & maskY) << shiftX) | (x & maskX));
+	}
+
+	/**
+	 * Sets the pixel at x,y to the given packed color.  The alpha value is ignored.
+	 *
+	 * @throws ArrayIndexOutOfBoundsException if x,y is not in the image
+	 */
+	public void setRGB(int x, int y, int rgb) {
+		checkBounds(x, y);
+		tiles[(y >>> shiftY) * tilesAcross + (x >>> shiftX)].put(((y & maskY) << shiftX) | (x & maskX), rgb & 0xffffff);
+	}
+
+	private void checkBounds(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+		}
+	}
+
+	/**
+	 * Returns a BufferedImage that reads and writes the pixels of this image, for use with
+	 * ImageIO and other APIs that take a BufferedImage.  The view reads one pixel at a time
+	 * and cannot be used for images with 2^31 or more pixels.
+	 */
+	public BufferedImage asBufferedImage() {
+		if ((long) width * height > Integer.MAX_VALUE) {
+			throw new PLCRuntimeException("Image too large for a BufferedImage: " + width + "x" + height);
+		}
+		DirectColorModel colorModel = new DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff);
+		SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, width,
+				height, colorModel.getMasks());
+		return new BufferedImage(colorModel, Raster.createWritableRaster(sampleModel, new TileDataBuffer(), null),
+				false, null);
+	}
+
+	/**
+	 * Returns a copy of this image as a BufferedImage of TYPE_INT_RGB.
+	 */
+	public BufferedImage toBufferedImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				row[x] = getRGB(x, y);
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	/**
+	 * Returns a TiledImage with the same pixels as the given image.
+	 */
+	public static TiledImage copyOf(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		TiledImage tiled = new TiledImage(width, height);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				tiled.setRGB(x, y, row[x]);
+			}
+		}
+		return tiled;
+	}
+
+	/* the pixels in row major order, as seen by asBufferedImage */
+	private class TileDataBuffer extends DataBuffer {
+		TileDataBuffer() {
+			super(DataBuffer.TYPE_INT, width * height);
+		}
+
+		@Override
+		public int getElem(int bank, int i) {
+			return getRGB(i % width, i / width) & 0xffffff;
+		}
+
+		@Override
+		public void setElem(int bank, int i, int val) {
+			setRGB(i % width, i / width, val);
+		}
+	}
+
+	/**
+	 * Closes the backing file, deleting it if it is temporary.  The image must not be used
+	 * afterwards.  Does nothing for an image in direct buffers.
+	 *
+	 * @throws PLCRuntimeException if the file cannot be closed or deleted
+	 */
+	@Override
+	public void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+				if (deleteOnClose) {
+					Files.deleteIfExists(file);
+				}
+			} catch (IOException e) {
+				throw new PLCRuntimeException(e.getMessage() + " " + file, e);
+			}
+		}
+	}
+}
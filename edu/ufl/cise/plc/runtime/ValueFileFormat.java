@@ -0,0 +1,55 @@
+package edu.ufl.cise.plc.runtime;
+
+/**
+ * Layout of the binary files used by FileURLIO to hold non-image PLCLang values.
+ *
+ * A value file starts with a 4 byte magic number followed by a 1 byte format version.
+ * The header is followed by a sequence of records.  Each record is a 1 byte type tag
+ * followed by the payload for that type:
+ *
+ * INT      4 byte big-endian int
+ * FLOAT    4 byte IEEE float
+ * BOOLEAN  1 byte, 0 or 1
+ * STRING   4 byte length n followed by n bytes of UTF-8
+ * COLOR    three 4 byte ints (red, green, blue).  Components are not truncated.
+ *
+ * This replaces java serialization, which wrote a class descriptor and object header
+ * for every boxed value.
+ *
+ */
+final class ValueFileFormat {
+
+	private ValueFileFormat() {
+	}
+
+	/** "PLCV" */
+	static final int MAGIC = 0x504C4356;
+	static final byte VERSION = 1;
+	static final int HEADER_SIZE = 5;
+
+	static final byte TAG_INT = 'I';
+	static final byte TAG_FLOAT = 'F';
+	static final byte TAG_BOOLEAN = 'Z';
+	static final byte TAG_STRING = 'S';
+	static final byte TAG_COLOR = 'C';
+
+	/** Size of the buffer used between the value streams and the file channel */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Returns the size in bytes of the payload of a fixed size record, or -1 for a STRING record
+	 * whose size is given by its length prefix.
+	 *
+	 * @param tag
+	 * @return
+	 */
+	static int payloadSize(byte tag) {
+		return switch (tag) {
+		case TAG_INT, TAG_FLOAT -> 4;
+		case TAG_BOOLEAN -> 1;
+		case TAG_COLOR -> 12;
+		case TAG_STRING -> -1;
+		default -> throw new PLCRuntimeException("Corrupt value file: unknown type tag " + tag);
+		};
+	}
+}
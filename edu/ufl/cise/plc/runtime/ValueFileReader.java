@@ -0,0 +1,176 @@
+package edu.ufl.cise.plc.runtime;
+
+import static edu.ufl.cise.plc.runtime.ValueFileFormat.*;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads, in order, the values in a file written by ValueFileWriter.
+ *
+ * Not thread safe.
+ *
+ */
+public class ValueFileReader implements Closeable {
+
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/**
+	 * Opens the given file and checks its header.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public ValueFileReader(Path path) throws IOException {
+		this.path = path;
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		buffer.limit(0);
+		try {
+			if (!fill(HEADER_SIZE) || buffer.getInt() != MAGIC) {
+				throw new PLCRuntimeException("Not a PLCLang value file: " + path);
+			}
+			byte version = buffer.get();
+			if (version != VERSION) {
+				throw new PLCRuntimeException("Unsupported value file version " + version + ": " + path);
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Makes at least n bytes available in the buffer. Returns false if the end of the file
+	 * was reached first.
+	 */
+	private boolean fill(int n) throws IOException {
+		if (buffer.remaining() >= n) {
+			return true;
+		}
+		buffer.compact();
+		while (buffer.position() < n) {
+			if (channel.read(buffer) < 0) {
+				buffer.flip();
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+	private void require(int n) throws IOException {
+		if (!fill(n)) {
+			throw new EOFException("Truncated value file");
+		}
+	}
+
+	/**
+	 * Returns true if there is another value in the file.
+	 */
+	public boolean hasNext() throws IOException {
+		return fill(1);
+	}
+
+	private byte expect(byte tag) throws IOException {
+		require(1);
+		byte actual = buffer.get();
+		if (actual != tag) {
+			throw new PLCRuntimeException("Value file type mismatch: expected " + (char) tag + " found " + (char) actual);
+		}
+		return actual;
+	}
+
+	public int readInt() throws IOException {
+		expect(TAG_INT);
+		require(4);
+		return buffer.getInt();
+	}
+
+	public float readFloat() throws IOException {
+		expect(TAG_FLOAT);
+		require(4);
+		return buffer.getFloat();
+	}
+
+	public boolean readBoolean() throws IOException {
+		expect(TAG_BOOLEAN);
+		require(1);
+		return buffer.get() != 0;
+	}
+
+	public ColorTuple readColor() throws IOException {
+		expect(TAG_COLOR);
+		return readColorPayload();
+	}
+
+	public String readString() throws IOException {
+		expect(TAG_STRING);
+		return readStringPayload();
+	}
+
+	private ColorTuple readColorPayload() throws IOException {
+		require(12);
+		return new ColorTuple(buffer.getInt(), buffer.getInt(), buffer.getInt());
+	}
+
+	private String readStringPayload() throws IOException {
+		require(4);
+		int length = buffer.getInt();
+		// checked before the array is allocated, since a corrupt length may be up to 2 GB
+		if (length < 0 || length > buffer.remaining() + channel.size() - channel.position()) {
+			throw new PLCRuntimeException("Corrupt value file: string of length " + length + ": " + path);
+		}
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			if (!buffer.hasRemaining()) {
+				require(1);
+			}
+			int n = Math.min(buffer.remaining(), length - offset);
+			buffer.get(bytes, offset, n);
+			offset += n;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the next value, whatever its type, and returns it boxed.
+	 *
+	 * @return Integer, Float, Boolean, String, or ColorTuple
+	 * @throws IOException
+	 */
+	public Object readValue() throws IOException {
+		require(1);
+		byte tag = buffer.get();
+		return switch (tag) {
+		case TAG_INT -> {
+			require(4);
+			yield buffer.getInt();
+		}
+		case TAG_FLOAT -> {
+			require(4);
+			yield buffer.getFloat();
+		}
+		case TAG_BOOLEAN -> {
+			require(1);
+			yield buffer.get() != 0;
+		}
+		case TAG_COLOR -> readColorPayload();
+		case TAG_STRING -> readStringPayload();
+		default -> throw new PLCRuntimeException("Corrupt value file: unknown type tag " + tag);
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,127 @@
+package edu.ufl.cise.plc.runtime;
+
+import static edu.ufl.cise.plc.runtime.ValueFileFormat.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes PLCLang values to a file in the format described in ValueFileFormat.
+ *
+ * Values are accumulated in a buffer and written to the underlying FileChannel when the
+ * buffer fills, or when flush or close is called.  The typed write methods do not box
+ * their argument.
+ *
+ * Not thread safe.
+ *
+ */
+public class ValueFileWriter implements Closeable {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/**
+	 * Creates (or truncates) the given file and writes the header.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public ValueFileWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.putInt(MAGIC);
+		buffer.put(VERSION);
+	}
+
+	private void ensure(int n) throws IOException {
+		if (buffer.remaining() < n) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	public void writeInt(int value) throws IOException {
+		ensure(5);
+		buffer.put(TAG_INT).putInt(value);
+	}
+
+	public void writeFloat(float value) throws IOException {
+		ensure(5);
+		buffer.put(TAG_FLOAT).putFloat(value);
+	}
+
+	public void writeBoolean(boolean value) throws IOException {
+		ensure(2);
+		buffer.put(TAG_BOOLEAN).put(value ? (byte) 1 : (byte) 0);
+	}
+
+	public void writeColor(ColorTuple value) throws IOException {
+		ensure(13);
+		buffer.put(TAG_COLOR).putInt(value.red).putInt(value.green).putInt(value.blue);
+	}
+
+	public void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ensure(5);
+		buffer.put(TAG_STRING).putInt(bytes.length);
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining()) {
+				drain();
+			}
+			int n = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, n);
+			offset += n;
+		}
+	}
+
+	/**
+	 * Writes a value of any of the non-image PLCLang types.
+	 *
+	 * Throws an IllegalArgumentException if the value does not have one of these types.
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeValue(Object value) throws IOException {
+		if (value instanceof Integer i) {
+			writeInt(i);
+		} else if (value instanceof Float f) {
+			writeFloat(f);
+		} else if (value instanceof Boolean b) {
+			writeBoolean(b);
+		} else if (value instanceof String s) {
+			writeString(s);
+		} else if (value instanceof ColorTuple c) {
+			writeColor(c);
+		} else {
+			throw new IllegalArgumentException("Compiler/runtime error Unexpected value type: " + value);
+		}
+	}
+
+	/** Writes buffered values to the file. */
+	public void flush() throws IOException {
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+}
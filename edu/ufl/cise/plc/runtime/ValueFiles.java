@@ -0,0 +1,138 @@
+package edu.ufl.cise.plc.runtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The value files opened by one owner, keyed by filename.  The first write to a file creates it,
+ * later writes append to it; the first read of a file opens it and later reads continue where
+ * the previous one stopped.
+ *
+ * FileURLIO keeps one of these for its static methods, and each ExecutionContext has its own.
+ * Methods are synchronized so that an instance may be shared between threads.
+ *
+ */
+class ValueFiles implements Closeable {
+
+	private final Map<String, ValueFileReader> inputFiles = new HashMap<>();
+	private final Map<String, ValueFileWriter> outputFiles = new HashMap<>();
+
+	private ValueFileWriter writer(String filename) throws IOException {
+		ValueFileWriter writer = outputFiles.get(filename);
+		if (writer == null) {
+			writer = new ValueFileWriter(Paths.get(filename));
+			outputFiles.put(filename, writer);
+		}
+		return writer;
+	}
+
+	private ValueFileReader reader(String filename) throws IOException {
+		ValueFileReader reader = inputFiles.get(filename);
+		if (reader == null) {
+			// values written earlier by the same owner must be visible
+			flushWriter(filename);
+			reader = new ValueFileReader(Paths.get(filename));
+			inputFiles.put(filename, reader);
+		}
+		return reader;
+	}
+
+	private void flushWriter(String filename) throws IOException {
+		ValueFileWriter writer = outputFiles.get(filename);
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	synchronized void writeValue(Object value, String filename) {
+		try {
+			writer(filename).writeValue(value);
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
+		}
+	}
+
+	synchronized void writeInt(int value, String filename) {
+		try {
+			writer(filename).writeInt(value);
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
+		}
+	}
+
+	synchronized void writeFloat(float value, String filename) {
+		try {
+			writer(filename).writeFloat(value);
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
+		}
+	}
+
+	synchronized void writeBoolean(boolean value, String filename) {
+		try {
+			writer(filename).writeBoolean(value);
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
+		}
+	}
+
+	synchronized Object readValue(String filename) {
+		try {
+			return reader(filename).readValue();
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
+		}
+	}
+
+	/** Returns a new MappedValueFile, which is not tracked and must be closed by the caller. */
+	synchronized MappedValueFile open(String filename) {
+		try {
+			flushWriter(filename);
+			return new MappedValueFile(Paths.get(filename));
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e.getMessage() + " " + filename, e);
+		}
+	}
+
+	synchronized void flush() {
+		try {
+			for (ValueFileWriter writer : outputFiles.values()) writer.flush();
+		} catch (IOException e) {
+			throw new PLCRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Closes every file, even if closing one of them fails, and forgets them.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		IOException failure = null;
+		for (Closeable file : inputFiles.values()) {
+			failure = closeQuietly(file, failure);
+		}
+		for (Closeable file : outputFiles.values()) {
+			failure = closeQuietly(file, failure);
+		}
+		inputFiles.clear();
+		outputFiles.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static IOException closeQuietly(Closeable file, IOException failure) {
+		try {
+			file.close();
+		} catch (IOException e) {
+			if (failure == null) {
+				return e;
+			}
+			failure.addSuppressed(e);
+		}
+		return failure;
+	}
+}
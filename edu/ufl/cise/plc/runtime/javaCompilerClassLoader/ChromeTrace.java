@@ -0,0 +1,147 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records the Java Flight Recorder events of PLCLang while one call of PLCLangExec.exec runs,
+ * and writes them as a trace in the Chrome trace event format, which chrome://tracing and
+ * Perfetto open.
+ *
+ * Each PhaseEvent, JavacEvent, DefineClassEvent, ImageOpEvent and ImageFileEvent becomes a span
+ * on the thread that recorded it, so the image reads and operations of statements run by a
+ * StatementScheduler appear on the pool threads, inside the apply span of the calling thread.
+ * Events recorded by other calls running at the same time are included too.
+ *
+ */
+class ChromeTrace {
+
+	static final String[] EVENTS = { "Phase", "Javac", "DefineClass", "ImageOp", "ImageFile" };
+
+	private final Recording recording = new Recording();
+
+	/** Starts recording the events. */
+	ChromeTrace() {
+		for (String name : EVENTS) {
+			recording.enable("edu.ufl.cise.plc." + name);
+		}
+		recording.start();
+	}
+
+	/** Stops recording, and writes the trace to the given file. */
+	void write(Path file) throws IOException {
+		Path recorded = Files.createTempFile("plcLangTrace", ".jfr");
+		try {
+			recording.stop();
+			recording.dump(recorded);
+			Files.writeString(file, json(RecordingFile.readAllEvents(recorded)));
+		} finally {
+			recording.close();
+			Files.deleteIfExists(recorded);
+		}
+	}
+
+	/* The trace of the events, with times in microseconds since the first one started */
+	static String json(List<RecordedEvent> events) {
+		Instant first = null;
+		for (RecordedEvent event : events) {
+			if (first == null || event.getStartTime().isBefore(first)) {
+				first = event.getStartTime();
+			}
+		}
+		StringBuilder json = new StringBuilder("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+		Map<Long, String> threads = new HashMap<>();
+		for (RecordedEvent event : events) {
+			RecordedThread thread = event.getThread();
+			long tid = thread == null ? 0 : thread.getJavaThreadId();
+			if (thread != null) {
+				threads.put(tid, thread.getJavaName());
+			}
+			String type = event.getEventType().getName();
+			String name;
+			String category;
+			String args;
+			switch (type.substring(type.lastIndexOf('.') + 1)) {
+			case "Phase" -> {
+				name = event.getString("phase").toLowerCase(Locale.ROOT);
+				category = "phase";
+				args = "\"program\":" + string(event.getString("programName")) + ",\"sourceLength\":"
+						+ event.getInt("sourceLength");
+			}
+			case "Javac" -> {
+				name = "javac " + event.getString("className");
+				category = "compiler";
+				args = "\"bytecodeLength\":" + event.getInt("bytecodeLength") + ",\"success\":"
+						+ event.getBoolean("success");
+			}
+			case "DefineClass" -> {
+				name = "define " + event.getString("className");
+				category = "compiler";
+				args = "\"bytecodeLength\":" + event.getInt("bytecodeLength");
+			}
+			case "ImageOp" -> {
+				String operator = event.getString("operator");
+				name = event.getString("operation") + (operator == null ? "" : " " + operator);
+				category = "image";
+				args = "\"width\":" + event.getInt("width") + ",\"height\":" + event.getInt("height");
+			}
+			default -> {
+				name = (event.getBoolean("write") ? "write " : "read ") + event.getString("source");
+				category = "io";
+				args = "\"bytes\":" + event.getLong("bytes") + ",\"width\":" + event.getInt("width")
+						+ ",\"height\":" + event.getInt("height");
+			}
+			}
+			json.append(String.format(Locale.ROOT,
+					"{\"name\":%s,\"cat\":\"%s\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,\"pid\":1,\"tid\":%d,\"args\":{%s}},\n",
+					string(name), category, micros(first, event.getStartTime()),
+					event.getDuration().toNanos() / 1e3, tid, args));
+		}
+		for (Map.Entry<Long, String> thread : threads.entrySet()) {
+			json.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(thread.getKey())
+					.append(",\"args\":{\"name\":").append(string(thread.getValue())).append("}},\n");
+		}
+		json.append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"PLCLang\"}}\n]}\n");
+		return json.toString();
+	}
+
+	private static double micros(Instant first, Instant time) {
+		return (time.getEpochSecond() - first.getEpochSecond()) * 1e6 + (time.getNano() - first.getNano()) / 1e3;
+	}
+
+	/* A JSON string, or null */
+	static String string(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder json = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			switch (c) {
+			case '"' -> json.append("\\\"");
+			case '\\' -> json.append("\\\\");
+			case '\n' -> json.append("\\n");
+			case '\r' -> json.append("\\r");
+			case '\t' -> json.append("\\t");
+			default -> {
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+			}
+		}
+		return json.append('"').toString();
+	}
+}
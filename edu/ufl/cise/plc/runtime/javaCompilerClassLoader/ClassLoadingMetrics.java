@@ -0,0 +1,50 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+
+/**
+ * The classes that the JVM has loaded and unloaded, the metaspace they take, and the generated
+ * classes that DynamicClassLoader has defined, to follow how a long running program that
+ * compiles many PLCLang programs grows.  ExecMetrics also records the metaspace and the number of
+ * loaded classes after each class is loaded.
+ *
+ */
+public final class ClassLoadingMetrics {
+
+	private static final ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+
+	private ClassLoadingMetrics() {
+	}
+
+	/** Returns the number of classes loaded in the JVM now. */
+	public static int getLoadedClassCount() {
+		return classes.getLoadedClassCount();
+	}
+
+	/** Returns the number of classes the JVM has unloaded since it started. */
+	public static long getUnloadedClassCount() {
+		return classes.getUnloadedClassCount();
+	}
+
+	/** Returns the bytes of metaspace in use, or -1 if the JVM has no metaspace. */
+	public static long getMetaspaceUsedBytes() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getName().equals("Metaspace")) {
+				return pool.getUsage().getUsed();
+			}
+		}
+		return -1;
+	}
+
+	/** Returns the number of generated classes that DynamicClassLoader has defined. */
+	public static long getDefinedClassCount() {
+		return DynamicClassLoader.definedClasses.sum();
+	}
+
+	/** Returns the number of generated classes that DynamicClassLoader has defined as hidden classes. */
+	public static long getHiddenClassCount() {
+		return DynamicClassLoader.definedHiddenClasses.sum();
+	}
+}
@@ -0,0 +1,34 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for the definition of a generated class by DynamicClassLoader.
+ *
+ */
+@Name("edu.ufl.cise.plc.DefineClass")
+@Label("Define Class")
+@Category({ "PLCLang", "Compiler" })
+@Description("The definition of a generated class")
+final class DefineClassEvent extends jdk.jfr.Event {
+
+	@Label("Class")
+	String className;
+
+	@Label("Bytecode Length")
+	@DataAmount
+	int bytecodeLength;
+
+	/* Commits the event, started by begin, if it is being recorded */
+	void record(String className, byte[] bytecode) {
+		if (shouldCommit()) {
+			this.className = className;
+			this.bytecodeLength = bytecode.length;
+			commit();
+		}
+	}
+}
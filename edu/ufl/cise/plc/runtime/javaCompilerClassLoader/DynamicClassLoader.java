@@ -1,12 +1,39 @@
 package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
 
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DynamicClassLoader extends ClassLoader {
 	public DynamicClassLoader(ClassLoader parent) {
 		super(parent);
 	}
 
+	/**
+	 * Whether generated classes are defined as hidden classes, with
+	 * MethodHandles.Lookup.defineHiddenClass, instead of each by a new DynamicClassLoader.  A
+	 * hidden class is unloaded once nothing refers to it, so a long running program that compiles
+	 * many programs does not keep every class it generated in metaspace, and no class loader is
+	 * created for each class.
+	 *
+	 * The hidden classes of a package are defined in the package and class loader of a small
+	 * class that is compiled and defined the first time a class of the package is loaded, in a
+	 * DynamicClassLoader whose parent is the context class loader of that thread.  Hidden classes
+	 * cannot be named by other classes, so a generated class must consist of one class.
+	 */
+	public static boolean hiddenClasses = false;
+
+	/* The name of the class that defines the hidden classes of its package */
+	static final String LOOKUP_CLASS = "PLCLang$Lookup";
+
+	/* the lookups of the lookup classes, by package */
+	private static final Map<String, MethodHandles.Lookup> lookups = new ConcurrentHashMap<>();
+
+	static final LongAdder definedClasses = new LongAdder();
+	static final LongAdder definedHiddenClasses = new LongAdder();
+
 
 	
 	/**
@@ -28,6 +55,14 @@ public class DynamicClassLoader extends ClassLoader {
 		return runMethod(testClass,methodName, args);
 	}
 
+	/**
+	 * Defines the class in bytecode and returns its indicated method, which must not be
+	 * overloaded.
+	 */
+	static Method loadMethod(byte[] bytecode, String className, String methodName) throws Exception {
+		return findMethod(methodName, getClass(bytecode, className).getDeclaredMethods());
+	}
+
 	private static Method findMethod(String name, Method[] methods) {
 		for (Method m : methods) {
 			String methodName = m.getName();
@@ -38,11 +73,42 @@ public class DynamicClassLoader extends ClassLoader {
 	}
 
 	static Class<?> getClass(byte[] bytecode, String className) throws Exception {
-		DynamicClassLoader loader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
-		Class<?> testClass = loader.define(className, bytecode);
+		DefineClassEvent event = new DefineClassEvent();
+		event.begin();
+		Class<?> testClass;
+		if (hiddenClasses) {
+			testClass = lookup(className).defineHiddenClass(bytecode, true).lookupClass();
+			definedHiddenClasses.increment();
+		} else {
+			DynamicClassLoader loader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
+			testClass = loader.define(className, bytecode);
+		}
+		definedClasses.increment();
+		event.record(testClass.getName(), bytecode);
 		return testClass;
 	}
 
+	/* The lookup that defines hidden classes in the package of the named class */
+	private static MethodHandles.Lookup lookup(String className) throws Exception {
+		int dot = className.lastIndexOf('.');
+		String packageName = dot < 0 ? "" : className.substring(0, dot);
+		MethodHandles.Lookup lookup = lookups.get(packageName);
+		if (lookup == null) {
+			String lookupName = dot < 0 ? LOOKUP_CLASS : packageName + '.' + LOOKUP_CLASS;
+			byte[] bytecode = DynamicCompiler.compile(lookupName,
+					(dot < 0 ? "" : "package " + packageName + ";\n") + "public final class " + LOOKUP_CLASS
+							+ " { public static java.lang.invoke.MethodHandles.Lookup lookup() {"
+							+ " return java.lang.invoke.MethodHandles.lookup(); } }");
+			DynamicClassLoader loader = new DynamicClassLoader(Thread.currentThread().getContextClassLoader());
+			lookup = (MethodHandles.Lookup) loader.define(lookupName, bytecode).getMethod("lookup").invoke(null);
+			MethodHandles.Lookup previous = lookups.putIfAbsent(packageName, lookup);
+			if (previous != null) {
+				lookup = previous;
+			}
+		}
+		return lookup;
+	}
+
 	public Class<?> define(String className, byte[] bytecode) {
 		return super.defineClass(className, bytecode, 0, bytecode.length);
 	}
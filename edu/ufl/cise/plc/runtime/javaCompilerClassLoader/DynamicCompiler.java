@@ -1,30 +1,92 @@
 package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 
+/**
+ * Compiles generated Java code with the system Java compiler.
+ *
+ * Compiles skip looking for annotation processors, since generated code has none, which saves
+ * searching the whole class path for them on every compile.  They also share a pool of
+ * StandardJavaFileManagers, which keep the archives and directories of the class path open
+ * between compiles instead of each compile opening them again.  A file manager is used by one
+ * compile at a time: compiles on several threads each take their own from the pool, or a new
+ * one if every pooled one is in use, and give it back when they finish.
+ *
+ * The symbol tables javac builds from the class files are still built again by each compile,
+ * since the standard compiler API has no way to share them between compiles.
+ */
 public class DynamicCompiler {
-	
-	
+
+	/**
+	 * The most StandardJavaFileManagers kept open for later compiles, about the number of
+	 * compiles expected to run at the same time.  With 0, each compile opens and closes its own
+	 * file manager.
+	 */
+	public static int maxPooledFileManagers = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	private static final List<String> options = List.of("-proc:none");
+
+	/* the open file managers not in use by a compile, the most recently used first */
+	private static final Deque<StandardJavaFileManager> fileManagers = new ArrayDeque<>();
+
 	/** Compiles java source code provided in the form a  String and returns the class file in the form of a byte array. */
 	public static byte[] compile(String fullyQualifiedName, String sourceCode) throws Exception {
-		
-		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-		InMemoryClassFileManager fileManager = new InMemoryClassFileManager(compiler.getStandardFileManager(null, null, null));
-		
+
+		StandardJavaFileManager standardManager = take();
+		InMemoryClassFileManager fileManager = new InMemoryClassFileManager(standardManager);
+
 		List<JavaFileObject> sourceFiles = new ArrayList<>();
 		sourceFiles.add(new StringJavaFileObject(fullyQualifiedName, sourceCode));
-		
-		boolean success = compiler.getTask(null, fileManager, null, null, null, sourceFiles).call();
+
+		JavacEvent event = new JavacEvent();
+		event.begin();
+		boolean success;
+		try {
+			success = compiler.getTask(null, fileManager, null, options, null, sourceFiles).call();
+		} catch (RuntimeException | Error e) {
+			// the file manager may be left in any state
+			standardManager.close();
+			throw e;
+		}
+		give(standardManager);
 		if (success) {
-			return fileManager.byteCodeObject.getBytes();
+			byte[] bytecode = fileManager.byteCodeObject.getBytes();
+			event.record(fullyQualifiedName, sourceCode.length(), bytecode);
+			return bytecode;
 		}
-		else throw new Exception("error compiling generated code");
+		event.record(fullyQualifiedName, sourceCode.length(), null);
+		throw new Exception("error compiling generated code");
+	}
+
+	/* A pooled file manager, or a new one if none is free */
+	private static StandardJavaFileManager take() {
+		synchronized (fileManagers) {
+			StandardJavaFileManager fileManager = fileManagers.pollFirst();
+			if (fileManager != null) {
+				return fileManager;
+			}
 		}
+		return compiler.getStandardFileManager(null, null, null);
 	}
-	
 
+	/* Returns the file manager to the pool, or closes it if the pool is full */
+	private static void give(StandardJavaFileManager fileManager) throws IOException {
+		synchronized (fileManagers) {
+			if (fileManagers.size() < maxPooledFileManagers) {
+				fileManagers.addFirst(fileManager);
+				return;
+			}
+		}
+		fileManager.close();
+	}
+}
@@ -0,0 +1,186 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+/**
+ * The time and memory that each phase of one call of PLCLangExec.exec or compile took, and the
+ * sizes of the program's source, generated Java code and bytecode.  The metaspace in use and the
+ * number of loaded classes are recorded after the generated class is loaded, see
+ * ClassLoadingMetrics.
+ *
+ * Each phase is measured on the thread that runs it: the wall time, the CPU time, and the bytes
+ * allocated, counted by the ThreadMXBean.  The CPU time and bytes are -1 if the JVM does not
+ * count them.  Statements that a StatementScheduler runs on other threads are included in the
+ * wall time of APPLY, but not in its CPU time or bytes.
+ *
+ * The metrics are passed to the MetricsListeners of the PLCLangExec when the call returns or
+ * throws, and added to its histograms.  Each phase is also a PhaseEvent for Java Flight
+ * Recorder.
+ *
+ */
+public class ExecMetrics {
+
+	/** The phases of a call, in the order they run.  The INTERPRETER backend has no JAVAC or LOAD. */
+	public enum Phase {
+		LEX, PARSE, TYPE_CHECK, GENERATE, JAVAC, LOAD, APPLY
+	}
+
+	/** The wall time, CPU time and bytes allocated by one phase. */
+	public record PhaseMetrics(long wallNanos, long cpuNanos, long allocatedBytes) {
+	}
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final Backend backend;
+	private final int sourceLength;
+	private final Map<Phase, PhaseMetrics> phases = new EnumMap<>(Phase.class);
+	private String programName;
+	private int generatedSourceLength = -1;
+	private int bytecodeLength = -1;
+	private long metaspaceUsedBytes = -1;
+	private int loadedClassCount = -1;
+	private Exception failure;
+
+	/* the counters when the running phase started, and its event */
+	private PhaseEvent event;
+	private long wall0;
+	private long cpu0;
+	private long bytes0;
+
+	ExecMetrics(Backend backend, String input) {
+		this.backend = backend;
+		this.sourceLength = input.length();
+	}
+
+	void start() {
+		event = new PhaseEvent();
+		event.begin();
+		wall0 = System.nanoTime();
+		cpu0 = cpuTime();
+		bytes0 = allocatedBytes();
+	}
+
+	void stop(Phase phase) {
+		long wall = System.nanoTime() - wall0;
+		long cpu = cpuTime();
+		long bytes = allocatedBytes();
+		phases.put(phase, new PhaseMetrics(wall, cpu < 0 || cpu0 < 0 ? -1 : cpu - cpu0,
+				bytes < 0 || bytes0 < 0 ? -1 : bytes - bytes0));
+		event.record(phase, programName, sourceLength);
+	}
+
+	private static long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long allocatedBytes() {
+		return threads instanceof com.sun.management.ThreadMXBean counters ? counters.getCurrentThreadAllocatedBytes()
+				: -1;
+	}
+
+	void setProgramName(String programName) {
+		this.programName = programName;
+	}
+
+	void setGeneratedSourceLength(int generatedSourceLength) {
+		this.generatedSourceLength = generatedSourceLength;
+	}
+
+	void setBytecodeLength(int bytecodeLength) {
+		this.bytecodeLength = bytecodeLength;
+	}
+
+	/* Records the metaspace and classes after the generated class was loaded */
+	void setClassLoading() {
+		metaspaceUsedBytes = ClassLoadingMetrics.getMetaspaceUsedBytes();
+		loadedClassCount = ClassLoadingMetrics.getLoadedClassCount();
+	}
+
+	void setFailure(Exception failure) {
+		this.failure = failure;
+	}
+
+	public Backend getBackend() {
+		return backend;
+	}
+
+	/** Returns the name of the program, or null if it was not parsed. */
+	public String getProgramName() {
+		return programName;
+	}
+
+	/** Returns the metrics of the phases that completed, in the order they ran. */
+	public Map<Phase, PhaseMetrics> getPhases() {
+		return Collections.unmodifiableMap(phases);
+	}
+
+	/** Returns the metrics of the given phase, or null if it did not complete. */
+	public PhaseMetrics get(Phase phase) {
+		return phases.get(phase);
+	}
+
+	/** Returns the sum of the wall times of the phases. */
+	public long getWallNanos() {
+		long wall = 0;
+		for (PhaseMetrics metrics : phases.values()) {
+			wall += metrics.wallNanos();
+		}
+		return wall;
+	}
+
+	/** Returns the number of characters of the PLCLang source. */
+	public int getSourceLength() {
+		return sourceLength;
+	}
+
+	/** Returns the number of characters of the generated Java code, or -1 if none was generated. */
+	public int getGeneratedSourceLength() {
+		return generatedSourceLength;
+	}
+
+	/** Returns the number of bytes of the compiled class, or -1 if it was not compiled. */
+	public int getBytecodeLength() {
+		return bytecodeLength;
+	}
+
+	/**
+	 * Returns the bytes of metaspace in use after the generated class was loaded, or -1 if no
+	 * class was loaded.
+	 */
+	public long getMetaspaceUsedBytes() {
+		return metaspaceUsedBytes;
+	}
+
+	/**
+	 * Returns the number of classes loaded in the JVM after the generated class was loaded, or
+	 * -1 if no class was loaded.
+	 */
+	public int getLoadedClassCount() {
+		return loadedClassCount;
+	}
+
+	/** Returns the exception that the call threw, or null if it returned. */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder(programName == null ? "?" : programName).append(' ').append(backend);
+		for (Map.Entry<Phase, PhaseMetrics> entry : phases.entrySet()) {
+			PhaseMetrics metrics = entry.getValue();
+			s.append(String.format(" %s=%.3fms/%dB", entry.getKey(), metrics.wallNanos() / 1e6,
+					metrics.allocatedBytes()));
+		}
+		if (failure != null) {
+			s.append(" failed: ").append(failure);
+		}
+		return s.toString();
+	}
+}
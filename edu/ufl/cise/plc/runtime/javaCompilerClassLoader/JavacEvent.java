@@ -0,0 +1,44 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for one DynamicCompiler.compile, that compiles a generated
+ * class with javac.
+ *
+ */
+@Name("edu.ufl.cise.plc.Javac")
+@Label("Javac")
+@Category({ "PLCLang", "Compiler" })
+@Description("The compilation of generated Java code")
+final class JavacEvent extends jdk.jfr.Event {
+
+	@Label("Class")
+	String className;
+
+	@Label("Source Length")
+	@Description("The number of characters of the Java code")
+	int sourceLength;
+
+	@Label("Bytecode Length")
+	@DataAmount
+	int bytecodeLength;
+
+	@Label("Success")
+	boolean success;
+
+	/* Commits the event, started by begin, if it is being recorded */
+	void record(String className, int sourceLength, byte[] bytecode) {
+		if (shouldCommit()) {
+			this.className = className;
+			this.sourceLength = sourceLength;
+			this.bytecodeLength = bytecode == null ? 0 : bytecode.length;
+			this.success = bytecode != null;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+/**
+ * Receives the ExecMetrics of each call of PLCLangExec.exec and compile.
+ *
+ * Listeners are called on the thread that made the call, after it has finished, and for TIERED
+ * programs also on the thread that compiles them in the background, so they must be thread
+ * safe.  An exception thrown by a listener is thrown to the caller of exec or compile.
+ *
+ */
+@FunctionalInterface
+public interface MetricsListener {
+
+	void completed(ExecMetrics metrics);
+}
@@ -1,43 +1,295 @@
 package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.Lexer;
 import edu.ufl.cise.plc.ast.ASTNode;
 import edu.ufl.cise.plc.ast.Program;
+import edu.ufl.cise.plc.runtime.ExecutableProgram;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics.Phase;
 
 public class PLCLangExec {
-	
+
+	/**
+	 * How a program is run: JAVAC generates Java code and compiles it to bytecode, INTERPRETER
+	 * compiles the AST to closures with ClosureCompiler, which is much faster to start but
+	 * slower to run.  TIERED starts with the interpreter and switches to bytecode compiled in
+	 * the background once the program is hot; see TieredProgram.
+	 */
+	public enum Backend {
+		JAVAC, INTERPRETER, TIERED
+	}
+
 	public final String packageName;
-	
+	public final Backend backend;
+	/**
+	 * Whether the code generated for the JAVAC and TIERED backends records the time of each
+	 * declaration and statement in the StatementProfile of the ExecutionContext it runs with.
+	 */
+	public final boolean profile;
+
 	public PLCLangExec(String packageName, boolean VERBOSE) {
+		this(packageName, VERBOSE, Backend.JAVAC);
+	}
+
+	public PLCLangExec(String packageName, boolean VERBOSE, Backend backend) {
+		this(packageName, VERBOSE, backend, false);
+	}
+
+	public PLCLangExec(String packageName, boolean VERBOSE, Backend backend, boolean profile) {
 		super();
 		this.packageName = packageName;
 		this.VERBOSE = VERBOSE;
+		this.backend = backend;
+		this.profile = profile;
+		for (Phase phase : Phase.values()) {
+			histograms.put(phase, new PhaseHistogram());
+		}
 	}
 
 	final boolean VERBOSE;
 
+	/**
+	 * The most TIERED programs each PLCLangExec keeps for later calls of exec.  Running another
+	 * drops the one run least recently, whose counters and compiled code are lost: if it is run
+	 * again it starts in the interpreter.  A caller that runs many programs can keep its own
+	 * from compile(input, Backend.TIERED) instead.
+	 */
+	public static int maxTieredPrograms = 64;
+
+	/*
+	 * the TIERED programs run by exec, by source, so that their counters persist across calls,
+	 * the least recently run first
+	 */
+	@SuppressWarnings("serial")
+	private final Map<String, TieredProgram> tieredPrograms = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TieredProgram> eldest) {
+			return size() > maxTieredPrograms;
+		}
+	};
+
+	private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+	/* filled by the constructor, and only read after that */
+	private final Map<Phase, PhaseHistogram> histograms = new EnumMap<>(Phase.class);
+
+	/**
+	 * Adds a listener that receives the ExecMetrics of every later call of exec and compile.
+	 */
+	public void addMetricsListener(MetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeMetricsListener(MetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the histogram of the given phase over every call of exec and compile so far.
+	 */
+	public PhaseHistogram getHistogram(Phase phase) {
+		return histograms.get(phase);
+	}
+
+	private volatile Path traceDirectory;
+	private final AtomicLong traces = new AtomicLong();
+
+	/**
+	 * Makes every later call of exec write a trace of its phases, image operations and image
+	 * file IO, in the Chrome trace event format, to a file named after the program and the
+	 * number of the trace, such as f-3.json, in the given directory.  The trace is recorded
+	 * with Java Flight Recorder, see ChromeTrace, which makes each call slower.  A null
+	 * directory turns tracing off.
+	 */
+	public void setTraceDirectory(Path directory) {
+		traceDirectory = directory;
+	}
+
+	private void publish(ExecMetrics metrics) {
+		for (Map.Entry<Phase, ExecMetrics.PhaseMetrics> entry : metrics.getPhases().entrySet()) {
+			histograms.get(entry.getKey()).add(entry.getValue());
+		}
+		for (MetricsListener listener : listeners) {
+			listener.completed(metrics);
+		}
+	}
+
 	private void show(Object obj) throws IOException {
 		if (VERBOSE)
 			System.out.println(obj);
 	}
-	
+
+	/**
+	 * Compiles and runs the given PLCLang program in a new ExecutionContext that uses the
+	 * console settings in ConsoleIO.  The context, and so every value file the program
+	 * opened, is closed before this method returns.
+	 */
 	public Object exec(String input, Object[] params) throws Exception {
-		//Lex and parse to obtain AST
-		ASTNode ast = CompilerComponentFactory.getParser(input).parse();
-		//Type check and decorate AST with declaration and type info
-		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		try (ExecutionContext context = ExecutionContext.fromConsoleIO()) {
+			return exec(input, params, context);
+		}
+	}
+
+	/**
+	 * Compiles and runs the given PLCLang program, performing its IO through the given context.
+	 * The context is not closed.
+	 */
+	public Object exec(String input, Object[] params, ExecutionContext context) throws Exception {
+		return exec(input, params, context, backend);
+	}
+
+	/**
+	 * Compiles the given PLCLang program with the given backend and runs it, performing its IO
+	 * through the given context.  The context is not closed.
+	 */
+	public Object exec(String input, Object[] params, ExecutionContext context, Backend backend) throws Exception {
+		ExecMetrics metrics = new ExecMetrics(backend, input);
+		Path directory = traceDirectory;
+		ChromeTrace trace = directory == null ? null : new ChromeTrace();
+		Exception failure = null;
+		try {
+			ExecutableProgram program;
+			if (backend == Backend.TIERED) {
+				synchronized (tieredPrograms) {
+					program = tieredPrograms.get(input);
+				}
+				if (program == null) {
+					program = new TieredProgram(this, input, metrics);
+					synchronized (tieredPrograms) {
+						TieredProgram previous = tieredPrograms.putIfAbsent(input, (TieredProgram) program);
+						if (previous != null) {
+							program = previous;
+						}
+					}
+				}
+			} else {
+				program = compile(input, backend, metrics);
+			}
+			metrics.start();
+			Object result = program.apply(context, params);
+			metrics.stop(Phase.APPLY);
+			return result;
+		} catch (Exception e) {
+			metrics.setFailure(e);
+			failure = e;
+			throw e;
+		} finally {
+			publish(metrics);
+			if (trace != null) {
+				String name = metrics.getProgramName() == null ? "program" : metrics.getProgramName();
+				writeTrace(trace, directory.resolve(name + "-" + traces.incrementAndGet() + ".json"), failure);
+			}
+		}
+	}
+
+	/*
+	 * Writes the trace of a call of exec.  A failure to write it does not change what exec
+	 * returns or throws: it is suppressed by the exception exec throws, if any, and otherwise
+	 * printed.
+	 */
+	private static void writeTrace(ChromeTrace trace, Path file, Exception failure) {
+		try {
+			trace.write(file);
+		} catch (IOException | RuntimeException e) {
+			if (failure != null) {
+				failure.addSuppressed(e);
+			} else {
+				System.err.println("could not write trace " + file + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the TieredProgram that exec uses for the given source with the TIERED backend, or
+	 * null if exec has not run it.
+	 */
+	public TieredProgram getTieredProgram(String input) {
+		synchronized (tieredPrograms) {
+			return tieredPrograms.get(input);
+		}
+	}
+
+	/**
+	 * Compiles the given PLCLang program with the given backend.  The result may be run any
+	 * number of times.  Each TIERED program has its own counters.
+	 */
+	public ExecutableProgram compile(String input, Backend backend) throws Exception {
+		ExecMetrics metrics = new ExecMetrics(backend, input);
+		try {
+			return compile(input, backend, metrics);
+		} catch (Exception e) {
+			metrics.setFailure(e);
+			throw e;
+		} finally {
+			publish(metrics);
+		}
+	}
+
+	/* Compiles the program, recording each phase in metrics */
+	private ExecutableProgram compile(String input, Backend backend, ExecMetrics metrics) throws Exception {
+		if (backend == Backend.TIERED) {
+			return new TieredProgram(this, input, metrics);
+		}
+		ASTNode ast = check(input, metrics);
+		if (backend == Backend.INTERPRETER) {
+			metrics.start();
+			ExecutableProgram program = (ExecutableProgram) ast.visit(CompilerComponentFactory.getClosureCompiler(),
+					null);
+			metrics.stop(Phase.GENERATE);
+			return program;
+		}
 		//Generate Java code
 		String className = ((Program) ast).getName();
 		String fullyQualifiedName = packageName != "" ? packageName + '.' + className : className;
-		String javaCode = (String) ast.visit(CompilerComponentFactory.getCodeGenerator(packageName), null);
+		metrics.start();
+		String javaCode = (String) ast.visit(CompilerComponentFactory.getCodeGenerator(packageName, profile),
+				null);
+		metrics.stop(Phase.GENERATE);
+		metrics.setGeneratedSourceLength(javaCode.length());
 		show(javaCode);
 		//Invoke Java compiler to obtain bytecode
+		metrics.start();
 		byte[] byteCode = DynamicCompiler.compile(fullyQualifiedName, javaCode);
-		//Load generated classfile and execute its apply method.
-		Object result = DynamicClassLoader.loadClassAndRunMethod(byteCode, fullyQualifiedName, "apply", params);
-		return result;
+		metrics.stop(Phase.JAVAC);
+		metrics.setBytecodeLength(byteCode.length);
+		//Load generated classfile.  The context is always the first argument of its apply method.
+		metrics.start();
+		Method apply = DynamicClassLoader.loadMethod(byteCode, fullyQualifiedName, "apply");
+		metrics.stop(Phase.LOAD);
+		metrics.setClassLoading();
+		return (context, params) -> {
+			Object[] args = new Object[(params == null ? 0 : params.length) + 1];
+			args[0] = context;
+			if (params != null) {
+				System.arraycopy(params, 0, args, 1, params.length);
+			}
+			return apply.invoke(null, args);
+		};
+	}
+
+	/* Lex, parse, and type check, obtaining an AST decorated with declaration and type info */
+	static ASTNode check(String input, ExecMetrics metrics) throws Exception {
+		metrics.start();
+		Lexer lexer = CompilerComponentFactory.getScannedLexer(input);
+		metrics.stop(Phase.LEX);
+		metrics.start();
+		ASTNode ast = CompilerComponentFactory.getParser(lexer).parse();
+		metrics.stop(Phase.PARSE);
+		metrics.setProgramName(((Program) ast).getName());
+		metrics.start();
+		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		metrics.stop(Phase.TYPE_CHECK);
+		return ast;
 	}
 
 }
@@ -0,0 +1,41 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics.Phase;
+
+/**
+ * A Java Flight Recorder event for one phase of PLCLangExec.exec or compile, recorded with
+ * the ExecMetrics of the call.  The program name is null for LEX, which runs before the program
+ * is parsed.
+ *
+ */
+@Name("edu.ufl.cise.plc.Phase")
+@Label("PLCLang Phase")
+@Category({ "PLCLang", "Compiler" })
+@Description("A phase of compiling or running a PLCLang program")
+final class PhaseEvent extends jdk.jfr.Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Program")
+	String programName;
+
+	@Label("Source Length")
+	@Description("The number of characters of the PLCLang source")
+	int sourceLength;
+
+	/* Commits the event, started by begin, if it is being recorded */
+	void record(Phase phase, String programName, int sourceLength) {
+		if (shouldCommit()) {
+			this.phase = phase.name();
+			this.programName = programName;
+			this.sourceLength = sourceLength;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics.PhaseMetrics;
+
+/**
+ * The wall times of every run of one phase since the PLCLangExec was created, counted in
+ * buckets of powers of two nanoseconds, with the total wall time, CPU time and bytes allocated.
+ *
+ * Bucket i counts the runs that took from 2^(i-1) up to 2^i - 1 nanoseconds, and bucket 0 those
+ * that took no time, so percentiles are known to within a factor of two.  Runs are added from
+ * any thread without locking.
+ *
+ */
+public class PhaseHistogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(64);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder wallNanos = new LongAdder();
+	private final LongAdder cpuNanos = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+
+	void add(PhaseMetrics metrics) {
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, metrics.wallNanos())));
+		count.increment();
+		wallNanos.add(metrics.wallNanos());
+		cpuNanos.add(Math.max(0, metrics.cpuNanos()));
+		allocatedBytes.add(Math.max(0, metrics.allocatedBytes()));
+	}
+
+	/** Returns the number of runs. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalWallNanos() {
+		return wallNanos.sum();
+	}
+
+	public long getTotalCpuNanos() {
+		return cpuNanos.sum();
+	}
+
+	public long getTotalAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	/** Returns the number of runs in each bucket. */
+	public long[] getBuckets() {
+		long[] counts = new long[buckets.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket that holds the given fraction of the runs, such as
+	 * 0.99 for the 99th percentile, or 0 if there are no runs.
+	 */
+	public long getPercentileNanos(double fraction) {
+		long[] counts = getBuckets();
+		long total = 0;
+		for (long bucketCount : counts) {
+			total += bucketCount;
+		}
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				return i == 0 ? 0 : (1L << i) - 1;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,117 @@
+package edu.ufl.cise.plc.runtime.javaCompilerClassLoader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.runtime.ExecutableProgram;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics.Phase;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+/**
+ * A program that is run by the closure interpreter until it is hot, and then by bytecode
+ * compiled with javac.
+ *
+ * The program counts its invocations and the pixels set by its pixel assignments.  When either
+ * count reaches its threshold, the program is compiled by CodeGenVisitor and DynamicCompiler on
+ * a background thread, and calls that start after the compilation has finished run the compiled
+ * code.  Calls made while it is compiling keep using the interpreter, so no call waits for
+ * javac.  If the generated code does not compile, the program stays interpreted and the error
+ * is available from getCompileFailure.
+ *
+ */
+public class TieredProgram implements ExecutableProgram {
+
+	/** A program is compiled after this many calls. */
+	public static long invocationThreshold = 1000;
+
+	/** A program is compiled after its pixel assignments have set this many pixels. */
+	public static long pixelThreshold = 1L << 22;
+
+	/* compilations are done one at a time, by a daemon thread, so they never keep the JVM alive */
+	private static final ExecutorService compiler = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "PLCLang tiered compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final PLCLangExec exec;
+	private final String input;
+	private final ExecutableProgram interpreted;
+	private final AtomicLong invocations = new AtomicLong();
+	private final LongAdder pixels = new LongAdder();
+	private final AtomicBoolean compileStarted = new AtomicBoolean();
+	private volatile ExecutableProgram compiled;
+	private volatile Exception compileFailure;
+
+	/**
+	 * Parses, type checks, and closure compiles the program.  Errors in the program are thrown
+	 * here, as by PLCLangExec.compile.
+	 *
+	 * @param exec    the PLCLangExec whose package name is used for the compiled class
+	 * @param input   the source of the program
+	 * @param metrics records the phases of the closure compilation
+	 * @throws Exception
+	 */
+	TieredProgram(PLCLangExec exec, String input, ExecMetrics metrics) throws Exception {
+		this.exec = exec;
+		this.input = input;
+		ASTNode ast = PLCLangExec.check(input, metrics);
+		metrics.start();
+		interpreted = (ExecutableProgram) ast.visit(CompilerComponentFactory.getClosureCompiler(pixels), null);
+		metrics.stop(Phase.GENERATE);
+	}
+
+	@Override
+	public Object apply(ExecutionContext context, Object[] params) throws Exception {
+		ExecutableProgram program = compiled;
+		if (program != null) {
+			return program.apply(context, params);
+		}
+		invocations.incrementAndGet();
+		try {
+			return interpreted.apply(context, params);
+		} finally {
+			if (isHot() && compileStarted.compareAndSet(false, true)) {
+				compiler.execute(this::compile);
+			}
+		}
+	}
+
+	private boolean isHot() {
+		return invocations.get() >= invocationThreshold || pixels.sum() >= pixelThreshold;
+	}
+
+	private void compile() {
+		try {
+			compiled = exec.compile(input, Backend.JAVAC);
+		} catch (Exception e) {
+			compileFailure = e;
+		}
+	}
+
+	/** Returns true if calls now run the compiled bytecode. */
+	public boolean isCompiled() {
+		return compiled != null;
+	}
+
+	/** Returns the number of calls run by the interpreter. */
+	public long getInvocations() {
+		return invocations.get();
+	}
+
+	/** Returns the number of pixels set by pixel assignments in calls run by the interpreter. */
+	public long getPixels() {
+		return pixels.sum();
+	}
+
+	/** Returns the exception thrown by the background compilation, or null if it has not failed. */
+	public Exception getCompileFailure() {
+		return compileFailure;
+	}
+}
@@ -15,6 +15,7 @@ import edu.ufl.cise.plc.ast.ASTVisitor;
 import edu.ufl.cise.plc.ast.Program;
 //import edu.ufl.cise.plc.runtime.ColorTuple;
 import edu.ufl.cise.plc.runtime.ConsoleIO;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
 import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.DynamicClassLoader;
 import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.DynamicCompiler;
 
@@ -68,9 +69,15 @@ class Assignment5TestStarter {
         show(javaCode);
         // Invoke Java compiler to obtain bytecode
         byte[] byteCode = DynamicCompiler.compile(fullyQualifiedName, javaCode);
-        // Load generated classfile and execute its apply method.
-        Object result = DynamicClassLoader.loadClassAndRunMethod(byteCode, fullyQualifiedName, "apply", params);
-        return result;
+        // Load generated classfile and execute its apply method. The ExecutionContext is the first argument.
+        try (ExecutionContext context = ExecutionContext.fromConsoleIO()) {
+            Object[] args = new Object[(params == null ? 0 : params.length) + 1];
+            args[0] = context;
+            if (params != null) {
+                System.arraycopy(params, 0, args, 1, params.length);
+            }
+            return DynamicClassLoader.loadClassAndRunMethod(byteCode, fullyQualifiedName, "apply", args);
+        }
     }
 
     private void displayResult(String input, Object[] params) throws Exception {
@@ -11,9 +11,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Scanner;
@@ -33,6 +33,7 @@ import edu.ufl.cise.plc.runtime.ConsoleIO;
 import edu.ufl.cise.plc.runtime.FileURLIO;
 import edu.ufl.cise.plc.runtime.ImageOps;
 import edu.ufl.cise.plc.runtime.ImageOps.OP;
+import edu.ufl.cise.plc.runtime.ValueFileReader;
 import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
 
 public class Assignment6Tests {
@@ -188,20 +189,19 @@ public class Assignment6Tests {
 		return FileURLIO.readImage("tempImage.jpeg");
 	}
 
-	void checkFile(String path, Object... expecteds) throws IOException, ClassNotFoundException {
+	void checkFile(String path, Object... expecteds) throws IOException {
 		if (expecteds.length == 1 && expecteds[0] instanceof BufferedImage) {
 			checkEqual(expecteds[0], FileURLIO.readImage(path));
 			return;
 		}
 
-		FileInputStream fis = new FileInputStream(path);
-		ObjectInputStream ois = new ObjectInputStream(fis);
+		ValueFileReader reader = new ValueFileReader(Paths.get(path));
 		for (Object expected : expecteds) {
-			Object actual = ois.readObject();
+			Object actual = reader.readValue();
 			checkEqual(expected, actual);
 		}
 
-		ois.close();
+		reader.close();
 	}
 
 	void checkConsoleImageIO(BufferedImage... expectedImages) throws Exception {
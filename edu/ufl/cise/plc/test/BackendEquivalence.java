@@ -0,0 +1,90 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+/**
+ * Compiles and runs programs for the tests of the optimizations in CodeGenVisitor, which check
+ * the code it generates and that running it gives what the interpreter gives.
+ */
+final class BackendEquivalence {
+
+	static final String PACKAGE = "backendEquivalence";
+
+	private BackendEquivalence() {
+	}
+
+	/* the Java code generated for input */
+	static String javaCode(String input) throws Exception {
+		ASTNode ast = CompilerComponentFactory.getParser(input).parse();
+		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		return (String) ast.visit(CompilerComponentFactory.getCodeGenerator(PACKAGE), null);
+	}
+
+	/* runs input with the given backend, with System.out as its console and without display */
+	static Object exec(String input, Backend backend, Object... params) throws Exception {
+		try (ExecutionContext context = new ExecutionContext(System.out, System.in, false)) {
+			return new PLCLangExec(PACKAGE, false).exec(input, params, context, backend);
+		}
+	}
+
+	/* runs input with the given backend, printing to console and with no console input */
+	static Object exec(String input, Backend backend, PrintStream console, Object... params) throws Exception {
+		try (ExecutionContext context = new ExecutionContext(console, new ByteArrayInputStream(new byte[0]), false)) {
+			return new PLCLangExec(PACKAGE, false).exec(input, params, context, backend);
+		}
+	}
+
+	/* an image of type TYPE_INT_RGB whose pixels all differ */
+	static BufferedImage image(int width, int height) {
+		return image(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	static BufferedImage image(int width, int height, int type) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int x = 0; x < width; x++)
+			for (int y = 0; y < height; y++)
+				image.setRGB(x, y, (x * 7 << 16) | (y * 5 << 8) | ((x * y) & 0xff));
+		return image;
+	}
+
+	/* checks that the generated code returns the value that the interpreter returns */
+	static void checkValue(Object expected, String input, Object... params) throws Exception {
+		assertEquals(expected, exec(input, Backend.JAVAC, params));
+		assertEquals(expected, exec(input, Backend.INTERPRETER, params));
+	}
+
+	/* checks that the generated code returns the image and prints what the interpreter does */
+	static void checkImage(String input, Object... params) throws Exception {
+		ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+		ByteArrayOutputStream actualOutput = new ByteArrayOutputStream();
+		BufferedImage expected = (BufferedImage) exec(input, Backend.INTERPRETER, new PrintStream(expectedOutput),
+				params);
+		BufferedImage actual = (BufferedImage) exec(input, Backend.JAVAC, new PrintStream(actualOutput), params);
+		assertEquals(expectedOutput.toString(), actualOutput.toString());
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int x = 0; x < expected.getWidth(); x++)
+			for (int y = 0; y < expected.getHeight(); y++)
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+	}
+
+	/* the number of occurrences of s in code */
+	static int count(String code, String s) {
+		int n = 0;
+		for (int i = code.indexOf(s); i >= 0; i = code.indexOf(s, i + 1)) {
+			n++;
+		}
+		return n;
+	}
+}
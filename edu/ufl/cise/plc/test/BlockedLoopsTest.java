@@ -0,0 +1,77 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.checkImage;
+import static edu.ufl.cise.plc.test.BackendEquivalence.image;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ImageOps;
+
+class BlockedLoopsTest {
+
+	int savedTileSize = ImageOps.tileSize;
+
+	@AfterEach
+	void restoreTileSize() {
+		ImageOps.tileSize = savedTileSize;
+	}
+
+	@Test
+	void neighbors() throws Exception {
+		String input = """
+				image f(image a)
+				image[getWidth a - 2, getHeight a - 2] b;
+				b[x,y] = <<getRed a[x + 2, y + 1], getGreen a[x + 1, y + 2], getBlue a[x, y]>>;
+				^ b;
+				""";
+		assertTrue(javaCode(input).contains("ImageOps.tileSize($width)"));
+		BufferedImage a = image(40, 30);
+		// blocks that do not divide the image, a whole image block, and blocks larger than the image
+		for (int tileSize : new int[] { 7, 0, 1000 }) {
+			ImageOps.tileSize = tileSize;
+			checkImage(input, a);
+		}
+	}
+
+	@Test
+	void severalImages() throws Exception {
+		String input = """
+				image f(image a, image c)
+				image[30,20] b;
+				b[x,y] = a[x,y] + c[x,y];
+				^ b;
+				""";
+		assertTrue(javaCode(input).contains("ImageOps.tileSize($width)"));
+		ImageOps.tileSize = 8;
+		checkImage(input, image(30, 20), image(35, 25));
+	}
+
+	@Test
+	void notBlocked() throws Exception {
+		// the target is read at other pixels, so the order of the pixels matters
+		String input = """
+				image f(image a)
+				image[30,20] b;
+				b[x,y] = <<x, y, 0>>;
+				b[x,y] = <<getRed b[(x + 1) % 30, y], getGreen a[x + 1, y], 0>>;
+				^ b;
+				""";
+		assertFalse(javaCode(input).contains("tileSize"));
+		checkImage(input, image(31, 20));
+
+		// a single image read at the pixel being set
+		assertFalse(javaCode("""
+				image f(image a)
+				image[30,20] b;
+				b[x,y] = a[x,y] + <<1, 1, 1>>;
+				^ b;
+				""").contains("tileSize"));
+	}
+}
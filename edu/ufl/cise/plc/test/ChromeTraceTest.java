@@ -0,0 +1,132 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class ChromeTraceTest {
+
+	/* the name, start, duration and thread of each span of the trace */
+	record Span(String name, double ts, double dur, long tid) {
+	}
+
+	static final Pattern SPAN = Pattern
+			.compile("\\{\"name\":\"([^\"]*)\",\"cat\":\"[a-z]*\",\"ph\":\"X\",\"ts\":([0-9.]+),\"dur\":([0-9.]+),\"pid\":1,\"tid\":(\\d+)");
+
+	static List<Span> spans(String trace) {
+		List<Span> spans = new ArrayList<>();
+		Matcher matcher = SPAN.matcher(trace);
+		while (matcher.find()) {
+			spans.add(new Span(matcher.group(1), Double.parseDouble(matcher.group(2)),
+					Double.parseDouble(matcher.group(3)), Long.parseLong(matcher.group(4))));
+		}
+		return spans;
+	}
+
+	static Span find(List<Span> spans, String name) {
+		for (Span span : spans) {
+			if (span.name().equals(name)) {
+				return span;
+			}
+		}
+		throw new AssertionError("no span " + name + " in " + spans);
+	}
+
+	@Test
+	void trace() throws Exception {
+		Path directory = Files.createTempDirectory("chromeTraceTest");
+		try {
+			check(directory);
+		} finally {
+			for (File f : directory.toFile().listFiles()) {
+				f.delete();
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	void traceNotWritten() throws Exception {
+		Path directory = Files.createTempDirectory("chromeTraceTest");
+		Files.delete(directory);
+		String input = """
+				int f(int a)
+				^ 10 / a;
+				""";
+		PLCLangExec exec = new PLCLangExec("chromeTraceTest", false);
+		exec.setTraceDirectory(directory);
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+				new ByteArrayInputStream(new byte[0]), false)) {
+			assertEquals(5, exec.exec(input, new Object[] { 2 }, context, Backend.INTERPRETER));
+			Exception e = assertThrows(InvocationTargetException.class,
+					() -> exec.exec(input, new Object[] { 0 }, context, Backend.INTERPRETER));
+			assertTrue(e.getCause() instanceof ArithmeticException);
+			assertEquals(1, e.getSuppressed().length);
+			assertTrue(e.getSuppressed()[0] instanceof IOException);
+		}
+	}
+
+	void check(Path directory) throws Exception {
+		Path first = directory.resolve("first.png");
+		Path second = directory.resolve("second.png");
+		ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", first.toFile());
+		ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "png", second.toFile());
+		// the two images are read, and their pixel assignments run, at the same time
+		String input = """
+				int f(string s, string t)
+				image a <- s;
+				image c <- t;
+				image[getWidth a, getHeight a] r;
+				r[x,y] = <<getRed a[x,y], 0, 0>>;
+				image[getWidth c, getHeight c] g;
+				g[x,y] = <<0, getGreen c[x,y], 0>>;
+				^ getWidth r + getWidth g;
+				""";
+		PLCLangExec exec = new PLCLangExec("chromeTraceTest", false);
+		exec.setTraceDirectory(directory);
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+				new ByteArrayInputStream(new byte[0]), false)) {
+			assertEquals(60, exec.exec(input, new Object[] { first.toString(), second.toString() }, context,
+					Backend.JAVAC));
+		}
+		Path file = directory.resolve("f-1.json");
+		String trace = Files.readString(file);
+		assertTrue(trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+		List<Span> spans = spans(trace);
+		Span apply = find(spans, "apply");
+		for (String phase : new String[] { "lex", "parse", "type_check", "generate", "javac", "load" }) {
+			Span span = find(spans, phase);
+			assertEquals(apply.tid(), span.tid());
+			assertTrue(span.ts() + span.dur() <= apply.ts());
+		}
+		Span javac = find(spans, "javac chromeTraceTest.f");
+		assertTrue(javac.ts() >= find(spans, "javac").ts() && javac.ts() < find(spans, "load").ts());
+		Span read = find(spans, "read " + first);
+		assertTrue(read.ts() >= apply.ts() && read.ts() + read.dur() <= apply.ts() + apply.dur());
+		// on a thread of the StatementScheduler
+		assertTrue(apply.tid() != read.tid());
+		assertTrue(trace.contains("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + read.tid()));
+	}
+}
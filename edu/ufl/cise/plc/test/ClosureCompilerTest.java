@@ -0,0 +1,286 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ConsoleIO;
+import edu.ufl.cise.plc.runtime.ExecutableProgram;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+/**
+ * Runs programs with both backends of PLCLangExec and checks that they return the same value
+ * and perform the same IO.
+ */
+class ClosureCompilerTest {
+
+	Path dir;
+	String source;
+
+	@BeforeEach
+	void createSource() throws Exception {
+		dir = Files.createTempDirectory("closureCompilerTest");
+		source = dir.resolve("source").toString();
+		BufferedImage image = new BufferedImage(60, 40, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < 60; x++)
+			for (int y = 0; y < 40; y++)
+				image.setRGB(x, y, (x * 4 << 16) | (y * 6 << 8) | ((x * y) & 0xff));
+		FileURLIO.writeImage(image, source);
+		source += ".jpeg";
+	}
+
+	@AfterEach
+	void deleteFiles() throws Exception {
+		try (var files = Files.list(dir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	record Run(Object value, String console, List<BufferedImage> images) {
+	}
+
+	Run run(String input, Backend backend, String consoleInput, Object... params) throws Exception {
+		ByteArrayOutputStream console = new ByteArrayOutputStream();
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(console, true),
+				new ByteArrayInputStream(consoleInput.getBytes()), false)) {
+			Object value = new PLCLangExec("closureCompilerTest", false).exec(input, params, context, backend);
+			return new Run(value, console.toString(), context.getConsoleImages());
+		}
+	}
+
+	static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int x = 0; x < expected.getWidth(); x++)
+			for (int y = 0; y < expected.getHeight(); y++)
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+	}
+
+	/* runs the program with both backends and returns the value returned by the interpreter */
+	Object checkSame(String input, String consoleInput, Object... params) throws Exception {
+		Run expected = run(input, Backend.JAVAC, consoleInput, params);
+		Run actual = run(input, Backend.INTERPRETER, consoleInput, params);
+		if (expected.value() instanceof BufferedImage) {
+			assertSameImage((BufferedImage) expected.value(), (BufferedImage) actual.value());
+		} else {
+			assertEquals(expected.value(), actual.value());
+		}
+		assertEquals(expected.console(), actual.console());
+		assertEquals(expected.images().size(), actual.images().size());
+		for (int i = 0; i < expected.images().size(); i++) {
+			assertSameImage(expected.images().get(i), actual.images().get(i));
+		}
+		return actual.value();
+	}
+
+	@Test
+	void arithmetic() throws Exception {
+		String input = """
+				int f(int a, float b, boolean c)
+				int d = a * 3 - a / 2 % 5;
+				float e = b * d + 0.5;
+				int g = if (c & e > 10.0) d else -d fi;
+				color h = <<a, d, g>> + <<1, 2, 3>>;
+				write h -> console;
+				write e -> console;
+				write !c | a == d -> console;
+				write h * <<2, 2, 2>> -> console;
+				^ g + a % 3;
+				""";
+		checkSame(input, "", 7, 2.5f, true);
+		assertEquals(checkSame(input, "", 9, -1.5f, true), checkSame(input, "", 9, -1.5f, false));
+	}
+
+	@Test
+	void colorEquality() throws Exception {
+		String input = """
+				boolean f(int k)
+				color a = <<1, 2, 3>>;
+				color b = <<k, 2, 3>>;
+				write a != b -> console;
+				write a * 2 == <<2, 4, 6>> -> console;
+				write <<1.5, 2.5, 3.5>> == <<1.5, 2.5, 3.5>> -> console;
+				^ a == b;
+				""";
+		assertEquals(true, checkSame(input, "", 1));
+		assertEquals(false, checkSame(input, "", 4));
+	}
+
+	@Test
+	void colorFloats() throws Exception {
+		String input = """
+				color f(float k)
+				color a = <<1, 2, 3>>;
+				write <<k, 2.5, 3.5>> * <<2, 2, 2>> -> console;
+				write a + <<k, 2.5, 3.5>> -> console;
+				write k * a -> console;
+				^ a * k;
+				""";
+		checkSame(input, "", 2.5f);
+		checkSame(input, "", -0.75f);
+	}
+
+	@Test
+	void imageOperations() throws Exception {
+		String input = """
+				image f(string source)
+				image[50,30] a <- source;
+				image[50,30] b;
+				b[x,y] = <<x, y, 3>>;
+				image[50,30] c;
+				c[x,y] = <<1.5, 2.5, 3.5>> * a[x,y];
+				write a == b -> console;
+				write a[0,0] == c[0,0] -> console;
+				write a + b -> console;
+				write a - b -> console;
+				write a * 0.5 -> console;
+				write c -> console;
+				^ (a / 2) * (b % 7);
+				""";
+		checkSame(input, "", source);
+	}
+
+	@Test
+	void consoleInput() throws Exception {
+		String input = """
+				string f()
+				int a <- console;
+				float b;
+				b <- console;
+				string s <- console;
+				write a + b -> console;
+				^ s;
+				""";
+		assertEquals("goodbye", checkSame(input, "3\n2.75\ngoodbye\n"));
+	}
+
+	@Test
+	void consoleInputAcrossRuns() throws Exception {
+		String input = """
+				int f()
+				int a <- console;
+				^ a;
+				""";
+		PrintStream prompts = ConsoleIO.prompts;
+		InputStream consoleInput = ConsoleIO.consoleInput;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			ConsoleIO.prompts = new PrintStream(output, true);
+			ConsoleIO.setConsoleInput(new ByteArrayInputStream("1\nx\n2\n3\n4\n".getBytes()));
+			for (Backend backend : Backend.values()) {
+				assertEquals(backend.ordinal() + 1, new PLCLangExec("closureCompilerTest", false, backend)
+						.exec(input, new Object[0]));
+			}
+			assertEquals(4, ConsoleIO.readValueFromConsole("INT", "Last:"));
+		} finally {
+			ConsoleIO.prompts = prompts;
+			ConsoleIO.setConsoleInput(consoleInput);
+		}
+		assertTrue(output.toString().contains("INVALID INPUT"));
+		assertTrue(output.toString().endsWith("Last:"));
+	}
+
+	@Test
+	void valueFiles() throws Exception {
+		String file = dir.resolve("values").toString();
+		String input = """
+				float f(string file)
+				write 42 -> file;
+				write 3.5 -> file;
+				write "text" -> file;
+				write <<1, 2, 3>> -> file;
+				int a <- file;
+				float b <- file;
+				string s <- file;
+				color c <- file;
+				write s -> console;
+				write c -> console;
+				^ a + b;
+				""";
+		assertEquals(45.5f, checkSame(input, "", file));
+		Files.delete(Path.of(file));
+	}
+
+	@Test
+	void images() throws Exception {
+		String input = """
+				image f(string source, int k)
+				image[50,30] a <- source;
+				image[20,10] b;
+				b[x,y] = a[x,y] + <<x, y, k>>;
+				image c = a * 2;
+				write getWidth c + getHeight b -> console;
+				write b -> console;
+				image[25,15] d <- source;
+				d = <<k, 0, 0>>;
+				write d -> console;
+				^ c;
+				""";
+		checkSame(input, "", source, 5);
+	}
+
+	@Test
+	void imageFiles() throws Exception {
+		String input = """
+				void f(string source, string result)
+				image a <- source;
+				image[40,30] b;
+				b[x,y] = <<getBlue a[x,y], getRed a[x,y], getGreen a[x,y]>> * <<2, 1, 1>>;
+				write b -> result;
+				""";
+		String javac = dir.resolve("javac").toString();
+		String interpreter = dir.resolve("interpreter").toString();
+		run(input, Backend.JAVAC, "", source, javac);
+		run(input, Backend.INTERPRETER, "", source, interpreter);
+		assertArrayEquals(Files.readAllBytes(Path.of(javac + ".jpeg")),
+				Files.readAllBytes(Path.of(interpreter + ".jpeg")));
+	}
+
+	@Test
+	void exceptions() throws Exception {
+		String input = """
+				int f(int a)
+				^ 10 / a;
+				""";
+		assertEquals(5, checkSame(input, "", 2));
+		for (Backend backend : Backend.values()) {
+			Exception e = assertThrows(InvocationTargetException.class, () -> run(input, backend, "", 0));
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+	}
+
+	@Test
+	void reusable() throws Exception {
+		ExecutableProgram program = new PLCLangExec("closureCompilerTest", false).compile("""
+				int f(int n)
+				int a = n * n;
+				^ a + 1;
+				""", Backend.INTERPRETER);
+		try (ExecutionContext context = new ExecutionContext(System.out, System.in, false)) {
+			for (int n = 0; n < 100; n++) {
+				assertEquals(n * n + 1, program.apply(context, new Object[] { n }));
+			}
+		}
+	}
+}
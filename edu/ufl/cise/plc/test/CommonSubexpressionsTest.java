@@ -0,0 +1,91 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.count;
+import static edu.ufl.cise.plc.test.BackendEquivalence.exec;
+import static edu.ufl.cise.plc.test.BackendEquivalence.image;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class CommonSubexpressionsTest {
+
+	@Test
+	void shared() throws Exception {
+		String input = """
+				image f(image a, int k)
+				image[30,20] b;
+				b[x,y] = <<(x / 8) * (y / 8) + (x / 8) * (y / 8), getRed a[x,y], getRed a[x,y] / k>>
+					+ <<getRed a[x,y], if (x > 3) getRed a[x,y] / k else 0 fi, getGreen a[x,y]>>;
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("final var $cse0 = ((x/8)*(y/8));"));
+		// the pixel is read once, for getRed and getGreen
+		assertEquals(1, count(code, "a.getRGB(x, y)"));
+		assertTrue(code.contains("($cse0+$cse0)"));
+		assertTrue(code.contains("? $cse"));
+
+		BufferedImage a = image(30, 20);
+		BufferedImage expected = (BufferedImage) exec(input, Backend.INTERPRETER, a, 3);
+		BufferedImage actual = (BufferedImage) exec(input, Backend.JAVAC, a, 3);
+		for (int x = 0; x < 30; x++)
+			for (int y = 0; y < 20; y++)
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+	}
+
+	@Test
+	void notSharedAfterThrow() throws Exception {
+		// a smaller image throws when it is read, but the division by 0 is first
+		String input = """
+				image f(image a, int k)
+				image[30,20] b;
+				b[x,y] = <<x / k, getRed a[x,y], getRed a[x,y]>>;
+				^ b;
+				""";
+		assertFalse(javaCode(input).contains("$cse"));
+		BufferedImage a = image(10, 10);
+		for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+			Exception e = assertThrows(InvocationTargetException.class, () -> exec(input, backend, a, 0));
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+	}
+
+	@Test
+	void notSharedInConditional() throws Exception {
+		String input = """
+				image f(image a, int k)
+				image[30,20] b;
+				b[x,y] = if (k > 0) <<getRed a[x,y], getRed a[x,y], 0>> else <<0, 0, 0>> fi;
+				^ b;
+				""";
+		assertFalse(javaCode(input).contains("$cse"));
+		BufferedImage b = (BufferedImage) exec(input, Backend.JAVAC, image(1, 1), 0);
+		assertEquals(0, b.getRGB(29, 19) & 0xffffff);
+	}
+
+	@Test
+	void streamed() throws Exception {
+		String input = """
+				void f(int k)
+				image a <- "source";
+				image[100,70] b;
+				b[x,y] = <<getRed a[x,y] * k, getRed a[x,y], 0>>;
+				write b -> "result";
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("ScanlineStream.transform"));
+		assertTrue(code.contains("return "));
+		assertNotNull(new PLCLangExec("commonSubexpressionsTest", false).compile(input, Backend.JAVAC));
+	}
+}
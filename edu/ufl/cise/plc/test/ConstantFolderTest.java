@@ -0,0 +1,110 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.checkValue;
+import static edu.ufl.cise.plc.test.BackendEquivalence.exec;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class ConstantFolderTest {
+
+	@Test
+	void pixelLoop() throws Exception {
+		String input = """
+				image f(int k)
+				image[4,3] b;
+				b[x,y] = <<255/2, 2*3+1, -(4 % 3)>> + <<x, y, k * 1>> * (if (3 > 2 & true) <<1, 1, 1>> else RED fi);
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("new ColorTuple(127, 7, -1)"));
+		assertFalse(code.contains("255/2"));
+		assertFalse(code.contains("?"));
+		assertFalse(code.contains("k*1"));
+		for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+			BufferedImage b = (BufferedImage) exec(input, backend, 5);
+			for (int x = 0; x < 4; x++)
+				for (int y = 0; y < 3; y++)
+					assertEquals(new ColorTuple(127 + x, 7 + y, -1 + 5).pack(), b.getRGB(x, y));
+		}
+	}
+
+	@Test
+	void arithmetic() throws Exception {
+		checkValue(-7, """
+				int f()
+				^ 7 / -1 + 0 * 3 - 0;
+				""");
+		checkValue(2.75f, """
+				float f()
+				^ 1 + 3.5 / 2;
+				""");
+		checkValue(true, """
+				boolean f()
+				^ !(1.5 < 1) & 2 == 2 | false;
+				""");
+		checkValue(3, """
+				int f()
+				^ getGreen (<<1, 2, 3>> + <<1, 1, 1>>);
+				""");
+	}
+
+	@Test
+	void identities() throws Exception {
+		String input = """
+				float f(float a, int b)
+				int c = b * 1 + 0;
+				float d = (a - 0.0) + c;
+				^ (d * 1) / 1.0;
+				""";
+		String code = javaCode(input);
+		assertFalse(code.contains("*1"));
+		assertFalse(code.contains("/1"));
+		checkValue(4.5f, input, 2.5f, 2);
+		// -0.0 + 0.0 is 0.0, so a + 0.0 is not simplified
+		checkValue(0.0f, """
+				float f(float a)
+				^ a + 0.0;
+				""", -0.0f);
+		checkValue(-0.0f, """
+				float f(float a)
+				^ a - 0.0;
+				""", -0.0f);
+	}
+
+	@Test
+	void notFolded() throws Exception {
+		String input = """
+				int f()
+				^ 1 / 0;
+				""";
+		assertTrue(javaCode(input).contains("1/0"));
+		for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+			Exception e = assertThrows(InvocationTargetException.class, () -> exec(input, backend));
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+	}
+
+	@Test
+	void imageNotAliased() throws Exception {
+		for (String identity : new String[] { "a * 1", "a / 1" }) {
+			String input = "image f()\nimage[3,2] a;\na[x,y] = <<10, 20, 30>>;\nimage b = " + identity
+					+ ";\nb[x,y] = <<200, 0, 0>>;\n^ a;\n";
+			for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+				BufferedImage result = (BufferedImage) exec(input, backend);
+				// writing the pixels of b leaves a as it was
+				assertEquals(0xff0a141e, result.getRGB(0, 0), identity + " " + backend);
+			}
+		}
+	}
+}
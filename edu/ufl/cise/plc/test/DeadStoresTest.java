@@ -0,0 +1,75 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.checkImage;
+import static edu.ufl.cise.plc.test.BackendEquivalence.exec;
+import static edu.ufl.cise.plc.test.BackendEquivalence.image;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class DeadStoresTest {
+
+	@Test
+	void unused() throws Exception {
+		String input = """
+				image f(image a)
+				image[getWidth a, getHeight a] t;
+				t[x,y] = a[x,y] + <<1, 1, 1>>;
+				int k = 3;
+				k = k + 1;
+				image[10,10] b;
+				b[x,y] = <<x, y, 0>>;
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertFalse(code.contains(" t "));
+		assertFalse(code.contains("int k"));
+		assertFalse(code.contains("a.getRGB"));
+		checkImage(input, image(12, 8));
+	}
+
+	@Test
+	void effects() throws Exception {
+		String input = """
+				image f(image a, int d)
+				image[10,10] u;
+				u[x,y] = a[x,y] + <<1, 1, 1>>;
+				image[5,5] c;
+				c[x,y] = <<x / d, 0, 0>>;
+				image b = a;
+				b[x,y] = <<x, y, 0>>;
+				^ c;
+				""";
+		String code = javaCode(input);
+		// a may be smaller than u, d may be 0, and b is a, which the caller sees
+		assertTrue(code.contains("ImageOps.setColor(u, x, y"));
+		assertTrue(code.contains("(x/d)"));
+		assertTrue(code.contains("BufferedImage b = a;"));
+		assertTrue(code.contains("ImageOps.setColor(b, x, y"));
+		BufferedImage a = image(12, 12);
+		checkImage(input, a, 2);
+		assertEquals(0x020300, a.getRGB(2, 3) & 0xffffff);
+	}
+
+	@Test
+	void deadInitializer() throws Exception {
+		String input = """
+				int f(int d)
+				int k = 1 + d;
+				k = d * 2;
+				int j = k + 3;
+				^ k;
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("int k;"));
+		assertFalse(code.contains("int j"));
+		assertEquals(exec(input, Backend.INTERPRETER, 5), exec(input, Backend.JAVAC, 5));
+	}
+}
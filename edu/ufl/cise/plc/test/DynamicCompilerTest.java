@@ -0,0 +1,54 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.DynamicClassLoader;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.DynamicCompiler;
+
+class DynamicCompilerTest {
+
+	static String source(int i) {
+		return "package dynamicCompilerTest; public class C" + i + " { public static int apply() { return " + i
+				+ " * 3; } }";
+	}
+
+	static int run(int i, byte[] bytecode) throws Exception {
+		return (int) DynamicClassLoader.loadClassAndRunMethod(bytecode, "dynamicCompilerTest.C" + i, "apply", null);
+	}
+
+	@Test
+	void concurrent() throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<byte[]>> compiled = new ArrayList<>();
+			for (int i = 0; i < 24; i++) {
+				int n = i;
+				compiled.add(workers.submit(() -> DynamicCompiler.compile("dynamicCompilerTest.C" + n, source(n))));
+			}
+			// each compile gets the class file of its own source
+			for (int i = 0; i < compiled.size(); i++) {
+				assertEquals(i * 3, run(i, compiled.get(i).get()));
+			}
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	@Test
+	void afterError() throws Exception {
+		assertThrows(Exception.class,
+				() -> DynamicCompiler.compile("dynamicCompilerTest.C100", "package dynamicCompilerTest; class C100 {"));
+		for (int i = 101; i < 104; i++) {
+			assertEquals(i * 3, run(i, DynamicCompiler.compile("dynamicCompilerTest.C" + i, source(i))));
+		}
+	}
+}
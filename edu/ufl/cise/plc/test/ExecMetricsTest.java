@@ -0,0 +1,107 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.TypeCheckException;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics.Phase;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PhaseHistogram;
+
+class ExecMetricsTest {
+
+	static final String PROGRAM = """
+			int f(int a)
+			int k = a * 2;
+			write k -> console;
+			^ k + 1;
+			""";
+
+	final PLCLangExec exec = new PLCLangExec("execMetricsTest", false);
+	final List<ExecMetrics> published = new ArrayList<>();
+
+	ExecMetricsTest() {
+		exec.addMetricsListener(published::add);
+	}
+
+	Object exec(String input, Backend backend, Object... params) throws Exception {
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+				new ByteArrayInputStream(new byte[0]), false)) {
+			return exec.exec(input, params, context, backend);
+		}
+	}
+
+	@Test
+	void javac() throws Exception {
+		assertEquals(11, exec(PROGRAM, Backend.JAVAC, 5));
+		assertEquals(1, published.size());
+		ExecMetrics metrics = published.get(0);
+		assertEquals("f", metrics.getProgramName());
+		assertEquals(List.of(Phase.values()), new ArrayList<>(metrics.getPhases().keySet()));
+		for (ExecMetrics.PhaseMetrics phase : metrics.getPhases().values()) {
+			assertTrue(phase.wallNanos() >= 0);
+			assertTrue(phase.allocatedBytes() >= 0);
+		}
+		assertTrue(metrics.get(Phase.JAVAC).allocatedBytes() > 0);
+		assertEquals(PROGRAM.length(), metrics.getSourceLength());
+		assertTrue(metrics.getGeneratedSourceLength() > PROGRAM.length());
+		assertTrue(metrics.getBytecodeLength() > 0);
+		assertNull(metrics.getFailure());
+		assertEquals(1, exec.getHistogram(Phase.JAVAC).getCount());
+		assertEquals(metrics.get(Phase.APPLY).wallNanos(), exec.getHistogram(Phase.APPLY).getTotalWallNanos());
+	}
+
+	@Test
+	void interpreter() throws Exception {
+		assertEquals(11, exec(PROGRAM, Backend.INTERPRETER, 5));
+		ExecMetrics metrics = published.get(0);
+		assertEquals(List.of(Phase.LEX, Phase.PARSE, Phase.TYPE_CHECK, Phase.GENERATE, Phase.APPLY),
+				new ArrayList<>(metrics.getPhases().keySet()));
+		assertEquals(-1, metrics.getGeneratedSourceLength());
+		assertEquals(-1, metrics.getBytecodeLength());
+		assertEquals(0, exec.getHistogram(Phase.JAVAC).getCount());
+	}
+
+	@Test
+	void failure() throws Exception {
+		String input = """
+				int f()
+				^ "not an int";
+				""";
+		assertThrows(TypeCheckException.class, () -> exec(input, Backend.JAVAC));
+		ExecMetrics metrics = published.get(0);
+		assertTrue(metrics.getFailure() instanceof TypeCheckException);
+		assertEquals(List.of(Phase.LEX, Phase.PARSE), new ArrayList<>(metrics.getPhases().keySet()));
+		assertEquals(1, exec.getHistogram(Phase.PARSE).getCount());
+		assertEquals(0, exec.getHistogram(Phase.TYPE_CHECK).getCount());
+	}
+
+	@Test
+	void percentiles() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			exec(PROGRAM, Backend.INTERPRETER, i);
+		}
+		PhaseHistogram histogram = exec.getHistogram(Phase.PARSE);
+		assertEquals(10, histogram.getCount());
+		long longest = 0;
+		for (ExecMetrics metrics : published) {
+			longest = Math.max(longest, metrics.get(Phase.PARSE).wallNanos());
+		}
+		long p100 = histogram.getPercentileNanos(1.0);
+		assertTrue(longest <= p100 && p100 < 2 * longest);
+		assertTrue(histogram.getPercentileNanos(0.5) <= p100);
+	}
+}
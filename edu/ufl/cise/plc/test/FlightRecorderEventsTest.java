@@ -0,0 +1,114 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.ImageOps;
+import edu.ufl.cise.plc.runtime.ImageOps.OP;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class FlightRecorderEventsTest {
+
+	/* Runs work while recording the PLCLang events, and returns them */
+	static List<RecordedEvent> record(Runnable work) throws Exception {
+		Path file = Files.createTempFile("flightRecorderEventsTest", ".jfr");
+		try (Recording recording = new Recording()) {
+			for (String name : new String[] { "Phase", "Javac", "DefineClass", "ImageOp", "ImageFile" }) {
+				recording.enable("edu.ufl.cise.plc." + name);
+			}
+			recording.start();
+			work.run();
+			recording.stop();
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> named = new ArrayList<>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals("edu.ufl.cise.plc." + name)) {
+				named.add(event);
+			}
+		}
+		return named;
+	}
+
+	@Test
+	void compiler() throws Exception {
+		String input = """
+				int f(int a)
+				^ a + 1;
+				""";
+		List<RecordedEvent> events = record(() -> {
+			try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+					new ByteArrayInputStream(new byte[0]), false)) {
+				assertEquals(4, new PLCLangExec("flightRecorderEventsTest", false).exec(input, new Object[] { 3 },
+						context, Backend.JAVAC));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		List<RecordedEvent> phases = named(events, "Phase");
+		List<String> names = new ArrayList<>();
+		for (RecordedEvent phase : phases) {
+			names.add(phase.getString("phase"));
+		}
+		assertEquals(List.of("LEX", "PARSE", "TYPE_CHECK", "GENERATE", "JAVAC", "LOAD", "APPLY"), names);
+		assertEquals("f", phases.get(6).getString("programName"));
+		assertEquals(input.length(), phases.get(6).getInt("sourceLength"));
+		RecordedEvent javac = named(events, "Javac").get(0);
+		assertEquals("flightRecorderEventsTest.f", javac.getString("className"));
+		assertTrue(javac.getBoolean("success"));
+		assertTrue(javac.getInt("bytecodeLength") > 0);
+		assertEquals(javac.getInt("bytecodeLength"), named(events, "DefineClass").get(0).getInt("bytecodeLength"));
+	}
+
+	@Test
+	void runtime() throws Exception {
+		BufferedImage a = new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB);
+		Path file = Files.createTempFile("flightRecorderEventsTest", "");
+		List<RecordedEvent> events = record(() -> {
+			BufferedImage b = ImageOps.binaryImageScalarOp(OP.TIMES, a, 2);
+			ImageOps.resize(b, 15, 10);
+			FileURLIO.writeImage(b, file.toString());
+			FileURLIO.readImage(file + ".jpeg");
+		});
+		try {
+			List<RecordedEvent> ops = named(events, "ImageOp");
+			assertEquals(2, ops.size());
+			assertEquals("binaryImageScalarOp", ops.get(0).getString("operation"));
+			assertEquals("TIMES", ops.get(0).getString("operator"));
+			assertEquals(30, ops.get(0).getInt("width"));
+			assertEquals("resize", ops.get(1).getString("operation"));
+			List<RecordedEvent> files = named(events, "ImageFile");
+			assertEquals(2, files.size());
+			assertTrue(files.get(0).getBoolean("write"));
+			assertEquals(Files.size(Path.of(file + ".jpeg")), files.get(0).getLong("bytes"));
+			assertEquals(file + ".jpeg", files.get(1).getString("source"));
+			assertEquals(20, files.get(1).getInt("height"));
+		} finally {
+			Files.delete(file);
+			Files.delete(Path.of(file + ".jpeg"));
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ClassLoadingMetrics;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.DynamicClassLoader;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.ExecMetrics;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+
+class HiddenClassTest {
+
+	static final String PROGRAM = """
+			image f(image a, int k)
+			image[getWidth a, getHeight a] b;
+			b[x,y] = a[x,y] + <<k, 0, 0>>;
+			image[getWidth a, getHeight a] c;
+			c[x,y] = <<getRed b[x,y], getGreen a[x,y], k>>;
+			^ c;
+			""";
+
+	static BufferedImage image(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++)
+			for (int y = 0; y < height; y++)
+				image.setRGB(x, y, (x * 7 << 16) | (y * 5 << 8) | ((x * y) & 0xff));
+		return image;
+	}
+
+	@Test
+	void hidden() throws Exception {
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+				new ByteArrayInputStream(new byte[0]), false)) {
+			check(context);
+		} finally {
+			DynamicClassLoader.hiddenClasses = false;
+		}
+	}
+
+	void check(ExecutionContext context) throws Exception {
+		BufferedImage a = image(30, 20);
+		BufferedImage expected = (BufferedImage) new PLCLangExec("hiddenClassTest", false).exec(PROGRAM,
+				new Object[] { a, 9 }, context);
+
+		DynamicClassLoader.hiddenClasses = true;
+		PLCLangExec exec = new PLCLangExec("hiddenClassTest", false);
+		List<ExecMetrics> metrics = new ArrayList<>();
+		exec.addMetricsListener(metrics::add);
+		long hidden = ClassLoadingMetrics.getHiddenClassCount();
+		long defined = ClassLoadingMetrics.getDefinedClassCount();
+		long unloaded = ClassLoadingMetrics.getUnloadedClassCount();
+		for (int i = 0; i < 5; i++) {
+			BufferedImage actual = (BufferedImage) exec.exec(PROGRAM, new Object[] { a, 9 }, context);
+			for (int x = 0; x < 30; x++)
+				for (int y = 0; y < 20; y++)
+					assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+		}
+		// in another package
+		assertEquals(14, new PLCLangExec("hiddenClassTest.other", false).exec("int g(int n) ^ n * 2;", new Object[] { 7 }, context));
+		assertEquals(ClassLoadingMetrics.getHiddenClassCount(), hidden + 6);
+		assertEquals(ClassLoadingMetrics.getDefinedClassCount(), defined + 6);
+		for (ExecMetrics m : metrics) {
+			assertTrue(m.getMetaspaceUsedBytes() > 0);
+			assertTrue(m.getLoadedClassCount() > 0);
+		}
+
+		// the hidden classes are unloaded once nothing refers to them
+		metrics.clear();
+		for (int i = 0; i < 10 && ClassLoadingMetrics.getUnloadedClassCount() < unloaded + 5; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue(ClassLoadingMetrics.getUnloadedClassCount() >= unloaded + 5);
+	}
+}
@@ -0,0 +1,68 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.checkImage;
+import static edu.ufl.cise.plc.test.BackendEquivalence.count;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+class LoopFusionTest {
+
+	@Test
+	void fused() throws Exception {
+		String input = """
+				image f(int k)
+				image[30,20] a;
+				a[x,y] = <<x, y, k * 2>>;
+				image[getWidth a, 20] b;
+				b[x,y] = a[x,y] + <<1, 1, 1>>;
+				a[x,y] = b[x,y] - <<k, 0, 0>>;
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertEquals(1, count(code, "y++) {"));
+		assertTrue(code.contains("(b.getWidth() == a.getWidth() && b.getHeight() == a.getHeight())"));
+		// the declaration of b is generated before the fused loop
+		assertTrue(code.indexOf("BufferedImage b") < code.indexOf("for (int x"));
+		checkImage(input, 3);
+	}
+
+	@Test
+	void differentSizes() throws Exception {
+		String input = """
+				image f(int k)
+				image[10,10] a;
+				image[5,8] b;
+				a[x,y] = <<x * k, y, 0>>;
+				b[x,y] = <<0, x, y>>;
+				a[x,y] = a[x,y] + <<0, 0, 100>>;
+				^ a;
+				""";
+		String code = javaCode(input);
+		assertEquals(1, count(code, "y++) {"));
+		checkImage(input, 4);
+	}
+
+	@Test
+	void notFused() throws Exception {
+		// the second loop reads pixels of a that the first loop sets in later iterations
+		String input = """
+				image f(int k)
+				image[10,10] a;
+				a[x,y] = <<x, y * k, 0>>;
+				image[10,10] b;
+				b[x,y] = a[y,x] + <<0, 0, 1>>;
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertFalse(code.contains("y++) {"));
+		// the loops of a and of b, each with and without its pixel array
+		assertEquals(4, count(code, "for (int x"));
+		checkImage(input, 2);
+	}
+}
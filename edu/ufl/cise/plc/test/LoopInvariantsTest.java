@@ -0,0 +1,85 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.exec;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class LoopInvariantsTest {
+
+	/* the code of the pixel loops, from the first hoisted local to the end of the store through setColor */
+	static String loop(String code) {
+		return code.substring(code.indexOf("final var"), code.indexOf(";\n", code.indexOf("ImageOps.setColor")));
+	}
+
+	@Test
+	void hoisted() throws Exception {
+		String input = """
+				image f(int k)
+				image[30,20] b;
+				b[x,y] = <<k * 2, getWidth b / 3, x + y>> + RED * (if (k > 2) GREEN else <<1, 1, 1>> fi);
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("static final ColorTuple $RED = ColorTuple.toColorTuple(Color.RED);"));
+		assertTrue(code.contains("static final ColorTuple $GREEN = ColorTuple.toColorTuple(Color.GREEN);"));
+		String loop = loop(code);
+		assertTrue(loop.contains("final var $inv0 = (k*2);"));
+		assertTrue(loop.contains("final var $inv1 = (b.getWidth()/3);"));
+		assertTrue(loop.contains("$RED"));
+		String body = loop.substring(loop.indexOf("ImageOps.setColor"));
+		assertFalse(body.contains("k*2"));
+		assertFalse(body.contains("$RED"));
+		assertFalse(body.contains("getWidth"));
+		assertTrue(body.contains("(x+y)"));
+
+		for (int k : new int[] { 1, 3 }) {
+			BufferedImage expected = (BufferedImage) exec(input, Backend.INTERPRETER, k);
+			BufferedImage actual = (BufferedImage) exec(input, Backend.JAVAC, k);
+			for (int x = 0; x < 30; x++)
+				for (int y = 0; y < 20; y++)
+					assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+		}
+	}
+
+	@Test
+	void wholeExpression() throws Exception {
+		String input = """
+				image f(int k)
+				image[10,10] b;
+				b = <<k, k + 1, 0>>;
+				^ b;
+				""";
+		String loop = loop(javaCode(input));
+		assertTrue(loop.contains("ImageOps.setColor(b, x, y, $inv0)"));
+		BufferedImage b = (BufferedImage) exec(input, Backend.JAVAC, 7);
+		assertEquals(0x070800, b.getRGB(9, 9) & 0xffffff);
+	}
+
+	@Test
+	void notHoisted() throws Exception {
+		// the divisions may throw
+		String input = """
+				image f(int k)
+				image[10,10] b;
+				b[x,y] = <<x / k, (k + 1) / k, 0>>;
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("final var $inv0 = (k+1);"));
+		assertFalse(code.contains("$inv1"));
+		for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+			Exception e = assertThrows(InvocationTargetException.class, () -> exec(input, backend, 0));
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.bench.ProgramGenerator;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class ProgramGeneratorTest {
+
+	static String program(long seed) {
+		ProgramGenerator generator = new ProgramGenerator(seed);
+		generator.statements = 40;
+		generator.depth = 4;
+		return generator.generate();
+	}
+
+	@Test
+	void sameWithEveryBackend() throws Exception {
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+				new ByteArrayInputStream(new byte[0]), false)) {
+			for (int seed = 1; seed <= 5; seed++) {
+				String program = program(seed);
+				assertEquals(program, program(seed));
+				Object interpreted = new PLCLangExec("programGeneratorTest", false).exec(program,
+						new Object[] { seed * 37 }, context, Backend.INTERPRETER);
+				Object compiled = new PLCLangExec("programGeneratorTest", false).exec(program,
+						new Object[] { seed * 37 }, context, Backend.JAVAC);
+				assertEquals(interpreted, compiled, program);
+			}
+		}
+	}
+
+	@Test
+	void deep() throws Exception {
+		ProgramGenerator generator = new ProgramGenerator(7);
+		generator.statements = 5;
+		generator.depth = 300;
+		ASTNode ast = CompilerComponentFactory.getParser(generator.generate()).parse();
+		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+	}
+}
@@ -0,0 +1,125 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.checkImage;
+import static edu.ufl.cise.plc.test.BackendEquivalence.count;
+import static edu.ufl.cise.plc.test.BackendEquivalence.exec;
+import static edu.ufl.cise.plc.test.BackendEquivalence.image;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ImageOps;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class RasterAccessTest {
+
+	static final String OFFSETS = """
+			image f(image a)
+			image[20,10] b;
+			b[x,y] = <<getRed a[x + 2, y], getGreen a[x, 1 + y], getBlue a[x + 1, y + 1]>>;
+			^ b;
+			""";
+
+	@Test
+	void pixelArrays() throws Exception {
+		String code = javaCode(OFFSETS);
+		assertTrue(code.contains("a.getWidth() - 2 >= b.getWidth() && a.getHeight() - 1 >= b.getHeight()"));
+		assertTrue(code.contains("$pixels0_1[(y+1) * $stride0_1 + (x+1)]"));
+		assertTrue(code.contains("$pixels0_0[y * $width + x] = "));
+		checkImage(OFFSETS, image(22, 11, BufferedImage.TYPE_INT_RGB));
+		checkImage(OFFSETS, image(40, 40, BufferedImage.TYPE_INT_RGB));
+	}
+
+	@Test
+	void otherImages() throws Exception {
+		// no pixel array
+		checkImage(OFFSETS, image(22, 11, BufferedImage.TYPE_3BYTE_BGR));
+		checkImage(OFFSETS, image(22, 11, BufferedImage.TYPE_INT_ARGB));
+		checkImage(OFFSETS, image(30, 30, BufferedImage.TYPE_INT_RGB).getSubimage(3, 4, 22, 11));
+		// too small, so the loops read outside a, as without pixel arrays
+		for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+			Exception e = assertThrows(InvocationTargetException.class,
+					() -> exec(OFFSETS, backend, image(21, 11, BufferedImage.TYPE_INT_RGB)));
+			assertTrue(e.getCause() instanceof ArrayIndexOutOfBoundsException);
+		}
+	}
+
+	@Test
+	void notProven() throws Exception {
+		String input = """
+				image f(image a, int k)
+				image[20,10] b;
+				b[x,y] = <<getRed a[x + k, y], getGreen a[x, y], 0>>;
+				^ b;
+				""";
+		String code = javaCode(input);
+		assertTrue(code.contains("a.getRGB((x+k), y)"));
+		assertTrue(code.contains("$pixels0_1[y * $stride0_1 + x]"));
+		checkImage(input, image(25, 10, BufferedImage.TYPE_INT_RGB), 3);
+	}
+
+	static final String ROWS = "for (int y = 0, $height = b.getHeight(); y < $height; y++)\n    for (int x";
+	static final String COLUMNS = "for (int x = 0, $width = b.getWidth(); x < $width; x++)\n    for (int y";
+
+	@Test
+	void loopOrder() throws Exception {
+		// only the blocks that use pixel arrays are computed row by row
+		String code = javaCode(OFFSETS);
+		assertEquals(1, count(code, "y < $y1; y++)\n    for (int x = $x0"));
+		assertEquals(1, count(code, "x < $x1; x++)\n    for (int y = $y0"));
+		code = javaCode("""
+				image f(image a)
+				image[20,10] b;
+				b[x,y] = <<getRed a[x,y], getGreen a[x,y], 0>>;
+				^ b;
+				""");
+		assertEquals(1, count(code, ROWS));
+		assertEquals(1, count(code, COLUMNS));
+
+		// each pixel reads its transpose, which has only been set yet if it is in an earlier column
+		String input = """
+				image f(image a)
+				image[10,10] b;
+				b[x,y] = <<getRed a[x,y], getGreen a[x,y], 0>>;
+				b[x,y] = b[y, x] + <<1, 0, 0>>;
+				^ b;
+				""";
+		code = javaCode(input);
+		assertTrue(code.contains("$pixels1_0[y * $width + x] = "));
+		// only the copy of a
+		assertEquals(1, count(code, ROWS));
+		checkImage(input, image(10, 10, BufferedImage.TYPE_INT_RGB));
+
+		// the caller may pass the same image as a and b
+		input = """
+				void f(image a, image b)
+				b[x,y] = <<getRed a[y, x], getGreen a[y, x], 0>>;
+				""";
+		code = javaCode(input);
+		assertTrue(code.contains("$pixels0_0[y * $width + x] = "));
+		assertEquals(0, count(code, ROWS));
+		BufferedImage a = image(10, 10, BufferedImage.TYPE_INT_RGB);
+		BufferedImage expected = image(10, 10, BufferedImage.TYPE_INT_RGB);
+		exec(input, Backend.INTERPRETER, expected, expected);
+		exec(input, Backend.JAVAC, a, a);
+		for (int x = 0; x < 10; x++)
+			for (int y = 0; y < 10; y++)
+				assertEquals(expected.getRGB(x, y), a.getRGB(x, y));
+	}
+
+	@Test
+	void pixels() {
+		assertNotNull(ImageOps.pixels(new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB)));
+		assertNull(ImageOps.pixels(new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB)));
+		assertNull(ImageOps.pixels(new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB).getSubimage(1, 0, 2, 2)));
+		assertNull(ImageOps.pixels(null));
+	}
+}
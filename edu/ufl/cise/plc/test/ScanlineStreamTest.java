@@ -0,0 +1,157 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.ConsoleIO;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.ImageOps;
+import edu.ufl.cise.plc.runtime.PLCRuntimeException;
+import edu.ufl.cise.plc.runtime.ScanlineStream;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+
+class ScanlineStreamTest {
+
+	Path dir;
+	String source;
+	int savedBandHeight;
+	int savedMaxBandHeight;
+
+	@BeforeEach
+	void createSource() throws Exception {
+		ConsoleIO.DISPLAY_IMAGES = false;
+		dir = Files.createTempDirectory("scanlineStreamTest");
+		source = dir.resolve("source").toString();
+		BufferedImage image = new BufferedImage(120, 90, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < 120; x++)
+			for (int y = 0; y < 90; y++)
+				image.setRGB(x, y, (x * 2 << 16) | (y * 2 << 8) | ((x * y) & 0xff));
+		FileURLIO.writeImage(image, source);
+		source += ".jpeg";
+		// several bands, the last one short
+		savedBandHeight = ScanlineStream.bandHeight;
+		savedMaxBandHeight = ScanlineStream.maxBandHeight;
+		ScanlineStream.bandHeight = 16;
+	}
+
+	@AfterEach
+	void deleteFiles() throws Exception {
+		ScanlineStream.bandHeight = savedBandHeight;
+		ScanlineStream.maxBandHeight = savedMaxBandHeight;
+		try (var files = Files.list(dir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	String javaCode(String input) throws Exception {
+		ASTNode ast = CompilerComponentFactory.getParser(input).parse();
+		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		return (String) ast.visit(CompilerComponentFactory.getCodeGenerator("scanlineStreamTest"), null);
+	}
+
+	byte[] bytes(String filename) throws Exception {
+		return Files.readAllBytes(Path.of(filename + ".jpeg"));
+	}
+
+	@Test
+	void streamedProgram() throws Exception {
+		String result = dir.resolve("result").toString();
+		String input = """
+				void f(int k)
+				image a <- "%s";
+				image[100,70] b;
+				b[x,y] = a[x,y] + <<k, x, y>>;
+				write b -> "%s";
+				""".formatted(source, result);
+		assertTrue(javaCode(input).contains("ScanlineStream.transform"));
+		new PLCLangExec("scanlineStreamTest", false).exec(input, new Object[] { 7 });
+
+		BufferedImage a = FileURLIO.readImage(source);
+		BufferedImage b = new BufferedImage(100, 70, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < 100; x++)
+			for (int y = 0; y < 70; y++)
+				ImageOps.setColor(b, x, y, ImageOps.binaryTupleOp(ImageOps.OP.PLUS,
+						ColorTuple.unpack(a.getRGB(x, y)), new ColorTuple(7, x, y)));
+		String expected = dir.resolve("expected").toString();
+		FileURLIO.writeImage(b, expected);
+		assertArrayEquals(bytes(expected), bytes(result));
+	}
+
+	@Test
+	void twoSources() throws Exception {
+		String result = dir.resolve("result").toString();
+		ScanlineStream.transform(new String[] { source, source }, 120, 90,
+				(x, y, pixels) -> (pixels[0] & 0xff0000) | (pixels[1] & 0x00ffff), result);
+
+		BufferedImage a = FileURLIO.readImage(source);
+		String expected = dir.resolve("expected").toString();
+		FileURLIO.writeImage(a, expected);
+		assertArrayEquals(bytes(expected), bytes(result));
+	}
+
+	@Test
+	void bandHeightCapped() throws Exception {
+		assertEquals(16, ScanlineStream.bandRows(90));
+		assertEquals(1000, ScanlineStream.bandRows(16000));
+		ScanlineStream.maxBandHeight = 600;
+		assertEquals(600, ScanlineStream.bandRows(16000));
+		assertEquals(600, ScanlineStream.bandRows(1_000_000));
+
+		ScanlineStream.maxBandHeight = 7;
+		String result = dir.resolve("result").toString();
+		ScanlineStream.transform(new String[] { source }, 120, 90, (x, y, pixels) -> pixels[0], result);
+		String expected = dir.resolve("expected").toString();
+		FileURLIO.writeImage(FileURLIO.readImage(source), expected);
+		assertArrayEquals(bytes(expected), bytes(result));
+	}
+
+	@Test
+	void sourceTooSmall() throws Exception {
+		String result = dir.resolve("result").toString();
+		assertThrows(PLCRuntimeException.class, () -> ScanlineStream.transform(new String[] { source }, 121, 90,
+				(x, y, pixels) -> pixels[0], result));
+	}
+
+	@Test
+	void notStreamedWhenImageIsUsedAgain() throws Exception {
+		String input = """
+				int f()
+				image a <- "%s";
+				image[100,70] b;
+				b[x,y] = a[x,y] + <<1, 1, 1>>;
+				write b -> "%s";
+				^ getWidth a;
+				""".formatted(source, dir.resolve("result"));
+		assertFalse(javaCode(input).contains("ScanlineStream"));
+	}
+
+	@Test
+	void notStreamedAcrossOtherIO() throws Exception {
+		String input = """
+				void f()
+				image a <- "%s";
+				image[100,70] b;
+				write "between" -> console;
+				b[x,y] = a[x,y] + <<1, 1, 1>>;
+				write b -> "%s";
+				""".formatted(source, dir.resolve("result"));
+		assertFalse(javaCode(input).contains("ScanlineStream"));
+	}
+}
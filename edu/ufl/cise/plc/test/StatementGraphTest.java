@@ -0,0 +1,108 @@
+package edu.ufl.cise.plc.test;
+
+import static edu.ufl.cise.plc.test.BackendEquivalence.checkImage;
+import static edu.ufl.cise.plc.test.BackendEquivalence.exec;
+import static edu.ufl.cise.plc.test.BackendEquivalence.image;
+import static edu.ufl.cise.plc.test.BackendEquivalence.javaCode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.StatementScheduler;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class StatementGraphTest {
+
+	Executor savedExecutor = StatementScheduler.executor;
+
+	@AfterEach
+	void restoreExecutor() {
+		StatementScheduler.executor = savedExecutor;
+	}
+
+	static final String CHANNELS = """
+			image f(image a, image c, int k)
+			image[getWidth a, getHeight a] r;
+			r[x,y] = <<getRed a[x,y], k, 0>>;
+			write "red" -> console;
+			image[getWidth c, getHeight c] g;
+			g[x,y] = <<0, getGreen c[x,y], 0>>;
+			write "green" -> console;
+			image[getWidth a, getHeight a] o;
+			o[x,y] = r[x,y] + g[x,y];
+			write k -> console;
+			^ o;
+			""";
+
+	@Test
+	void independent() throws Exception {
+		String code = javaCode(CHANNELS);
+		assertTrue(code.contains("$schedule.submit(() -> $task4($ctx, $t3.join(), c), $t3)"));
+		checkImage(CHANNELS, image(30, 20), image(40, 30), 7);
+		// in the calling thread, in program order
+		StatementScheduler.executor = Runnable::run;
+		checkImage(CHANNELS, image(30, 20), image(40, 30), 7);
+	}
+
+	@Test
+	void firstFailure() throws Exception {
+		String input = """
+				image f(image a, int d)
+				image[getWidth a, getHeight a] r;
+				r[x,y] = <<x / d, 0, 0>>;
+				image[getWidth a, getHeight a] g;
+				g[x,y] = a[x + 100, y] + <<0, 1, 0>>;
+				write "done" -> console;
+				^ g;
+				""";
+		assertTrue(javaCode(input).contains("StatementScheduler"));
+		for (Backend backend : new Backend[] { Backend.JAVAC, Backend.INTERPRETER }) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			Exception e = assertThrows(InvocationTargetException.class,
+					() -> exec(input, backend, new PrintStream(output), image(20, 10), 0));
+			assertTrue(e.getCause() instanceof ArithmeticException);
+			assertEquals("", output.toString());
+		}
+	}
+
+	@Test
+	void notScheduled() throws Exception {
+		// each pixel assignment uses the image set by the one before
+		assertFalse(javaCode("""
+				image f(image a)
+				image[getWidth a, getHeight a] r;
+				r[x,y] = <<getRed a[x,y], 0, 0>>;
+				image[getWidth a, getHeight a] g;
+				g[x,y] = r[x,y] + <<0, 1, 0>>;
+				^ g;
+				""").contains("StatementScheduler"));
+		// the parameter is seen by the caller, so its pixels are set in order
+		String input = """
+				image f(image a)
+				image[getWidth a, getHeight a] r;
+				r[x,y] = <<getRed a[x,y], 0, 0>>;
+				a[x,y] = <<x, y, 0>>;
+				^ r;
+				""";
+		assertFalse(javaCode(input).contains("StatementScheduler"));
+	}
+
+	@Test
+	void ownThreads() throws Exception {
+		StatementScheduler scheduler = new StatementScheduler();
+		CompletableFuture<Thread> thread = scheduler.submit(Thread::currentThread);
+		Thread statementThread = scheduler.join(thread);
+		assertTrue(statementThread.isDaemon());
+		assertTrue(statementThread.getName().startsWith("PLCLang statement"));
+	}
+}
@@ -0,0 +1,93 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.IToken.SourceLocation;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.StatementProfile;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+
+class StatementProfileTest {
+
+	static final String PROGRAM = """
+			image f(image a, int k)
+			int j = k * 2;
+			image[getWidth a, getHeight a] b;
+			b[x,y] = a[x,y] + <<j, 0, 0>>;
+			image[getWidth a, getHeight a] c;
+			c[x,y] = b[x,y] + <<0, 1, 0>>;
+			write j -> console;
+			^ c;
+			""";
+
+	String javaCode(String input, boolean profile) throws Exception {
+		ASTNode ast = CompilerComponentFactory.getParser(input).parse();
+		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		return (String) ast.visit(CompilerComponentFactory.getCodeGenerator("statementProfileTest", profile), null);
+	}
+
+	static BufferedImage image(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++)
+			for (int y = 0; y < height; y++)
+				image.setRGB(x, y, (x * 7 << 16) | (y * 5 << 8) | ((x * y) & 0xff));
+		return image;
+	}
+
+	@Test
+	void profile() throws Exception {
+		try (ExecutionContext context = new ExecutionContext(new PrintStream(new ByteArrayOutputStream()),
+				new ByteArrayInputStream(new byte[0]), false)) {
+			check(context);
+		}
+	}
+
+	void check(ExecutionContext context) throws Exception {
+		PLCLangExec exec = new PLCLangExec("statementProfileTest", false, Backend.JAVAC, true);
+		BufferedImage a = image(30, 20);
+		BufferedImage actual = null;
+		for (int i = 0; i < 3; i++) {
+			actual = (BufferedImage) exec.exec(PROGRAM, new Object[] { a, 5 }, context);
+		}
+		BufferedImage expected = (BufferedImage) new PLCLangExec("statementProfileTest", false)
+				.exec(PROGRAM, new Object[] { a, 5 }, context);
+		for (int x = 0; x < 30; x++)
+			for (int y = 0; y < 20; y++)
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+
+		StatementProfile profile = context.getProfile();
+		List<StatementProfile.Statement> statements = profile.getStatements();
+		// every declaration and statement, in order
+		assertEquals(7, statements.size());
+		for (int i = 0; i < statements.size(); i++) {
+			assertEquals(i + 1, statements.get(i).getLocation().line());
+			assertEquals(3, statements.get(i).getExecutions());
+		}
+		StatementProfile.Statement pixels = profile.get(new SourceLocation(3, 0));
+		assertEquals(3 * 30 * 20, pixels.getIterations());
+		assertEquals(0, profile.get(new SourceLocation(1, 0)).getIterations());
+		assertTrue(profile.getHottest().get(0).getNanos() >= pixels.getNanos());
+	}
+
+	@Test
+	void notProfiled() throws Exception {
+		assertFalse(javaCode(PROGRAM, false).contains("StatementProfile"));
+		String code = javaCode(PROGRAM, true);
+		assertTrue(code.contains("$ctx.getProfile().statements(1, 0, 2, 0, 3, 0, 4, 0, 5, 0, 6, 0, 7, 0)"));
+		assertTrue(code.contains("$time = $profile[2].record($time, (long) b.getWidth() * b.getHeight());"));
+		assertTrue(code.contains("return $result;"));
+	}
+}
@@ -0,0 +1,149 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ExecutionContext;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec.Backend;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.TieredProgram;
+
+class TieredProgramTest {
+
+	long savedInvocationThreshold;
+	long savedPixelThreshold;
+	int savedMaxTieredPrograms;
+	ExecutionContext context;
+	PLCLangExec exec;
+
+	@BeforeEach
+	void saveThresholds() {
+		savedInvocationThreshold = TieredProgram.invocationThreshold;
+		savedPixelThreshold = TieredProgram.pixelThreshold;
+		savedMaxTieredPrograms = PLCLangExec.maxTieredPrograms;
+		context = new ExecutionContext(System.out, System.in, false);
+		exec = new PLCLangExec("tieredProgramTest", false, Backend.TIERED);
+	}
+
+	@AfterEach
+	void restoreThresholds() throws Exception {
+		TieredProgram.invocationThreshold = savedInvocationThreshold;
+		TieredProgram.pixelThreshold = savedPixelThreshold;
+		PLCLangExec.maxTieredPrograms = savedMaxTieredPrograms;
+		context.close();
+	}
+
+	/* calls the program until it runs compiled code, checking every result */
+	void runUntilCompiled(String input, int n) throws Exception {
+		long deadline = System.currentTimeMillis() + 60_000;
+		while (exec.getTieredProgram(input) == null || !exec.getTieredProgram(input).isCompiled()) {
+			assertTrue(System.currentTimeMillis() < deadline, "not compiled");
+			assertEquals(n * n + 1, exec.exec(input, new Object[] { n }, context));
+			Thread.sleep(1);
+		}
+		assertEquals(n * n + 1, exec.exec(input, new Object[] { n }, context));
+	}
+
+	@Test
+	void compiledAfterInvocations() throws Exception {
+		TieredProgram.invocationThreshold = 5;
+		String input = """
+				int f(int n)
+				^ n * n + 1;
+				""";
+		for (int i = 0; i < 4; i++) {
+			assertEquals(10, exec.exec(input, new Object[] { 3 }, context));
+		}
+		TieredProgram program = exec.getTieredProgram(input);
+		assertFalse(program.isCompiled());
+		assertEquals(4, program.getInvocations());
+		runUntilCompiled(input, 6);
+		assertNull(program.getCompileFailure());
+	}
+
+	@Test
+	void compiledAfterPixels() throws Exception {
+		TieredProgram.pixelThreshold = 10000;
+		String input = """
+				int f(int n)
+				image[100,60] b;
+				b[x,y] = <<x, y, n>>;
+				^ getBlue b[2,3] * n + 1;
+				""";
+		assertEquals(17, exec.exec(input, new Object[] { 4 }, context));
+		TieredProgram program = exec.getTieredProgram(input);
+		assertEquals(6000, program.getPixels());
+		runUntilCompiled(input, 5);
+		assertTrue(program.getInvocations() >= 2);
+	}
+
+	@Test
+	void sameResultsWhenCompiled() throws Exception {
+		TieredProgram.invocationThreshold = 2;
+		String input = """
+				int f(int n)
+				color a = <<n, 2, 3>>;
+				color b = <<1, 2, 3>>;
+				image[4,3] c;
+				c[x,y] = <<x, y, n>>;
+				image d = c * 0.5 + c;
+				^ if (a == b & d == d) getBlue d[1,1] else n * 10 + getBlue d[1,1] fi;
+				""";
+		long deadline = System.currentTimeMillis() + 60_000;
+		while (exec.getTieredProgram(input) == null || !exec.getTieredProgram(input).isCompiled()) {
+			assertTrue(System.currentTimeMillis() < deadline, "not compiled");
+			assertEquals(2, exec.exec(input, new Object[] { 1 }, context));
+			assertEquals(46, exec.exec(input, new Object[] { 4 }, context));
+			Thread.sleep(1);
+		}
+		assertNull(exec.getTieredProgram(input).getCompileFailure());
+		assertEquals(2, exec.exec(input, new Object[] { 1 }, context));
+		assertEquals(46, exec.exec(input, new Object[] { 4 }, context));
+	}
+
+	@Test
+	void leastRecentlyRunDropped() throws Exception {
+		PLCLangExec.maxTieredPrograms = 2;
+		String[] inputs = new String[3];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = "int f(int n)\n^ n + " + i + ";\n";
+		}
+		exec.exec(inputs[0], new Object[] { 1 }, context);
+		exec.exec(inputs[1], new Object[] { 1 }, context);
+		exec.exec(inputs[0], new Object[] { 1 }, context);
+		exec.exec(inputs[2], new Object[] { 1 }, context);
+		assertNotNull(exec.getTieredProgram(inputs[0]));
+		assertNull(exec.getTieredProgram(inputs[1]));
+		assertNotNull(exec.getTieredProgram(inputs[2]));
+		assertEquals(2, exec.exec(inputs[1], new Object[] { 1 }, context));
+		assertEquals(1, exec.getTieredProgram(inputs[1]).getInvocations());
+	}
+
+	@Test
+	void interpretedWhenCompileFails() throws Exception {
+		TieredProgram.invocationThreshold = 1;
+		// CodeGenVisitor generates code for getRed of a color that javac rejects
+		String input = """
+				int f(int n)
+				color c = <<n, 2, 3>>;
+				^ getRed c;
+				""";
+		long deadline = System.currentTimeMillis() + 60_000;
+		while (exec.getTieredProgram(input) == null || exec.getTieredProgram(input).getCompileFailure() == null) {
+			assertTrue(System.currentTimeMillis() < deadline, "not compiled");
+			assertEquals(7, exec.exec(input, new Object[] { 7 }, context));
+			Thread.sleep(1);
+		}
+		TieredProgram program = exec.getTieredProgram(input);
+		assertNotNull(program.getCompileFailure());
+		assertEquals(8, exec.exec(input, new Object[] { 8 }, context));
+		assertFalse(program.isCompiled());
+	}
+}
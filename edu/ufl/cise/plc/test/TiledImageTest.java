@@ -0,0 +1,202 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.ast.ASTNode;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.TiledImage;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+
+class TiledImageTest {
+
+	Path dir;
+	long savedMapThreshold;
+
+	@BeforeEach
+	void createDir() throws Exception {
+		dir = Files.createTempDirectory("tiledImageTest");
+		savedMapThreshold = TiledImage.mapThreshold;
+	}
+
+	@AfterEach
+	void deleteDir() throws Exception {
+		TiledImage.mapThreshold = savedMapThreshold;
+		try (var files = Files.list(dir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	static int pixel(int x, int y) {
+		return (x * 31 + y * 17) * 0x010203 & 0xffffff;
+	}
+
+	static void fill(TiledImage image) {
+		for (int x = 0; x < image.getWidth(); x++)
+			for (int y = 0; y < image.getHeight(); y++)
+				image.setRGB(x, y, 0x12000000 | pixel(x, y));
+	}
+
+	static void check(TiledImage image) {
+		for (int x = 0; x < image.getWidth(); x++)
+			for (int y = 0; y < image.getHeight(); y++)
+				assertEquals(0xff000000 | pixel(x, y), image.getRGB(x, y));
+	}
+
+	@Test
+	void pixelsAcrossTiles() throws Exception {
+		// partial tiles on the right and bottom edges
+		TiledImage image = new TiledImage(600, 300);
+		assertFalse(image.isMapped());
+		fill(image);
+		check(image);
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> image.getRGB(600, 0));
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> image.setRGB(0, -1, 0));
+	}
+
+	@Test
+	void temporaryFile() throws Exception {
+		TiledImage.mapThreshold = 1000;
+		try (TiledImage image = new TiledImage(700, 20)) {
+			assertTrue(image.isMapped());
+			fill(image);
+			check(image);
+		}
+	}
+
+	@Test
+	void persistentFile() throws Exception {
+		Path file = dir.resolve("pixels");
+		try (TiledImage image = TiledImage.mapped(file, 300, 500)) {
+			fill(image);
+		}
+		assertTrue(Files.exists(file));
+		try (TiledImage image = TiledImage.mapped(file, 300, 500)) {
+			check(image);
+		}
+	}
+
+	@Test
+	void bufferedImageCopies() throws Exception {
+		TiledImage image = new TiledImage(333, 77);
+		fill(image);
+		BufferedImage copy = image.toBufferedImage();
+		for (int x = 0; x < 333; x++)
+			for (int y = 0; y < 77; y++)
+				assertEquals(image.getRGB(x, y), copy.getRGB(x, y));
+		check(TiledImage.copyOf(copy));
+	}
+
+	@Test
+	void writeImage() throws Exception {
+		TiledImage image = new TiledImage(300, 260);
+		fill(image);
+		String tiled = dir.resolve("tiled").toString();
+		String buffered = dir.resolve("buffered").toString();
+		FileURLIO.writeImage(image, tiled);
+		FileURLIO.writeImage(image.toBufferedImage(), buffered);
+		assertArrayEquals(Files.readAllBytes(Path.of(buffered + ".jpeg")), Files.readAllBytes(Path.of(tiled + ".jpeg")));
+	}
+
+	String javaCode(String input) throws Exception {
+		ASTNode ast = CompilerComponentFactory.getParser(input).parse();
+		ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		return (String) ast.visit(CompilerComponentFactory.getCodeGenerator("tiledImageTest"), null);
+	}
+
+	@Test
+	void generatedCode() throws Exception {
+		String small = javaCode("""
+				int f()
+				image[30,20] b;
+				b[x,y] = <<x, y, 0>>;
+				write b -> "b";
+				^ getWidth b;
+				""");
+		assertFalse(small.contains("TiledImage"));
+
+		TiledImage.mapThreshold = 600;
+		String tiled = javaCode("""
+				int f()
+				image[30,20] b;
+				b[x,y] = <<x, y, 0>>;
+				image[30,20] c;
+				c[x,y] = b[x,y] * <<2, 1, 1>>;
+				write c -> "c";
+				^ getWidth b + getHeight c;
+				""");
+		assertTrue(tiled.contains("try (TiledImage b = new TiledImage("));
+		assertTrue(tiled.contains("try (TiledImage c = new TiledImage("));
+
+		String returned = javaCode("""
+				image f()
+				image[30,20] b;
+				b[x,y] = <<x, y, 0>>;
+				^ b;
+				""");
+		assertFalse(returned.contains("TiledImage"));
+	}
+
+	/* the temporary files of mapped TiledImages */
+	static Set<Path> pixelFiles() throws Exception {
+		try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+			return files.filter(file -> file.getFileName().toString().matches("tiledImage.*\\.pixels"))
+					.collect(Collectors.toSet());
+		}
+	}
+
+	@Test
+	void temporaryFilesDeleted() throws Exception {
+		TiledImage.mapThreshold = 600;
+		String sequential = """
+				int f(string file)
+				image[30,20] b;
+				b[x,y] = <<x, y, 0>>;
+				image[30,20] c;
+				c[x,y] = b[x,y] * <<2, 1, 1>>;
+				write c -> file;
+				^ getWidth b + getHeight c;
+				""";
+		assertTrue(javaCode(sequential).contains("try (TiledImage"));
+		// independent images, whose statements are run by a StatementScheduler
+		String scheduled = """
+				int f(string first, string second)
+				image[30,20] b;
+				b[x,y] = <<x, y, 0>>;
+				image[30,20] c;
+				c[x,y] = <<y, x, 0>>;
+				write b -> first;
+				write c -> second;
+				^ getWidth b + getHeight c;
+				""";
+		assertTrue(javaCode(scheduled).contains("StatementScheduler.close("));
+
+		Set<Path> before = pixelFiles();
+		PLCLangExec exec = new PLCLangExec("tiledImageTest", false);
+		assertEquals(50, exec.exec(sequential, new Object[] { dir.resolve("c").toString() }));
+		assertEquals(50,
+				exec.exec(scheduled, new Object[] { dir.resolve("b").toString(), dir.resolve("c").toString() }));
+		// the sequential program fails after its images are created
+		String missing = dir.resolve("none").resolve("c").toString();
+		assertThrows(InvocationTargetException.class, () -> exec.exec(sequential, new Object[] { missing }));
+		assertEquals(before, pixelFiles());
+	}
+}
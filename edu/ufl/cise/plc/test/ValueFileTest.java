@@ -0,0 +1,228 @@
+package edu.ufl.cise.plc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.MappedValueFile;
+import edu.ufl.cise.plc.runtime.PLCRuntimeException;
+import edu.ufl.cise.plc.runtime.ValueFileReader;
+import edu.ufl.cise.plc.runtime.ValueFileWriter;
+
+class ValueFileTest {
+
+	Path file;
+
+	@BeforeEach
+	void createFile() throws Exception {
+		file = Files.createTempFile("valueFileTest", ".bin");
+	}
+
+	@AfterEach
+	void deleteFile() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	void writeMixed(int n) throws Exception {
+		try (ValueFileWriter writer = new ValueFileWriter(file)) {
+			for (int i = 0; i < n; i++) {
+				switch (i % 5) {
+				case 0 -> writer.writeInt(i);
+				case 1 -> writer.writeFloat(i / 2f);
+				case 2 -> writer.writeBoolean(i % 2 == 0);
+				case 3 -> writer.writeColor(new ColorTuple(i, -i, 300));
+				default -> writer.writeString("value " + i);
+				}
+			}
+		}
+	}
+
+	Object expected(int i) {
+		return switch (i % 5) {
+		case 0 -> i;
+		case 1 -> i / 2f;
+		case 2 -> i % 2 == 0;
+		case 3 -> new ColorTuple(i, -i, 300);
+		default -> "value " + i;
+		};
+	}
+
+	@Test
+	void sequentialRoundTrip() throws Exception {
+		int n = 100_000; // more than one buffer
+		writeMixed(n);
+		try (ValueFileReader reader = new ValueFileReader(file)) {
+			for (int i = 0; i < n; i++) {
+				assertEquals(expected(i), reader.readValue());
+			}
+			assertFalse(reader.hasNext());
+		}
+	}
+
+	@Test
+	void longString() throws Exception {
+		String s = "x".repeat(200_000);
+		try (ValueFileWriter writer = new ValueFileWriter(file)) {
+			writer.writeString(s);
+			writer.writeInt(7);
+		}
+		try (ValueFileReader reader = new ValueFileReader(file)) {
+			assertEquals(s, reader.readString());
+			assertEquals(7, reader.readInt());
+		}
+	}
+
+	@Test
+	void typeMismatch() throws Exception {
+		writeMixed(1);
+		try (ValueFileReader reader = new ValueFileReader(file)) {
+			assertThrows(PLCRuntimeException.class, () -> reader.readFloat());
+		}
+	}
+
+	@Test
+	void notAValueFile() throws Exception {
+		Files.writeString(file, "hello");
+		assertThrows(PLCRuntimeException.class, () -> new ValueFileReader(file));
+		assertThrows(PLCRuntimeException.class, () -> new MappedValueFile(file));
+	}
+
+	@Test
+	void corruptStringLength() throws Exception {
+		try (ValueFileWriter writer = new ValueFileWriter(file)) {
+			writer.writeInt(1);
+			writer.writeString("abc");
+			writer.writeInt(2);
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		// the length of the string follows its tag, after the header and the first int
+		int length = 5 + 5 + 1;
+		for (int corrupt : new int[] { -1, Integer.MIN_VALUE, 6, Integer.MAX_VALUE }) {
+			bytes[length] = (byte) (corrupt >>> 24);
+			bytes[length + 1] = (byte) (corrupt >>> 16);
+			bytes[length + 2] = (byte) (corrupt >>> 8);
+			bytes[length + 3] = (byte) corrupt;
+			Files.write(file, bytes);
+			assertThrows(PLCRuntimeException.class, () -> new MappedValueFile(file));
+			if (corrupt == 6) {
+				// the string ends inside the next value, which the streaming reader finds later
+				continue;
+			}
+			try (ValueFileReader reader = new ValueFileReader(file)) {
+				assertEquals(1, reader.readInt());
+				assertThrows(PLCRuntimeException.class, reader::readString);
+			}
+		}
+		Files.write(file, Arrays.copyOf(bytes, length + 2));
+		assertThrows(PLCRuntimeException.class, () -> new MappedValueFile(file));
+	}
+
+	@Test
+	void mappedRandomAccess() throws Exception {
+		int n = 10_000;
+		writeMixed(n);
+		try (MappedValueFile values = new MappedValueFile(file)) {
+			assertEquals(n, values.size());
+			for (int i = n - 1; i >= 0; i -= 7) {
+				assertEquals(expected(i), values.get(i));
+			}
+			assertEquals(3, values.getPackedColor(3) >> 16 & 0xff);
+			assertThrows(IndexOutOfBoundsException.class, () -> values.get(n));
+		}
+	}
+
+	@Test
+	void mappedCursor() throws Exception {
+		int n = 1000;
+		writeMixed(n);
+		try (MappedValueFile values = new MappedValueFile(file)) {
+			MappedValueFile.Cursor cursor = values.cursor();
+			int i = 0;
+			while (cursor.next()) {
+				assertEquals(expected(i), cursor.value());
+				i++;
+			}
+			assertEquals(n, i);
+			cursor.seek(500);
+			assertTrue(cursor.next());
+			assertEquals('I', cursor.tag());
+			assertEquals(500, cursor.intValue());
+		}
+	}
+
+	@Test
+	void mappedCursorNotOnValue() throws Exception {
+		writeMixed(10);
+		try (MappedValueFile values = new MappedValueFile(file)) {
+			MappedValueFile.Cursor cursor = values.cursor();
+			assertThrows(IllegalStateException.class, cursor::intValue);
+			assertTrue(cursor.next());
+			assertEquals(0, cursor.intValue());
+			// before next(), the getters do not read the value before the one sought
+			cursor.seek(6);
+			assertThrows(IllegalStateException.class, cursor::intValue);
+			assertThrows(IllegalStateException.class, cursor::floatValue);
+			assertThrows(IllegalStateException.class, cursor::booleanValue);
+			assertThrows(IllegalStateException.class, cursor::packedColorValue);
+			assertThrows(IllegalStateException.class, cursor::stringValue);
+			assertThrows(IllegalStateException.class, cursor::value);
+			assertTrue(cursor.next());
+			assertEquals(3f, cursor.floatValue());
+			assertTrue(cursor.next());
+			assertFalse(cursor.booleanValue());
+			assertTrue(cursor.next());
+			assertEquals(new ColorTuple(8, -8, 300).pack(), cursor.packedColorValue());
+			assertTrue(cursor.next());
+			assertEquals("value 9", cursor.stringValue());
+			assertThrows(PLCRuntimeException.class, cursor::intValue);
+			assertFalse(cursor.next());
+			assertThrows(IllegalStateException.class, cursor::stringValue);
+		}
+	}
+
+	@Test
+	void mappedConcurrentReaders() throws Exception {
+		int n = 50_000;
+		writeMixed(n);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try (MappedValueFile values = new MappedValueFile(file)) {
+			List<Future<Long>> results = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				results.add(pool.submit(() -> {
+					long sum = 0;
+					MappedValueFile.Cursor cursor = values.cursor();
+					while (cursor.next()) {
+						if (cursor.tag() == 'I') {
+							sum += cursor.intValue();
+						}
+					}
+					return sum;
+				}));
+			}
+			long expected = 0;
+			for (int i = 0; i < n; i += 5) {
+				expected += i;
+			}
+			for (Future<Long> result : results) {
+				assertEquals(expected, result.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package edu.ufl.cise.plc.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ufl.cise.plc.CompilerComponentFactory;
+import edu.ufl.cise.plc.Lexer;
+import edu.ufl.cise.plc.Parser;
+import edu.ufl.cise.plc.Token;
+import edu.ufl.cise.plc.ast.ASTNode;
+
+/**
+ * The phases measured by CompilerBenchmark as JMH benchmarks, on its program of the given
+ * number of blocks: lex, parse, typecheck and codegen each run their phase over the whole
+ * program.  Besides operations per second, each reports the tokens or AST nodes it handles per
+ * second, and with -prof gc, gc.alloc.rate.norm is the bytes allocated per operation.
+ *
+ * Usage: java -jar target/benchmarks.jar CompilerJmh -prof gc -rf json -rff results.json
+ *
+ * The input of each operation is prepared before it, untimed, as CompilerBenchmark does.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompilerJmh {
+
+	@Param({ "50", "200", "800" })
+	public int blocks;
+
+	String source;
+	long tokens;
+	long nodes;
+
+	@Setup
+	public void program() throws Exception {
+		source = CompilerBenchmark.program(blocks);
+		tokens = new Lexer(source).tokens.size();
+		nodes = CompilerBenchmark.count(CompilerComponentFactory.getParser(source).parse());
+	}
+
+	/* the tokens lexed, reported by JMH per second */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class TokenCount {
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			tokens = 0;
+		}
+	}
+
+	/* the AST nodes handled, reported by JMH per second */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class NodeCount {
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			nodes = 0;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Tokens {
+		ArrayList<Token> tokens;
+
+		@Setup(Level.Invocation)
+		public void lex(CompilerJmh benchmark) {
+			tokens = new Lexer(benchmark.source).tokens;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Parsed {
+		ASTNode ast;
+
+		@Setup(Level.Invocation)
+		public void parse(CompilerJmh benchmark) throws Exception {
+			ast = CompilerComponentFactory.getParser(benchmark.source).parse();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Checked {
+		ASTNode ast;
+
+		@Setup(Level.Invocation)
+		public void check(CompilerJmh benchmark) throws Exception {
+			ast = CompilerComponentFactory.getParser(benchmark.source).parse();
+			ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+		}
+	}
+
+	@Benchmark
+	public Object lex(TokenCount count) {
+		count.tokens += tokens;
+		return new Lexer(source);
+	}
+
+	@Benchmark
+	public Object parse(Tokens input, NodeCount count) throws Exception {
+		count.nodes += nodes;
+		return new Parser(input.tokens).parse();
+	}
+
+	@Benchmark
+	public Object typecheck(Parsed input, NodeCount count) throws Exception {
+		count.nodes += nodes;
+		return input.ast.visit(CompilerComponentFactory.getTypeChecker(), null);
+	}
+
+	@Benchmark
+	public Object codegen(Checked input, NodeCount count) throws Exception {
+		count.nodes += nodes;
+		return input.ast.visit(CompilerComponentFactory.getCodeGenerator("compilerJmh"), null);
+	}
+}
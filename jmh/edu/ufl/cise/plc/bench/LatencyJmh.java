@@ -0,0 +1,104 @@
+package edu.ufl.cise.plc.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ufl.cise.plc.runtime.ConsoleIO;
+import edu.ufl.cise.plc.runtime.javaCompilerClassLoader.PLCLangExec;
+
+/**
+ * The latency measured by LatencyBenchmark as JMH benchmarks: PLCLangExec.exec of each program
+ * of its corpus, with images of the given size and no display or console output.  warm samples
+ * every run after the warmup, so JMH reports its p50, p95 and p99, and cold measures the first
+ * run in each of 10 new JVMs.
+ *
+ * Usage: java -jar target/benchmarks.jar LatencyJmh -prof gc -rf json -rff results.json
+ *
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class LatencyJmh {
+
+	@Param({ "stencil", "blend", "strips", "transpose", "writeFile", "generated" })
+	public String program;
+
+	@Param({ "512" })
+	public int size;
+
+	String source;
+	Object[] params;
+	PLCLangExec exec;
+	Path directory;
+	boolean display;
+	PrintStream console;
+	PrintStream err;
+
+	@Setup
+	public void files() throws Exception {
+		directory = Files.createTempDirectory("latencyJmh");
+		ImageIO.write(RuntimeBenchmark.image(size, 3, 5), "png", directory.resolve("first.png").toFile());
+		ImageIO.write(RuntimeBenchmark.image(size, 7, 2), "png", directory.resolve("second.png").toFile());
+		source = LatencyBenchmark.corpus().get(program);
+		params = LatencyBenchmark.params(source, directory);
+		exec = new PLCLangExec("latencyJmh", false);
+		display = ConsoleIO.DISPLAY_IMAGES;
+		console = ConsoleIO.console;
+		err = System.err;
+		ConsoleIO.DISPLAY_IMAGES = false;
+		ConsoleIO.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown
+	public void deleteFiles() throws Exception {
+		ConsoleIO.DISPLAY_IMAGES = display;
+		ConsoleIO.setConsole(console);
+		System.setErr(err);
+		try (var files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(1)
+	public Object warm() throws Exception {
+		Object result = exec.exec(source, params);
+		ConsoleIO.consoleImages.clear();
+		return result;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public Object cold() throws Exception {
+		Object result = exec.exec(source, params);
+		ConsoleIO.consoleImages.clear();
+		return result;
+	}
+}
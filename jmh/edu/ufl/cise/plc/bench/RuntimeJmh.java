@@ -0,0 +1,155 @@
+package edu.ufl.cise.plc.bench;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ufl.cise.plc.runtime.ColorTuple;
+import edu.ufl.cise.plc.runtime.ColorTupleFloat;
+import edu.ufl.cise.plc.runtime.FileURLIO;
+import edu.ufl.cise.plc.runtime.ImageOps;
+import edu.ufl.cise.plc.runtime.ImageOps.OP;
+
+/**
+ * The operations measured by RuntimeBenchmark as JMH benchmarks, on generated square images
+ * of the given size.  Besides operations per second, each reports the pixels it handles per
+ * second, and with -prof gc, gc.alloc.rate.norm is the bytes allocated per operation.
+ *
+ * Usage: java -jar target/benchmarks.jar RuntimeJmh -prof gc -rf json -rff results.json
+ *
+ * The JPEG files are written to a temporary directory that is deleted afterwards.  Sizes up to
+ * 1024 are run by default; add larger ones with -p size=4096,8192, and a heap of at least 2 GB
+ * with -jvmArgsAppend -Xmx3g.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuntimeJmh {
+
+	@Param({ "64", "256", "1024" })
+	public int size;
+
+	BufferedImage a;
+	BufferedImage b;
+	int[] pixels;
+	ColorTupleFloat half = new ColorTupleFloat(0.5f);
+	Path directory;
+	String written;
+	String jpeg;
+
+	@Setup
+	public void images() throws Exception {
+		a = RuntimeBenchmark.image(size, 3, 5);
+		b = RuntimeBenchmark.image(size, 7, 2);
+		pixels = ImageOps.getRGBPixels(a);
+		directory = Files.createTempDirectory("runtimeJmh");
+		String file = directory.resolve("image").toString();
+		RuntimeBenchmark.quietly(() -> FileURLIO.writeImage(a, file));
+		jpeg = file + ".jpeg";
+		written = directory.resolve("written").toString();
+	}
+
+	@TearDown
+	public void deleteFiles() throws Exception {
+		try (var files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/* the pixels handled, reported by JMH per second */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Units {
+		public long pixels;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			pixels = 0;
+		}
+	}
+
+	@Benchmark
+	public Object plus(Units units) {
+		units.pixels += pixels.length;
+		return ImageOps.binaryImageImageOp(OP.PLUS, a, b);
+	}
+
+	@Benchmark
+	public Object timesScalar(Units units) {
+		units.pixels += pixels.length;
+		return ImageOps.binaryImageScalarOp(OP.TIMES, a, 3);
+	}
+
+	@Benchmark
+	public Object extractRed(Units units) {
+		units.pixels += pixels.length;
+		return ImageOps.extractRed(a);
+	}
+
+	@Benchmark
+	public Object clone(Units units) {
+		units.pixels += pixels.length;
+		return ImageOps.clone(a);
+	}
+
+	@Benchmark
+	public Object resize(Units units) {
+		units.pixels += pixels.length;
+		return ImageOps.resize(a, size / 2, size / 2);
+	}
+
+	@Benchmark
+	public long unpackPack(Units units) {
+		units.pixels += pixels.length;
+		long sum = 0;
+		for (int pixel : pixels) {
+			sum += ColorTuple.unpack(pixel).pack();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long floatTimes(Units units) {
+		units.pixels += pixels.length;
+		long sum = 0;
+		for (int pixel : pixels) {
+			sum += ImageOps.binaryTupleOp(OP.TIMES, new ColorTupleFloat(ColorTuple.unpack(pixel)), half).pack();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public void jpegWrite(Units units) {
+		units.pixels += pixels.length;
+		RuntimeBenchmark.quietly(() -> FileURLIO.writeImage(a, written));
+	}
+
+	@Benchmark
+	public Object jpegRead(Units units) {
+		units.pixels += pixels.length;
+		return FileURLIO.readImage(jpeg);
+	}
+}